@@ -0,0 +1,96 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.benchmarks;
+
+import org.floref.core.dsl.flow.Flows;
+import org.floref.core.flow.run.CommandRunner;
+import org.floref.core.flow.run.ExecutorProviders;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.floref.core.dsl.flow.Flows.from;
+
+/**
+ * Fan out heavy flow, a parallel of 8 branches that block for 1ms (like an I/O call), run on platform and on virtual
+ * threads. The virtual executor needs Java 21, before that it falls back to platform threads.
+ * <p>
+ * mvn -Pbenchmarks package && java -jar benchmarks/target/benchmarks.jar FanOutBenchmark
+ *
+ * @author Cristian Donoiu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(2)
+@Fork(1)
+public class FanOutBenchmark {
+
+  public interface FanOutFlows {
+    List fanOut(String s);
+  }
+
+  public static class Service {
+    public String io(String s) throws InterruptedException {
+      Thread.sleep(1);
+      return s;
+    }
+  }
+
+  @Param({ExecutorProviders.PLATFORM, ExecutorProviders.VIRTUAL})
+  public String executor;
+
+  private final Service service = new Service();
+  private FanOutFlows flows;
+
+  @Setup
+  public void setup() {
+    CommandRunner.setExecutorService(ExecutorProviders.newExecutorService(executor));
+    Flows.deleteAll();
+    flows = from(FanOutFlows::fanOut)
+        .parallel()
+          .to(service::io)
+          .to(service::io)
+          .to(service::io)
+          .to(service::io)
+          .to(service::io)
+          .to(service::io)
+          .to(service::io)
+          .to(service::io)
+        .end()
+        .build();
+  }
+
+  @Benchmark
+  public List fanOut() {
+    return flows.fanOut("a");
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 the original author  or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.benchmarks;
+
+import org.floref.core.dsl.flow.Flows;
+import org.floref.core.dsl.flow.data.FlowDefinition;
+import org.floref.core.flow.compile.FlowCompiler;
+import org.floref.core.flow.registry.FlowRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.floref.core.dsl.flow.Flows.from;
+
+/**
+ * Synchronous flow with a to chain, a when/otherwise and a retry, run interpreted, compiled and hand written.
+ * <p>
+ * mvn -Pbenchmarks package && java -jar benchmarks/target/benchmarks.jar FlowCompilerBenchmark
+ *
+ * @author Cristian Donoiu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FlowCompilerBenchmark {
+
+  public interface BenchmarkFlows {
+    String process(String s);
+  }
+
+  public static class Service {
+    public String trim(String s) {
+      return s.trim();
+    }
+
+    public boolean isShort(String s) {
+      return s.length() < 8;
+    }
+
+    public String upperCase(String s) {
+      return s.toUpperCase();
+    }
+
+    public String lowerCase(String s) {
+      return s.toLowerCase();
+    }
+
+    public String suffix(String s) {
+      return s + "!";
+    }
+  }
+
+  @Param({"interpreted", "compiled"})
+  public String mode;
+
+  private final Service service = new Service();
+  private BenchmarkFlows flows;
+
+  @Setup
+  public void setup() throws Exception {
+    Flows.deleteAll();
+    flows = from(BenchmarkFlows::process)
+        .to(service::trim)
+        .when(service::isShort)
+          .to(service::upperCase)
+        .otherwise()
+          .to(service::lowerCase)
+        .end()
+        .retry(service::suffix).delay(0).times(3)
+        .build();
+
+    FlowDefinition flowDefinition = FlowRegistry.getFlowInstanceData(BenchmarkFlows.class).getFlowDefinitions().get(0);
+    flowDefinition.validate();
+    flowDefinition.setCompiledFlow("compiled".equals(mode) ? FlowCompiler.compile(flowDefinition) : null);
+  }
+
+  @Benchmark
+  public String flow() {
+    return flows.process(" abc ");
+  }
+
+  @Benchmark
+  public String handWritten() {
+    String s = service.trim(" abc ");
+    s = service.isShort(s) ? service.upperCase(s) : service.lowerCase(s);
+    return service.suffix(s);
+  }
+}
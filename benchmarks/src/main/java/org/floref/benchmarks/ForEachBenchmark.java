@@ -0,0 +1,90 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.floref.benchmarks;
+
+import org.floref.core.dsl.flow.Flows;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.floref.core.dsl.flow.Flows.from;
+
+/**
+ * A forEach over a large collection with a cheap step, so that the cost is the forEach itself: splitting the input,
+ * submitting the work and collecting the results.
+ * <p>
+ * mvn -Pbenchmarks package && java -jar benchmarks/target/benchmarks.jar ForEachBenchmark
+ *
+ * @author Cristian Donoiu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ForEachBenchmark {
+
+  public interface ForEachFlows {
+    List forEach(Collection<Integer> integers);
+  }
+
+  public static class Service {
+    public Integer square(Integer i) {
+      return i * i;
+    }
+  }
+
+  @Param({"1000", "100000"})
+  public int size;
+
+  private final Service service = new Service();
+  private final List<Integer> integers = new ArrayList<>();
+  private ForEachFlows flows;
+
+  @Setup
+  public void setup() {
+    for (int i = 0; i < size; i++) {
+      integers.add(i);
+    }
+    Flows.deleteAll();
+    flows = from(ForEachFlows::forEach)
+        .forEach()
+          .to(service::square)
+        .end()
+        .build();
+  }
+
+  @Benchmark
+  public List forEach() {
+    return flows.forEach(integers);
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2020 the original author  or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.benchmarks;
+
+import org.floref.core.dsl.flow.Flows;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.floref.core.dsl.flow.Flows.from;
+
+/**
+ * Linear to chain whose steps do not allocate, used to measure the garbage created by the flow itself per step.
+ * <p>
+ * mvn -Pbenchmarks package && java -jar benchmarks/target/benchmarks.jar PipelineAllocationBenchmark -prof gc
+ * <p>
+ * Compare gc.alloc.rate.norm of chain1 and chain5 to get the bytes allocated per step.
+ *
+ * @author Cristian Donoiu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineAllocationBenchmark {
+
+  public interface ChainFlows {
+    Integer chain1(Integer i);
+
+    Integer chain5(Integer i);
+  }
+
+  public static class Service {
+    public Integer same(Integer i) {
+      return i; // Does not allocate.
+    }
+  }
+
+  private final Service service = new Service();
+  private final Integer value = 1;
+  private ChainFlows flows;
+
+  @Setup
+  public void setup() {
+    Flows.deleteAll();
+    from(ChainFlows::chain1)
+        .to(service::same)
+        .build();
+    flows = from(ChainFlows::chain5)
+        .to(service::same)
+        .to(service::same)
+        .to(service::same)
+        .to(service::same)
+        .to(service::same)
+        .build();
+  }
+
+  @Benchmark
+  public Integer chain1() {
+    return flows.chain1(value);
+  }
+
+  @Benchmark
+  public Integer chain5() {
+    return flows.chain5(value);
+  }
+}
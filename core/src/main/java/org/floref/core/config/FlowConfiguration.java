@@ -19,12 +19,16 @@ package org.floref.core.config;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.floref.core.config.consumer.MetricsConsumer;
+import org.floref.core.config.consumer.MetricsConsumers;
 import org.floref.core.config.injector.BeanInjector;
 import org.floref.core.config.injector.ConfigInjector;
 import org.floref.core.dsl.flow.from.From;
+import org.floref.core.flow.registry.ResolvedTargets;
+import org.floref.core.flow.run.ExecutorProfile;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -38,6 +42,31 @@ public class FlowConfiguration {
   private static final Log LOG = LogFactory.getLog(From.class);
   public static final String CONFIG_FILE = "/floref.properties";
   public static final String commonThreadPoolMaxSize = "flow.run.thread.pool.max.size";
+  // How method references are invoked: methodHandle (default) or reflection.
+  public static final String methodInvoker = "flow.run.method.invoker";
+  // How flow instances are created: proxy (default) or generated.
+  public static final String flowInstance = "flow.build.instance";
+  // If true flow definitions are compiled to bytecode on first run.
+  public static final String compileFlows = "flow.run.compile";
+  // Executor of forks, parallel branches and async flows: platform (default), virtual, forkjoin or an ExecutorProvider
+  // class.
+  public static final String executor = "flow.run.executor";
+  // If true flows returning CompletableFuture wait for the futures returned by their steps without blocking a thread.
+  public static final String asyncFlows = "flow.run.async";
+  // Precision in milliseconds of the timer running the timeouts and the retry delays, 10 by default.
+  public static final String timerTick = "flow.run.timer.tick";
+  // Elements processed at once by a forEach over an Iterator, Iterable, Stream or Publisher, 256 by default.
+  public static final String forEachWindow = "flow.run.foreach.window";
+  // Default jitter of the retry delays: none, full or decorrelated. None by default.
+  public static final String retryJitter = "flow.run.retry.jitter";
+  // Default upper bound in milliseconds of a retry delay, none by default.
+  public static final String retryMaxDelay = "flow.run.retry.max.delay";
+  // Retries allowed in a burst by all the retry instructions together, no limit if not set.
+  public static final String retryBudget = "flow.run.retry.budget";
+  // Retries per second added back to the retry budget, 10 by default.
+  public static final String retryBudgetRefill = "flow.run.retry.budget.refill";
+  // Default maximum number of entries of a .cache step, 1000 by default.
+  public static final String cacheMaxSize = "flow.run.cache.max.size";
 
   private static class FlowConfigurationHolder {
     static final FlowConfiguration CONFIG = new FlowConfiguration();
@@ -61,6 +90,7 @@ public class FlowConfiguration {
   };
   protected ConfigInjector configInjector;
   protected List<MetricsConsumer> metricsConsumerList = new CopyOnWriteArrayList();
+  protected volatile MetricsConsumers metricsConsumers = MetricsConsumers.EMPTY; // Snapshot of the list above.
   private Properties config = new Properties();
 
   /**
@@ -86,6 +116,14 @@ public class FlowConfiguration {
     return get().getConfig(key);
   }
 
+  /**
+   * @return the config value or the default value if the key is not configured.
+   */
+  public static String get(String key, String defaultValue) {
+    String value = get().getConfig(key);
+    return value != null ? value : defaultValue;
+  }
+
   public static int getIntConfig(String key) {
     return Integer.parseInt(get().getConfig(key));
   }
@@ -93,14 +131,13 @@ public class FlowConfiguration {
   protected void loadIfNeeded() {
     if (!loaded) {
       try (InputStream inputStream = FlowConfiguration.class.getResourceAsStream(CONFIG_FILE)) {
-        if (inputStream == null) {
-          return;
-        }
         // Some defaults first.
-        config.put(commonThreadPoolMaxSize, 32);
+        config.setProperty(commonThreadPoolMaxSize, ExecutorProfile.DEFAULT_MAX_SIZE);
 
         // The merge over properties from file.
-        config.load(inputStream);
+        if (inputStream != null) {
+          config.load(inputStream);
+        }
       } catch (IOException e) {
         LOG.error(e.getMessage(), e);
       }
@@ -118,6 +155,7 @@ public class FlowConfiguration {
    */
   public static void setBeanInjector(BeanInjector beanInjector) {
     get().beanInjector = beanInjector;
+    ResolvedTargets.invalidateAll(); // The beans resolved from the old injector.
   }
 
   public static BeanInjector getBeanInjector() {
@@ -132,17 +170,39 @@ public class FlowConfiguration {
     get().configInjector = configInjector;
   }
 
-  public static void addMetricsConsumer(MetricsConsumer metricsConsumer) {
+  public static synchronized void addMetricsConsumer(MetricsConsumer metricsConsumer) {
     if (!get().metricsConsumerList.contains(metricsConsumer)) {
       get().metricsConsumerList.add(metricsConsumer);
+      refreshMetricsConsumers();
     }
   }
 
-  public static void removeMetricsConsumer(MetricsConsumer metricsConsumer) {
-    get().metricsConsumerList.remove(metricsConsumer);
+  public static synchronized void removeMetricsConsumer(MetricsConsumer metricsConsumer) {
+    if (get().metricsConsumerList.remove(metricsConsumer)) {
+      refreshMetricsConsumers();
+    }
   }
 
+  /**
+   * Republishes the metrics consumers snapshot. Call it if the capabilities of a consumer changed after it was added
+   * (e.g. the debug level of the default consumer log was changed at runtime).
+   */
+  public static synchronized void refreshMetricsConsumers() {
+    get().metricsConsumers = new MetricsConsumers(get().metricsConsumerList);
+  }
+
+  /**
+   * @return the immutable snapshot of the metrics consumers, used on each flow run.
+   */
+  public static MetricsConsumers getMetricsConsumers() {
+    return get().metricsConsumers;
+  }
+
+  /**
+   * @return a read only view of the metrics consumers, use {@link #addMetricsConsumer} and
+   * {@link #removeMetricsConsumer} so that the snapshot used by the flow runs is republished.
+   */
   public static List<MetricsConsumer> getMetricsConsumerList() {
-    return get().metricsConsumerList;
+    return Collections.unmodifiableList(get().metricsConsumerList);
   }
 }
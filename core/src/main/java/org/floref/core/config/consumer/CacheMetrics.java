@@ -0,0 +1,94 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.config.consumer;
+
+/**
+ * A lookup in the cache of a .cache step, with the totals of that cache.
+ *
+ * @author Cristian Donoiu
+ */
+public class CacheMetrics {
+  protected String methodReference;
+  protected boolean hit;
+  protected Object key;
+  protected long hits;
+  protected long misses;
+  protected long evictions;
+  protected int size;
+
+  /**
+   * @return the cached method reference (e.g. "org.example.Service::method")
+   */
+  public String getMethodReference() {
+    return methodReference;
+  }
+
+  public void setMethodReference(String methodReference) {
+    this.methodReference = methodReference;
+  }
+
+  /**
+   * @return true if the value was found, false if the method reference is called to load it.
+   */
+  public boolean isHit() {
+    return hit;
+  }
+
+  public void setHit(boolean hit) {
+    this.hit = hit;
+  }
+
+  public Object getKey() {
+    return key;
+  }
+
+  public void setKey(Object key) {
+    this.key = key;
+  }
+
+  public long getHits() {
+    return hits;
+  }
+
+  public void setHits(long hits) {
+    this.hits = hits;
+  }
+
+  public long getMisses() {
+    return misses;
+  }
+
+  public void setMisses(long misses) {
+    this.misses = misses;
+  }
+
+  public long getEvictions() {
+    return evictions;
+  }
+
+  public void setEvictions(long evictions) {
+    this.evictions = evictions;
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  public void setSize(int size) {
+    this.size = size;
+  }
+}
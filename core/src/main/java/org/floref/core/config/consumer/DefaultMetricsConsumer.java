@@ -27,6 +27,14 @@ import org.apache.commons.logging.LogFactory;
 public class DefaultMetricsConsumer implements MetricsConsumer {
   static final Log LOG = LogFactory.getLog(DefaultMetricsConsumer.class);
 
+  /**
+   * Only the method reference is logged and only on debug.
+   */
+  @Override
+  public int getCapabilities() {
+    return LOG.isDebugEnabled() ? EVENTS : NONE;
+  }
+
   @Override
   public void beforeFlow(FlowMetrics metrics) {
     LOG.debug("Flow start " + metrics.getMethodReference());
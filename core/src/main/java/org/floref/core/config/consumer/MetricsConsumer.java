@@ -24,6 +24,27 @@ package org.floref.core.config.consumer;
  */
 public interface MetricsConsumer {
 
+  // Capabilities, the events and the fields a consumer needs. The engine does not build the events nobody needs.
+  int BEFORE_FLOW = 1;
+  int AFTER_FLOW = 1 << 1;
+  int BEFORE_METHOD_REFERENCE = 1 << 2;
+  int AFTER_METHOD_REFERENCE = 1 << 3;
+  int PARAMS = 1 << 4; // The params are set on the metrics.
+  int RESULT = 1 << 5; // The result is set on the metrics.
+  int CACHE = 1 << 6; // The .cache lookups.
+  int EVENTS = BEFORE_FLOW | AFTER_FLOW | BEFORE_METHOD_REFERENCE | AFTER_METHOD_REFERENCE;
+  int NONE = 0;
+  int ALL = EVENTS | PARAMS | RESULT | CACHE;
+
+  /**
+   * Read when the consumer is added, or on {@link org.floref.core.config.FlowConfiguration#refreshMetricsConsumers()}.
+   *
+   * @return the capabilities of this consumer, a combination of the flags above. By default everything.
+   */
+  default int getCapabilities() {
+    return ALL;
+  }
+
   /**
    * Called before a flow is run.
    *
@@ -45,4 +66,10 @@ public interface MetricsConsumer {
    * Called after any method reference is executed.
    */
   void afterMethodReference(MethodRefMetrics metrics);
+
+  /**
+   * Called on each lookup in the cache of a .cache step, if the CACHE capability is set.
+   */
+  default void cacheAccess(CacheMetrics metrics) {
+  }
 }
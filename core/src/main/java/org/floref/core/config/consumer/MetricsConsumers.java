@@ -0,0 +1,105 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.config.consumer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.floref.core.config.consumer.MetricsConsumer.AFTER_FLOW;
+import static org.floref.core.config.consumer.MetricsConsumer.AFTER_METHOD_REFERENCE;
+import static org.floref.core.config.consumer.MetricsConsumer.BEFORE_FLOW;
+import static org.floref.core.config.consumer.MetricsConsumer.BEFORE_METHOD_REFERENCE;
+import static org.floref.core.config.consumer.MetricsConsumer.CACHE;
+
+/**
+ * Immutable snapshot of the metrics consumers grouped by event, republished whenever a consumer is added or removed.
+ * The engine reads it once per call and skips building the metrics if no consumer needs them.
+ *
+ * @author Cristian Donoiu
+ */
+public final class MetricsConsumers {
+  public static final MetricsConsumers EMPTY = new MetricsConsumers(new ArrayList<>());
+
+  private final int capabilities; // Union of the consumers capabilities.
+  private final MetricsConsumer[] beforeFlow;
+  private final MetricsConsumer[] afterFlow;
+  private final MetricsConsumer[] beforeMethodReference;
+  private final MetricsConsumer[] afterMethodReference;
+  private final MetricsConsumer[] cache;
+
+  public MetricsConsumers(Collection<MetricsConsumer> metricsConsumers) {
+    int[] consumerCapabilities = new int[metricsConsumers.size()];
+    int union = 0;
+    int i = 0;
+    for (MetricsConsumer metricsConsumer : metricsConsumers) {
+      consumerCapabilities[i] = metricsConsumer.getCapabilities();
+      union |= consumerCapabilities[i++];
+    }
+    capabilities = union;
+    beforeFlow = select(metricsConsumers, consumerCapabilities, BEFORE_FLOW);
+    afterFlow = select(metricsConsumers, consumerCapabilities, AFTER_FLOW);
+    beforeMethodReference = select(metricsConsumers, consumerCapabilities, BEFORE_METHOD_REFERENCE);
+    afterMethodReference = select(metricsConsumers, consumerCapabilities, AFTER_METHOD_REFERENCE);
+    cache = select(metricsConsumers, consumerCapabilities, CACHE);
+  }
+
+  private static MetricsConsumer[] select(Collection<MetricsConsumer> metricsConsumers, int[] consumerCapabilities,
+                                          int event) {
+    List<MetricsConsumer> selected = new ArrayList<>();
+    int i = 0;
+    for (MetricsConsumer metricsConsumer : metricsConsumers) {
+      if ((consumerCapabilities[i++] & event) != 0) {
+        selected.add(metricsConsumer);
+      }
+    }
+    return selected.toArray(new MetricsConsumer[0]);
+  }
+
+  /**
+   * @return true if at least one consumer has any of the given capabilities.
+   */
+  public boolean isEnabled(int capability) {
+    return (capabilities & capability) != 0;
+  }
+
+  public int getCapabilities() {
+    return capabilities;
+  }
+
+  // The arrays are returned as is for speed, they must not be modified.
+
+  MetricsConsumer[] getBeforeFlow() {
+    return beforeFlow;
+  }
+
+  MetricsConsumer[] getAfterFlow() {
+    return afterFlow;
+  }
+
+  MetricsConsumer[] getBeforeMethodReference() {
+    return beforeMethodReference;
+  }
+
+  MetricsConsumer[] getAfterMethodReference() {
+    return afterMethodReference;
+  }
+
+  MetricsConsumer[] getCache() {
+    return cache;
+  }
+}
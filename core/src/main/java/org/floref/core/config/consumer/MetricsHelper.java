@@ -33,15 +33,71 @@ public class MetricsHelper {
     FlowConfiguration.addMetricsConsumer(defaultMetricsConsumer);
   }
 
-  interface MetricRunner {
-    void run(MetricsConsumer metricsConsumer);
+  /**
+   * @return the current consumers snapshot, read once per run so that the checks and the dispatch agree.
+   */
+  public static MetricsConsumers getMetricsConsumers() {
+    return FlowConfiguration.getMetricsConsumers();
   }
 
-  public static void runMetric(MetricRunner metricRunner) {
-    for (MetricsConsumer metricsConsumer : FlowConfiguration.getMetricsConsumerList()) {
+  /**
+   * @return true if there is any consumer that would use the metrics, so that callers can skip building them.
+   */
+  public static boolean isEnabled() {
+    return getMetricsConsumers().isEnabled(MetricsConsumer.EVENTS);
+  }
+
+  // The consumers are iterated directly instead of through a capturing lambda so that no object is created per call.
+
+  public static void beforeFlow(MetricsConsumers metricsConsumers, FlowMetrics flowMetrics) {
+    for (MetricsConsumer metricsConsumer : metricsConsumers.getBeforeFlow()) {
+      try {
+        metricsConsumer.beforeFlow(flowMetrics);
+      } catch (RuntimeException e) {
+        LOG.error(e.getMessage(), e);
+        throw e;
+      }
+    }
+  }
+
+  public static void afterFlow(MetricsConsumers metricsConsumers, FlowMetrics flowMetrics) {
+    for (MetricsConsumer metricsConsumer : metricsConsumers.getAfterFlow()) {
+      try {
+        metricsConsumer.afterFlow(flowMetrics);
+      } catch (RuntimeException e) {
+        LOG.error(e.getMessage(), e);
+        throw e;
+      }
+    }
+  }
+
+  public static void beforeMethod(MetricsConsumers metricsConsumers, MethodRefMetrics methodRefMetrics) {
+    for (MetricsConsumer metricsConsumer : metricsConsumers.getBeforeMethodReference()) {
+      try {
+        metricsConsumer.beforeMethodReference(methodRefMetrics);
+      } catch (RuntimeException e) {
+        LOG.error(e.getMessage(), e);
+        throw e;
+      }
+    }
+  }
+
+  public static void afterMethod(MetricsConsumers metricsConsumers, MethodRefMetrics methodRefMetrics) {
+    for (MetricsConsumer metricsConsumer : metricsConsumers.getAfterMethodReference()) {
+      try {
+        metricsConsumer.afterMethodReference(methodRefMetrics);
+      } catch (RuntimeException e) {
+        LOG.error(e.getMessage(), e);
+        throw e;
+      }
+    }
+  }
+
+  public static void cacheAccess(MetricsConsumers metricsConsumers, CacheMetrics cacheMetrics) {
+    for (MetricsConsumer metricsConsumer : metricsConsumers.getCache()) {
       try {
-        metricRunner.run(metricsConsumer);
-      } catch (Exception e) {
+        metricsConsumer.cacheAccess(cacheMetrics);
+      } catch (RuntimeException e) {
         LOG.error(e.getMessage(), e);
         throw e;
       }
@@ -49,26 +105,18 @@ public class MetricsHelper {
   }
 
   public static void beforeFlow(FlowMetrics flowMetrics) {
-    runMetric((metricsConsumer) -> {
-      metricsConsumer.beforeFlow(flowMetrics);
-    });
+    beforeFlow(getMetricsConsumers(), flowMetrics);
   }
 
   public static void afterFlow(FlowMetrics flowMetrics) {
-    runMetric((metricsConsumer) -> {
-      metricsConsumer.afterFlow(flowMetrics);
-    });
+    afterFlow(getMetricsConsumers(), flowMetrics);
   }
 
   public static void beforeMethod(MethodRefMetrics methodRefMetrics) {
-    runMetric((metricsConsumer) -> {
-      metricsConsumer.beforeMethodReference(methodRefMetrics);
-    });
+    beforeMethod(getMetricsConsumers(), methodRefMetrics);
   }
 
   public static void afterMethod(MethodRefMetrics methodRefMetrics) {
-    runMetric((metricsConsumer) -> {
-      metricsConsumer.afterMethodReference(methodRefMetrics);
-    });
+    afterMethod(getMetricsConsumers(), methodRefMetrics);
   }
 }
@@ -36,6 +36,17 @@ public interface BeanInjector {
    */
   Object getBean(Class beanClass);
 
+  /**
+   * The bean returned by getBean is cached in the flow step until the cached targets are invalidated (see
+   * {@link org.floref.core.flow.registry.ResolvedTargets}), unless this returns false.
+   *
+   * @param beanClass is an interface or class for which a bean was returned.
+   * @return false if getBean may return a different instance on each call (e.g. prototype or request scoped beans).
+   */
+  default boolean isCacheable(Class beanClass) {
+    return true;
+  }
+
   /**
    * Determine the target class of the given bean instance which might be an JDK proxy, a cglib proxy, etc.
    * This is needed because when a flow using beans is exported the beans might be proxy instances but the exported
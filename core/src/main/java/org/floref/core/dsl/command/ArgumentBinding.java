@@ -0,0 +1,181 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.dsl.command;
+
+import org.floref.core.exception.FlowDefinitionException;
+import org.floref.core.flow.reference.LambdaMeta.MethodParameter;
+import org.floref.core.flow.reference.MethodInvoker;
+import org.floref.core.flow.run.CommandContext;
+import org.floref.core.flow.run.FlowSession;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Precompiled mapping of the incoming arguments and of the @FlowVar session slots to the method parameter positions.
+ * The mapping depends only on the method parameters and on the runtime classes of the arguments (the class shape), so
+ * it is built once per shape and then reused without doing the best match search again. The arguments are read from
+ * the command context so that a single argument does not need an array.
+ *
+ * @author Cristian Donoiu
+ */
+public class ArgumentBinding {
+
+  private final List<MethodParameter> methodParameters; // The parameters the binding was built for.
+  private final Class[] argumentClasses;  // null for null arguments.
+  private final int[] parameterArguments; // For each parameter the argument index or -1 if none.
+  private final int[] parameterFlowVarSlots; // For each parameter the session slot or -1 if not a FlowVar.
+
+  private ArgumentBinding(List<MethodParameter> methodParameters, Class[] argumentClasses, int[] parameterArguments,
+                          int[] parameterFlowVarSlots) {
+    this.methodParameters = methodParameters;
+    this.argumentClasses = argumentClasses;
+    this.parameterArguments = parameterArguments;
+    this.parameterFlowVarSlots = parameterFlowVarSlots;
+  }
+
+  /**
+   * Builds the binding by matching each non null argument to the nearest assignable parameter. FlowVar parameters are
+   * always read from the session.
+   *
+   * @param methodParameters the method parameters.
+   * @param commandContext   holds the arguments that will be passed to the method.
+   * @param offset           the number of leading context arguments that are not passed (e.g. used as target).
+   * @param id               the method reference, used in error messages.
+   * @throws FlowDefinitionException if a non null argument can not be matched while parameters are still unbound.
+   */
+  public static ArgumentBinding build(List<MethodParameter> methodParameters, CommandContext commandContext,
+                                      int offset, String id) {
+    Class[] argumentClasses = new Class[commandContext.getArgumentCount() - offset];
+    for (int i = 0; i < argumentClasses.length; i++) {
+      Object argument = commandContext.getArgument(offset + i);
+      argumentClasses[i] = argument == null ? null : argument.getClass();
+    }
+
+    // Flowvars first.
+    int[] parameterArguments = new int[methodParameters.size()];
+    int[] parameterFlowVarSlots = new int[methodParameters.size()];
+    Arrays.fill(parameterArguments, -1);
+    Arrays.fill(parameterFlowVarSlots, -1);
+    List<MethodParameter> neededParams = new ArrayList<>();
+    for (MethodParameter methodParameter : methodParameters) {
+      if (methodParameter.isFlowVar()) {
+        parameterFlowVarSlots[methodParameter.getPosition()] = methodParameter.getFlowVarSlot();
+      } else {
+        neededParams.add(methodParameter);
+      }
+    }
+
+    boolean[] matched = new boolean[argumentClasses.length];
+    for (int i = 0; i < argumentClasses.length; i++) {
+      Class argumentClass = argumentClasses[i];
+      if (argumentClass == null) {
+        continue;
+      }
+      MethodParameter candidate = null;
+      // Find best match.
+      for (MethodParameter methodParameter : neededParams) {
+        Class parameterClass = methodParameter.getClazz();
+        if (parameterClass == argumentClass) {
+          candidate = methodParameter;
+          break;
+        } else if (parameterClass.isAssignableFrom(argumentClass)) {
+          if (candidate == null) {
+            candidate = methodParameter;
+          } else if (candidate.getClazz().isAssignableFrom(parameterClass)) {
+            candidate = methodParameter; // Keep the nearest.
+          }
+        }
+      }
+      if (candidate != null) {
+        parameterArguments[candidate.getPosition()] = i;
+        matched[i] = true;
+        neededParams.remove(candidate);
+      }
+    }
+
+    // Non null arguments that were not matched.
+    for (int i = 0; i < argumentClasses.length; i++) {
+      if (argumentClasses[i] != null && !matched[i] && neededParams.size() > 0) {
+        throw new FlowDefinitionException("Method parameter mismatch for '" + id + "' found '"
+            + argumentClasses[i] + "' but a '" + neededParams.get(0).getClazz().getName() + "' is expected");
+      }
+    }
+
+    return new ArgumentBinding(methodParameters, argumentClasses, parameterArguments, parameterFlowVarSlots);
+  }
+
+  /**
+   * @return true if this binding was built for the same parameters and the same argument class shape.
+   */
+  public boolean matches(List<MethodParameter> methodParameters, CommandContext commandContext, int offset) {
+    if (this.methodParameters != methodParameters || argumentClasses.length != commandContext.getArgumentCount() - offset) {
+      return false;
+    }
+    for (int i = 0; i < argumentClasses.length; i++) {
+      Object argument = commandContext.getArgument(offset + i);
+      if (argument == null ? argumentClasses[i] != null : argument.getClass() != argumentClasses[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the value of the method parameter at the given position.
+   */
+  public Object parameter(int position, CommandContext commandContext, int offset) {
+    if (parameterFlowVarSlots[position] != -1) {
+      return FlowSession.get(parameterFlowVarSlots[position]);
+    }
+    int argument = parameterArguments[position];
+    return argument == -1 ? null : commandContext.getArgument(offset + argument);
+  }
+
+  /**
+   * @return the method parameters filled from the arguments and from the flow session.
+   */
+  public Object[] bind(CommandContext commandContext, int offset) {
+    Object[] params = new Object[parameterArguments.length];  // Init with nulls.
+    for (int i = 0; i < params.length; i++) {
+      params[i] = parameter(i, commandContext, offset);
+    }
+    return params;
+  }
+
+  /**
+   * Invokes the method with the bound parameters. Methods with up to 3 parameters are invoked without creating a
+   * parameters array.
+   */
+  public Object invoke(MethodInvoker invoker, Object target, CommandContext commandContext, int offset)
+      throws Exception {
+    switch (parameterArguments.length) {
+      case 0:
+        return invoker.invoke0(target);
+      case 1:
+        return invoker.invoke1(target, parameter(0, commandContext, offset));
+      case 2:
+        return invoker.invoke2(target, parameter(0, commandContext, offset), parameter(1, commandContext, offset));
+      case 3:
+        return invoker.invoke3(target, parameter(0, commandContext, offset), parameter(1, commandContext, offset),
+            parameter(2, commandContext, offset));
+      default:
+        return invoker.invoke(target, bind(commandContext, offset));
+    }
+  }
+}
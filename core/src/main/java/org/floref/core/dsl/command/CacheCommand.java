@@ -0,0 +1,253 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.dsl.command;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.floref.core.config.FlowConfiguration;
+import org.floref.core.config.consumer.CacheMetrics;
+import org.floref.core.config.consumer.MetricsConsumer;
+import org.floref.core.config.consumer.MetricsConsumers;
+import org.floref.core.config.consumer.MetricsHelper;
+import org.floref.core.dsl.flow.impex.Aliases;
+import org.floref.core.dsl.flow.impex.FlowStep;
+import org.floref.core.flow.reference.LambdaMeta;
+import org.floref.core.flow.reference.MethodReference;
+import org.floref.core.flow.run.AsyncCommandRunner;
+import org.floref.core.flow.run.CommandContext;
+import org.floref.core.flow.run.CommandRunner;
+import org.floref.core.flow.run.FlowSession;
+import org.floref.core.flow.run.LruCache;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.floref.core.dsl.command.FlowCommandBuilders.CACHE;
+
+/**
+ * .cache
+ * <p>
+ * Calls the method only if its result is not already cached for the same key. The key is the argument, or the list of
+ * the arguments if more, or the result of the key method if one is set, so it must have equals and hashCode (the
+ * FlowVar parameters are not part of it). Null results and failures are not cached, a returned CompletionStage is
+ * cached as is and removed if it fails. The cache is bounded and least recently used entries are evicted first.
+ *
+ * @author Cristian Donoiu
+ */
+public class CacheCommand extends MethodReferenceCommand {
+  private static final Log LOG = LogFactory.getLog(CacheCommand.class);
+
+  protected int maxSize = Integer.parseInt(FlowConfiguration.get(FlowConfiguration.cacheMaxSize, "1000"));
+  protected long ttl; // Millis, 0 if the entries do not expire.
+  protected long refreshAfter; // Millis, 0 if the entries are not reloaded.
+  protected MethodReferenceCommand key;
+  private volatile LruCache<Object, Object> cache; // Built on first use, after the options are set.
+
+  public CacheCommand(MethodReference methodReference) {
+    super(methodReference);
+  }
+
+  public CacheCommand(LambdaMeta lambdaMeta) {
+    super(lambdaMeta);
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  public void setMaxSize(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  public long getTtl() {
+    return ttl;
+  }
+
+  public void setTtl(long ttl) {
+    this.ttl = ttl;
+  }
+
+  public long getRefreshAfter() {
+    return refreshAfter;
+  }
+
+  public void setRefreshAfter(long refreshAfter) {
+    this.refreshAfter = refreshAfter;
+  }
+
+  public MethodReferenceCommand getKey() {
+    return key;
+  }
+
+  public void setKey(MethodReference methodReference) {
+    key = new MethodReferenceCommand(methodReference);
+  }
+
+  public void setKey(LambdaMeta lambdaMeta) {
+    key = new MethodReferenceCommand(lambdaMeta);
+  }
+
+  public LruCache<Object, Object> getCache() {
+    LruCache<Object, Object> current = cache;
+    if (current == null) {
+      synchronized (this) {
+        current = cache;
+        if (current == null) {
+          cache = current = new LruCache<>(maxSize, ttl, TimeUnit.MILLISECONDS);
+        }
+      }
+    }
+    return current;
+  }
+
+  /**
+   * @return the cache key of the step arguments.
+   */
+  protected Object key(CommandContext commandContext) throws Exception {
+    if (key != null) {
+      CommandContext keyContext = commandContext.copy();
+      key.run(keyContext);
+      return keyContext.getResult();
+    }
+    int count = commandContext.getArgumentCount();
+    if (count == 1) {
+      return commandContext.getArgument(0);
+    }
+    Object[] arguments = new Object[count];
+    for (int i = 0; i < count; i++) {
+      arguments[i] = commandContext.getArgument(i);
+    }
+    return Arrays.asList(arguments);
+  }
+
+  @Override
+  public void run(CommandContext commandContext) throws Exception {
+    LruCache<Object, Object> cache = getCache();
+    Object key = key(commandContext);
+    LruCache.Entry<Object> entry = cache.getEntry(key);
+    MetricsConsumers metricsConsumers = MetricsHelper.getMetricsConsumers();
+    if (metricsConsumers.isEnabled(MetricsConsumer.CACHE)) {
+      MetricsHelper.cacheAccess(metricsConsumers, cacheMetrics(cache, key, entry != null));
+    }
+    if (entry == null) {
+      super.run(commandContext);
+      Object result = commandContext.getResult();
+      store(cache, key, result);
+      if (result instanceof CompletionStage) {
+        setResult(commandContext, result);
+      }
+      return;
+    }
+    if (refreshAfter > 0 && entry.getAge() >= TimeUnit.MILLISECONDS.toNanos(refreshAfter) && entry.startRefresh()) {
+      refresh(commandContext, cache, key, entry);
+    }
+    setResult(commandContext, entry.getValue());
+  }
+
+  /**
+   * Sets the step result. A cached CompletionStage is shared, so each flow gets a dependent copy of it that it can
+   * cancel without cancelling it for the others.
+   */
+  private void setResult(CommandContext commandContext, Object result) {
+    if (result instanceof CompletionStage) {
+      result = ((CompletionStage<Object>) result).thenApply(Function.identity());
+    }
+    int returnFlowVarSlot = lambdaMeta.getReturnFlowVarSlot();
+    if (returnFlowVarSlot != -1) {
+      FlowSession.set(returnFlowVarSlot, result);
+    }
+    commandContext.setResult(result);
+    commandContext.moveResultToArguments();
+    commandContext.setException(null);
+  }
+
+  private static void store(LruCache<Object, Object> cache, Object key, Object result) {
+    if (result == null) {
+      return;
+    }
+    cache.put(key, result);
+    if (result instanceof CompletionStage) {
+      ((CompletionStage<?>) result).whenComplete((value, throwable) -> {
+        if (throwable != null) {
+          cache.remove(key, result);
+        }
+      });
+    }
+  }
+
+  /**
+   * Reloads the value on the flow executor while the stale one is still returned.
+   */
+  private void refresh(CommandContext commandContext, LruCache<Object, Object> cache, Object key,
+                       LruCache.Entry<Object> entry) {
+    CommandContext reloadContext = commandContext.copy();
+    Map session = FlowSession.get();
+    Runnable reload = () -> AsyncCommandRunner.withSession(session, () -> {
+      try {
+        CacheCommand.super.run(reloadContext);
+        store(cache, key, reloadContext.getResult());
+      } catch (Exception e) {
+        entry.refreshFailed(); // The next hit tries again.
+      }
+      return null;
+    });
+    try {
+      CommandRunner.getExecutorService(commandContext.getFlowDefinition().getExecutor()).execute(reload);
+    } catch (RuntimeException e) {
+      LOG.warn("Could not refresh " + getId() + ": " + e.getMessage());
+      entry.refreshFailed();
+    }
+  }
+
+  private CacheMetrics cacheMetrics(LruCache<Object, Object> cache, Object key, boolean hit) {
+    CacheMetrics metrics = new CacheMetrics();
+    metrics.setMethodReference(getId());
+    metrics.setHit(hit);
+    metrics.setKey(key);
+    metrics.setHits(cache.getHits());
+    metrics.setMisses(cache.getMisses());
+    metrics.setEvictions(cache.getEvictions());
+    metrics.setSize(cache.size());
+    return metrics;
+  }
+
+  @Override
+  public String getKeyword() {
+    return CACHE;
+  }
+
+  @Override
+  public void definitionExport(FlowStep flowStep) {
+    flowStep.setType(getKeyword());
+    flowStep.setMaxSize(maxSize);
+    if (ttl > 0) {
+      flowStep.setTtl(ttl);
+    }
+    if (refreshAfter > 0) {
+      flowStep.setRefreshAfter(refreshAfter);
+    }
+    if (key != null) {
+      String alias = Aliases.getAlias(key.getLambdaMeta());
+      flowStep.setKey(alias != null ? alias : key.getLambdaMeta().getMethodReferenceAsString());
+    }
+    super.definitionExport(flowStep);
+  }
+
+}
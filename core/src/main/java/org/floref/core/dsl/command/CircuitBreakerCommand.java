@@ -0,0 +1,219 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.dsl.command;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.floref.core.dsl.flow.impex.Aliases;
+import org.floref.core.dsl.flow.impex.FlowStep;
+import org.floref.core.exception.CircuitBreakerOpenException;
+import org.floref.core.flow.reference.LambdaMeta;
+import org.floref.core.flow.reference.MethodReference;
+import org.floref.core.flow.run.AsyncCommandRunner;
+import org.floref.core.flow.run.CircuitBreakerState;
+import org.floref.core.flow.run.CircuitBreakers;
+import org.floref.core.flow.run.CommandContext;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.floref.core.dsl.command.FlowCommandBuilders.CIRCUIT_BREAKER;
+
+/**
+ * .circuitBreaker
+ *
+ * @author Cristian Donoiu
+ */
+public class CircuitBreakerCommand extends MethodReferenceCommand {
+  private static final Log LOG = LogFactory.getLog(CircuitBreakerCommand.class);
+
+  protected String name; // null to share the breaker of the method reference.
+  protected int window = 20;
+  protected int failureRate = 50;
+  protected long slowCallDuration = Long.MAX_VALUE;
+  protected int slowCallRate = 100;
+  protected long openDuration = 10000;
+  protected int halfOpenCalls = 3;
+  protected MethodReferenceCommand fallback;
+  private volatile CircuitBreakerState checkedState; // The last state whose settings were compared to this step.
+
+  public CircuitBreakerCommand(MethodReference methodReference) {
+    super(methodReference);
+  }
+
+  public CircuitBreakerCommand(LambdaMeta lambdaMeta) {
+    super(lambdaMeta);
+  }
+
+  public String getName() {
+    return name != null ? name : getId();
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  public int getWindow() {
+    return window;
+  }
+
+  public void setWindow(int window) {
+    this.window = window;
+  }
+
+  public int getFailureRate() {
+    return failureRate;
+  }
+
+  public void setFailureRate(int failureRate) {
+    this.failureRate = failureRate;
+  }
+
+  public long getSlowCallDuration() {
+    return slowCallDuration;
+  }
+
+  public void setSlowCallDuration(long slowCallDuration) {
+    this.slowCallDuration = slowCallDuration;
+  }
+
+  public int getSlowCallRate() {
+    return slowCallRate;
+  }
+
+  public void setSlowCallRate(int slowCallRate) {
+    this.slowCallRate = slowCallRate;
+  }
+
+  public long getOpenDuration() {
+    return openDuration;
+  }
+
+  public void setOpenDuration(long openDuration) {
+    this.openDuration = openDuration;
+  }
+
+  public int getHalfOpenCalls() {
+    return halfOpenCalls;
+  }
+
+  public void setHalfOpenCalls(int halfOpenCalls) {
+    this.halfOpenCalls = halfOpenCalls;
+  }
+
+  public MethodReferenceCommand getFallback() {
+    return fallback;
+  }
+
+  public void setFallback(MethodReference methodReference) {
+    fallback = new MethodReferenceCommand(methodReference);
+  }
+
+  public void setFallback(LambdaMeta lambdaMeta) {
+    fallback = new MethodReferenceCommand(lambdaMeta);
+  }
+
+  /**
+   * @return the breaker shared by the steps with the same name. It keeps the settings of the step that created it, a
+   * warning is logged if this step has other settings.
+   */
+  public CircuitBreakerState getState() {
+    CircuitBreakerState state = CircuitBreakers.get(getName(), breaker -> new CircuitBreakerState(breaker, window,
+        failureRate, slowCallDuration, slowCallRate, openDuration, halfOpenCalls));
+    if (state != checkedState) {
+      checkedState = state;
+      if (!state.hasSettings(window, failureRate, slowCallDuration, slowCallRate, openDuration, halfOpenCalls)) {
+        LOG.warn("Circuit breaker " + state.getName() + " already exists with other settings, those of step " + getId()
+            + " are ignored. Use a different .name() or CircuitBreakers.remove to change them.");
+      }
+    }
+    return state;
+  }
+
+  @Override
+  public void run(CommandContext commandContext) throws Exception {
+    CircuitBreakerState state = getState();
+    CircuitBreakerState.Status allowedIn = state.acquire();
+    if (allowedIn == null) {
+      if (fallback == null) {
+        throw openException();
+      }
+      fallback.run(commandContext);
+      return;
+    }
+    long start = System.nanoTime();
+    try {
+      super.run(commandContext);
+    } catch (Exception e) {
+      state.onResult(allowedIn, true, System.nanoTime() - start);
+      throw e;
+    }
+    state.onResult(allowedIn, false, System.nanoTime() - start);
+  }
+
+  /**
+   * Same as {@link #run(CommandContext)}, a returned CompletionStage is awaited and its outcome is recorded.
+   */
+  @Override
+  public CompletableFuture<Void> runAsync(CommandContext commandContext) {
+    CircuitBreakerState state = getState();
+    CircuitBreakerState.Status allowedIn = state.acquire();
+    if (allowedIn == null) {
+      return fallback == null ? AsyncCommandRunner.failed(openException()) : fallback.runAsync(commandContext);
+    }
+    long start = System.nanoTime();
+    CompletableFuture<Void> called;
+    try {
+      super.run(commandContext);
+      called = awaitResult(commandContext);
+    } catch (Exception e) {
+      called = AsyncCommandRunner.failed(e);
+    }
+    return called.whenComplete((done, throwable) ->
+        state.onResult(allowedIn, throwable != null, System.nanoTime() - start));
+  }
+
+  private CircuitBreakerOpenException openException() {
+    return new CircuitBreakerOpenException("Circuit breaker " + getName() + " is open, " + getId() + " not called");
+  }
+
+  @Override
+  public String getKeyword() {
+    return CIRCUIT_BREAKER;
+  }
+
+  @Override
+  public void definitionExport(FlowStep flowStep) {
+    flowStep.setType(getKeyword());
+    if (name != null) {
+      flowStep.setName(name);
+    }
+    flowStep.setWindow(window);
+    flowStep.setFailureRate(failureRate);
+    if (slowCallDuration != Long.MAX_VALUE) {
+      flowStep.setSlowCallDuration(slowCallDuration);
+      flowStep.setSlowCallRate(slowCallRate);
+    }
+    flowStep.setOpenDuration(openDuration);
+    flowStep.setHalfOpenCalls(halfOpenCalls);
+    if (fallback != null) {
+      String alias = Aliases.getAlias(fallback.getLambdaMeta());
+      flowStep.setFallback(alias != null ? alias : fallback.getLambdaMeta().getMethodReferenceAsString());
+    }
+    super.definitionExport(flowStep);
+  }
+
+}
@@ -19,8 +19,11 @@ package org.floref.core.dsl.command;
 import org.floref.core.dsl.command.group.ParentCommand;
 import org.floref.core.dsl.flow.impex.FlowStep;
 import org.floref.core.exception.FlowDefinitionException;
+import org.floref.core.flow.run.AsyncCommandRunner;
 import org.floref.core.flow.run.CommandContext;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Base interface for all flow commands.
  * Multiple flow commands can be top level. Some commands can include others and thus some can have parents.
@@ -55,6 +58,16 @@ public interface FlowCommand {
     throw new FlowDefinitionException("command not implemented");
   }
 
+  /**
+   * Runs the command for a flow in async mode. Commands that can wait for a future returned by a step without blocking
+   * override it, by default the command is run synchronously.
+   *
+   * @return completed when the command is done, exceptionally if it failed.
+   */
+  default CompletableFuture<Void> runAsync(CommandContext commandContext) {
+    return AsyncCommandRunner.runSync(this, commandContext);
+  }
+
   default String getKeyword() {
     return getClass().getSimpleName();
   }
@@ -40,6 +40,9 @@ public class FlowCommandBuilders {
   public static final String FOR_EACH = "forEach";
   public static final String REVERSIBLE = "reversible";
   public static final String RETRY = "retry";
+  public static final String CIRCUIT_BREAKER = "circuitBreaker";
+  public static final String HEDGE = "hedge";
+  public static final String CACHE = "cache";
   public static Map<String, FlowCommandBuilder> builders = new HashMap<>();
 
   static {
@@ -79,6 +82,27 @@ public class FlowCommandBuilders {
         return new RetryCommand((LambdaMeta) params[0]);
       }
     });
+    addBuilder(CIRCUIT_BREAKER, params -> {
+      if (params[0] instanceof MethodReference) {
+        return new CircuitBreakerCommand((MethodReference) params[0]);
+      } else {
+        return new CircuitBreakerCommand((LambdaMeta) params[0]);
+      }
+    });
+    addBuilder(HEDGE, params -> {
+      if (params[0] instanceof MethodReference) {
+        return new HedgeCommand((MethodReference) params[0]);
+      } else {
+        return new HedgeCommand((LambdaMeta) params[0]);
+      }
+    });
+    addBuilder(CACHE, params -> {
+      if (params[0] instanceof MethodReference) {
+        return new CacheCommand((MethodReference) params[0]);
+      } else {
+        return new CacheCommand((LambdaMeta) params[0]);
+      }
+    });
   }
 
   public static void addBuilder(String id, FlowCommandBuilder flowCommandBuilder) {
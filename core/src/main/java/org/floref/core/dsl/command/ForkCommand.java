@@ -21,12 +21,17 @@ import org.apache.commons.logging.LogFactory;
 import org.floref.core.dsl.flow.impex.FlowStep;
 import org.floref.core.flow.reference.LambdaMeta;
 import org.floref.core.flow.reference.MethodReference;
+import org.floref.core.flow.run.AsyncCommandRunner;
 import org.floref.core.flow.run.CommandContext;
 import org.floref.core.flow.run.CommandRunner;
+import org.floref.core.flow.run.FlowExecution;
 import org.floref.core.flow.run.FlowSession;
 
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.floref.core.dsl.command.FlowCommandBuilders.FORK;
 
@@ -50,6 +55,15 @@ public class ForkCommand extends MethodReferenceCommand {
   public void run(CommandContext commandContext) throws Exception {
     Map session = FlowSession.get();
     CommandContext contextCopy = commandContext.copy();
+    FlowExecution execution = contextCopy.getFlowExecution();
+    AtomicReference<Future> future = new AtomicReference<>();
+    // Cancelling the flow skips (or interrupts) the fork if it did not finish.
+    FlowExecution.CancelListener cancelListener = (mayInterruptIfRunning) -> {
+      Future forkFuture = future.get();
+      if (forkFuture != null) {
+        forkFuture.cancel(mayInterruptIfRunning);
+      }
+    };
 
     Callable callable = () -> {
       try {
@@ -60,11 +74,37 @@ public class ForkCommand extends MethodReferenceCommand {
         LOG.error(e.getMessage(), e);
         throw e;
       } finally {
+        if (execution != null) {
+          execution.removeListener(cancelListener);
+        }
         FlowSession.clearSession();
       }
     };
-    CommandRunner.submit(callable);
+    String bulkhead = commandContext.getFlowDefinition() != null ? commandContext.getFlowDefinition().getExecutor()
+        : null;
+    // Registered before the fork can run, so that its removal when done is not lost.
+    if (execution != null) {
+      execution.addListener(cancelListener);
+    }
+    try {
+      future.set(CommandRunner.submitWithBackpressure(bulkhead, callable));
+    } catch (RuntimeException e) {
+      if (execution != null) {
+        execution.removeListener(cancelListener);
+      }
+      throw e;
+    }
+    if (execution != null && execution.isCancelled()) { // Cancelled before the future was set.
+      future.get().cancel(false);
+    }
+  }
 
+  /**
+   * The fork does not change the step result so there is nothing to wait for.
+   */
+  @Override
+  public CompletableFuture<Void> runAsync(CommandContext commandContext) {
+    return AsyncCommandRunner.runSync(this, commandContext);
   }
 
   @Override
@@ -23,6 +23,8 @@ import org.floref.core.flow.reference.LambdaMeta;
 import org.floref.core.flow.reference.MethodReference;
 import org.floref.core.flow.run.CommandContext;
 
+import java.util.concurrent.CompletableFuture;
+
 import static org.floref.core.dsl.command.FlowCommandBuilders.FROM;
 import static org.floref.core.dsl.flow.impex.FlowImpex.addTypeAndRef;
 
@@ -63,6 +65,11 @@ public class FromCommand extends ParentCommand {
     runChildren(commandContext);
   }
 
+  @Override
+  public CompletableFuture<Void> runAsync(CommandContext commandContext) {
+    return runChildrenAsync(commandContext);
+  }
+
   @Override
   public void definitionExport(FlowStep flowStep) {
     addTypeAndRef(flowStep, this, methodReferenceCommand);
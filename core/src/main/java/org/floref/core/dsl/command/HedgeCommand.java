@@ -0,0 +1,336 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.dsl.command;
+
+import org.floref.core.dsl.flow.impex.FlowStep;
+import org.floref.core.flow.reference.LambdaMeta;
+import org.floref.core.flow.reference.MethodReference;
+import org.floref.core.flow.run.AsyncCommandRunner;
+import org.floref.core.flow.run.CommandContext;
+import org.floref.core.flow.run.CommandRunner;
+import org.floref.core.flow.run.FlowExecution;
+import org.floref.core.flow.run.FlowSession;
+import org.floref.core.flow.run.WheelTimer;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.floref.core.dsl.command.FlowCommandBuilders.HEDGE;
+
+/**
+ * .hedge
+ * <p>
+ * Calls the method on the flow executor and, if it did not succeed after the hedge delay, calls it a second time. The
+ * first successful call gives the step result and the other one is cancelled (interrupted, and a returned
+ * CompletionStage is cancelled). A failed call starts the second one right away. The method must be idempotent.
+ * Both calls run off the calling thread, so the step returns as soon as one succeeded even if the other one ignores
+ * the interrupt.
+ *
+ * @author Cristian Donoiu
+ */
+public class HedgeCommand extends MethodReferenceCommand {
+  private static final int LATENCIES = 128; // Power of 2.
+  private static final int MIN_LATENCIES = 32; // Before that the delay is used.
+  private static final int RECOMPUTE_EVERY = 16;
+
+  protected long delay = 100;
+  protected int percentile; // 0 if the fixed delay is used.
+
+  private final AtomicLongArray latencies = new AtomicLongArray(LATENCIES);
+  private final AtomicLong recorded = new AtomicLong();
+  private volatile long percentileDelay = -1; // Millis, -1 until enough latencies were recorded.
+
+  public HedgeCommand(MethodReference methodReference) {
+    super(methodReference);
+  }
+
+  public HedgeCommand(LambdaMeta lambdaMeta) {
+    super(lambdaMeta);
+  }
+
+  public long getDelay() {
+    return delay;
+  }
+
+  public void setDelay(long delay) {
+    this.delay = delay;
+  }
+
+  public int getPercentile() {
+    return percentile;
+  }
+
+  public void setPercentile(int percentile) {
+    this.percentile = percentile;
+  }
+
+  /**
+   * @return how long the first call runs before the second one is started.
+   */
+  public long getHedgeDelay() {
+    long observed = percentileDelay;
+    return percentile > 0 && observed >= 0 ? observed : delay;
+  }
+
+  /**
+   * Records a latency of the first call, the percentile delay is computed from them.
+   */
+  private void recordLatency(long nanos) {
+    long count = recorded.incrementAndGet();
+    latencies.set((int) ((count - 1) & (LATENCIES - 1)), nanos);
+    if (percentile > 0 && count >= MIN_LATENCIES && count % RECOMPUTE_EVERY == 0) {
+      long[] sorted = new long[(int) Math.min(count, LATENCIES)];
+      for (int i = 0; i < sorted.length; i++) {
+        sorted[i] = latencies.get(i);
+      }
+      Arrays.sort(sorted);
+      int index = Math.max(0, (int) Math.ceil(percentile / 100.0 * sorted.length) - 1);
+      percentileDelay = TimeUnit.NANOSECONDS.toMillis(sorted[index]) + 1;
+    }
+  }
+
+  /**
+   * Waits for the first successful call, or for both to fail.
+   */
+  @Override
+  public void run(CommandContext commandContext) throws Exception {
+    Hedging hedging = new Hedging(commandContext);
+    try {
+      hedging.start().get();
+    } catch (InterruptedException e) {
+      hedging.cancel(stoppedFlowException(commandContext, "while waiting for " + getId()));
+      throw e;
+    } catch (ExecutionException e) {
+      throw AsyncCommandRunner.getCause(e);
+    }
+  }
+
+  @Override
+  public CompletableFuture<Void> runAsync(CommandContext commandContext) {
+    return new Hedging(commandContext).start();
+  }
+
+  /**
+   * The calls of one step run.
+   */
+  private final class Hedging {
+    private final CommandContext commandContext;
+    private final Map session = FlowSession.get();
+    private final FlowExecution execution;
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+    private final Call[] calls = new Call[2];
+    private final FlowExecution.CancelListener cancelListener;
+    private int started;
+    private int failed;
+    private boolean completed; // The outcome is decided, set before the calls are cancelled.
+    private Exception firstFailure;
+    private WheelTimer.Timeout timeout;
+
+    Hedging(CommandContext commandContext) {
+      this.commandContext = commandContext;
+      this.execution = commandContext.getFlowExecution();
+      this.cancelListener = mayInterruptIfRunning ->
+          cancel(stoppedFlowException(commandContext, "while waiting for " + getId()));
+    }
+
+    /**
+     * Starts the first call, the timer starts the second one.
+     */
+    CompletableFuture<Void> start() {
+      if (execution != null) {
+        execution.addListener(cancelListener);
+      }
+      startCall();
+      synchronized (this) {
+        if (!completed && started < calls.length) {
+          timeout = CommandRunner.schedule(this::startCall, getHedgeDelay());
+        }
+      }
+      return done;
+    }
+
+    /**
+     * Starts the next call on the flow executor.
+     */
+    private void startCall() {
+      Call call;
+      synchronized (this) {
+        if (completed || started == calls.length) {
+          return;
+        }
+        call = new Call(commandContext.copy());
+        calls[started++] = call;
+      }
+      try {
+        CommandRunner.getExecutorService(commandContext.getFlowDefinition().getExecutor()).execute(call.task);
+      } catch (RuntimeException e) {
+        failed(e);
+      }
+    }
+
+    void succeeded(Call call) {
+      boolean firstCallFailed;
+      synchronized (this) {
+        if (completed) {
+          return; // The loser may still return when interrupted.
+        }
+        completed = true;
+        firstCallFailed = call != calls[0] && firstFailure != null;
+        commandContext.setResult(call.commandContext.getResult());
+        commandContext.moveResultToArguments();
+        commandContext.setException(null);
+      }
+      if (!firstCallFailed) {
+        // The latency of the first call, or how long it ran until the second one won, so the delay is not biased low.
+        recordLatency(System.nanoTime() - calls[0].start);
+      }
+      finish(call);
+      done.complete(null);
+    }
+
+    void failed(Exception exception) {
+      boolean startNext;
+      synchronized (this) {
+        if (completed) {
+          return;
+        }
+        if (firstFailure == null) {
+          firstFailure = exception;
+        }
+        failed++;
+        startNext = started < calls.length;
+        if (!startNext && failed < started) {
+          return; // The other call may still succeed.
+        }
+        completed = !startNext;
+      }
+      if (startNext) {
+        if (timeout != null) {
+          timeout.cancel();
+        }
+        startCall();
+        return;
+      }
+      finish(null);
+      commandContext.setException(firstFailure);
+      done.completeExceptionally(firstFailure);
+    }
+
+    void cancel(RuntimeException exception) {
+      synchronized (this) {
+        if (completed) {
+          return;
+        }
+        completed = true;
+        started = calls.length; // No more calls.
+      }
+      finish(null);
+      done.completeExceptionally(exception);
+    }
+
+    /**
+     * Cancels the timer and the calls other than the winner.
+     */
+    private void finish(Call winner) {
+      if (execution != null) {
+        execution.removeListener(cancelListener);
+      }
+      Call[] toCancel;
+      synchronized (this) {
+        if (timeout != null) {
+          timeout.cancel();
+        }
+        toCancel = calls.clone();
+      }
+      for (Call call : toCancel) {
+        if (call != null && call != winner) {
+          call.cancel();
+        }
+      }
+    }
+
+    /**
+     * One call of the method, on a copy of the context.
+     */
+    private final class Call implements Runnable {
+      private final CommandContext commandContext;
+      // Created before the call can run, so that the call can always be cancelled.
+      private final FutureTask<Void> task = new FutureTask<>(this, null);
+      private final long start = System.nanoTime();
+      private volatile CompletionStage<?> stage;
+
+      Call(CommandContext commandContext) {
+        this.commandContext = commandContext;
+      }
+
+      @Override
+      public void run() {
+        AsyncCommandRunner.withSession(session, () -> {
+          CompletableFuture<Void> called;
+          try {
+            HedgeCommand.super.run(commandContext);
+            if (commandContext.getResult() instanceof CompletionStage) {
+              stage = (CompletionStage<?>) commandContext.getResult();
+            }
+            called = awaitResult(commandContext);
+          } catch (Exception e) {
+            called = AsyncCommandRunner.failed(e);
+          }
+          called.whenComplete((value, throwable) -> {
+            if (throwable == null) {
+              succeeded(this);
+            } else {
+              failed(AsyncCommandRunner.getCause(throwable));
+            }
+          });
+          return null;
+        });
+      }
+
+      void cancel() {
+        task.cancel(true);
+        CompletionStage<?> pending = stage;
+        if (pending != null) {
+          pending.toCompletableFuture().cancel(true);
+        }
+      }
+    }
+  }
+
+  @Override
+  public String getKeyword() {
+    return HEDGE;
+  }
+
+  @Override
+  public void definitionExport(FlowStep flowStep) {
+    flowStep.setType(getKeyword());
+    flowStep.setDelay(delay);
+    if (percentile > 0) {
+      flowStep.setPercentile(percentile);
+    }
+    super.definitionExport(flowStep);
+  }
+
+}
@@ -20,28 +20,37 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.floref.core.config.FlowConfiguration;
 import org.floref.core.config.consumer.MethodRefMetrics;
+import org.floref.core.config.consumer.MetricsConsumers;
 import org.floref.core.config.consumer.MetricsHelper;
 import org.floref.core.config.injector.BeanInjector;
 import org.floref.core.dsl.flow.Flows;
 import org.floref.core.dsl.flow.impex.Aliases;
 import org.floref.core.dsl.flow.impex.FlowStep;
 import org.floref.core.exception.FlowCancelledException;
-import org.floref.core.exception.FlowDefinitionException;
+import org.floref.core.exception.FlowTimeoutException;
 import org.floref.core.exception.MissingBeanFlowException;
-import org.floref.core.flow.annotation.FlowVar;
 import org.floref.core.flow.reference.*;
 import org.floref.core.flow.reference.LambdaMeta.MethodParameter;
+import org.floref.core.flow.registry.ResolvedTargets;
+import org.floref.core.flow.run.AsyncCommandRunner;
 import org.floref.core.flow.run.CommandContext;
+import org.floref.core.flow.run.FlowExecution;
 import org.floref.core.flow.run.FlowSession;
 import org.floref.core.flow.run.FlowUtil;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import static org.floref.core.config.consumer.MetricsConsumer.AFTER_METHOD_REFERENCE;
+import static org.floref.core.config.consumer.MetricsConsumer.BEFORE_METHOD_REFERENCE;
+import static org.floref.core.config.consumer.MetricsConsumer.PARAMS;
+import static org.floref.core.config.consumer.MetricsConsumer.RESULT;
 
 /**
  * Base flow command class that takes a method reference as a parameter. E.g. .from .to .when .async etc
@@ -55,6 +64,28 @@ public class MethodReferenceCommand extends ChildCommand {
   protected LambdaMeta lambdaMeta;
   protected MethodReferenceCommand revertBy;
   protected String keyword;
+  // Most recently used argument binding plans, one per argument class shape.
+  private volatile ArgumentBinding[] argumentBindings = new ArgumentBinding[0];
+  private static final int MAX_ARGUMENT_BINDINGS = 4;
+  // The flow or bean target resolved on first run, valid while its generation is the current ResolvedTargets one.
+  private volatile ResolvedTarget resolvedTarget;
+
+  /**
+   * Result of the flow and bean lookups for a method reference, target is null if neither was found.
+   */
+  private static class ResolvedTarget {
+    final LambdaMeta lambdaMeta;
+    final long generation;
+    final Object target;
+    final boolean isFlow;
+
+    ResolvedTarget(LambdaMeta lambdaMeta, long generation, Object target, boolean isFlow) {
+      this.lambdaMeta = lambdaMeta;
+      this.generation = generation;
+      this.target = target;
+      this.isFlow = isFlow;
+    }
+  }
 
   public MethodReferenceCommand() {
 
@@ -156,26 +187,23 @@ public class MethodReferenceCommand extends ChildCommand {
   protected void run(CommandContext commandContext, LambdaMeta lambdaMeta) throws Exception {
     String id = lambdaMeta.getActualMethodReferenceAsString();
 
-    if (FlowUtil.isCancelledFlow()) {
-      String message =
-          "Flow " + commandContext.getFlowDefinition().getId() + " has been cancelled before running " + id;
-      LOG.error(message);
-      throw new FlowCancelledException(message);
+    if (FlowUtil.isCancelledFlow(commandContext)) {
+      throw stoppedFlowException(commandContext, "before running " + id);
     }
-    Object[] args = commandContext.getArguments();
+    int offset = 0; // The number of leading arguments that are not passed to the method.
+    // Metrics are built only if consumed.
+    MetricsConsumers metricsConsumers = MetricsHelper.getMetricsConsumers();
 
     try {
       Method method = lambdaMeta.getLambdaActualMethod();
       Class lambdaClass = lambdaMeta.getLambdaClass();
-      String methodName = method.getName();
       Object target = lambdaMeta.getTarget();  // The target may be a flow or a non flow.
 
-      Object flow = Flows.get(lambdaClass);
-
-      if (target != null) {
-        MetricsHelper.beforeMethod(new MethodRefMetrics.Builder(id).params(args).isFlow(flow != null).build());
+      // The flow and bean lookups are cached.
+      ResolvedTarget resolved = resolveTarget(lambdaMeta);
+      id = lambdaMeta.getActualMethodReferenceAsString();
 
-      } else if (target == null) {
+      if (target == null) {
         /**
          * If target is null then this might be:
          * 1. another flow
@@ -185,27 +213,19 @@ public class MethodReferenceCommand extends ChildCommand {
          * 5. a static method.
          */
 
-        // 1. Check if it is a flow.
-        target = flow;
+        // 1. and 2. A flow or a bean.
+        target = resolved.target;
 
         if (target == null) {
 
-          // 2. If still null then try to invoke any bean injectors that might have been set (e.g. the Spring one).
-          BeanInjector beanInjector = FlowConfiguration.getBeanInjector();
-          if (beanInjector != null) {
-            target = beanInjector.getBean(lambdaClass);
-            if (target != null) {
-              //method = getMethod(target.getClass(), method); // Get the corresponding method from actual class. Is this needed ?.
-              lambdaMeta.refreshActualMethod(method);
-              id = lambdaMeta.getActualMethodReferenceAsString();
-            }
-          }
-
           // 3. If it can be executed on the return of the previous step
           if (target == null) {
-            if (args.length > 0 && args[0] != null && lambdaClass.isAssignableFrom(args[0].getClass())) {
-              target = args[0];
-              args = Arrays.copyOfRange(args, 1, args.length); // Remove it since it has become the target.
+            if (commandContext.getArgumentCount() > 0) {
+              Object first = commandContext.getArgument(0);
+              if (first != null && lambdaClass.isAssignableFrom(first.getClass())) {
+                target = first;
+                offset = 1; // Skip it since it has become the target.
+              }
             }
             // 5. Static method.
             if (target == null) {
@@ -214,76 +234,28 @@ public class MethodReferenceCommand extends ChildCommand {
               }
             }
           }
-
-          MetricsHelper.beforeMethod(new MethodRefMetrics.Builder(id).params(args).isFlow(flow != null).build());
-        }
-      }
-
-      List<MethodParameter> methodParameters = lambdaMeta.getParameters();
-      Object[] params = new Object[methodParameters.size()];  // Init with nulls.
-
-      List argList = new ArrayList(Arrays.asList(args));
-
-      // Map parameters. Consider caching the mapping result so that next time is not attempted again. Flowvars first.
-      List<MethodParameter> neededParams = new ArrayList<>();
-      for (int i = 0; i < methodParameters.size(); i++) {
-        MethodParameter methodParameter = methodParameters.get(i);
-        if (methodParameter.isFlowVar()) {
-          String sessionProperty = methodParameter.getFlowVar().value();
-          // Try first to get it from the session.
-          params[i] = FlowSession.get(sessionProperty);
-        } else {
-          neededParams.add(methodParameter);
         }
       }
-
-      Iterator<Object> argIterator = argList.iterator();
-      while (argIterator.hasNext()) {
-        Object arg = argIterator.next();
-        if (arg == null) {
-          continue;
-        }
-        boolean found = false;
-        MethodParameter candidate = null;
-        // Find best match.
-        for (MethodParameter methodParameter : neededParams) {
-          Class parameterClass = methodParameter.getClazz();
-          if (parameterClass == arg.getClass()) {
-            candidate = methodParameter;
-            break;
-          } else if (parameterClass.isAssignableFrom(arg.getClass())) {
-            if (candidate == null) {
-              candidate = methodParameter;
-            } else if (candidate.getClazz().isAssignableFrom(parameterClass)) {
-              candidate = methodParameter; // Keep the nearest.
-            }
-          }
-        }
-        if (candidate != null) {
-          params[candidate.getPosition()] = arg;
-          argIterator.remove();
-          neededParams.remove(candidate);
-        }
-      }
-
-      // Non null parameters that were not matched.
-      for (Object arg : argList) {
-        if (arg != null && neededParams.size() > 0) {
-          throw new FlowDefinitionException("Method parameter mismatch for '" + id + "' found '"
-              + arg.getClass() + "' but a '" + neededParams.get(0).getClazz().getName() + "' is expected");
-        }
+      if (metricsConsumers.isEnabled(BEFORE_METHOD_REFERENCE)) {
+        MetricsHelper.beforeMethod(metricsConsumers, new MethodRefMetrics.Builder(id)
+            .params(getMetricsParams(metricsConsumers, commandContext, offset)).isFlow(resolved.isFlow).build());
       }
 
+      // Map parameters. The mapping only depends on the argument classes so it is computed once per class shape.
+      ArgumentBinding argumentBinding = getArgumentBinding(lambdaMeta.getParameters(), commandContext, offset, id);
 
       // Invoke.
-      Object result = lambdaMeta.getLambdaActualMethod().invoke(target, params);
+      Object result = argumentBinding.invoke(lambdaMeta.getInvoker(), target, commandContext, offset);
 
-      MetricsHelper
-          .afterMethod(new MethodRefMetrics.Builder(id).params(args).isFlow(flow != null).result(result).build());
+      if (metricsConsumers.isEnabled(AFTER_METHOD_REFERENCE)) {
+        MetricsHelper.afterMethod(metricsConsumers, new MethodRefMetrics.Builder(id)
+            .params(getMetricsParams(metricsConsumers, commandContext, offset)).isFlow(resolved.isFlow)
+            .result(metricsConsumers.isEnabled(RESULT) ? result : null).build());
+      }
 
-      FlowVar returnFlowVar = lambdaMeta.getReturnFlowVar();
-      if (returnFlowVar != null) {
-        FlowSession.set(returnFlowVar.value(), result);
+      int returnFlowVarSlot = lambdaMeta.getReturnFlowVarSlot();
+      if (returnFlowVarSlot != -1) {
+        FlowSession.set(returnFlowVarSlot, result);
       }
 
       commandContext.setResult(result);
@@ -296,8 +268,10 @@ public class MethodReferenceCommand extends ChildCommand {
 
       if (cause instanceof Exception) {
         commandContext.setException((Exception) cause);
-        MetricsHelper
-            .afterMethod(new MethodRefMetrics.Builder(id).params(args).exception((Exception) cause).build());
+        if (metricsConsumers.isEnabled(AFTER_METHOD_REFERENCE)) {
+          MetricsHelper.afterMethod(metricsConsumers, new MethodRefMetrics.Builder(id)
+              .params(getMetricsParams(metricsConsumers, commandContext, offset)).exception((Exception) cause).build());
+        }
         throw (Exception) cause;
       } else {
         commandContext.setException(exception);
@@ -306,11 +280,215 @@ public class MethodReferenceCommand extends ChildCommand {
     }
   }
 
+  /**
+   * @return the timeout exception if the flow deadline was exceeded, else the cancellation exception.
+   */
+  protected static RuntimeException stoppedFlowException(CommandContext commandContext, String when) {
+    FlowExecution execution = commandContext.getFlowExecution();
+    if (execution != null && execution.isDeadlineExceeded()) {
+      String message = "Timeout while running flow " + commandContext.getFlowDefinition().getId() + " " + when;
+      LOG.error(message);
+      return new FlowTimeoutException(message);
+    }
+    String message = "Flow " + commandContext.getFlowDefinition().getId() + " has been cancelled " + when;
+    LOG.error(message);
+    return new FlowCancelledException(message);
+  }
+
+  /**
+   * Looks up the flow and, for method references without a captured target, the bean for the method reference class.
+   * The result is cached until {@link ResolvedTargets#invalidateAll()} is called.
+   */
+  private ResolvedTarget resolveTarget(LambdaMeta lambdaMeta) {
+    long generation = ResolvedTargets.getGeneration(); // Read first so that a concurrent invalidation is not missed.
+    ResolvedTarget resolved = resolvedTarget;
+    if (resolved != null && resolved.generation == generation && resolved.lambdaMeta == lambdaMeta) {
+      return resolved;
+    }
+    Class lambdaClass = lambdaMeta.getLambdaClass();
+    boolean cacheable = true;
+
+    // 1. Check if it is a flow.
+    Object flow = Flows.get(lambdaClass);
+    Object target = flow;
+
+    if (target == null && lambdaMeta.getTarget() == null) {
+      // 2. If still null then try to invoke any bean injectors that might have been set (e.g. the Spring one).
+      BeanInjector beanInjector = FlowConfiguration.getBeanInjector();
+      if (beanInjector != null) {
+        target = beanInjector.getBean(lambdaClass);
+        if (target != null) {
+          //method = getMethod(target.getClass(), method); // Get the corresponding method from actual class. Is this needed ?.
+          lambdaMeta.refreshActualMethod(lambdaMeta.getLambdaActualMethod());
+          cacheable = beanInjector.isCacheable(lambdaClass);
+        }
+      }
+    }
+    resolved = new ResolvedTarget(lambdaMeta, generation, target, flow != null);
+    if (cacheable) {
+      resolvedTarget = resolved;
+    }
+    return resolved;
+  }
+
+  /**
+   * @return the arguments passed to the method, used for metrics, or null if no consumer needs them.
+   */
+  private static Object[] getMetricsParams(MetricsConsumers metricsConsumers, CommandContext commandContext,
+                                           int offset) {
+    if (!metricsConsumers.isEnabled(PARAMS)) {
+      return null;
+    }
+    Object[] arguments = commandContext.getArguments();
+    return offset == 0 ? arguments : Arrays.copyOfRange(arguments, offset, arguments.length);
+  }
+
+  /**
+   * Returns the cached argument binding for the parameters and argument classes, building it on a new class shape.
+   * Only a few shapes are kept since a method reference usually receives the same argument classes.
+   */
+  protected ArgumentBinding getArgumentBinding(List<MethodParameter> methodParameters, CommandContext commandContext,
+                                               int offset, String id) {
+    ArgumentBinding[] bindings = argumentBindings;
+    for (int i = 0; i < bindings.length; i++) {
+      if (bindings[i].matches(methodParameters, commandContext, offset)) {
+        return bindings[i];
+      }
+    }
+    // Mismatches are not cached.
+    ArgumentBinding binding = ArgumentBinding.build(methodParameters, commandContext, offset, id);
+    ArgumentBinding[] newBindings = new ArgumentBinding[Math.min(bindings.length + 1, MAX_ARGUMENT_BINDINGS)];
+    newBindings[0] = binding;
+    System.arraycopy(bindings, 0, newBindings, 1, newBindings.length - 1);
+    argumentBindings = newBindings;
+    return binding;
+  }
+
   @Override
   public void run(CommandContext commandContext) throws Exception {
     run(commandContext, lambdaMeta);
   }
 
+  /**
+   * Used by a compiled flow that calls the method directly, see {@link org.floref.core.flow.compile.FlowCompiler}.
+   *
+   * @return the binding of the arguments to the method parameters, or null if the step must be run by {@link #run}:
+   * the flow is stopped, the method reference metrics are consumed, the target became a flow or the first argument is
+   * the target of a static method reference.
+   */
+  public ArgumentBinding bindDirectCall(CommandContext commandContext) {
+    if (FlowUtil.isCancelledFlow(commandContext)) {
+      return null;
+    }
+    MetricsConsumers metricsConsumers = MetricsHelper.getMetricsConsumers();
+    if (metricsConsumers.isEnabled(BEFORE_METHOD_REFERENCE) || metricsConsumers.isEnabled(AFTER_METHOD_REFERENCE)) {
+      return null;
+    }
+    if (resolveTarget(lambdaMeta).target != null) {
+      return null;
+    }
+    if (lambdaMeta.getTarget() == null && commandContext.getArgumentCount() > 0
+        && lambdaMeta.getLambdaClass().isInstance(commandContext.getArgument(0))) {
+      return null;
+    }
+    return getArgumentBinding(lambdaMeta.getParameters(), commandContext, 0,
+        lambdaMeta.getActualMethodReferenceAsString());
+  }
+
+  /**
+   * Sets the result of a direct call, same as {@link #run}.
+   */
+  public void directCallReturned(CommandContext commandContext, Object result) {
+    int returnFlowVarSlot = lambdaMeta.getReturnFlowVarSlot();
+    if (returnFlowVarSlot != -1) {
+      FlowSession.set(returnFlowVarSlot, result);
+    }
+    commandContext.setResult(result);
+    commandContext.moveResultToArguments();
+    commandContext.setException(null);
+  }
+
+  /**
+   * Records the failure of a direct call, same as {@link #run}.
+   *
+   * @return the exception to throw.
+   */
+  public Exception directCallFailed(CommandContext commandContext, Throwable throwable) {
+    LOG.error(throwable.getMessage(), throwable);
+    Exception exception = throwable instanceof Exception ? (Exception) throwable
+        : new InvocationTargetException(throwable); // Contains Error.
+    commandContext.setException(exception);
+    return exception;
+  }
+
+  /**
+   * Runs the method reference and, if it returned a CompletionStage, completes when the stage does with the stage value
+   * as the step result. No thread waits for the stage.
+   */
+  @Override
+  public CompletableFuture<Void> runAsync(CommandContext commandContext) {
+    try {
+      run(commandContext);
+    } catch (Exception e) {
+      return AsyncCommandRunner.failed(e);
+    }
+    return awaitResult(commandContext);
+  }
+
+  /**
+   * @return a future completed when the CompletionStage returned by the method completes, or a completed one if the
+   * method did not return a stage.
+   */
+  protected CompletableFuture<Void> awaitResult(CommandContext commandContext) {
+    Object result = commandContext.getResult();
+    if (result instanceof CompletionStage) {
+      return await((CompletionStage<?>) result, commandContext);
+    }
+    return AsyncCommandRunner.completed();
+  }
+
+  private CompletableFuture<Void> await(CompletionStage<?> stage, CommandContext commandContext) {
+    CompletableFuture<Void> awaited = new CompletableFuture<>();
+    Map session = FlowSession.get();
+    FlowExecution execution = commandContext.getFlowExecution();
+    FlowExecution.CancelListener cancelListener = mayInterruptIfRunning -> {
+      if (awaited.completeExceptionally(stoppedFlowException(commandContext, "while waiting for " + getId()))) {
+        stage.toCompletableFuture().cancel(mayInterruptIfRunning);
+      }
+    };
+    if (execution != null) {
+      execution.addListener(cancelListener);
+    }
+    stage.whenComplete((value, throwable) -> {
+      if (execution != null) {
+        execution.removeListener(cancelListener);
+      }
+      if (throwable != null) {
+        Exception exception = AsyncCommandRunner.getCause(throwable);
+        if (!awaited.isDone()) {
+          LOG.error(exception.getMessage(), exception);
+        }
+        commandContext.setException(exception);
+        awaited.completeExceptionally(exception);
+        return;
+      }
+      Map previous = FlowSession.get();
+      FlowSession.set(session);
+      try {
+        int returnFlowVarSlot = lambdaMeta.getReturnFlowVarSlot();
+        if (returnFlowVarSlot != -1) {
+          FlowSession.set(returnFlowVarSlot, value);
+        }
+      } finally {
+        FlowSession.set(previous);
+      }
+      commandContext.setResult(value);
+      commandContext.moveResultToArguments();
+      awaited.complete(null);
+    });
+    return awaited;
+  }
+
   @Override
   public void alias(String alias) {
     Aliases.add(alias, this);
@@ -22,6 +22,8 @@ import org.floref.core.dsl.command.group.ParentCommand;
 import org.floref.core.dsl.flow.impex.FlowStep;
 import org.floref.core.flow.run.CommandContext;
 
+import java.util.concurrent.CompletableFuture;
+
 import static org.floref.core.dsl.command.FlowCommandBuilders.OTHERWISE;
 
 /**
@@ -43,6 +45,11 @@ public class OtherwiseCommand extends ParentCommand {
     runChildren(commandContext);
   }
 
+  @Override
+  public CompletableFuture<Void> runAsync(CommandContext commandContext) {
+    return runChildrenAsync(commandContext);
+  }
+
   @Override
   public String getKeyword() {
     return OTHERWISE;
@@ -18,10 +18,24 @@ package org.floref.core.dsl.command;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.floref.core.config.FlowConfiguration;
 import org.floref.core.dsl.flow.impex.FlowStep;
+import org.floref.core.dsl.flow.retry.Jitter;
 import org.floref.core.flow.reference.LambdaMeta;
 import org.floref.core.flow.reference.MethodReference;
+import org.floref.core.flow.run.AsyncCommandRunner;
 import org.floref.core.flow.run.CommandContext;
+import org.floref.core.flow.run.CommandRunner;
+import org.floref.core.flow.run.FlowExecution;
+import org.floref.core.flow.run.FlowSession;
+import org.floref.core.flow.run.RetryBudget;
+import org.floref.core.flow.run.WheelTimer;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
 
 import static org.floref.core.dsl.command.FlowCommandBuilders.RETRY;
 
@@ -36,6 +50,10 @@ public class RetryCommand extends MethodReferenceCommand {
   protected float multiplier = 1;
   protected long times = 2;
   protected Class<? extends Exception> retryOnExceptionClass;
+  protected Jitter jitter = Jitter.fromConfig(FlowConfiguration.get(FlowConfiguration.retryJitter, "none"));
+  protected long maxDelay = Long.parseLong(FlowConfiguration.get(FlowConfiguration.retryMaxDelay,
+      String.valueOf(Long.MAX_VALUE)));
+  protected RetryBudget budget; // null for the global one.
 
   public RetryCommand(MethodReference toMethodReference) {
     super(toMethodReference);
@@ -77,34 +95,205 @@ public class RetryCommand extends MethodReferenceCommand {
     this.retryOnExceptionClass = retryOnExceptionClass;
   }
 
+  public Jitter getJitter() {
+    return jitter;
+  }
+
+  public void setJitter(Jitter jitter) {
+    this.jitter = jitter;
+  }
+
+  public long getMaxDelay() {
+    return maxDelay;
+  }
+
+  public void setMaxDelay(long maxDelay) {
+    this.maxDelay = maxDelay;
+  }
+
+  public RetryBudget getBudget() {
+    return budget != null ? budget : RetryBudget.getGlobal();
+  }
+
+  public void setBudget(RetryBudget budget) {
+    this.budget = budget;
+  }
+
   @Override
   public void run(CommandContext commandContext) throws Exception {
     // Keep the caller thread waiting since we are optimistic.
-    CommandContext commandContextCopy = commandContext.copy();
-
-    long initialDelay = delay;
-    int totalTimes = 0;
-    // Repeat forever until an exception.
-    while (true) {
-      if (++totalTimes > times) {
-        break;
-      }
+    commandContext.mark();
+    long nextDelay = delay;
+    for (int attempt = 1; attempt <= times; attempt++) {
       try {
-        commandContextCopy = commandContext.copy();
-        super.run(commandContextCopy);
-        break;
+        attempt(commandContext);
+        return;
       } catch (Exception exception) {
-        LOG.warn(exception.getMessage(), exception); // Should be logged as warning?.
-        if (retryOnExceptionClass != null && !retryOnExceptionClass.isAssignableFrom(exception.getClass())) {
-          break;
+        commandContext.reset(); // A failed attempt leaves the context as it was.
+        if (!shouldRetry(exception, attempt)) {
+          return;
         }
       }
-      Thread.sleep(initialDelay);
-      initialDelay += multiplier * initialDelay;
+      nextDelay = pause(nextDelay, commandContext);
+    }
+  }
+
+  /**
+   * Same as {@link #run(CommandContext)} but no thread waits between the attempts: the next attempt is scheduled on the
+   * timer and runs on the flow executor. Attempts returning a CompletionStage are retried when the stage fails.
+   */
+  @Override
+  public CompletableFuture<Void> runAsync(CommandContext commandContext) {
+    commandContext.mark();
+    CompletableFuture<Void> retried = new CompletableFuture<>();
+    attemptAsync(commandContext, 1, delay, FlowSession.get(), retried);
+    return retried;
+  }
+
+  private void attemptAsync(CommandContext commandContext, long attempt, long nextDelay, Map session,
+                            CompletableFuture<Void> retried) {
+    CompletableFuture<Void> attempted;
+    try {
+      attempt(commandContext);
+      attempted = awaitResult(commandContext);
+    } catch (Exception e) {
+      attempted = AsyncCommandRunner.failed(e);
+    }
+    attempted.whenComplete((done, throwable) -> {
+      if (throwable == null) {
+        retried.complete(null);
+        return;
+      }
+      commandContext.reset();
+      if (!shouldRetry(AsyncCommandRunner.getCause(throwable), attempt)) {
+        retried.complete(null);
+        return;
+      }
+      scheduleAttempt(commandContext, attempt + 1, nextDelay, session, retried);
+    });
+  }
+
+  private void scheduleAttempt(CommandContext commandContext, long attempt, long nextDelay, Map session,
+                               CompletableFuture<Void> retried) {
+    FlowExecution execution = commandContext.getFlowExecution();
+    FlowExecution.CancelListener cancelListener = mayInterruptIfRunning ->
+        retried.completeExceptionally(stoppedFlowException(commandContext, "while waiting to retry " + getId()));
+    if (execution != null) {
+      execution.addListener(cancelListener);
+    }
+    WheelTimer.Timeout timeout = CommandRunner.schedule(() -> {
+      if (execution != null) {
+        execution.removeListener(cancelListener);
+      }
+      if (retried.isDone()) {
+        return;
+      }
+      try {
+        CommandRunner.execute(commandContext.getFlowDefinition().getExecutor(), () ->
+            AsyncCommandRunner.withSession(session, () -> {
+              attemptAsync(commandContext, attempt, nextDelay(nextDelay), session, retried);
+              return null;
+            }));
+      } catch (RejectedExecutionException e) {
+        retried.completeExceptionally(e);
+      }
+    }, jittered(nextDelay));
+    retried.whenComplete((done, throwable) -> timeout.cancel());
+  }
+
+  /**
+   * Runs the method reference once.
+   */
+  public void attempt(CommandContext commandContext) throws Exception {
+    super.run(commandContext);
+  }
+
+  /**
+   * @return true if the exception of a first failed attempt allows another attempt, see
+   * {@link #shouldRetry(Exception, long)}.
+   */
+  public boolean shouldRetry(Exception exception) {
+    return shouldRetry(exception, 1);
+  }
+
+  /**
+   * Only the exception message is logged, the stack trace is logged at debug level, since a failing downstream system
+   * would otherwise flood the log with the same trace for every attempt of every flow.
+   *
+   * @return true if the exception of the given failed attempt allows another attempt and the retry budget has a token
+   * for it.
+   */
+  public boolean shouldRetry(Exception exception, long attempt) {
+    LOG.warn("Attempt " + attempt + " of " + getId() + " failed: " + exception);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(exception.getMessage(), exception);
+    }
+    if (attempt >= times
+        || retryOnExceptionClass != null && !retryOnExceptionClass.isAssignableFrom(exception.getClass())) {
+      return false;
+    }
+    if (!getBudget().tryAcquire()) {
+      LOG.warn("Retry budget exhausted, not retrying " + getId());
+      return false;
     }
+    return true;
+  }
+
+  /**
+   * Waits the jittered delay before the next attempt. The wake up is scheduled on the timer, so that cancelling the flow
+   * ends the wait at once, and a fork join pool thread lets its pool compensate while it waits. Only async mode frees
+   * the thread.
+   *
+   * @return the delay of the attempt after it.
+   */
+  public long pause(long delay, CommandContext commandContext) throws InterruptedException {
+    CompletableFuture<Void> wakeUp = new CompletableFuture<>();
+    FlowExecution execution = commandContext.getFlowExecution();
+    FlowExecution.CancelListener cancelListener = mayInterruptIfRunning -> wakeUp.complete(null);
+    if (execution != null) {
+      execution.addListener(cancelListener);
+    }
+    WheelTimer.Timeout timeout = CommandRunner.schedule(() -> wakeUp.complete(null), jittered(delay));
+    try {
+      wakeUp.get(); // A managed block on fork join pool threads.
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e); // Never completed exceptionally.
+    } finally {
+      timeout.cancel();
+      if (execution != null) {
+        execution.removeListener(cancelListener);
+      }
+    }
+    if (execution != null && execution.isCancelled()) {
+      throw stoppedFlowException(commandContext, "while waiting to retry " + getId());
+    }
+    return nextDelay(delay);
+  }
+
+  /**
+   * @return the time to actually wait for the given delay.
+   */
+  protected long jittered(long delay) {
+    delay = Math.min(delay, maxDelay);
+    return jitter == Jitter.FULL ? random(0, delay) : delay;
+  }
+
+  /**
+   * @return the delay of the attempt following the one with the given delay. With decorrelated jitter the delays are
+   * already random so the given one is the previous wait.
+   */
+  protected long nextDelay(long delay) {
+    if (jitter == Jitter.DECORRELATED) {
+      return Math.min(maxDelay, random(this.delay, delay > Long.MAX_VALUE / 3 ? Long.MAX_VALUE : delay * 3));
+    }
+    return Math.min(maxDelay, (long) (delay + multiplier * delay));
+  }
 
-    commandContext.setResult(commandContextCopy.getResult());
-    commandContext.setArguments(commandContextCopy.getArguments());
+  /**
+   * @return a random value in [min, max], or min if max is not greater.
+   */
+  private static long random(long min, long max) {
+    return max <= min ? min : min + ThreadLocalRandom.current().nextLong(max - min + 1);
   }
 
   @Override
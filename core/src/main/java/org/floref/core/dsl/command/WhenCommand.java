@@ -23,8 +23,11 @@ import org.floref.core.dsl.flow.impex.FlowStep;
 import org.floref.core.exception.FlowDefinitionException;
 import org.floref.core.flow.reference.LambdaMeta;
 import org.floref.core.flow.reference.MethodReference;
+import org.floref.core.flow.run.AsyncCommandRunner;
 import org.floref.core.flow.run.CommandContext;
 
+import java.util.concurrent.CompletableFuture;
+
 import static org.floref.core.dsl.command.FlowCommandBuilders.WHEN;
 import static org.floref.core.dsl.flow.impex.FlowImpex.addTypeAndRef;
 
@@ -53,16 +56,7 @@ public class WhenCommand extends ParentCommand {
 
   @Override
   public void run(CommandContext commandContext) throws Exception {
-    // The condition will get the previous result which is OK, but also the first child will get it.
-    CommandContext copyContext = commandContext.copy();
-    conditionMethod.run(copyContext);
-    Boolean result = (Boolean) copyContext.getResult();
-    if (result == null) {
-      throw new FlowDefinitionException(conditionMethod.getLambdaMeta().getActualMethodReferenceAsString()
-          + " returned null instead of a boolean");
-    }
-
-    if (result) {
+    if (test(commandContext)) {
       runChildren(commandContext);  // Keep the previous arguments and provide it to the first child.
     } else {
       // Run otherwise if present.
@@ -72,6 +66,40 @@ public class WhenCommand extends ParentCommand {
     }
   }
 
+  @Override
+  public CompletableFuture<Void> runAsync(CommandContext commandContext) {
+    try {
+      if (test(commandContext)) {
+        return runChildrenAsync(commandContext);
+      }
+    } catch (Exception e) {
+      return AsyncCommandRunner.failed(e);
+    }
+    return otherwise != null ? otherwise.runAsync(commandContext) : AsyncCommandRunner.completed();
+  }
+
+  /**
+   * Runs the condition.
+   *
+   * @return the condition result.
+   */
+  public boolean test(CommandContext commandContext) throws Exception {
+    // The condition will get the previous result which is OK, but also the first child will get it.
+    Boolean result;
+    commandContext.mark();
+    try {
+      conditionMethod.run(commandContext);
+      result = (Boolean) commandContext.getResult();
+    } finally {
+      commandContext.reset();
+    }
+    if (result == null) {
+      throw new FlowDefinitionException(conditionMethod.getLambdaMeta().getActualMethodReferenceAsString()
+          + " returned null instead of a boolean");
+    }
+    return result;
+  }
+
   @Override
   public String getKeyword() {
     return WHEN;
@@ -17,18 +17,41 @@
 package org.floref.core.dsl.command.group;
 
 import org.floref.core.flow.run.CommandContext;
+import org.floref.core.flow.run.FlowExecution;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 
 public class CommandCallable {
   String id;
   Callable callable;
+  Callable<CompletableFuture<CommandContext>> asyncCallable; // Set instead of callable for children run in async mode.
+  FlowExecution execution; // The own execution of an async child, cancelled if the group no longer needs the child.
 
   public CommandCallable(String id, Callable<CommandContext> callable) {
     this.id = id;
     this.callable = callable;
   }
 
+  /**
+   * @return a child whose callable returns a future, the child is complete when the future is.
+   */
+  public static CommandCallable async(String id, Callable<CompletableFuture<CommandContext>> asyncCallable) {
+    CommandCallable commandCallable = new CommandCallable(id, null);
+    commandCallable.asyncCallable = asyncCallable;
+    return commandCallable;
+  }
+
+  /**
+   * @param execution the execution the child runs with, cancelled when the group stops before the child completes.
+   */
+  public static CommandCallable async(String id, FlowExecution execution,
+                                      Callable<CompletableFuture<CommandContext>> asyncCallable) {
+    CommandCallable commandCallable = async(id, asyncCallable);
+    commandCallable.execution = execution;
+    return commandCallable;
+  }
+
   public String getId() {
     return id;
   }
@@ -44,4 +67,12 @@ public class CommandCallable {
   public void setCallable(Callable<CommandContext> callable) {
     this.callable = callable;
   }
-}
\ No newline at end of file
+
+  public Callable<CompletableFuture<CommandContext>> getAsyncCallable() {
+    return asyncCallable;
+  }
+
+  public FlowExecution getExecution() {
+    return execution;
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.dsl.command.group;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.floref.core.exception.FlorefException;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * The elements of a forEach input that is not a Collection: an Iterator, an Iterable, a Stream or a Publisher. They are
+ * pulled lazily, a few at a time, so only the elements being processed are in memory. Pulling is synchronized since
+ * the sources are not thread safe. The source is closed when the forEach is done.
+ *
+ * @author Cristian Donoiu
+ */
+class ElementSource {
+  private static final Log LOG = LogFactory.getLog(ElementSource.class);
+
+  private final Iterator iterator;
+  private final AutoCloseable closeable;  // Null if there is nothing to close.
+  private boolean exhausted;
+  private volatile boolean closed;
+
+  private ElementSource(Iterator iterator, AutoCloseable closeable) {
+    this.iterator = iterator;
+    this.closeable = closeable;
+  }
+
+  /**
+   * @param input  the forEach input.
+   * @param window the maximum number of elements requested from a Publisher before they are pulled.
+   * @throws FlorefException if the input can not be iterated.
+   */
+  static ElementSource of(Object input, int window) {
+    if (input instanceof Stream) {
+      return new ElementSource(((Stream) input).iterator(), (Stream) input);
+    }
+    if (input instanceof Iterator) {
+      return new ElementSource((Iterator) input, input instanceof AutoCloseable ? (AutoCloseable) input : null);
+    }
+    if (input instanceof Iterable) {
+      return new ElementSource(((Iterable) input).iterator(),
+          input instanceof AutoCloseable ? (AutoCloseable) input : null);
+    }
+    if (PublisherIterator.isPublisher(input)) {
+      PublisherIterator publisherIterator = new PublisherIterator(input, window);
+      return new ElementSource(publisherIterator, publisherIterator);
+    }
+    throw new FlorefException("forEach expects a Collection, an Iterator, an Iterable, a Stream or a Publisher but got "
+        + (input == null ? "null" : input.getClass().getName()));
+  }
+
+  /**
+   * @return the next elements, at most max, or an empty list if the source is exhausted or closed. If the source
+   * fails it is considered exhausted.
+   */
+  synchronized List pull(int max) throws Exception {
+    List elements = new ArrayList(max);
+    try {
+      while (!exhausted && !closed && elements.size() < max) {
+        if (iterator.hasNext()) {
+          elements.add(iterator.next());
+        } else {
+          exhausted = true;
+        }
+      }
+    } catch (Exception e) {
+      exhausted = true;
+      throw e;
+    }
+    return elements;
+  }
+
+  /**
+   * Stops pulling and closes the source. A Publisher is cancelled first, without waiting for the pull in progress, so
+   * a worker waiting for its next element does not wait forever.
+   */
+  void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    if (closeable instanceof PublisherIterator) {
+      ((PublisherIterator) closeable).close();
+      return;
+    }
+    synchronized (this) {
+      if (closeable != null) {
+        try {
+          closeable.close();
+        } catch (Exception e) {
+          LOG.error(e.getMessage(), e);
+        }
+      }
+    }
+  }
+}
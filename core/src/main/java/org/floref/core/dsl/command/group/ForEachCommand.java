@@ -18,41 +18,405 @@ package org.floref.core.dsl.command.group;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.floref.core.config.FlowConfiguration;
+import org.floref.core.dsl.flow.impex.FlowStep;
+import org.floref.core.flow.run.AsyncCommandRunner;
 import org.floref.core.flow.run.CommandContext;
+import org.floref.core.flow.run.FlowExecution;
+import org.floref.core.flow.run.FlowSession;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.RandomAccess;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.floref.core.config.FlowConfiguration.commonThreadPoolMaxSize;
 import static org.floref.core.dsl.command.FlowCommandBuilders.FOR_EACH;
 
 /**
  * .forEach
+ * <p>
+ * The elements are split in chunks of <b>grain</b> consecutive elements. At most <b>workers</b> children run in
+ * parallel, each one takes the next chunk until none is left, so faster workers take more chunks. Each worker
+ * aggregates into its own partial result (a list or a collector container), the partial results are combined when the
+ * workers are done. If <b>ordered</b> there is a partial result per chunk instead, combined in the order of the
+ * elements as soon as the previous chunks are. A custom aggregator gets the one list of the whole forEach instead of a
+ * partial result, see {@link #newGroupList()}. If ordered it is called when the chunks are combined, in the order of
+ * the elements.
+ * <p>
+ * Besides a Collection the input can be an Iterator, an Iterable, a Stream or a Publisher. Such an input is pulled
+ * lazily by the workers, with at most <b>window</b> elements being processed at once, and it is closed when the
+ * forEach is done. Only the results kept by the aggregator stay in memory, so a reducing aggregator or collector
+ * makes the memory depend on the window and not on the size of the input.
  *
  * @author Cristian Donoiu
  */
 public class ForEachCommand extends GroupCommandUtil {
   private static final Log LOG = LogFactory.getLog(ForEachCommand.class);
+  // Chunks per worker when the grain is not set, so that a slow chunk does not hold the whole forEach.
+  private static final int CHUNKS_PER_WORKER = 4;
+  private static final String DEFAULT_WINDOW = "256";
+
+  protected Integer grain;    // Elements per chunk, if null computed from the size and the workers.
+  protected Integer workers;  // If null flow.run.thread.pool.max.size.
+  protected boolean ordered;
+  protected Integer window;   // Elements in the workers at once when the input is not a Collection.
+
+  public void setGrain(int grain) {
+    this.grain = grain;
+  }
+
+  public void setWorkers(int workers) {
+    this.workers = workers;
+  }
+
+  public void setWindow(int window) {
+    this.window = window;
+  }
+
+  public void setOrdered(boolean ordered) {
+    this.ordered = ordered;
+  }
 
   @Override
   public void run(CommandContext commandContext) throws Exception {
+    ForEachRun forEachRun = new ForEachRun(commandContext);
+    GroupExecution groupExecution = new GroupExecution(this, commandContext, forEachRun.getCallables(false));
+    try {
+      forEachRun.group = groupExecution.start();
+      join(groupExecution);
+    } finally {
+      forEachRun.close();
+    }
+    forEachRun.complete(commandContext);
+  }
+
+  /**
+   * The elements of a chunk run one after the other, each one when the futures of the previous one completed.
+   */
+  @Override
+  public CompletableFuture<Void> runAsync(CommandContext commandContext) {
+    ForEachRun forEachRun;
+    try {
+      forEachRun = new ForEachRun(commandContext);
+    } catch (Exception e) {
+      return AsyncCommandRunner.failed(e);
+    }
+    forEachRun.group = start(commandContext, forEachRun.getCallables(true));
+    return forEachRun.group.whenComplete((done, throwable) -> forEachRun.close()).thenCompose(done -> {
+      try {
+        forEachRun.complete(commandContext);
+        return AsyncCommandRunner.completed();
+      } catch (Exception e) {
+        return AsyncCommandRunner.failed(e);
+      }
+    });
+  }
+
+  /**
+   * The workers aggregate the element results themselves.
+   */
+  @Override
+  protected boolean aggregatesChildResults() {
+    return false;
+  }
+
+  /**
+   * Consecutive elements taken by a worker at once.
+   */
+  private static class Chunk {
+    final int index;
+    final List elements;
+
+    Chunk(int index, List elements) {
+      this.index = index;
+      this.elements = elements;
+    }
+  }
+
+  /**
+   * One run of the forEach over its input. A Collection is split in index ranges, any other input is pulled from an
+   * {@link ElementSource} so that at most <b>window</b> elements are in the workers at once.
+   */
+  private class ForEachRun {
+    final List elements;        // Null if the input is pulled from the source.
+    final ElementSource source; // Null if the input is a Collection.
+    final int grain;
+    final int chunkCount;       // Only known for a Collection.
+    final int workerCount;
+    final AtomicInteger nextChunk = new AtomicInteger();
+    final Queue<Object> workerPartials = new ConcurrentLinkedQueue<>(); // If not ordered.
+    final List groupList = newGroupList(); // If set used instead of the partial results.
+    final Map<Integer, Object> pendingChunks = new HashMap<>(); // If ordered, the chunks done before the previous one.
+    int nextToCombine;  // The index of the next chunk to combine, if ordered.
+    Object combined;    // The partial results of the chunks before nextToCombine, if ordered.
+    final FlowExecution execution;
+    volatile CompletableFuture<CommandContext> group; // Done early if the group is stopped.
+    volatile Exception sourceFailure;
+
+    ForEachRun(CommandContext commandContext) {
+      Object input = commandContext.getArgument(0);
+      int maxWorkers = workers != null ? workers : FlowConfiguration.getIntConfig(commonThreadPoolMaxSize);
+      if (input instanceof Collection) {
+        Collection toBeSplit = (Collection) input;
+        elements = toBeSplit instanceof List && toBeSplit instanceof RandomAccess ? (List) toBeSplit
+            : Arrays.asList(toBeSplit.toArray());
+        source = null;
+        int size = elements.size();
+        grain = ForEachCommand.this.grain != null ? ForEachCommand.this.grain
+            : Math.max(1, size / (maxWorkers * CHUNKS_PER_WORKER));
+        chunkCount = (size + grain - 1) / grain;
+        workerCount = Math.min(maxWorkers, chunkCount);
+      } else {
+        int maxInFlight = window != null ? window
+            : Integer.parseInt(FlowConfiguration.get(FlowConfiguration.forEachWindow, DEFAULT_WINDOW));
+        elements = null;
+        source = ElementSource.of(input, maxInFlight);
+        workerCount = Math.min(maxWorkers, maxInFlight);
+        // Each worker holds at most one chunk, so the chunks of all workers fit in the window.
+        grain = Math.min(ForEachCommand.this.grain != null ? ForEachCommand.this.grain
+            : Math.max(1, maxInFlight / (workerCount * CHUNKS_PER_WORKER)), maxInFlight / workerCount);
+        chunkCount = -1;
+      }
+      execution = commandContext.getFlowExecution();
+    }
+
+    List<CommandCallable> getCallables(boolean async) {
+      List<CommandCallable> callables = new ArrayList<>(workerCount);
+      for (int worker = 1; worker <= workerCount; worker++) {
+        if (async) {
+          callables.add(CommandCallable.async("worker " + worker, () -> runChunksAsync(FlowSession.get(), null)
+              .thenApply(done -> new CommandContext())));
+        } else {
+          callables.add(new CommandCallable("worker " + worker, () -> {
+            runChunks();
+            return new CommandContext();
+          }));
+        }
+      }
+      return callables;
+    }
+
+    /**
+     * @return true if the group was stopped (timeout, cancellation or stopOnException), so no chunk should start.
+     */
+    boolean isStopped() {
+      CompletableFuture<CommandContext> group = this.group;
+      return (group != null && group.isDone()) || (execution != null && execution.isCancelled());
+    }
+
+    /**
+     * @return the next chunk or null if no element is left or the group was stopped.
+     */
+    Chunk nextChunk() throws Exception {
+      if (isStopped()) {
+        return null;
+      }
+      if (source == null) {
+        int index = nextChunk.getAndIncrement();
+        return index < chunkCount
+            ? new Chunk(index, elements.subList(index * grain, Math.min((index + 1) * grain, elements.size())))
+            : null;
+      }
+      try {
+        synchronized (source) {  // The chunk index must follow the order of the elements.
+          List pulled = source.pull(grain);
+          return pulled.isEmpty() ? null : new Chunk(nextChunk.getAndIncrement(), pulled);
+        }
+      } catch (Exception e) {
+        sourceFailure = e;
+        throw e;
+      }
+    }
+
+    /**
+     * The results are aggregated into a partial result per worker or, if ordered, per chunk.
+     */
+    void runChunks() throws Exception {
+      Object partial = null;
+      for (Chunk chunk = nextChunk(); chunk != null; chunk = nextChunk()) {
+        if (partial == null || ordered) {
+          partial = newWorkerPartial();
+        }
+        for (int i = 0; i < chunk.elements.size() && !isStopped(); i++) {
+          CommandContext elemContext = newElementContext(chunk.elements.get(i));
+          try {
+            runChildren(elemContext);
+          } catch (Exception e) {
+            elementFailed(elemContext, e);
+            continue;
+          }
+          aggregateElement(partial, elemContext);
+        }
+        chunkDone(chunk.index, partial);
+      }
+      workerDone(partial);
+    }
+
+    CompletableFuture<Void> runChunksAsync(Map session, Object workerPartial) {
+      Chunk chunk;
+      try {
+        chunk = nextChunk();
+      } catch (Exception e) {
+        return AsyncCommandRunner.failed(e);
+      }
+      if (chunk == null) {
+        workerDone(workerPartial);
+        return AsyncCommandRunner.completed();
+      }
+      Object partial = workerPartial == null || ordered ? newWorkerPartial() : workerPartial;
+      return runElementsAsync(session, chunk.elements, 0, partial)
+          .thenCompose(done -> AsyncCommandRunner.withSession(session, () -> {
+            try {
+              chunkDone(chunk.index, partial);
+            } catch (Exception e) {
+              return AsyncCommandRunner.failed(e);
+            }
+            return runChunksAsync(session, partial);
+          }));
+    }
+
+    CompletableFuture<Void> runElementsAsync(Map session, List chunkElements, int from, Object partial) {
+      for (int i = from; i < chunkElements.size() && !isStopped(); i++) {
+        CommandContext elemContext = newElementContext(chunkElements.get(i));
+        CompletableFuture<Void> future = runChildrenAsync(elemContext);
+        if (!future.isDone()) {
+          final int next = i + 1;
+          return future.handle((done, throwable) -> throwable).thenCompose(throwable ->
+              AsyncCommandRunner.withSession(session, () -> {
+                try {
+                  elementDone(elemContext, throwable, partial);
+                } catch (Exception e) {
+                  return AsyncCommandRunner.failed(e);
+                }
+                return runElementsAsync(session, chunkElements, next, partial);
+              }));
+        }
+        try {
+          elementDone(elemContext, future.handle((done, throwable) -> throwable).join(), partial);
+        } catch (Exception e) {
+          return AsyncCommandRunner.failed(e);
+        }
+      }
+      return AsyncCommandRunner.completed();
+    }
+
+    void elementDone(CommandContext elemContext, Throwable throwable, Object partial) throws Exception {
+      if (throwable != null) {
+        elementFailed(elemContext, AsyncCommandRunner.getCause(throwable));
+      } else {
+        aggregateElement(partial, elemContext);
+      }
+    }
+
+    /**
+     * @return the group list, a new partial result or, for a custom aggregator if ordered, a list buffering the element
+     * results of the chunk until it is combined.
+     */
+    Object newWorkerPartial() {
+      if (groupList == null) {
+        return newPartial();
+      }
+      return ordered ? new ArrayList() : groupList;
+    }
+
+    CommandContext newElementContext(Object element) {
+      CommandContext elemContext = new CommandContext();
+      elemContext.setArgument(element);
+      return elemContext;
+    }
+
+    void aggregateElement(Object partial, CommandContext elemContext) throws Exception {
+      if (ordered && groupList != null) {
+        ((List) partial).add(elemContext); // Aggregated when the chunk is combined.
+        return;
+      }
+      try {
+        aggregate(partial, elemContext);
+      } catch (Exception e) {
+        elementFailed(elemContext, e);
+      }
+    }
 
-    Collection toBeSplit = (Collection) commandContext.getArguments()[0];
+    /**
+     * The element is skipped unless stopOnException, then the exception fails the worker and the group.
+     */
+    void elementFailed(CommandContext elemContext, Exception e) throws Exception {
+      if (Boolean.TRUE.equals(stopOnException)) {
+        throw e;
+      }
+      if (elemContext.getException() == null) {  // Not already logged by MethodReferenceCommand.
+        LOG.error(e.getMessage(), e);
+      }
+    }
 
-    List<CommandCallable> callables = new ArrayList();
-    long iteration = 0;
-    for (Object object : toBeSplit) {
-      iteration++;
-      callables.add(new CommandCallable("iteration " + iteration, () -> {
-        CommandContext elemContext = new CommandContext();
-        elemContext.setArguments(new Object[]{object});
+    /**
+     * If ordered, combines the chunk as soon as the chunks before it are combined, so only the chunks done out of order
+     * wait.
+     */
+    void chunkDone(int chunk, Object partial) throws Exception {
+      if (!ordered) {
+        return;
+      }
+      synchronized (this) {
+        pendingChunks.put(chunk, partial);
+        for (Object next = pendingChunks.remove(nextToCombine); next != null;
+             next = pendingChunks.remove(nextToCombine)) {
+          nextToCombine++;
+          if (groupList == null) {
+            combined = combine(combined, next);
+            continue;
+          }
+          for (Object elemContext : (List) next) {
+            try {
+              aggregate(groupList, (CommandContext) elemContext);
+            } catch (Exception e) {
+              elementFailed((CommandContext) elemContext, e);
+            }
+          }
+        }
+      }
+    }
+
+    void workerDone(Object partial) {
+      if (!ordered && partial != null && groupList == null) {
+        workerPartials.add(partial);
+      }
+    }
 
-        runChildren(elemContext);
-        return elemContext;
-      }));
+    void close() {
+      if (source != null) {
+        source.close();
+      }
     }
-    run(commandContext, callables);
 
+    /**
+     * Sets the combined partial results as the forEach result.
+     *
+     * @throws Exception the failure of the source, since the elements after it were not processed.
+     */
+    void complete(CommandContext commandContext) throws Exception {
+      if (sourceFailure != null) {
+        throw sourceFailure;
+      }
+      Object result;
+      synchronized (this) {
+        result = groupList != null ? groupList : combined;
+      }
+      for (Object partial : workerPartials) {
+        result = combine(result, partial);
+      }
+      result = finish(result);
+      commandContext.setResult(result);
+      commandContext.setArgument(result);
+    }
   }
 
   @Override
@@ -65,4 +429,20 @@ public class ForEachCommand extends GroupCommandUtil {
     return getKeyword() + "()";
   }
 
+  @Override
+  public void definitionExport(FlowStep flowStep) {
+    if (grain != null) {
+      flowStep.setGrain(grain);
+    }
+    if (workers != null) {
+      flowStep.setWorkers(workers);
+    }
+    if (window != null) {
+      flowStep.setWindow(window);
+    }
+    if (ordered) {
+      flowStep.setOrdered(true);
+    }
+    super.definitionExport(flowStep);
+  }
 }
@@ -20,29 +20,27 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.floref.core.dsl.command.MethodReferenceCommand;
 import org.floref.core.dsl.flow.impex.FlowStep;
-import org.floref.core.exception.FlowTimeoutException;
+import org.floref.core.exception.FlowDefinitionException;
 import org.floref.core.flow.reference.MethodReference;
 import org.floref.core.flow.run.CommandContext;
-import org.floref.core.flow.run.CommandRunner;
-import org.floref.core.flow.run.FlowSession;
-import org.floref.core.flow.run.FlowUtil;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collector;
 
 public abstract class GroupCommandUtil extends ParentCommand {
 
   private static final Log LOG = LogFactory.getLog(GroupCommandUtil.class);
 
   protected MethodReferenceCommand aggregator;
+  protected Collector collector;  // If set it is used instead of the aggregator.
+  protected boolean customAggregator;
   protected Long timeout;
   protected Boolean stopOnException;
+  protected String executor;  // The bulkhead running the children, if null the one of the flow.
 
   //public List defaultAggregator(Object currentResult, List results, Exception exception) {
   public static List defaultAggregator(Object currentResult, List results, Exception e) {
@@ -69,119 +67,150 @@ public abstract class GroupCommandUtil extends ParentCommand {
 
   public void setAggregator(MethodReference methodReference) {
     aggregator = new MethodReferenceCommand(methodReference);
+    customAggregator = true;
+    collector = null;
   }
 
-  public void run(CommandContext commandContext, List<CommandCallable> callables) throws Exception {
-    GroupCommandUtil me = this;
-    //runChildren(commandContext);
-
-    AtomicBoolean isTimeout = new AtomicBoolean(false);
-    AtomicBoolean forceStop = new AtomicBoolean(false);
-    AtomicInteger atomicInteger = new AtomicInteger(0);
-    List<Future> futureList = new ArrayList();
-    ScheduledFuture timeoutFuture = null;
-    StringBuffer timeoutMessage = new StringBuffer();
-    if (timeout != null) {
-      timeoutFuture = CommandRunner.scheduleFuture(() -> {
-        try {
-          for (Future childFuture : futureList) {   // Cancel pending child tasks.
-            childFuture.cancel(false);  // Do not interrupt running threads. May become configurable.
-          }
-        } catch (Exception e) {
-          LOG.error(e.getMessage(), e);
-        } finally {
-          isTimeout.set(true);
-          forceStop.set(true); // Stop the waiting parent thread.
-          timeoutMessage.append("Timeout while running flow " + commandContext.getFlowDefinition().getId()
-              + " " + getKeyword());
-          synchronized (atomicInteger) {
-            atomicInteger.notify();
-          }
-        }
-      }, timeout);
+  public void setExecutor(String executor) {
+    this.executor = executor;
+  }
+
+  public String getExecutor() {
+    return executor;
+  }
+
+  public void setCollector(Collector collector) {
+    this.collector = collector;
+    aggregator = null;
+    customAggregator = false;
+  }
+
+  /**
+   * @return the number of children that must succeed for the group to complete without waiting for the others, 0 to
+   * wait for all.
+   */
+  protected int getQuorum() {
+    return 0;
+  }
+
+  /**
+   * @return false if the children results are not aggregated by the group execution (the command aggregates them).
+   */
+  protected boolean aggregatesChildResults() {
+    return true;
+  }
+
+  /**
+   * A custom aggregator is called with the one result list of the group, so it sees the results of the other children.
+   * It may be called by several children at once. Only the default aggregator and the collectors use partial results.
+   *
+   * @return a new list shared by all the children of a group run, or null if the results go into partial results.
+   */
+  protected List newGroupList() {
+    return customAggregator ? new CopyOnWriteArrayList() : null;
+  }
+
+  /**
+   * The results are aggregated into partial results, one per worker (or child), that are combined when the group
+   * completes. So the children do not share a result container nor a lock.
+   *
+   * @return a new partial result: a container of the collector or a list for the aggregator.
+   */
+  protected Object newPartial() {
+    return collector != null ? collector.supplier().get() : new ArrayList();
+  }
+
+  /**
+   * Adds the result of a child to a partial result, by running the collector accumulator or the aggregator. A partial
+   * result is only used by one thread at a time.
+   */
+  protected void aggregate(Object partial, CommandContext childResult) throws Exception {
+    if (collector != null) {
+      collector.accumulator().accept(partial, childResult.getResult());
+      return;
     }
+    if (!customAggregator) {  // Same as defaultAggregator, without running it as a method reference.
+      ((List) partial).add(childResult.getResult());
+      return;
+    }
+    CommandContext aggregatorContext = new CommandContext();
+    aggregatorContext.setArguments(new Object[]{partial, childResult.getResult()});
+    aggregator.run(aggregatorContext);
+  }
 
-    List resultList = new CopyOnWriteArrayList();
-    Map session = FlowSession.get();
-
-    // Submit a task for each.
-    for (CommandCallable commandCallable : callables) {
-
-      // Reuse pool instead of creating new one (and use 'shutdown' and then 'awaitTermination').
-      futureList.add(CommandRunner.submit(() -> {
-        CommandContext childResult = null;
-        try {
-          if (isTimeout.get() || forceStop.get()) {
-            LOG.error("Skipping " + commandCallable.getId());
-            return;
-          }
-          FlowSession.set(session); // Copy session.
-          CommandContext aggregatorContext = new CommandContext();
-
-          // Run the runnable.
-          childResult = commandCallable.getCallable().call();
-
-          // Run the aggregator.
-          try {
-            aggregatorContext.setArguments(new Object[]{resultList, childResult.getResult()});
-            //me.run(aggregatorContext, aggregator);
-            aggregator.run(aggregatorContext);
-          } catch (Exception e) {
-            if (childResult == null || childResult.getException() == null) {  // Not already logged by MethodReferenceCommand.
-              LOG.error(e.getMessage(), e);
-            }
-            if (Boolean.TRUE.equals(stopOnException)) {  // Should not fail the others if just the aggregator fails, unless stopOnException
-              commandContext.setException(e);
-              forceStop.set(true);
-              FlowUtil.cancelFlow();  // Stops the others also.
-            }
-          }
-
-        } catch (Exception e) {
-          if (childResult == null || childResult.getException() == null) {
-            LOG.error(e.getMessage(), e);
-          }
-          if (Boolean.TRUE.equals(stopOnException)) {
-            commandContext.setException(e);
-            forceStop.set(true);
-            FlowUtil.cancelFlow();  // Stops the others also.
-          }
-        } finally {
-          atomicInteger.incrementAndGet();
-          synchronized (atomicInteger) {
-            atomicInteger.notify();
-          }
-          FlowSession.clearSession(); // does not clear the map, only it sets the threadlocal on null for GC.
-        }
-      }));
+  /**
+   * @param left  null for the first partial result.
+   * @param right the partial result that follows left.
+   * @return the combined partial results.
+   */
+  protected Object combine(Object left, Object right) {
+    if (left == null) {
+      return right;
     }
-    // Do not go to next command after parallel until all children are done.
-    synchronized (atomicInteger) {
-      while (atomicInteger.get() < callables.size() && !forceStop.get()) { // spurious wakeup.
-        atomicInteger.wait();
-      }
+    if (collector != null) {
+      return collector.combiner().apply(left, right);
     }
-    // Cancel future timeout task if all was OK or not.
-    if (timeoutFuture != null) {
-      timeoutFuture.cancel(false);
+    ((List) left).addAll((List) right);
+    return left;
+  }
+
+  /**
+   * @param combined the combined partial results, null if there were none.
+   * @return the group result: the finished collector container or the list of the aggregated results.
+   */
+  protected Object finish(Object combined) {
+    if (collector != null) {
+      return collector.finisher().apply(combined != null ? combined : collector.supplier().get());
     }
+    return combined != null ? combined : new ArrayList();
+  }
 
-    if (timeoutMessage.length() != 0) {
-      throw new FlowTimeoutException(timeoutMessage.toString());
-    } else if (commandContext.getException() != null) {
-      throw commandContext.getException();
+  /**
+   * Runs the children and waits for the group to complete, running the children not yet started on this thread.
+   */
+  public void run(CommandContext commandContext, List<CommandCallable> callables) throws Exception {
+    GroupExecution groupExecution = new GroupExecution(this, commandContext, callables);
+    groupExecution.start();
+    join(groupExecution);
+  }
+
+  /**
+   * Waits for a started group, see {@link GroupExecution#join()}.
+   */
+  void join(GroupExecution groupExecution) throws Exception {
+    try {
+      groupExecution.join();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      }
+      throw e;
     }
+  }
 
-    commandContext.setResult(resultList);
-    commandContext.setArguments(new Object[]{resultList});
+  /**
+   * Submits the children without waiting for them.
+   *
+   * @return completed with the command context, holding the aggregated results, when the last child completes. It is
+   * completed exceptionally on timeout, cancellation or on a child failure if stopOnException is set.
+   */
+  public CompletableFuture<CommandContext> start(CommandContext commandContext, List<CommandCallable> callables) {
+    return new GroupExecution(this, commandContext, callables).start();
   }
 
   public void stopOnException() {
     stopOnException = true;
   }
 
+  /**
+   * @throws FlowDefinitionException if a collector is set, it is not a method reference so it can not be exported.
+   */
   @Override
   public void definitionExport(FlowStep flowStep) {
+    if (collector != null) {
+      throw new FlowDefinitionException("A " + getKeyword() + " with a collector can not be exported");
+    }
     flowStep.setType(getKeyword());
     if (aggregator != null) {
       flowStep.setAggregator(aggregator.getLambdaMeta().getActualMethodReferenceAsString());
@@ -192,6 +221,9 @@ public abstract class GroupCommandUtil extends ParentCommand {
     if (stopOnException != null) {
       flowStep.setStopOnException(stopOnException.booleanValue());
     }
+    if (executor != null) {
+      flowStep.setExecutor(executor);
+    }
     super.definitionExport(flowStep);
   }
 }
@@ -0,0 +1,379 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.dsl.command.group;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.floref.core.exception.FlowCancelledException;
+import org.floref.core.exception.FlowDefinitionException;
+import org.floref.core.exception.FlowTimeoutException;
+import org.floref.core.flow.run.AsyncCommandRunner;
+import org.floref.core.flow.run.CommandContext;
+import org.floref.core.flow.run.CommandRunner;
+import org.floref.core.flow.run.FlowExecution;
+import org.floref.core.flow.run.FlowSession;
+import org.floref.core.flow.run.WheelTimer;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One run of a parallel or forEach group. Each child is submitted as a task whose completion (normal, failed or
+ * cancelled) decrements a counter without locking. The last one to complete, or a timeout, a cancellation or a
+ * stopOnException failure, completes the future returned by {@link #start()} with the group context. Anything chained
+ * to that future runs on the thread that completed it, so the caller does not need to wait. A child created with
+ * {@link CommandCallable#async} is complete when the future it returns is, without a thread waiting for it.
+ * <p>
+ * With a quorum the group completes as soon as that many children succeeded, the others are cancelled (interrupted if
+ * running), or it fails as soon as too many children failed for the quorum to be reached.
+ *
+ * @author Cristian Donoiu
+ */
+class GroupExecution {
+  private static final Log LOG = LogFactory.getLog(GroupExecution.class);
+
+  private final GroupCommandUtil group;
+  private final CommandContext commandContext;
+  private final List<CommandCallable> callables;
+  private final AtomicInteger remaining;
+  private final int quorum; // 0 to wait for all the children.
+  private final AtomicInteger succeeded = new AtomicInteger();
+  private final AtomicInteger failed = new AtomicInteger();
+  private final AtomicBoolean finished = new AtomicBoolean();
+  private final CompletableFuture<CommandContext> done = new CompletableFuture<>();
+  private final List<ChildTask> tasks = new CopyOnWriteArrayList<>(); // Also read by the timeout and the cancel listener.
+  private final Queue<Object> partials = new ConcurrentLinkedQueue<>(); // One per child, in completion order.
+  private final List groupList; // Shared by the children instead of the partials, for a custom aggregator.
+  private final Map session;
+  private final FlowExecution execution;
+  private final String executor; // The bulkhead, null for the common executor.
+  private final FlowExecution.CancelListener cancelListener = this::cancelled;
+  private volatile boolean stopped;  // No more children should start.
+  private volatile Exception failure; // The failure that stopped the group.
+  private volatile WheelTimer.Timeout timeoutFuture;
+  private volatile Thread joiner; // The thread waiting in join, it may run children itself.
+
+  /**
+   * Runs a child and counts it as complete even if it was cancelled before running. An async child is counted when its
+   * future completes. Tasks are only cancelled after the group was stopped, so counting twice does not matter then.
+   */
+  private class ChildTask extends FutureTask<Boolean> {
+    private final Child child;
+
+    ChildTask(CommandCallable commandCallable) {
+      this(new Child(commandCallable));
+    }
+
+    private ChildTask(Child child) {
+      super(child);
+      this.child = child;
+    }
+
+    /**
+     * Cancels the task and the execution of an async child. The thread calling this is not interrupted, e.g. the child
+     * that reached the quorum continues the flow. A child run by the waiting thread is always interrupted, so that the
+     * group returns when it is stopped, e.g. by its timeout.
+     */
+    void cancelChild(boolean mayInterruptIfRunning) {
+      Thread runner = child.runner;
+      cancel((mayInterruptIfRunning || (runner != null && runner == joiner)) && runner != Thread.currentThread());
+      if (child.commandCallable.getExecution() != null) {
+        child.commandCallable.getExecution().cancel(mayInterruptIfRunning);
+      }
+    }
+
+    @Override
+    protected void done() {
+      if (isCancelled() && !stopped) {  // Dropped by the executor (shedOldest policy), the group can not complete.
+        stop(new RejectedExecutionException("A " + group.getKeyword() + " child was dropped by the executor"), false);
+      }
+      try {
+        if (!isCancelled() && get()) {
+          return;
+        }
+      } catch (InterruptedException | ExecutionException e) {
+        // Not thrown since the task is done and runChild does not throw.
+      }
+      childDone();
+    }
+  }
+
+  /**
+   * The body of a child task. It knows the thread running it, while more threads may call run on the task.
+   */
+  private class Child implements Callable<Boolean> {
+    private final CommandCallable commandCallable;
+    private volatile Thread runner; // Set while the child runs.
+
+    Child(CommandCallable commandCallable) {
+      this.commandCallable = commandCallable;
+    }
+
+    @Override
+    public Boolean call() {
+      runner = Thread.currentThread();
+      try {
+        return runChild(commandCallable);
+      } finally {
+        runner = null;
+      }
+    }
+  }
+
+  GroupExecution(GroupCommandUtil group, CommandContext commandContext, List<CommandCallable> callables) {
+    this.group = group;
+    this.commandContext = commandContext;
+    this.callables = callables;
+    this.remaining = new AtomicInteger(callables.size());
+    this.quorum = group.getQuorum();
+    this.groupList = group.aggregatesChildResults() ? group.newGroupList() : null;
+    this.session = FlowSession.get();
+    this.execution = commandContext.getFlowExecution();
+    this.executor = group.executor != null ? group.executor
+        : commandContext.getFlowDefinition() != null ? commandContext.getFlowDefinition().getExecutor() : null;
+  }
+
+  /**
+   * Submits the children and returns without waiting for them.
+   *
+   * @return completed with the group context when the group is done, or exceptionally on timeout, cancellation or
+   * stopOnException failure.
+   */
+  CompletableFuture<CommandContext> start() {
+    if (execution != null) {
+      execution.addListener(cancelListener);
+    }
+    if (group.timeout != null) {
+      timeoutFuture = CommandRunner.schedule(() -> {
+        String message = "Timeout while running flow " + commandContext.getFlowDefinition().getId() + " "
+            + group.getKeyword();
+        stop(new FlowTimeoutException(message), false);
+      }, group.timeout);
+    }
+    if (callables.isEmpty()) {
+      finish();
+      return done;
+    }
+    if (quorum > callables.size()) {
+      stop(new FlowDefinitionException("The quorum " + quorum + " is greater than the " + callables.size() + " "
+          + group.getKeyword() + " children"), false);
+      return done;
+    }
+
+    // Reuse pool instead of creating new one (and use 'shutdown' and then 'awaitTermination').
+    for (CommandCallable commandCallable : callables) {
+      ChildTask task = new ChildTask(commandCallable);
+      tasks.add(task);
+      if (stopped) {
+        task.cancel(false);
+        continue;
+      }
+      try {
+        CommandRunner.execute(executor, task);
+      } catch (RejectedExecutionException e) {
+        if (group.timeout == null && quorum == 0) {
+          task.run(); // The pool is saturated, run it on this thread instead of failing the group.
+        } else {
+          task.cancel(false);
+          stop(e, false);
+        }
+      }
+    }
+    return done;
+  }
+
+  /**
+   * Waits for the group after {@link #start()}. Instead of blocking while children are still queued, the calling thread
+   * runs them itself (running a task that a pool thread already took does nothing). Then it only waits for children
+   * that are running on other threads, so nested groups can not starve the pool. The wait is a
+   * {@link java.util.concurrent.ForkJoinPool.ManagedBlocker} (that is how CompletableFuture.get blocks) so a fork join
+   * pool can compensate for it. Helping stops when the group is done: a timeout or a quorum interrupts the child the
+   * calling thread runs, so the group still returns at its timeout if the child responds to interruption.
+   */
+  CommandContext join() throws InterruptedException, ExecutionException {
+    joiner = Thread.currentThread();
+    try {
+      for (int i = tasks.size() - 1; i >= 0 && !done.isDone(); i--) {  // The pool takes the first ones.
+        ChildTask task = tasks.get(i);
+        if (task.isDone()) {
+          continue;
+        }
+        task.run();
+        if (task.isCancelled()) {
+          Thread.interrupted(); // Interrupted because the group stopped, not the caller.
+        }
+      }
+    } finally {
+      joiner = null;
+    }
+    return done.get();
+  }
+
+  /**
+   * @return true if the child is async and will be counted when its future completes.
+   */
+  private boolean runChild(CommandCallable commandCallable) {
+    Map previous = FlowSession.get(); // Not null if the waiting parent runs the child.
+    try {
+      if (stopped || (execution != null && execution.isCancelled())) {
+        LOG.error("Skipping " + commandCallable.getId());
+        return false;
+      }
+      FlowSession.set(session); // Copy session.
+
+      // Run the runnable.
+      if (commandCallable.getAsyncCallable() != null) {
+        commandCallable.getAsyncCallable().call().whenComplete((childResult, throwable) -> {
+          Map threadSession = FlowSession.get();
+          FlowSession.set(session);
+          try {
+            if (throwable != null) {
+              childError(null, AsyncCommandRunner.getCause(throwable));
+            } else {
+              aggregate(childResult);
+            }
+          } finally {
+            FlowSession.set(threadSession);
+            childDone();
+          }
+        });
+        return true;
+      }
+      aggregate(commandCallable.getCallable().call());
+
+    } catch (Exception e) {
+      childError(null, e);
+    } finally {
+      FlowSession.set(previous); // On pool threads it sets the threadlocal on null for GC, the map is not cleared.
+    }
+    return false;
+  }
+
+  private void aggregate(CommandContext childResult) {
+    if (!group.aggregatesChildResults()) {
+      return;
+    }
+    try {
+      if (groupList != null) {
+        group.aggregate(groupList, childResult);
+      } else {
+        Object partial = group.newPartial();
+        group.aggregate(partial, childResult);
+        partials.add(partial);
+      }
+    } catch (Exception e) {
+      // Should not fail the others if just the aggregator fails, unless stopOnException
+      childError(childResult, e);
+      return;
+    }
+    if (quorum > 0 && succeeded.incrementAndGet() == quorum) {
+      stop(null, true); // Completes the group with the results so far.
+    }
+  }
+
+  private void childError(CommandContext childResult, Exception e) {
+    if (childResult == null || childResult.getException() == null) {  // Not already logged by MethodReferenceCommand.
+      LOG.error(e.getMessage(), e);
+    }
+    if (Boolean.TRUE.equals(group.stopOnException)) {
+      childFailed(e);
+    } else if (quorum > 0 && failed.incrementAndGet() > callables.size() - quorum) {
+      stop(e, true); // The quorum can not be reached anymore.
+    }
+  }
+
+  private void childDone() {
+    if (remaining.decrementAndGet() == 0) {
+      finish();
+    }
+  }
+
+  private void childFailed(Exception e) {
+    commandContext.setException(e);
+    stop(e, false);
+    if (execution != null) {
+      execution.cancel(false);  // Stops the others also.
+    }
+  }
+
+  /**
+   * Called by the flow execution when it is cancelled.
+   */
+  private void cancelled(boolean mayInterruptIfRunning) {
+    stop(new FlowCancelledException("Flow " + commandContext.getFlowDefinition().getId()
+        + " has been cancelled while running " + group.getKeyword()), mayInterruptIfRunning);
+  }
+
+  /**
+   * Skips the children that did not start and completes the group without waiting for the running ones.
+   *
+   * @param exception the group failure, null if the group completes with the results so far.
+   */
+  private void stop(Exception exception, boolean mayInterruptIfRunning) {
+    if (failure == null) {
+      failure = exception;
+    }
+    stopped = true;
+    for (ChildTask task : tasks) {   // Cancel pending child tasks.
+      task.cancelChild(mayInterruptIfRunning);
+    }
+    finish();
+  }
+
+  private void finish() {
+    if (!finished.compareAndSet(false, true)) {
+      return;
+    }
+    // Cancel future timeout task if all was OK or not.
+    if (timeoutFuture != null) {
+      timeoutFuture.cancel();
+    }
+    if (execution != null) {
+      execution.removeListener(cancelListener);
+    }
+    if (failure != null) {
+      done.completeExceptionally(failure);
+    } else if (commandContext.getException() != null) {
+      done.completeExceptionally(commandContext.getException());
+    } else {
+      if (group.aggregatesChildResults()) {
+        Object combined = groupList;
+        int count = 0;
+        for (Object partial : partials) {
+          if (quorum > 0 && count++ == quorum) {
+            break; // Children completing meanwhile.
+          }
+          combined = group.combine(combined, partial);
+        }
+        Object result = group.finish(combined);
+        commandContext.setResult(result);
+        commandContext.setArgument(result);
+      }
+      done.complete(commandContext);
+    }
+  }
+}
@@ -19,10 +19,13 @@ package org.floref.core.dsl.command.group;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.floref.core.dsl.command.FlowCommand;
+import org.floref.core.dsl.flow.impex.FlowStep;
 import org.floref.core.flow.run.CommandContext;
+import org.floref.core.flow.run.FlowExecution;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static org.floref.core.dsl.command.FlowCommandBuilders.PARALLEL;
 
@@ -34,6 +37,69 @@ import static org.floref.core.dsl.command.FlowCommandBuilders.PARALLEL;
 public class ParallelCommand extends GroupCommandUtil {
   private static final Log LOG = LogFactory.getLog(ParallelCommand.class);
 
+  protected Integer quorum; // null to wait for all the children.
+  protected boolean any;
+
+  /**
+   * Completes the group when the given number of children succeeded, the result is the aggregation of their results.
+   */
+  public void setQuorum(int quorum) {
+    this.quorum = quorum;
+    this.any = false;
+  }
+
+  /**
+   * Completes the group when a child succeeded, the result is the result of that child.
+   */
+  public void setAny() {
+    this.quorum = 1;
+    this.any = true;
+  }
+
+  public boolean isAny() {
+    return any;
+  }
+
+  @Override
+  protected int getQuorum() {
+    return quorum != null ? quorum : 0;
+  }
+
+  @Override
+  protected List newGroupList() {
+    return any ? null : super.newGroupList();
+  }
+
+  @Override
+  protected Object newPartial() {
+    return any ? new ArrayList() : super.newPartial();
+  }
+
+  @Override
+  protected void aggregate(Object partial, CommandContext childResult) throws Exception {
+    if (any) {
+      ((List) partial).add(childResult.getResult());
+    } else {
+      super.aggregate(partial, childResult);
+    }
+  }
+
+  @Override
+  protected Object combine(Object left, Object right) {
+    if (any) {
+      return left != null ? left : right;
+    }
+    return super.combine(left, right);
+  }
+
+  @Override
+  protected Object finish(Object combined) {
+    if (any) {
+      return combined != null ? ((List) combined).get(0) : null;
+    }
+    return super.finish(combined);
+  }
+
   @Override
   public void run(CommandContext commandContext) throws Exception {
     List<CommandCallable> callables = new ArrayList();
@@ -49,6 +115,44 @@ public class ParallelCommand extends GroupCommandUtil {
 
   }
 
+  /**
+   * Each branch runs in async mode on a copy of the context, the group completes when all branch futures do. With a
+   * quorum each branch has its own execution, so that the branches still running when the quorum is reached are
+   * cancelled (the futures they wait for too).
+   */
+  @Override
+  public CompletableFuture<Void> runAsync(CommandContext commandContext) {
+    List<CommandCallable> callables = new ArrayList();
+    FlowExecution execution = commandContext.getFlowExecution();
+    for (final FlowCommand command : children) {
+      if (getQuorum() > 0 && execution != null) {
+        FlowExecution branchExecution = execution.newChild();
+        callables.add(CommandCallable.async(command.getId(), branchExecution, () -> {
+          CommandContext commandContextCopy = commandContext.copy();
+          commandContextCopy.setFlowExecution(branchExecution);
+          return command.runAsync(commandContextCopy).whenComplete((done, throwable) -> branchExecution.detach())
+              .thenApply(done -> commandContextCopy);
+        }));
+        continue;
+      }
+      callables.add(CommandCallable.async(command.getId(), () -> {
+        CommandContext commandContextCopy = commandContext.copy();
+        return command.runAsync(commandContextCopy).thenApply(done -> commandContextCopy);
+      }));
+    }
+    return start(commandContext, callables).thenApply(done -> null);
+  }
+
+  @Override
+  public void definitionExport(FlowStep flowStep) {
+    if (any) {
+      flowStep.setAny(true);
+    } else if (quorum != null) {
+      flowStep.setQuorum(quorum);
+    }
+    super.definitionExport(flowStep);
+  }
+
   @Override
   public String getKeyword() {
     return PARALLEL;
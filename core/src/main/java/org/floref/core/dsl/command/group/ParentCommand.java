@@ -19,10 +19,12 @@ package org.floref.core.dsl.command.group;
 import org.floref.core.dsl.command.ChildCommand;
 import org.floref.core.dsl.command.FlowCommand;
 import org.floref.core.dsl.flow.impex.FlowStep;
+import org.floref.core.flow.run.AsyncCommandRunner;
 import org.floref.core.flow.run.CommandContext;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Group command that can group multiple child commands.
@@ -48,6 +50,10 @@ public abstract class ParentCommand extends ChildCommand {
     }
   }
 
+  protected CompletableFuture<Void> runChildrenAsync(CommandContext commandContext) {
+    return AsyncCommandRunner.runSequence(children, 0, commandContext);
+  }
+
   @Override
   public void definitionExport(FlowStep flowStep) {
     List steps = new ArrayList();
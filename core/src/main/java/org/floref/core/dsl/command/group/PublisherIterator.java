@@ -0,0 +1,201 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.dsl.command.group;
+
+import org.floref.core.exception.FlorefException;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Iterates over the items of a reactive streams Publisher (java.util.concurrent.Flow.Publisher or
+ * org.reactivestreams.Publisher). The publisher interface is matched by name and called through reflection, so that
+ * floref does not depend on Java 9 nor on the reactive streams library. At most
+ * <b>window</b> items are requested before they are pulled, one more is requested for each pulled item.
+ *
+ * @author Cristian Donoiu
+ */
+class PublisherIterator implements Iterator, AutoCloseable {
+  private static final Object END = new Object();
+  private static final Set<String> PUBLISHERS = new HashSet<>(Arrays.asList("java.util.concurrent.Flow$Publisher",
+      "org.reactivestreams.Publisher"));
+
+  private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+  private final int window;
+  private Method request;
+  private Method cancel;
+  private volatile Object subscription;
+  private volatile boolean closed;
+  private Object next; // The item taken from the queue and not yet returned.
+
+  /**
+   * An onError signal.
+   */
+  private static class Failure {
+    final Throwable throwable;
+
+    Failure(Throwable throwable) {
+      this.throwable = throwable;
+    }
+  }
+
+  PublisherIterator(Object publisher, int window) {
+    this.window = window;
+    Method subscribe = getSubscribeMethod(publisher.getClass());
+    Class subscriberClass = subscribe.getParameterTypes()[0];
+    ClassLoader classLoader = subscriberClass.getClassLoader() != null ? subscriberClass.getClassLoader()
+        : PublisherIterator.class.getClassLoader();
+    Object subscriber = Proxy.newProxyInstance(classLoader, new Class[]{subscriberClass},
+        (proxy, method, args) -> signal(proxy, method, args));
+    invoke(subscribe, publisher, subscriber);
+  }
+
+  /**
+   * @return true if the object implements one of the known Publisher interfaces.
+   */
+  static boolean isPublisher(Object input) {
+    return input != null && getSubscribeMethod(input.getClass()) != null;
+  }
+
+  private static Method getSubscribeMethod(Class clazz) {
+    for (Class current = clazz; current != null; current = current.getSuperclass()) {
+      for (Class interfaceClass : current.getInterfaces()) {
+        Method subscribe = getSubscribeMethodOfInterface(interfaceClass);
+        if (subscribe != null) {
+          return subscribe;
+        }
+      }
+    }
+    return null;
+  }
+
+  private static Method getSubscribeMethodOfInterface(Class interfaceClass) {
+    if (PUBLISHERS.contains(interfaceClass.getName())) {
+      for (Method method : interfaceClass.getMethods()) {
+        if (method.getName().equals("subscribe") && method.getParameterCount() == 1) {
+          return method;
+        }
+      }
+    }
+    for (Class superInterface : interfaceClass.getInterfaces()) {
+      Method subscribe = getSubscribeMethodOfInterface(superInterface);
+      if (subscribe != null) {
+        return subscribe;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Handles the calls made by the publisher on the subscriber proxy.
+   */
+  private Object signal(Object proxy, Method method, Object[] args) throws Exception {
+    switch (method.getName()) {
+      case "onSubscribe":
+        subscribed(method.getParameterTypes()[0], args[0]);
+        return null;
+      case "onNext":
+        queue.add(args[0]);
+        return null;
+      case "onError":
+        queue.add(new Failure((Throwable) args[0]));
+        return null;
+      case "onComplete":
+        queue.add(END);
+        return null;
+      case "equals":
+        return proxy == args[0];
+      case "hashCode":
+        return System.identityHashCode(proxy);
+      case "toString":
+        return "forEach subscriber";
+      default:
+        return null;
+    }
+  }
+
+  private void subscribed(Class subscriptionClass, Object subscription) throws NoSuchMethodException {
+    request = subscriptionClass.getMethod("request", long.class);
+    cancel = subscriptionClass.getMethod("cancel");
+    this.subscription = subscription;
+    if (closed) {
+      invoke(cancel, subscription);
+    } else {
+      invoke(request, subscription, (long) window);
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (next == null) {
+      try {
+        next = queue.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new FlorefException("Interrupted while waiting for the publisher", e);
+      }
+    }
+    if (next instanceof Failure) {
+      Throwable throwable = ((Failure) next).throwable;
+      throw throwable instanceof RuntimeException ? (RuntimeException) throwable : new FlorefException(throwable);
+    }
+    return next != END;
+  }
+
+  @Override
+  public Object next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    Object item = next;
+    next = null;
+    invoke(request, subscription, 1L);
+    return item;
+  }
+
+  /**
+   * Cancels the subscription and wakes up a pull waiting for the next item.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    Object subscription = this.subscription;
+    if (subscription != null) {
+      invoke(cancel, subscription);
+    }
+    queue.add(END);
+  }
+
+  private static void invoke(Method method, Object target, Object... args) {
+    try {
+      method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      Throwable cause = e.getCause();
+      throw cause instanceof RuntimeException ? (RuntimeException) cause : new FlorefException(cause);
+    } catch (IllegalAccessException e) {
+      throw new FlorefException(e);
+    }
+  }
+}
@@ -17,9 +17,12 @@
 package org.floref.core.dsl.flow;
 
 import org.floref.core.dsl.command.group.ParentCommand;
+import org.floref.core.dsl.flow.cache.ICache;
+import org.floref.core.dsl.flow.circuitbreaker.ICircuitBreaker;
 import org.floref.core.dsl.flow.data.FlowInstruction;
 import org.floref.core.dsl.flow.data.FlowInstructionImpl;
 import org.floref.core.dsl.flow.foreach.IForEach;
+import org.floref.core.dsl.flow.hedge.IHedge;
 import org.floref.core.dsl.flow.parallel.IParallel;
 import org.floref.core.dsl.flow.retry.IRetry;
 import org.floref.core.dsl.flow.reversible.IReversible;
@@ -49,6 +52,9 @@ public class BaseInstructionImpl<P, F> extends FlowInstructionImpl<F> implements
     IForEach<BaseInstructionImpl<P, F>, F>,
     IReversible<BaseInstructionImpl<P, F>, F>,
     IRetry<BaseInstructionImpl<P, F>, F>,
+    ICircuitBreaker<BaseInstructionImpl<P, F>, F>,
+    IHedge<BaseInstructionImpl<P, F>, F>,
+    ICache<BaseInstructionImpl<P, F>, F>,
     UserCustomSimpleInstructions<BaseInstructionImpl<P, F>> {
 
   public BaseInstructionImpl() {
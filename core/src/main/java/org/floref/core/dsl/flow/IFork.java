@@ -20,7 +20,6 @@ import org.floref.core.dsl.flow.data.FlowInstruction;
 import org.floref.core.flow.reference.*;
 
 import static org.floref.core.dsl.command.FlowCommandBuilders.FORK;
-import static org.floref.core.dsl.command.FlowCommandBuilders.TO;
 
 /**
  * Contains all the fork commands.
@@ -66,6 +65,6 @@ public interface IFork<P> extends FlowInstruction {
   }
 
   default <T> P fork(LambdaMeta<T> lambdaMeta) {
-    return (P) getFlowData().addChild(TO, lambdaMeta);
+    return (P) getFlowData().addChild(FORK, lambdaMeta);
   }
 }
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.dsl.flow.cache;
+
+import org.floref.core.dsl.command.CacheCommand;
+import org.floref.core.dsl.flow.BaseInstructionImpl;
+import org.floref.core.dsl.flow.data.FlowInstruction;
+import org.floref.core.exception.FlowDefinitionException;
+import org.floref.core.flow.reference.*;
+
+import static org.floref.core.dsl.command.FlowCommandBuilders.CACHE;
+import static org.floref.core.dsl.flow.data.FlowInstructionUtil.getInstructionCommand;
+
+/**
+ * .cache utils like maxSize, ttl, refreshAfter, key.
+ *
+ * @author Cristian Donoiu
+ */
+public class Cache<P, F> extends BaseInstructionImpl<P, F> {
+
+  public Cache(FlowInstruction src, MethodReference consumer) {
+    copyData(src);
+    getFlowData().addChild(CACHE, consumer);
+  }
+
+  public Cache(FlowInstruction src, LambdaMeta lambdaMeta) {
+    copyData(src);
+    getFlowData().addChild(CACHE, lambdaMeta);
+  }
+
+  private CacheCommand getCommand(String option) {
+    return getInstructionCommand(this, CacheCommand.class, "'." + option + "' currently supported only for '.cache'");
+  }
+
+  /**
+   * The maximum number of cached results, 1000 by default (flow.run.cache.max.size).
+   */
+  public Cache<P, F> maxSize(int maxSize) {
+    if (maxSize < 1) {
+      throw new FlowDefinitionException("'.maxSize' must be at least 1");
+    }
+    getCommand("maxSize").setMaxSize(maxSize);
+    return this;
+  }
+
+  /**
+   * How long a result is used after it was cached, then the method is called again. By default until evicted.
+   */
+  public Cache<P, F> ttl(long millis) {
+    getCommand("ttl").setTtl(millis);
+    return this;
+  }
+
+  /**
+   * A result older than this is still returned but the method is called in background to replace it, so that hot
+   * keys do not wait for the reload when they expire. Should be lower than the ttl.
+   */
+  public Cache<P, F> refreshAfter(long millis) {
+    getCommand("refreshAfter").setRefreshAfter(millis);
+    return this;
+  }
+
+  /**
+   * Called with the same arguments to build the cache key, instead of using the arguments as the key.
+   */
+  public <T> Cache<P, F> key(ParamSupplier<T> consumer) {
+    getCommand("key").setKey(consumer);
+    return this;
+  }
+
+  public <T> Cache<P, F> key(ParamConsumer<T> consumer) {
+    getCommand("key").setKey(consumer);
+    return this;
+  }
+
+  public <T, U> Cache<P, F> key(ParamBiConsumer<T, U> consumer) {
+    getCommand("key").setKey(consumer);
+    return this;
+  }
+
+  public <T, U, V> Cache<P, F> key(ParamTriConsumer<T, U, V> consumer) {
+    getCommand("key").setKey(consumer);
+    return this;
+  }
+
+  public <T, U, V, X> Cache<P, F> key(ParamTetraConsumer<T, U, V, X> consumer) {
+    getCommand("key").setKey(consumer);
+    return this;
+  }
+
+  public <T, U, V, X, Y> Cache<P, F> key(ParamPentaConsumer<T, U, V, X, Y> consumer) {
+    getCommand("key").setKey(consumer);
+    return this;
+  }
+
+  public <T, U, V, X, Y, Z> Cache<P, F> key(ParamHexaConsumer<T, U, V, X, Y, Z> consumer) {
+    getCommand("key").setKey(consumer);
+    return this;
+  }
+
+  public <T, U, V, X, Y, Z, A> Cache<P, F> key(ParamHeptaConsumer<T, U, V, X, Y, Z, A> consumer) {
+    getCommand("key").setKey(consumer);
+    return this;
+  }
+
+  public <T> Cache<P, F> key(LambdaMeta<T> lambdaMeta) {
+    getCommand("key").setKey(lambdaMeta);
+    return this;
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.dsl.flow.cache;
+
+import org.floref.core.dsl.flow.data.FlowInstruction;
+import org.floref.core.flow.reference.*;
+
+/**
+ * .cache(classOrInstance::method) and utils.
+ */
+public interface ICache<P, F> extends FlowInstruction {
+
+  default Cache<P, F> cache(ParamVoidConsumerVoidSupplier consumer) {
+    return new Cache(this, consumer);
+  }
+
+  default <T> Cache<P, F> cache(ParamSupplier<T> consumer) {
+    return new Cache(this, consumer);
+  }
+
+  default <T> Cache<P, F> cache(ParamConsumer<T> consumer) {
+    return new Cache(this, consumer);
+  }
+
+  default <T, U> Cache<P, F> cache(ParamBiConsumer<T, U> consumer) {
+    return new Cache(this, consumer);
+  }
+
+  default <T, U, V> Cache<P, F> cache(ParamTriConsumer<T, U, V> consumer) {
+    return new Cache(this, consumer);
+  }
+
+  default <T, U, V, X> Cache<P, F> cache(ParamTetraConsumer<T, U, V, X> consumer) {
+    return new Cache(this, consumer);
+  }
+
+  default <T, U, V, X, Y> Cache<P, F> cache(ParamPentaConsumer<T, U, V, X, Y> consumer) {
+    return new Cache(this, consumer);
+  }
+
+  default <T, U, V, X, Y, Z> Cache<P, F> cache(ParamHexaConsumer<T, U, V, X, Y, Z> consumer) {
+    return new Cache(this, consumer);
+  }
+
+  default <T, U, V, X, Y, Z, A> Cache<P, F> cache(ParamHeptaConsumer<T, U, V, X, Y, Z, A> consumer) {
+    return new Cache(this, consumer);
+  }
+
+  default <T> Cache<P, F> cache(LambdaMeta<T> lambdaMeta) {
+    return new Cache(this, lambdaMeta);
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.dsl.flow.circuitbreaker;
+
+import org.floref.core.dsl.command.CircuitBreakerCommand;
+import org.floref.core.dsl.flow.BaseInstructionImpl;
+import org.floref.core.dsl.flow.data.FlowInstruction;
+import org.floref.core.flow.reference.*;
+
+import static org.floref.core.dsl.command.FlowCommandBuilders.CIRCUIT_BREAKER;
+import static org.floref.core.dsl.flow.data.FlowInstructionUtil.getInstructionCommand;
+
+/**
+ * .circuitBreaker utils like failureRate, openDuration, fallback.
+ *
+ * @author Cristian Donoiu
+ */
+public class CircuitBreaker<P, F> extends BaseInstructionImpl<P, F> {
+
+  public CircuitBreaker(FlowInstruction src, MethodReference consumer) {
+    copyData(src);
+    getFlowData().addChild(CIRCUIT_BREAKER, consumer);
+  }
+
+  public CircuitBreaker(FlowInstruction src, LambdaMeta lambdaMeta) {
+    copyData(src);
+    getFlowData().addChild(CIRCUIT_BREAKER, lambdaMeta);
+  }
+
+  private CircuitBreakerCommand getCommand(String option) {
+    return getInstructionCommand(this, CircuitBreakerCommand.class,
+        "'." + option + "' currently supported only for '.circuitBreaker'");
+  }
+
+  /**
+   * Breakers with the same name share their state. By default the name is the method reference, so the steps calling
+   * the same method share it.
+   */
+  public CircuitBreaker<P, F> name(String name) {
+    getCommand("name").setName(name);
+    return this;
+  }
+
+  /**
+   * The number of last calls on which the failure and slow call rates are computed, 20 by default.
+   */
+  public CircuitBreaker<P, F> window(int calls) {
+    getCommand("window").setWindow(calls);
+    return this;
+  }
+
+  /**
+   * The percentage of failed calls in a full window that opens the breaker, 50 by default.
+   */
+  public CircuitBreaker<P, F> failureRate(int percent) {
+    getCommand("failureRate").setFailureRate(percent);
+    return this;
+  }
+
+  /**
+   * Calls lasting at least the given time are slow, the breaker opens when the given percentage of a full window is
+   * slow. Not used by default.
+   */
+  public CircuitBreaker<P, F> slowCall(long millis, int percent) {
+    CircuitBreakerCommand command = getCommand("slowCall");
+    command.setSlowCallDuration(millis);
+    command.setSlowCallRate(percent);
+    return this;
+  }
+
+  /**
+   * How long the breaker refuses the calls before letting probe calls through, 10000 ms by default.
+   */
+  public CircuitBreaker<P, F> openDuration(long millis) {
+    getCommand("openDuration").setOpenDuration(millis);
+    return this;
+  }
+
+  /**
+   * The number of probe calls that must succeed to close the breaker, 3 by default.
+   */
+  public CircuitBreaker<P, F> halfOpenCalls(int calls) {
+    getCommand("halfOpenCalls").setHalfOpenCalls(calls);
+    return this;
+  }
+
+  /**
+   * Called with the same arguments instead of the method reference while the breaker is open. Without a fallback a
+   * CircuitBreakerOpenException is thrown.
+   */
+  public CircuitBreaker<P, F> fallback(ParamVoidConsumerVoidSupplier consumer) {
+    getCommand("fallback").setFallback(consumer);
+    return this;
+  }
+
+  public <T> CircuitBreaker<P, F> fallback(ParamSupplier<T> consumer) {
+    getCommand("fallback").setFallback(consumer);
+    return this;
+  }
+
+  public <T> CircuitBreaker<P, F> fallback(ParamConsumer<T> consumer) {
+    getCommand("fallback").setFallback(consumer);
+    return this;
+  }
+
+  public <T, U> CircuitBreaker<P, F> fallback(ParamBiConsumer<T, U> consumer) {
+    getCommand("fallback").setFallback(consumer);
+    return this;
+  }
+
+  public <T, U, V> CircuitBreaker<P, F> fallback(ParamTriConsumer<T, U, V> consumer) {
+    getCommand("fallback").setFallback(consumer);
+    return this;
+  }
+
+  public <T, U, V, X> CircuitBreaker<P, F> fallback(ParamTetraConsumer<T, U, V, X> consumer) {
+    getCommand("fallback").setFallback(consumer);
+    return this;
+  }
+
+  public <T, U, V, X, Y> CircuitBreaker<P, F> fallback(ParamPentaConsumer<T, U, V, X, Y> consumer) {
+    getCommand("fallback").setFallback(consumer);
+    return this;
+  }
+
+  public <T, U, V, X, Y, Z> CircuitBreaker<P, F> fallback(ParamHexaConsumer<T, U, V, X, Y, Z> consumer) {
+    getCommand("fallback").setFallback(consumer);
+    return this;
+  }
+
+  public <T, U, V, X, Y, Z, A> CircuitBreaker<P, F> fallback(ParamHeptaConsumer<T, U, V, X, Y, Z, A> consumer) {
+    getCommand("fallback").setFallback(consumer);
+    return this;
+  }
+
+  public <T> CircuitBreaker<P, F> fallback(LambdaMeta<T> lambdaMeta) {
+    getCommand("fallback").setFallback(lambdaMeta);
+    return this;
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.dsl.flow.circuitbreaker;
+
+import org.floref.core.dsl.flow.data.FlowInstruction;
+import org.floref.core.flow.reference.*;
+
+/**
+ * .circuitBreaker(classOrInstance::method) and utils.
+ */
+public interface ICircuitBreaker<P, F> extends FlowInstruction {
+
+  default CircuitBreaker<P, F> circuitBreaker(ParamVoidConsumerVoidSupplier consumer) {
+    return new CircuitBreaker(this, consumer);
+  }
+
+  default <T> CircuitBreaker<P, F> circuitBreaker(ParamSupplier<T> consumer) {
+    return new CircuitBreaker(this, consumer);
+  }
+
+  default <T> CircuitBreaker<P, F> circuitBreaker(ParamConsumer<T> consumer) {
+    return new CircuitBreaker(this, consumer);
+  }
+
+  default <T, U> CircuitBreaker<P, F> circuitBreaker(ParamBiConsumer<T, U> consumer) {
+    return new CircuitBreaker(this, consumer);
+  }
+
+  default <T, U, V> CircuitBreaker<P, F> circuitBreaker(ParamTriConsumer<T, U, V> consumer) {
+    return new CircuitBreaker(this, consumer);
+  }
+
+  default <T, U, V, X> CircuitBreaker<P, F> circuitBreaker(ParamTetraConsumer<T, U, V, X> consumer) {
+    return new CircuitBreaker(this, consumer);
+  }
+
+  default <T, U, V, X, Y> CircuitBreaker<P, F> circuitBreaker(ParamPentaConsumer<T, U, V, X, Y> consumer) {
+    return new CircuitBreaker(this, consumer);
+  }
+
+  default <T, U, V, X, Y, Z> CircuitBreaker<P, F> circuitBreaker(ParamHexaConsumer<T, U, V, X, Y, Z> consumer) {
+    return new CircuitBreaker(this, consumer);
+  }
+
+  default <T, U, V, X, Y, Z, A> CircuitBreaker<P, F> circuitBreaker(ParamHeptaConsumer<T, U, V, X, Y, Z, A> consumer) {
+    return new CircuitBreaker(this, consumer);
+  }
+
+  default <T> CircuitBreaker<P, F> circuitBreaker(LambdaMeta<T> lambdaMeta) {
+    return new CircuitBreaker(this, lambdaMeta);
+  }
+}
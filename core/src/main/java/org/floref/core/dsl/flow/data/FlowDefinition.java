@@ -17,14 +17,19 @@
 package org.floref.core.dsl.flow.data;
 
 
+import org.floref.core.config.FlowConfiguration;
 import org.floref.core.dsl.command.FlowCommand;
+import org.floref.core.dsl.command.MethodReferenceCommand;
 import org.floref.core.dsl.command.group.ParentCommand;
 import org.floref.core.dsl.validator.FlowValidator;
 import org.floref.core.exception.FlowDefinitionException;
+import org.floref.core.flow.compile.CompiledFlow;
+import org.floref.core.flow.compile.FlowCompiler;
 import org.floref.core.flow.reference.LambdaMeta;
 import org.floref.core.flow.reference.LambdaMetaBuilder;
 import org.floref.core.flow.reference.MethodReference;
 import org.floref.core.flow.reference.Methods;
+import org.floref.core.flow.run.FlowVarLayout;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
@@ -40,9 +45,14 @@ import java.util.List;
  */
 public class FlowDefinition<T> {
   String id;
-  boolean validated;
+  volatile boolean validated;
   FlowCommand startCommand;
   LambdaMeta flowReference;  // This is the flow reference.
+  volatile CompiledFlow compiledFlow; // null if the flow is interpreted.
+  volatile Boolean async; // null until read from the configuration.
+  String executor; // The bulkhead of the flow, null for the common executor.
+  volatile boolean coalesce; // Concurrent calls with equal arguments share one run.
+  volatile FlowVarLayout flowVarLayout; // null until the flow is first run.
 
   public FlowDefinition(MethodReference<T> flowRef) {
     init(flowRef);
@@ -87,6 +97,7 @@ public class FlowDefinition<T> {
 
   public void setStartCommand(FlowCommand startCommand) {
     this.startCommand = startCommand;
+    flowVarLayout = null;
   }
 
   public Class<T> getFlowClass() {
@@ -100,10 +111,89 @@ public class FlowDefinition<T> {
   public void validate() {
     if (!validated) {
       FlowValidator.validate(this);
+      if (compiledFlow == null) {
+        compiledFlow = FlowCompiler.compileIfEnabled(this);
+      }
       validated = true;
     }
   }
 
+  public CompiledFlow getCompiledFlow() {
+    return compiledFlow;
+  }
+
+  public void setCompiledFlow(CompiledFlow compiledFlow) {
+    this.compiledFlow = compiledFlow;
+  }
+
+  /**
+   * @return true if a flow returning CompletableFuture is run in async mode, see {@link FlowConfiguration#asyncFlows}.
+   */
+  public boolean isAsync() {
+    Boolean async = this.async;
+    if (async == null) {
+      async = Boolean.parseBoolean(FlowConfiguration.get(FlowConfiguration.asyncFlows, "false"));
+      this.async = async;
+    }
+    return async;
+  }
+
+  public void setAsync(boolean async) {
+    this.async = async;
+  }
+
+  /**
+   * @return the name of the bulkhead running the async calls, the forks and the groups of this flow, null for the
+   * common executor. See {@link org.floref.core.flow.run.Bulkheads}.
+   */
+  public String getExecutor() {
+    return executor;
+  }
+
+  public void setExecutor(String executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * @return true if a call made while a call with equal arguments is running does not run the flow again but shares
+   * the result or the exception of the running one.
+   */
+  public boolean isCoalesce() {
+    return coalesce;
+  }
+
+  public void setCoalesce(boolean coalesce) {
+    this.coalesce = coalesce;
+  }
+
+  /**
+   * @return the @FlowVar slots of the flow parameters and of its steps, that a session started by this flow holds.
+   */
+  public FlowVarLayout getFlowVarLayout() {
+    FlowVarLayout layout = flowVarLayout;
+    if (layout == null) {
+      List<Integer> slots = new ArrayList<>();
+      addFlowVarSlots(flowReference, slots);
+      for (FlowCommand flowCommand : getFlowCommands()) {
+        if (flowCommand instanceof MethodReferenceCommand) {
+          addFlowVarSlots(((MethodReferenceCommand) flowCommand).getLambdaMeta(), slots);
+        }
+      }
+      flowVarLayout = layout = FlowVarLayout.of(slots);
+    }
+    return layout;
+  }
+
+  private static void addFlowVarSlots(LambdaMeta lambdaMeta, List<Integer> slots) {
+    if (lambdaMeta == null || lambdaMeta.getParameters() == null) {
+      return;
+    }
+    for (Object parameter : lambdaMeta.getParameters()) {
+      slots.add(((LambdaMeta.MethodParameter) parameter).getFlowVarSlot());
+    }
+    slots.add(lambdaMeta.getReturnFlowVarSlot());
+  }
+
   public static String getIdFromFlowRef(Method method) {
     return Methods.getMethodReferenceAsString(method);
   }
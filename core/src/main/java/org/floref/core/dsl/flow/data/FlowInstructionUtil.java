@@ -23,6 +23,8 @@ import org.floref.core.dsl.command.group.GroupCommandUtil;
 import org.floref.core.exception.FlowDefinitionException;
 import org.floref.core.flow.reference.MethodReference;
 
+import java.util.stream.Collector;
+
 /**
  * DSL utils.
  *
@@ -47,6 +49,20 @@ public class FlowInstructionUtil {
     return (I) flowCommand;
   }
 
+  public static <I> I setCollector(FlowInstruction flowCommand, Collector collector) {
+    GroupCommandUtil groupCommandUtil = getInstructionCommand(flowCommand, GroupCommandUtil.class,
+        "'.collector' must be used with a corresponding group command");
+    groupCommandUtil.setCollector(collector);
+    return (I) flowCommand;
+  }
+
+  public static <I> I setExecutor(FlowInstruction flowCommand, String bulkhead) {
+    GroupCommandUtil groupCommandUtil = getInstructionCommand(flowCommand, GroupCommandUtil.class,
+        "'.executor' must be used with a corresponding group command");
+    groupCommandUtil.setExecutor(bulkhead);
+    return (I) flowCommand;
+  }
+
   public static <I> I setTimeout(FlowInstruction flowCommand, long millis) {
     GroupCommandUtil groupCommandUtil = getInstructionCommand(flowCommand, GroupCommandUtil.class,
         "'.timeout' must be used with a corresponding group command");
@@ -16,9 +16,13 @@
 
 package org.floref.core.dsl.flow.foreach;
 
+import org.floref.core.dsl.command.group.ForEachCommand;
 import org.floref.core.dsl.flow.BaseInstructionImpl;
 import org.floref.core.dsl.flow.data.FlowInstruction;
 import org.floref.core.dsl.flow.group.GroupUtil;
+import org.floref.core.exception.FlowDefinitionException;
+
+import static org.floref.core.dsl.flow.data.FlowInstructionUtil.getInstructionCommand;
 
 /**
  * forEach DSL entry point.
@@ -30,4 +34,52 @@ public class ForEach<P, F> extends BaseInstructionImpl<P, F> implements GroupUti
   public ForEach(FlowInstruction flowInstruction) {
     copyData(flowInstruction);
   }
+
+  /**
+   * How many consecutive elements a worker takes at once. By default the elements are split in about 4 chunks per
+   * worker.
+   */
+  public ForEach<P, F> grain(int grain) {
+    if (grain < 1) {
+      throw new FlowDefinitionException("'.grain' must be at least 1");
+    }
+    getInstructionCommand(this, ForEachCommand.class, "'.grain' currently supported only for '.forEach'")
+        .setGrain(grain);
+    return this;
+  }
+
+  /**
+   * How many chunks run in parallel, by default flow.run.thread.pool.max.size.
+   */
+  public ForEach<P, F> workers(int workers) {
+    if (workers < 1) {
+      throw new FlowDefinitionException("'.workers' must be at least 1");
+    }
+    getInstructionCommand(this, ForEachCommand.class, "'.workers' currently supported only for '.forEach'")
+        .setWorkers(workers);
+    return this;
+  }
+
+  /**
+   * How many elements are processed at once when the input is an Iterator, an Iterable, a Stream or a Publisher. They
+   * are pulled lazily, so the memory used by the input depends on the window and not on its size. By default
+   * flow.run.foreach.window or 256.
+   */
+  public ForEach<P, F> window(int window) {
+    if (window < 1) {
+      throw new FlowDefinitionException("'.window' must be at least 1");
+    }
+    getInstructionCommand(this, ForEachCommand.class, "'.window' currently supported only for '.forEach'")
+        .setWindow(window);
+    return this;
+  }
+
+  /**
+   * The results are in the order of the elements instead of the order in which the chunks complete.
+   */
+  public ForEach<P, F> ordered() {
+    getInstructionCommand(this, ForEachCommand.class, "'.ordered' currently supported only for '.forEach'")
+        .setOrdered(true);
+    return this;
+  }
 }
@@ -59,6 +59,25 @@ public class FromBaseInstructionImpl<P, F> extends BaseInstructionImpl<P, F> {
     return this;
   }
 
+  /**
+   * Runs the async calls, the forks and the groups of this flow on the executor of the given bulkhead, so that it does
+   * not take the threads of the other flows. See {@link org.floref.core.flow.run.Bulkheads}.
+   */
+  public FromBaseInstructionImpl<P, F> executor(String bulkhead) {
+    getFlowData().getFlowDefinition().setExecutor(bulkhead);
+    return this;
+  }
+
+  /**
+   * Concurrent calls of this flow with equal arguments (by equals/hashCode) run the flow only once and all get the
+   * result or the exception of that run, e.g. to avoid a stampede of identical lookups when a cache entry expires.
+   * Callers arriving after the run completed run the flow again.
+   */
+  public FromBaseInstructionImpl<P, F> coalesce() {
+    getFlowData().getFlowDefinition().setCoalesce(true);
+    return this;
+  }
+
   //  public P end() {
   //    // End the last group.
   //    ParentCommand grandParent = getFlowData().getCurrentParent().getParent();
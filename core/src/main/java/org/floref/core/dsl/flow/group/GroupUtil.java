@@ -20,7 +20,11 @@ import org.floref.core.dsl.flow.data.FlowInstruction;
 import org.floref.core.dsl.flow.data.FlowInstructionUtil;
 import org.floref.core.flow.reference.*;
 
+import java.util.stream.Collector;
+
 import static org.floref.core.dsl.flow.data.FlowInstructionUtil.setAggregator;
+import static org.floref.core.dsl.flow.data.FlowInstructionUtil.setCollector;
+import static org.floref.core.dsl.flow.data.FlowInstructionUtil.setExecutor;
 
 /**
  * Contains group util commands.
@@ -37,6 +41,23 @@ public interface GroupUtil<I> extends FlowInstruction {
     return FlowInstructionUtil.setTimeout(this, millis);
   }
 
+  /**
+   * Runs the children on the executor of the given bulkhead instead of the one of the flow, see
+   * {@link org.floref.core.flow.run.Bulkheads}.
+   */
+  default I executor(String bulkhead) {
+    return setExecutor(this, bulkhead);
+  }
+
+  /**
+   * Reduces the children results with a collector instead of an aggregator. Each worker accumulates into its own
+   * container, the containers are combined when the group completes and the finished value is the group result, e.g.
+   * <b>.collector(Collectors.summingLong(Long::longValue))</b>.
+   */
+  default <T, A, R> I collector(Collector<T, A, R> collector) {
+    return setCollector(this, collector);
+  }
+
   default <T> I aggregator(ParamConsumer<T> consumer) {
     return setAggregator(this, consumer);
   }
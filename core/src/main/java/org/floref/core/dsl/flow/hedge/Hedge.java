@@ -0,0 +1,65 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.dsl.flow.hedge;
+
+import org.floref.core.dsl.command.HedgeCommand;
+import org.floref.core.dsl.flow.BaseInstructionImpl;
+import org.floref.core.dsl.flow.data.FlowInstruction;
+import org.floref.core.flow.reference.LambdaMeta;
+import org.floref.core.flow.reference.MethodReference;
+
+import static org.floref.core.dsl.command.FlowCommandBuilders.HEDGE;
+import static org.floref.core.dsl.flow.data.FlowInstructionUtil.getInstructionCommand;
+
+/**
+ * .hedge utils like delay, percentile.
+ *
+ * @author Cristian Donoiu
+ */
+public class Hedge<P, F> extends BaseInstructionImpl<P, F> {
+
+  public Hedge(FlowInstruction src, MethodReference consumer) {
+    copyData(src);
+    getFlowData().addChild(HEDGE, consumer);
+  }
+
+  public Hedge(FlowInstruction src, LambdaMeta lambdaMeta) {
+    copyData(src);
+    getFlowData().addChild(HEDGE, lambdaMeta);
+  }
+
+  /**
+   * How long the first call runs before the second one is started, 100 ms by default.
+   */
+  public Hedge<P, F> delay(long millis) {
+    HedgeCommand hedgeCommand = getInstructionCommand(this, HedgeCommand.class,
+        "'.delay' currently supported only for '.hedge'");
+    hedgeCommand.setDelay(millis);
+    return this;
+  }
+
+  /**
+   * Starts the second call when the first one runs longer than the given percentile (e.g. 95) of the latencies
+   * observed for this step. The delay is used until enough latencies are known.
+   */
+  public Hedge<P, F> percentile(int percentile) {
+    HedgeCommand hedgeCommand = getInstructionCommand(this, HedgeCommand.class,
+        "'.percentile' currently supported only for '.hedge'");
+    hedgeCommand.setPercentile(percentile);
+    return this;
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.dsl.flow.hedge;
+
+import org.floref.core.dsl.flow.data.FlowInstruction;
+import org.floref.core.flow.reference.*;
+
+/**
+ * .hedge(classOrInstance::method) and utils.
+ */
+public interface IHedge<P, F> extends FlowInstruction {
+
+  default Hedge<P, F> hedge(ParamVoidConsumerVoidSupplier consumer) {
+    return new Hedge(this, consumer);
+  }
+
+  default <T> Hedge<P, F> hedge(ParamSupplier<T> consumer) {
+    return new Hedge(this, consumer);
+  }
+
+  default <T> Hedge<P, F> hedge(ParamConsumer<T> consumer) {
+    return new Hedge(this, consumer);
+  }
+
+  default <T, U> Hedge<P, F> hedge(ParamBiConsumer<T, U> consumer) {
+    return new Hedge(this, consumer);
+  }
+
+  default <T, U, V> Hedge<P, F> hedge(ParamTriConsumer<T, U, V> consumer) {
+    return new Hedge(this, consumer);
+  }
+
+  default <T, U, V, X> Hedge<P, F> hedge(ParamTetraConsumer<T, U, V, X> consumer) {
+    return new Hedge(this, consumer);
+  }
+
+  default <T, U, V, X, Y> Hedge<P, F> hedge(ParamPentaConsumer<T, U, V, X, Y> consumer) {
+    return new Hedge(this, consumer);
+  }
+
+  default <T, U, V, X, Y, Z> Hedge<P, F> hedge(ParamHexaConsumer<T, U, V, X, Y, Z> consumer) {
+    return new Hedge(this, consumer);
+  }
+
+  default <T, U, V, X, Y, Z, A> Hedge<P, F> hedge(ParamHeptaConsumer<T, U, V, X, Y, Z, A> consumer) {
+    return new Hedge(this, consumer);
+  }
+
+  default <T> Hedge<P, F> hedge(LambdaMeta<T> lambdaMeta) {
+    return new Hedge(this, lambdaMeta);
+  }
+}
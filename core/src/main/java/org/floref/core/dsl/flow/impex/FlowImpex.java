@@ -21,6 +21,9 @@ import org.floref.core.dsl.command.FlowCommand;
 import org.floref.core.dsl.command.MethodReferenceCommand;
 import org.floref.core.dsl.flow.BaseInstructionImpl;
 import org.floref.core.dsl.flow.Flows;
+import org.floref.core.dsl.flow.cache.Cache;
+import org.floref.core.dsl.flow.circuitbreaker.CircuitBreaker;
+import org.floref.core.dsl.flow.hedge.Hedge;
 import org.floref.core.exception.FlowDefinitionException;
 import org.floref.core.flow.build.FlowInstanceData;
 import org.floref.core.flow.reference.LambdaMeta;
@@ -30,7 +33,10 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Objects;
 
+import static org.floref.core.dsl.command.FlowCommandBuilders.CACHE;
+import static org.floref.core.dsl.command.FlowCommandBuilders.CIRCUIT_BREAKER;
 import static org.floref.core.dsl.command.FlowCommandBuilders.FORK;
+import static org.floref.core.dsl.command.FlowCommandBuilders.HEDGE;
 import static org.floref.core.dsl.command.FlowCommandBuilders.TO;
 
 /**
@@ -79,6 +85,20 @@ public class FlowImpex {
           baseInstructionImpl.fork(lambdaMeta);
           break;
         }
+        case CIRCUIT_BREAKER: {
+          importCircuitBreaker(step, baseInstructionImpl.circuitBreaker(lambdaMeta));
+          break;
+        }
+        case HEDGE: {
+          Hedge hedge = baseInstructionImpl.hedge(lambdaMeta);
+          if (step.getDelay() != null) {
+            hedge.delay(step.getDelay());
+          }
+          if (step.getPercentile() != null) {
+            hedge.percentile(step.getPercentile().intValue());
+          }
+          break;
+        }
 //        case WHEN: {
 //          flowBase.when(lambdaMeta);
 //          for (FlowStep child : step.getChildren()) {
@@ -95,6 +115,10 @@ public class FlowImpex {
 //          flowBase.end();
 //          break;
 //        }
+        case CACHE: {
+          importCache(step, baseInstructionImpl.cache(lambdaMeta));
+          break;
+        }
         default: {
           throw new FlowDefinitionException("Unsupported step type: " + step.getType());
         }
@@ -102,6 +126,45 @@ public class FlowImpex {
     }
   }
 
+  private static void importCircuitBreaker(FlowStep step, CircuitBreaker circuitBreaker) {
+    if (step.getName() != null) {
+      circuitBreaker.name(step.getName());
+    }
+    if (step.getWindow() != null) {
+      circuitBreaker.window(step.getWindow().intValue());
+    }
+    if (step.getFailureRate() != null) {
+      circuitBreaker.failureRate(step.getFailureRate().intValue());
+    }
+    if (step.getSlowCallDuration() != null) {
+      circuitBreaker.slowCall(step.getSlowCallDuration(), step.getSlowCallRate().intValue());
+    }
+    if (step.getOpenDuration() != null) {
+      circuitBreaker.openDuration(step.getOpenDuration());
+    }
+    if (step.getHalfOpenCalls() != null) {
+      circuitBreaker.halfOpenCalls(step.getHalfOpenCalls().intValue());
+    }
+    if (step.getFallback() != null) {
+      circuitBreaker.fallback(step.getFallbackLambdaMeta());
+    }
+  }
+
+  private static void importCache(FlowStep step, Cache cache) {
+    if (step.getMaxSize() != null) {
+      cache.maxSize(step.getMaxSize().intValue());
+    }
+    if (step.getTtl() != null) {
+      cache.ttl(step.getTtl());
+    }
+    if (step.getRefreshAfter() != null) {
+      cache.refreshAfter(step.getRefreshAfter());
+    }
+    if (step.getKey() != null) {
+      cache.key(step.getKeyLambdaMeta());
+    }
+  }
+
   public static void importFlows(String json) {
     Map map = Json.read(json).asMap();
     FlowPayload payload = new FlowPayload(map);
@@ -114,6 +177,12 @@ public class FlowImpex {
     for (FlowStep flow : payload.getFlows()) {
       LambdaMeta from = flow.getRefLambdaMeta();
       BaseInstructionImpl baseInstructionImpl = Flows.from(from);
+      if (flow.getExecutor() != null) {
+        baseInstructionImpl.getFlowData().getFlowDefinition().setExecutor(flow.getExecutor());
+      }
+      if (Boolean.TRUE.equals(flow.getCoalesce())) {
+        baseInstructionImpl.getFlowData().getFlowDefinition().setCoalesce(true);
+      }
       importFlow(flow, baseInstructionImpl);
       Object flowInstance = baseInstructionImpl.build();
     }
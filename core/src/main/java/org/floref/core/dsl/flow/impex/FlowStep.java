@@ -78,7 +78,10 @@ public class FlowStep {
   }
 
   public LambdaMeta getRefLambdaMeta() {
-    String ref = getRef();
+    return toLambdaMeta(getRef());
+  }
+
+  private static LambdaMeta toLambdaMeta(String ref) {
     LambdaMeta lambdaMeta = null;
     if (ref != null) {
       if (ref.contains("::")) {
@@ -119,6 +122,182 @@ public class FlowStep {
     set("stopOnException", stopOnException);
   }
 
+  public Long getGrain() {
+    return get("grain", Long.class);
+  }
+
+  public void setGrain(long grain) {
+    set("grain", grain);
+  }
+
+  public Long getWorkers() {
+    return get("workers", Long.class);
+  }
+
+  public void setWorkers(long workers) {
+    set("workers", workers);
+  }
+
+  public String getExecutor() {
+    return get("executor", String.class);
+  }
+
+  public void setExecutor(String executor) {
+    set("executor", executor);
+  }
+
+  public Boolean getCoalesce() {
+    return get("coalesce", Boolean.class);
+  }
+
+  public void setCoalesce(boolean coalesce) {
+    set("coalesce", coalesce);
+  }
+
+  public Long getWindow() {
+    return get("window", Long.class);
+  }
+
+  public void setWindow(long window) {
+    set("window", window);
+  }
+
+  public String getName() {
+    return get("name", String.class);
+  }
+
+  public void setName(String name) {
+    set("name", name);
+  }
+
+  public Long getFailureRate() {
+    return get("failureRate", Long.class);
+  }
+
+  public void setFailureRate(long failureRate) {
+    set("failureRate", failureRate);
+  }
+
+  public Long getSlowCallDuration() {
+    return get("slowCallDuration", Long.class);
+  }
+
+  public void setSlowCallDuration(long slowCallDuration) {
+    set("slowCallDuration", slowCallDuration);
+  }
+
+  public Long getSlowCallRate() {
+    return get("slowCallRate", Long.class);
+  }
+
+  public void setSlowCallRate(long slowCallRate) {
+    set("slowCallRate", slowCallRate);
+  }
+
+  public Long getOpenDuration() {
+    return get("openDuration", Long.class);
+  }
+
+  public void setOpenDuration(long openDuration) {
+    set("openDuration", openDuration);
+  }
+
+  public Long getHalfOpenCalls() {
+    return get("halfOpenCalls", Long.class);
+  }
+
+  public void setHalfOpenCalls(long halfOpenCalls) {
+    set("halfOpenCalls", halfOpenCalls);
+  }
+
+  public Long getDelay() {
+    return get("delay", Long.class);
+  }
+
+  public void setDelay(long delay) {
+    set("delay", delay);
+  }
+
+  public Long getPercentile() {
+    return get("percentile", Long.class);
+  }
+
+  public void setPercentile(long percentile) {
+    set("percentile", percentile);
+  }
+
+  public String getFallback() {
+    return get("fallback", String.class);
+  }
+
+  public LambdaMeta getFallbackLambdaMeta() {
+    return toLambdaMeta(getFallback());
+  }
+
+  public void setFallback(String ref) {
+    set("fallback", ref);
+  }
+
+  public Long getMaxSize() {
+    return get("maxSize", Long.class);
+  }
+
+  public void setMaxSize(long maxSize) {
+    set("maxSize", maxSize);
+  }
+
+  public Long getTtl() {
+    return get("ttl", Long.class);
+  }
+
+  public void setTtl(long ttl) {
+    set("ttl", ttl);
+  }
+
+  public Long getRefreshAfter() {
+    return get("refreshAfter", Long.class);
+  }
+
+  public void setRefreshAfter(long refreshAfter) {
+    set("refreshAfter", refreshAfter);
+  }
+
+  public String getKey() {
+    return get("key", String.class);
+  }
+
+  public LambdaMeta getKeyLambdaMeta() {
+    return toLambdaMeta(getKey());
+  }
+
+  public void setKey(String ref) {
+    set("key", ref);
+  }
+
+  public Long getQuorum() {
+    return get("quorum", Long.class);
+  }
+
+  public void setQuorum(long quorum) {
+    set("quorum", quorum);
+  }
+
+  public Boolean getAny() {
+    return get("any", Boolean.class);
+  }
+
+  public void setAny(boolean any) {
+    set("any", any);
+  }
+
+  public Boolean getOrdered() {
+    return get("ordered", Boolean.class);
+  }
+
+  public void setOrdered(boolean ordered) {
+    set("ordered", ordered);
+  }
+
   public List<FlowStep> getChildren() {
     List<Map> steps = get("steps", List.class);
     List instructionList = new ArrayList();
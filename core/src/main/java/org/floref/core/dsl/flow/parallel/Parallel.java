@@ -16,9 +16,13 @@
 
 package org.floref.core.dsl.flow.parallel;
 
+import org.floref.core.dsl.command.group.ParallelCommand;
 import org.floref.core.dsl.flow.BaseInstructionImpl;
 import org.floref.core.dsl.flow.data.FlowInstruction;
 import org.floref.core.dsl.flow.group.GroupUtil;
+import org.floref.core.exception.FlowDefinitionException;
+
+import static org.floref.core.dsl.flow.data.FlowInstructionUtil.getInstructionCommand;
 
 /**
  * Parallel entry point.
@@ -31,4 +35,26 @@ public class Parallel<P, F> extends BaseInstructionImpl<P, F> implements GroupUt
     setFlowData(src.getFlowData());
     getFlowData().setInstruction(this);
   }
+
+  /**
+   * Completes with the result of the first child that succeeds and cancels the others, e.g. to query redundant sources
+   * and continue at the speed of the fastest. Fails if all the children fail.
+   */
+  public Parallel<P, F> any() {
+    getInstructionCommand(this, ParallelCommand.class, "'.any' currently supported only for '.parallel'").setAny();
+    return this;
+  }
+
+  /**
+   * Completes when the given number of children succeeded and cancels the others. The result aggregates the results
+   * of those children, in the order they completed. Fails as soon as too many children failed to reach the quorum.
+   */
+  public Parallel<P, F> quorum(int quorum) {
+    if (quorum < 1) {
+      throw new FlowDefinitionException("'.quorum' must be at least 1");
+    }
+    getInstructionCommand(this, ParallelCommand.class, "'.quorum' currently supported only for '.parallel'")
+        .setQuorum(quorum);
+    return this;
+  }
 }
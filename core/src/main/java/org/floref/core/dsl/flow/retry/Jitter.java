@@ -0,0 +1,62 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.dsl.flow.retry;
+
+import org.floref.core.exception.FlowDefinitionException;
+
+/**
+ * How a retry delay is randomized so that the flows failing together do not all retry at the same time.
+ *
+ * @author Cristian Donoiu
+ */
+public enum Jitter {
+  /**
+   * Waits the exact delay.
+   */
+  NONE("none"),
+  /**
+   * Waits a random time between 0 and the delay.
+   */
+  FULL("full"),
+  /**
+   * Waits a random time between the initial delay and 3 times the previous wait, so the waits still grow but apart
+   * from each other.
+   */
+  DECORRELATED("decorrelated");
+
+  private final String configValue;
+
+  Jitter(String configValue) {
+    this.configValue = configValue;
+  }
+
+  public String getConfigValue() {
+    return configValue;
+  }
+
+  /**
+   * @throws FlowDefinitionException if the value is not one of none, full or decorrelated.
+   */
+  public static Jitter fromConfig(String configValue) {
+    for (Jitter jitter : values()) {
+      if (jitter.configValue.equals(configValue)) {
+        return jitter;
+      }
+    }
+    throw new FlowDefinitionException("Unknown retry jitter: " + configValue);
+  }
+}
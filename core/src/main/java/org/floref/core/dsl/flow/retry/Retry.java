@@ -21,6 +21,7 @@ import org.floref.core.dsl.command.RetryCommand;
 import org.floref.core.dsl.flow.BaseInstructionImpl;
 import org.floref.core.dsl.flow.data.FlowInstruction;
 import org.floref.core.flow.reference.MethodReference;
+import org.floref.core.flow.run.RetryBudget;
 
 import static org.floref.core.dsl.command.FlowCommandBuilders.RETRY;
 import static org.floref.core.dsl.flow.data.FlowInstructionUtil.getInstructionCommand;
@@ -63,6 +64,37 @@ public class Retry<P, F> extends BaseInstructionImpl<P, F> {
     return this;
   }
 
+  /**
+   * Randomizes the delays so that the flows failing together do not retry together, none by default.
+   */
+  public Retry<P, F> jitter(Jitter jitter) {
+    RetryCommand retryCommand = getInstructionCommand(this, RetryCommand.class,
+        "'.jitter' currently supported only for '.retry'");
+    retryCommand.setJitter(jitter);
+    return this;
+  }
+
+  /**
+   * Upper bound of the delay between two attempts.
+   */
+  public Retry<P, F> maxDelay(long millis) {
+    RetryCommand retryCommand = getInstructionCommand(this, RetryCommand.class,
+        "'.maxDelay' currently supported only for '.retry'");
+    retryCommand.setMaxDelay(millis);
+    return this;
+  }
+
+  /**
+   * Takes the retries from the given budget instead of the global one, e.g. one budget per downstream system shared
+   * by the flows calling it.
+   */
+  public Retry<P, F> budget(RetryBudget budget) {
+    RetryCommand retryCommand = getInstructionCommand(this, RetryCommand.class,
+        "'.budget' currently supported only for '.retry'");
+    retryCommand.setBudget(budget);
+    return this;
+  }
+
   /**
    * Only when specified exceptions happen the retry is performed.
    * If not specified, then any exception will break a retry. This is better then retrying unrecoverable errors.
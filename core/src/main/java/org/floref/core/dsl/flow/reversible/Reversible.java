@@ -20,9 +20,12 @@ package org.floref.core.dsl.flow.reversible;
 import org.floref.core.dsl.command.group.ParentCommand;
 import org.floref.core.dsl.flow.IFork;
 import org.floref.core.dsl.flow.To;
+import org.floref.core.dsl.flow.cache.ICache;
+import org.floref.core.dsl.flow.circuitbreaker.ICircuitBreaker;
 import org.floref.core.dsl.flow.data.FlowInstruction;
 import org.floref.core.dsl.flow.data.FlowInstructionImpl;
 import org.floref.core.dsl.flow.foreach.IForEach;
+import org.floref.core.dsl.flow.hedge.IHedge;
 import org.floref.core.dsl.flow.parallel.IParallel;
 import org.floref.core.dsl.flow.retry.IRetry;
 import org.floref.core.dsl.flow.when.IWhen;
@@ -46,7 +49,10 @@ public class Reversible<P, F> extends FlowInstructionImpl<F> implements
     IParallel<Reversible<P, F>, F>,
     IForEach<Reversible<P, F>, F>,
     IReversible<Reversible<P, F>, F>,
-    IRetry<Reversible<P, F>, F> {
+    IRetry<Reversible<P, F>, F>,
+    ICircuitBreaker<Reversible<P, F>, F>,
+    IHedge<Reversible<P, F>, F>,
+    ICache<Reversible<P, F>, F> {
 
   protected FlowInstruction parent;
 
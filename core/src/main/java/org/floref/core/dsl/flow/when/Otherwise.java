@@ -18,9 +18,12 @@ package org.floref.core.dsl.flow.when;
 
 import org.floref.core.dsl.flow.IFork;
 import org.floref.core.dsl.flow.To;
+import org.floref.core.dsl.flow.cache.ICache;
+import org.floref.core.dsl.flow.circuitbreaker.ICircuitBreaker;
 import org.floref.core.dsl.flow.data.FlowInstruction;
 import org.floref.core.dsl.flow.data.FlowInstructionImpl;
 import org.floref.core.dsl.flow.foreach.IForEach;
+import org.floref.core.dsl.flow.hedge.IHedge;
 import org.floref.core.dsl.flow.parallel.IParallel;
 import org.floref.core.dsl.flow.retry.IRetry;
 import org.floref.core.dsl.flow.reversible.IReversible;
@@ -38,7 +41,10 @@ public class Otherwise<P, F> extends FlowInstructionImpl<F> implements
     IParallel<Otherwise<P, F>, F>,
     IForEach<Otherwise<P, F>, F>,
     IReversible<Otherwise<P, F>, F>,
-    IRetry<Reversible<P, F>, F> {
+    IRetry<Reversible<P, F>, F>,
+    ICircuitBreaker<Otherwise<P, F>, F>,
+    IHedge<Otherwise<P, F>, F>,
+    ICache<Otherwise<P, F>, F> {
 
   protected FlowInstruction parent;
 
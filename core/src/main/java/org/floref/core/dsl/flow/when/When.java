@@ -19,9 +19,12 @@ package org.floref.core.dsl.flow.when;
 import org.floref.core.dsl.command.group.ParentCommand;
 import org.floref.core.dsl.flow.IFork;
 import org.floref.core.dsl.flow.To;
+import org.floref.core.dsl.flow.cache.ICache;
+import org.floref.core.dsl.flow.circuitbreaker.ICircuitBreaker;
 import org.floref.core.dsl.flow.data.FlowInstruction;
 import org.floref.core.dsl.flow.data.FlowInstructionImpl;
 import org.floref.core.dsl.flow.foreach.IForEach;
+import org.floref.core.dsl.flow.hedge.IHedge;
 import org.floref.core.dsl.flow.parallel.IParallel;
 import org.floref.core.dsl.flow.retry.IRetry;
 import org.floref.core.dsl.flow.reversible.IReversible;
@@ -41,7 +44,10 @@ public class When<P, F> extends FlowInstructionImpl<F> implements
     IParallel<When<P, F>, F>,
     IForEach<When<P, F>, F>,
     IReversible<When<P, F>, F>,
-    IRetry<Reversible<P, F>, F> {
+    IRetry<Reversible<P, F>, F>,
+    ICircuitBreaker<When<P, F>, F>,
+    IHedge<When<P, F>, F>,
+    ICache<When<P, F>, F> {
 
   protected FlowInstruction parent;
 
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2020 the original author  or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.floref.core.flow.build;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.NotFoundException;
+import org.floref.core.config.FlowConfiguration;
+import org.floref.core.exception.FlowDefinitionException;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generates with javassist a class implementing a flow interface, an alternative to the JDK proxy. Each interface
+ * method is compiled to a body that boxes the arguments and calls its own {@link FlowMethodSlot} field:
+ * <pre>
+ * public String mergeTwoStrings(String s1, String s2) {
+ *   try {
+ *     return (String) slot0.invoke(new Object[]{s1, s2});
+ *   } catch (RuntimeException | Error | DeclaredException e) {
+ *     throw e;
+ *   } catch (Throwable t) {
+ *     throw undeclared(t);
+ *   }
+ * }
+ * </pre>
+ * so there is no method lookup, no flow id computation and no return type check on each call. The class is defined in
+ * its own class loader, so the flow interface and the return and exception types of its methods must be public.
+ *
+ * @author Cristian Donoiu
+ */
+public class FlowClassGenerator {
+  private static final String CLASS_SUFFIX = "$FlorefFlow";
+
+  /**
+   * Creates a new instance of a generated class implementing the flow interface of the flow instance data.
+   */
+  public static Object newFlowInstance(FlowInstanceData flowInstanceData)
+      throws ReflectiveOperationException, CannotCompileException, NotFoundException {
+    Class flowClass = flowInstanceData.getFlowClass();
+    if (!flowClass.isInterface()) {
+      throw new IllegalArgumentException(flowClass.getName() + " is not an interface");
+    }
+    List<Method> methods = getFlowMethods(flowClass);
+    checkAccessible(flowClass, methods);
+    FlowMethodSlot[] slots = new FlowMethodSlot[methods.size()];
+    for (int i = 0; i < slots.length; i++) {
+      slots[i] = flowInstanceData.getMethodSlot(methods.get(i));
+    }
+
+    GeneratedClassLoader classLoader = new GeneratedClassLoader(flowClass.getClassLoader());
+    CtClass ctClass = generate(classLoader.newClassPool(), flowClass.getName() + CLASS_SUFFIX, flowClass, methods);
+    Class<?> generatedClass = classLoader.define(ctClass);
+    return generatedClass.getConstructor(FlowInstanceData.class, FlowMethodSlot[].class)
+        .newInstance(flowInstanceData, slots);
+  }
+
+  /**
+   * The generated class can only use the public types since it is not in the runtime package of the flow interface.
+   */
+  static void checkAccessible(Class flowClass, List<Method> methods) {
+    List<Class> types = new ArrayList<>();
+    types.add(flowClass);
+    for (Method method : methods) {
+      types.add(method.getReturnType());
+      types.addAll(Arrays.asList(method.getExceptionTypes()));
+    }
+    for (Class type : types) {
+      while (type.isArray()) {
+        type = type.getComponentType();
+      }
+      if (!type.isPrimitive() && !Modifier.isPublic(type.getModifiers())) {
+        throw new FlowDefinitionException("Can not generate the flow class of " + flowClass.getName() + ", "
+            + type.getName() + " must be public. Make it public or use " + FlowConfiguration.flowInstance + "="
+            + FlowInstanceBuilder.PROXY_INSTANCE);
+      }
+    }
+  }
+
+  /**
+   * @return the public instance methods of the flow interface, including the inherited ones, one per signature.
+   */
+  static List<Method> getFlowMethods(Class flowClass) {
+    Map<String, Method> methods = new LinkedHashMap<>();
+    for (Method method : flowClass.getMethods()) {
+      if (!Modifier.isStatic(method.getModifiers())) {
+        methods.putIfAbsent(method.getName() + Arrays.toString(method.getParameterTypes()) + method.getReturnType(),
+            method);
+      }
+    }
+    return new ArrayList<>(methods.values());
+  }
+
+  static CtClass generate(ClassPool classPool, String className, Class flowClass, List<Method> methods)
+      throws CannotCompileException, NotFoundException {
+    CtClass ctClass = classPool.makeClass(className);
+    ctClass.setModifiers(Modifier.PUBLIC | Modifier.FINAL);
+    ctClass.setSuperclass(classPool.get(GeneratedFlow.class.getName()));
+    ctClass.addInterface(classPool.get(flowClass.getName()));
+
+    // Constructor, copies the slots in fields.
+    StringBuilder constructor = new StringBuilder("{ super($1);");
+    for (int i = 0; i < methods.size(); i++) {
+      ctClass.addField(CtField.make("private final " + FlowMethodSlot.class.getName() + " slot" + i + ";", ctClass));
+      constructor.append(" slot").append(i).append(" = $2[").append(i).append("];");
+    }
+    ctClass.addConstructor(CtNewConstructor.make(new CtClass[]{classPool.get(FlowInstanceData.class.getName()),
+        toCtClass(classPool, FlowMethodSlot[].class)}, new CtClass[0], constructor.append(" }").toString(), ctClass));
+
+    // Flow methods.
+    for (int i = 0; i < methods.size(); i++) {
+      Method method = methods.get(i);
+      Class[] parameterTypes = method.getParameterTypes();
+      // No arguments are passed as null, same as the proxy.
+      String call = "slot" + i + ".invoke(" + (parameterTypes.length == 0 ? "null" : "$args") + ")";
+      StringBuilder body = new StringBuilder("{ try { ")
+          .append(method.getReturnType() == void.class ? call + ";" : "return ($r) " + call + ";")
+          .append(" } catch (RuntimeException e) { throw e; } catch (Error e) { throw e; }");
+      for (Class exceptionType : method.getExceptionTypes()) {
+        body.append(" catch (").append(exceptionType.getName()).append(" e) { throw e; }");
+      }
+      body.append(" catch (Throwable t) { throw ").append(GeneratedFlow.class.getName()).append(".undeclared(t); } }");
+
+      CtClass[] parameters = new CtClass[parameterTypes.length];
+      for (int j = 0; j < parameters.length; j++) {
+        parameters[j] = toCtClass(classPool, parameterTypes[j]);
+      }
+      CtClass[] exceptions = new CtClass[method.getExceptionTypes().length];
+      for (int j = 0; j < exceptions.length; j++) {
+        exceptions[j] = toCtClass(classPool, method.getExceptionTypes()[j]);
+      }
+      ctClass.addMethod(CtNewMethod.make(toCtClass(classPool, method.getReturnType()), method.getName(), parameters,
+          exceptions, body.toString(), ctClass));
+    }
+    return ctClass;
+  }
+
+  static CtClass toCtClass(ClassPool classPool, Class type) throws NotFoundException {
+    return type.isArray() ? classPool.get(toCtClass(classPool, type.getComponentType()).getName() + "[]")
+        : classPool.get(type.getName());
+  }
+}
@@ -16,36 +16,35 @@
 
 package org.floref.core.flow.build;
 
-import java.util.Map;
-import java.util.concurrent.CompletableFuture;
+import org.floref.core.flow.run.FlowExecution;
 
-import static org.floref.core.flow.run.FlowUtil.CANCELLED;
+import java.util.concurrent.CompletableFuture;
 
 /**
- * Future wrapper that can be used to interrupt a flow execution.
+ * Future wrapper that can be used to interrupt a flow execution. In async mode it is completed by the last step of the
+ * flow, else by the pool thread running the flow.
  *
  * @author Cristian Donoiu
  */
 public class FlowCompletableFuture extends CompletableFuture {
-  Map session;
+  FlowExecution execution;
 
-  FlowCompletableFuture(Map session) {
-    this.session = session;
+  FlowCompletableFuture(FlowExecution execution) {
+    this.execution = execution;
   }
 
   @Override
   public boolean cancel(boolean mayInterruptIfRunning) {
+    // Cancelled first so that the flow failing on cancellation can not complete it.
+    boolean cancelled = super.cancel(mayInterruptIfRunning);
     // Since the future.cancel may be called from another thread.
-    if (session != null) {
-      session.put(CANCELLED, true);
-    }
-    return cancel(mayInterruptIfRunning);
+    execution.cancel(mayInterruptIfRunning);
+    return cancelled;
   }
 
   @Override
   public boolean isCancelled() {
-    return (session != null && Boolean.TRUE.equals(session.get(CANCELLED)))
-        || isCancelled();
+    return execution.isCancelled() || super.isCancelled();
   }
 
 }
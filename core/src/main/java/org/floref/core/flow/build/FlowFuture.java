@@ -16,14 +16,13 @@
 
 package org.floref.core.flow.build;
 
-import java.util.Map;
+import org.floref.core.flow.run.FlowExecution;
+
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
-import static org.floref.core.flow.run.FlowUtil.CANCELLED;
-
 /**
  * Future wrapper that can be used to interrupt a flow execution.
  *
@@ -31,26 +30,23 @@ import static org.floref.core.flow.run.FlowUtil.CANCELLED;
  */
 public class FlowFuture implements Future {
   Future future;
-  Map session;
+  FlowExecution execution;
 
-  FlowFuture(Future future, Map session) {
+  FlowFuture(Future future, FlowExecution execution) {
     this.future = future;
-    this.session = session;
+    this.execution = execution;
   }
 
   @Override
   public boolean cancel(boolean mayInterruptIfRunning) {
     // Since the future.cancel may be called from another thread.
-    if (session != null) {
-      session.put(CANCELLED, true);
-    }
+    execution.cancel(mayInterruptIfRunning);
     return future.cancel(mayInterruptIfRunning);
   }
 
   @Override
   public boolean isCancelled() {
-    return (session != null && Boolean.TRUE.equals(session.get(CANCELLED)))
-        || future.isCancelled();
+    return execution.isCancelled() || future.isCancelled();
   }
 
   @Override
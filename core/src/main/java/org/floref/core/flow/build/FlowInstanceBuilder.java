@@ -16,11 +16,17 @@
 
 package org.floref.core.flow.build;
 
+import javassist.CannotCompileException;
+import javassist.NotFoundException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.floref.core.config.FlowConfiguration;
 import org.floref.core.dsl.flow.data.FlowDefinition;
 import org.floref.core.exception.FlowDefinitionException;
 import org.floref.core.exception.FlowNotAnInterfaceException;
 import org.floref.core.flow.reference.LambdaMeta;
 import org.floref.core.flow.registry.FlowRegistry;
+import org.floref.core.flow.registry.ResolvedTargets;
 
 import java.lang.reflect.Proxy;
 
@@ -28,6 +34,10 @@ import java.lang.reflect.Proxy;
  * @author Cristian Donoiu
  */
 public class FlowInstanceBuilder {
+  private static final Log LOG = LogFactory.getLog(FlowInstanceBuilder.class);
+
+  public static final String PROXY_INSTANCE = "proxy";
+  public static final String GENERATED_INSTANCE = "generated";
 
   public static void build(FlowDefinition flowDefinition, boolean updateDefinition) {
     LambdaMeta lambdaMeta = flowDefinition.getFlowReference();
@@ -38,15 +48,13 @@ public class FlowInstanceBuilder {
       if (!FlowRegistry.isFlowInstanceRegistered(flowDefinition)) {
         synchronized (flowClass) {
           if (!FlowRegistry.isFlowInstanceRegistered(flowDefinition)) {
-            FlowInvocationHandler flowInvocationHandler = new FlowInvocationHandler();
-            // https://docs.oracle.com/javase/8/docs/technotes/guides/reflection/proxy.html
-            Object flowInstance = Proxy.newProxyInstance(
-                flowClass.getClassLoader(),
-                new Class[]{flowClass},
-                flowInvocationHandler);
+            FlowInstanceData flowInstanceData = new FlowInstanceData();
+            flowInstanceData.setFlowClass(flowDefinition.getFlowClass());
+            flowInstanceData.add(flowDefinition);
+            flowInstanceData.setFlow(newFlowInstance(flowInstanceData));
 
             // Register the flow.
-            FlowRegistry.registerNewFlow(flowDefinition, flowInstance, flowInvocationHandler);
+            FlowRegistry.registerNewFlow(flowDefinition, flowInstanceData);
             return;
           }
         }
@@ -62,6 +70,7 @@ public class FlowInstanceBuilder {
           flowInstanceData.add(flowDefinition);    // Add first time definition on that method.
         } else {
           flowInstanceData.update(flowDefinition); // Replaces the old definition.
+          ResolvedTargets.invalidateAll();
         }
       }
 
@@ -74,6 +83,33 @@ public class FlowInstanceBuilder {
     }
   }
 
+  /**
+   * Creates the flow instance, a generated class if so configured, otherwise a JDK proxy. A flow interface that is not
+   * public can not be generated and is rejected.
+   */
+  private static Object newFlowInstance(FlowInstanceData flowInstanceData) {
+    Class flowClass = flowInstanceData.getFlowClass();
+    String instanceType = FlowConfiguration.get(FlowConfiguration.flowInstance, PROXY_INSTANCE);
+    if (GENERATED_INSTANCE.equals(instanceType) && flowClass.isInterface()) {
+      try {
+        return FlowClassGenerator.newFlowInstance(flowInstanceData);
+      } catch (ReflectiveOperationException | CannotCompileException | NotFoundException | LinkageError e) {
+        LOG.warn("Could not generate flow class for " + flowClass.getName() + ", using a proxy: " + e.getMessage());
+      }
+    } else if (!PROXY_INSTANCE.equals(instanceType) && !GENERATED_INSTANCE.equals(instanceType)) {
+      throw new FlowDefinitionException("Unknown " + FlowConfiguration.flowInstance + " value: " + instanceType);
+    }
+
+    FlowInvocationHandler flowInvocationHandler = new FlowInvocationHandler();
+    flowInvocationHandler.setFlowInstanceData(flowInstanceData);
+    flowInstanceData.setFlowInvocationHandler(flowInvocationHandler);
+    // https://docs.oracle.com/javase/8/docs/technotes/guides/reflection/proxy.html
+    return Proxy.newProxyInstance(
+        flowClass.getClassLoader(),
+        new Class[]{flowClass},
+        flowInvocationHandler);
+  }
+
   public static void build(FlowDefinition flowDefinition) {
     build(flowDefinition, false);
   }
@@ -17,6 +17,7 @@
 package org.floref.core.flow.build;
 
 import org.floref.core.dsl.flow.data.FlowDefinition;
+import org.floref.core.flow.reference.LambdaMeta;
 import org.floref.core.dsl.flow.impex.FlowStep;
 import org.floref.core.flow.reference.Methods;
 
@@ -24,6 +25,7 @@ import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class FlowInstanceData {
   Object flow;
@@ -32,6 +34,7 @@ public class FlowInstanceData {
   boolean isValidated;
   String stringValue;
   FlowInvocationHandler flowInvocationHandler;
+  ConcurrentHashMap<String, FlowMethodSlot> methodSlots = new ConcurrentHashMap<>(); // Flow entry points by flow id.
 
   public Object getFlow() {
     return flow;
@@ -60,6 +63,7 @@ public class FlowInstanceData {
   public void add(FlowDefinition flowDefinition) {
     flowDefinitions.put(flowDefinition.getId(), flowDefinition);
     stringValue = null;
+    getMethodSlot(flowDefinition).setFlowDefinition(flowDefinition);
   }
 
   public FlowDefinition getFlowDefinition(String flowDefinitionId) {
@@ -84,6 +88,22 @@ public class FlowInstanceData {
   public void update(FlowDefinition flowDefinition) {
     flowDefinitions.put(flowDefinition.getId(), flowDefinition);
     stringValue = null;
+    getMethodSlot(flowDefinition).setFlowDefinition(flowDefinition); // Running flows keep the old definition.
+  }
+
+  /**
+   * @return the slot through which the flow instance runs the flow of the given interface method. The slot exists
+   * even if the flow is not yet defined.
+   */
+  public FlowMethodSlot getMethodSlot(Method method) {
+    return methodSlots.computeIfAbsent(FlowDefinition.getIdFromFlowRef(method),
+        id -> new FlowMethodSlot(id, method.getReturnType()));
+  }
+
+  private FlowMethodSlot getMethodSlot(FlowDefinition flowDefinition) {
+    LambdaMeta lambdaMeta = flowDefinition.getFlowReference();
+    return methodSlots.computeIfAbsent(flowDefinition.getId(),
+        id -> new FlowMethodSlot(id, lambdaMeta.getLambdaMethod().getReturnType()));
   }
 
   public FlowInvocationHandler getFlowInvocationHandler() {
@@ -108,6 +128,12 @@ public class FlowInstanceData {
       definitions.add(flowStep);
       // Fill the map.
       flowDefinition.getStartCommand().definitionExport(flowStep);
+      if (flowDefinition.getExecutor() != null) {
+        flowStep.setExecutor(flowDefinition.getExecutor());
+      }
+      if (flowDefinition.isCoalesce()) {
+        flowStep.setCoalesce(true);
+      }
     }
     return definitions;
   }
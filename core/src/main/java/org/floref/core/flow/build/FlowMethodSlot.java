@@ -0,0 +1,382 @@
+/*
+ * Copyright 2020 the original author  or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.flow.build;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.floref.core.config.consumer.FlowMetrics;
+import org.floref.core.config.consumer.MetricsConsumers;
+import org.floref.core.config.consumer.MetricsHelper;
+import org.floref.core.dsl.flow.data.FlowDefinition;
+import org.floref.core.exception.FlowDefinitionException;
+import org.floref.core.flow.reference.LambdaMeta;
+import org.floref.core.flow.reference.LambdaMeta.MethodParameter;
+import org.floref.core.flow.run.AsyncCommandRunner;
+import org.floref.core.flow.run.CommandRunner;
+import org.floref.core.flow.run.FlowExecution;
+import org.floref.core.flow.run.FlowSession;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.floref.core.config.consumer.MetricsConsumer.AFTER_FLOW;
+import static org.floref.core.config.consumer.MetricsConsumer.BEFORE_FLOW;
+import static org.floref.core.config.consumer.MetricsConsumer.PARAMS;
+import static org.floref.core.config.consumer.MetricsConsumer.RESULT;
+
+/**
+ * The entry point of one flow method. Flow instances (proxy or generated) resolve the slot once per method and then
+ * dispatch every call to it. The definition is volatile so that updating a flow is seen by the next call.
+ *
+ * @author Cristian Donoiu
+ */
+public class FlowMethodSlot {
+  private static final Log LOG = LogFactory.getLog(FlowMethodSlot.class);
+
+  private static final int SYNC = 0;
+  private static final int FUTURE = 1;
+  private static final int COMPLETABLE_FUTURE = 2;
+
+  private final String id;
+  private final int returnMode;
+  private volatile FlowDefinition flowDefinition;
+  // The running coalesced calls by arguments, completed with the flow result.
+  private final Map<List<Object>, Call> inFlight = new ConcurrentHashMap<>();
+
+  /**
+   * A coalesced call shared by the leader running the flow and its followers.
+   */
+  private static class Call extends CompletableFuture<Object> {
+    final FlowExecution execution; // Of the leader, shared by the threads running its forks, groups and async steps.
+
+    Call(FlowExecution execution) {
+      this.execution = execution;
+    }
+  }
+
+  public FlowMethodSlot(String id, Class returnType) {
+    this.id = id;
+    if (Future.class == returnType) {
+      returnMode = FUTURE;
+    } else if (CompletableFuture.class == returnType) {
+      returnMode = COMPLETABLE_FUTURE;
+    } else {
+      returnMode = SYNC;
+    }
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public FlowDefinition getFlowDefinition() {
+    return flowDefinition;
+  }
+
+  public void setFlowDefinition(FlowDefinition flowDefinition) {
+    this.flowDefinition = flowDefinition;
+  }
+
+  /**
+   * Runs the current flow definition of this slot.
+   */
+  public Object invoke(Object[] args) throws Exception {
+    // Each time read the flow definition since it might have been updated in the mean time.
+    FlowDefinition flowDefinition = this.flowDefinition;
+    if (flowDefinition == null) {
+      throw new FlowDefinitionException("Flow not yet defined for " + id);
+    }
+    if (flowDefinition.isCoalesce()) {
+      return invokeCoalesced(flowDefinition, args);
+    }
+    return invoke(flowDefinition, args);
+  }
+
+  /**
+   * Runs the flow unless a call with equal arguments is running, in which case it shares its outcome. A sync caller
+   * waits for the running call, a future caller (the leader too) gets its own future so that cancelling it does not
+   * cancel the shared run. A re-entrant call with equal arguments from within the flow execution of the running call,
+   * on any thread (e.g. a fork or a parallel child), is not coalesced since waiting for itself would never return. The
+   * in flight map is lock free for different arguments.
+   */
+  private Object invokeCoalesced(FlowDefinition flowDefinition, Object[] args) throws Exception {
+    List<Object> key = args == null ? Collections.emptyList() : Arrays.asList(args);
+    FlowExecution execution = getExecution();
+    Call call = new Call(execution);
+    Call running = inFlight.putIfAbsent(key, call);
+    if (running != null) {
+      if (running.execution == FlowSession.getExecution()) {
+        return invoke(flowDefinition, args);
+      }
+      return follow(running);
+    }
+    Object result;
+    try {
+      result = invoke(flowDefinition, args, execution);
+    } catch (Throwable throwable) {
+      complete(key, call, null, throwable);
+      throw throwable;
+    }
+    if (returnMode == SYNC) {
+      complete(key, call, result, null);
+      return result;
+    }
+    ((CompletableFuture<Object>) result).whenComplete((value, throwable) ->
+        complete(key, call, value, throwable == null ? null : AsyncCommandRunner.getCause(throwable)));
+    return follow(call);
+  }
+
+  private void complete(List<Object> key, Call call, Object result, Throwable throwable) {
+    inFlight.remove(key, call); // The next calls run the flow again.
+    if (throwable != null) {
+      call.completeExceptionally(throwable);
+    } else {
+      call.complete(result);
+    }
+  }
+
+  private Object follow(CompletableFuture<Object> running) throws Exception {
+    if (returnMode == SYNC) {
+      try {
+        return running.get();
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof Exception) {
+          throw (Exception) cause;
+        }
+        throw (Error) cause;
+      }
+    }
+    CompletableFuture<Object> future = new CompletableFuture<>();
+    running.whenComplete((value, throwable) -> {
+      if (throwable != null) {
+        future.completeExceptionally(AsyncCommandRunner.getCause(throwable));
+      } else {
+        future.complete(value);
+      }
+    });
+    return future;
+  }
+
+  /**
+   * @return the number of callers waiting for the running coalesced call with these arguments, 0 if none is running.
+   */
+  int getFollowers(Object... args) {
+    Call running = inFlight.get(Arrays.asList(args));
+    return running != null ? running.getNumberOfDependents() : 0;
+  }
+
+  private Object invoke(FlowDefinition flowDefinition, Object[] args) throws Exception {
+    return invoke(flowDefinition, args, returnMode == SYNC ? null : getExecution());
+  }
+
+  /**
+   * @param execution the execution of the flow if it is a gate, for a nested flow the one of the session is used.
+   */
+  private Object invoke(FlowDefinition flowDefinition, Object[] args, FlowExecution execution) throws Exception {
+    LambdaMeta lambdaMeta = flowDefinition.getFlowReference();
+
+    if (returnMode == FUTURE && !flowDefinition.isCoalesce()) {
+      Map session = FlowSession.get(); // get session map from parent thread.
+      Future future = CommandRunner.submitWithBackpressure(flowDefinition.getExecutor(), () -> {
+        FlowSession.set(session);  // Copy session from parent since this may be launched from within a flow step.
+        try {
+          return runFlow(flowDefinition, args, lambdaMeta, execution);
+        } finally {
+          FlowSession.clearSession();
+        }
+      });
+      return new FlowFuture(future, execution);
+
+    } else if (returnMode != SYNC) { // A coalesced Future flow too, so that its completion can be shared.
+      Map session = FlowSession.get(); // get session map from parent thread.
+      FlowCompletableFuture completableFuture = new FlowCompletableFuture(execution);
+      if (flowDefinition.isAsync()) {
+        // Started on the calling thread, it returns once a step is waiting for a future.
+        runFlowAsync(flowDefinition, args, lambdaMeta, execution).whenComplete((result, throwable) -> {
+          if (throwable != null) {
+            completableFuture.completeExceptionally(AsyncCommandRunner.getCause(throwable));
+          } else {
+            completableFuture.complete(result);
+          }
+        });
+        return completableFuture;
+      }
+      CommandRunner.executeWithBackpressure(flowDefinition.getExecutor(), new FutureTask<Object>(() -> {
+        FlowSession.set(session);  // Copy session from parent since this may be launched from within a flow step.
+        try {
+          Object result = runFlow(flowDefinition, args, lambdaMeta, execution);
+          completableFuture.complete(result);
+        } catch (ExecutionException e) {
+          completableFuture.completeExceptionally(e.getCause());
+        } catch (Exception e) {
+          completableFuture.completeExceptionally(e);
+        } finally {
+          FlowSession.clearSession();
+        }
+      }, null) {
+        @Override
+        protected void done() {
+          if (isCancelled()) {  // Dropped by the shedOldest policy.
+            completableFuture.completeExceptionally(new RejectedExecutionException("Flow " + id
+                + " was dropped by the executor"));
+          }
+        }
+      });
+      return completableFuture;
+    } else {
+      return runFlow(flowDefinition, args, lambdaMeta, execution);
+    }
+  }
+
+  /**
+   * @return the execution of the calling flow or a new one if this is a gate, so that a future can cancel it.
+   */
+  private static FlowExecution getExecution() {
+    FlowExecution execution = FlowSession.getExecution();
+    return execution != null ? execution : new FlowExecution();
+  }
+
+  /**
+   * Async mode version of {@link #runFlow}. The session is cleared when this returns, the commands waiting for futures
+   * set it again on the thread that continues the flow.
+   */
+  private static CompletableFuture<Object> runFlowAsync(FlowDefinition flowDefinition, Object[] args,
+                                                        LambdaMeta lambdaMeta, FlowExecution execution) {
+    String flowDefinitionId = flowDefinition.getId();
+    final boolean isGate = FlowSession.isGate();
+    final MetricsConsumers metricsConsumers = MetricsHelper.getMetricsConsumers();
+    final Object[] metricsParams = metricsConsumers.isEnabled(PARAMS) ? args : null;
+
+    CompletableFuture<Object> future;
+    try {
+      if (isGate) {
+        FlowSession.initIfNeeded(execution, flowDefinition.getFlowVarLayout());
+      }
+      flowDefinition.validate();
+      if (metricsConsumers.isEnabled(BEFORE_FLOW)) {
+        MetricsHelper.beforeFlow(metricsConsumers,
+            new FlowMetrics.Builder(flowDefinitionId).params(metricsParams).originator(isGate).build());
+      }
+      if (isGate) {
+        saveFlowVars(lambdaMeta, args);
+      }
+      future = AsyncCommandRunner.run(flowDefinition, args);
+    } catch (Exception exception) {
+      future = AsyncCommandRunner.failed(exception);
+    } finally {
+      if (isGate) {
+        FlowSession.clearSession();
+      }
+    }
+
+    return future.whenComplete((result, throwable) -> {
+      if (metricsConsumers.isEnabled(AFTER_FLOW)) {
+        FlowMetrics.Builder builder = new FlowMetrics.Builder(flowDefinitionId).params(metricsParams)
+            .originator(isGate);
+        if (throwable != null) {
+          builder.exception(AsyncCommandRunner.getCause(throwable));
+        } else if (metricsConsumers.isEnabled(RESULT)) {
+          builder.result(result);
+        }
+        MetricsHelper.afterFlow(metricsConsumers, builder.build());
+      }
+      if (isGate) {
+        execution.complete();
+      }
+    });
+  }
+
+  /**
+   * Saves the @FlowVar arguments of a gate flow in the session.
+   */
+  private static void saveFlowVars(LambdaMeta lambdaMeta, Object[] args) {
+    List<MethodParameter> parameters = lambdaMeta.getParameters();
+    for (int i = 0; i < parameters.size(); i++) {
+      MethodParameter methodParameter = parameters.get(i);
+      if (methodParameter.isFlowVar()) {
+        FlowSession.set(methodParameter.getFlowVarSlot(), args[i]);
+      }
+    }
+  }
+
+  private static Object runFlow(FlowDefinition flowDefinition, Object[] args, LambdaMeta lambdaMeta,
+                                FlowExecution execution) throws Exception {
+    String flowDefinitionId = flowDefinition.getId();
+    // If this is a top level flow execution (that might aggregate other flows) only the top one should init session.
+    final boolean isGate = FlowSession.isGate();
+    // Metrics are built only if consumed.
+    final MetricsConsumers metricsConsumers = MetricsHelper.getMetricsConsumers();
+    final Object[] metricsParams = metricsConsumers.isEnabled(PARAMS) ? args : null;
+
+    try {
+      if (isGate) {
+        // 1. Init session map since this is top level.
+        FlowSession.initIfNeeded(execution != null ? execution : new FlowExecution(),
+            flowDefinition.getFlowVarLayout());
+      }
+
+      // Validate lazily it on first run, since not all dependencies(beans) might be available when the flow is defined.
+      // Can also be validated when the application is started (e.g. Spring Context loaded) by calling
+      // Flows.validateAll() if configuration is set on true.
+      flowDefinition.validate();
+
+      // MetricsHelper.
+      if (metricsConsumers.isEnabled(BEFORE_FLOW)) {
+        MetricsHelper.beforeFlow(metricsConsumers,
+            new FlowMetrics.Builder(flowDefinitionId).params(metricsParams).originator(isGate).build());
+      }
+
+      if (isGate) {
+        // 2. Save some args in session only if this is top level.
+        saveFlowVars(lambdaMeta, args);
+      }
+
+      Object result = CommandRunner.run(flowDefinition, args);
+
+      if (metricsConsumers.isEnabled(AFTER_FLOW)) {
+        MetricsHelper.afterFlow(metricsConsumers, new FlowMetrics.Builder(flowDefinitionId).params(metricsParams)
+            .originator(isGate).result(metricsConsumers.isEnabled(RESULT) ? result : null).build());
+      }
+      return result;
+
+    } catch (Exception exception) {
+      if (metricsConsumers.isEnabled(AFTER_FLOW)) {
+        MetricsHelper.afterFlow(metricsConsumers, new FlowMetrics.Builder(flowDefinitionId).params(metricsParams)
+            .exception(exception).originator(isGate).build());
+      }
+      throw exception; // does not alter stacktrace
+    } finally {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Clear session = " + isGate);
+      }
+      // Cleaning session important to not leak data into subsequent users of this thread.
+      if (isGate) {
+        FlowSession.getExecution().complete();
+        FlowSession.clearSession(); // Async actions will save their own copy.
+      }
+    }
+  }
+}
@@ -34,7 +34,7 @@ public class FlowObjectMethods {
   }
 
   public static int hashCode(Object flow) {
-    return flow.hashCode();
+    return System.identityHashCode(flow); // flow.hashCode() would call back the flow.
   }
 
   private static String indentation(int indent) {
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2020 the original author  or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.flow.build;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.LoaderClassPath;
+
+import java.io.IOException;
+
+/**
+ * Class loader for generated classes. It delegates to the class loader of the flow interface and, for the floref
+ * classes used by the generated code, to the floref class loader. The classes are generated with javassist from a
+ * class pool that sees the same classes.
+ *
+ * @author Cristian Donoiu
+ */
+public class GeneratedClassLoader extends ClassLoader {
+
+  public GeneratedClassLoader(ClassLoader parent) {
+    super(parent);
+  }
+
+  @Override
+  protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+    try {
+      return super.loadClass(name, resolve);
+    } catch (ClassNotFoundException e) {
+      return GeneratedClassLoader.class.getClassLoader().loadClass(name);
+    }
+  }
+
+  /**
+   * @return a new class pool resolving the classes like this loader does. Not cached, so the generated classes are not
+   * kept after they are defined.
+   */
+  public ClassPool newClassPool() {
+    ClassPool classPool = new ClassPool(true);
+    classPool.appendClassPath(new LoaderClassPath(getParent()));
+    classPool.appendClassPath(new LoaderClassPath(GeneratedClassLoader.class.getClassLoader()));
+    return classPool;
+  }
+
+  public Class<?> define(CtClass ctClass) throws CannotCompileException {
+    byte[] classBytes;
+    try {
+      classBytes = ctClass.toBytecode();
+    } catch (IOException e) {
+      throw new CannotCompileException(e);
+    }
+    ctClass.detach();
+    return defineClass(ctClass.getName(), classBytes, 0, classBytes.length);
+  }
+}
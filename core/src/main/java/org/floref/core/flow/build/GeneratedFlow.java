@@ -0,0 +1,59 @@
+/*
+ * Copyright 2020 the original author  or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.flow.build;
+
+import java.lang.reflect.UndeclaredThrowableException;
+
+/**
+ * Base class of the generated flow classes. The generated subclass implements the flow interface with one method per
+ * flow method that calls its {@link FlowMethodSlot} directly.
+ *
+ * @author Cristian Donoiu
+ */
+public abstract class GeneratedFlow {
+  protected final FlowInstanceData flowInstanceData;
+
+  protected GeneratedFlow(FlowInstanceData flowInstanceData) {
+    this.flowInstanceData = flowInstanceData;
+  }
+
+  public FlowInstanceData getFlowInstanceData() {
+    return flowInstanceData;
+  }
+
+  /**
+   * Called by a generated method for a checked exception it does not declare, same as the JDK proxy.
+   */
+  protected static UndeclaredThrowableException undeclared(Throwable throwable) {
+    return new UndeclaredThrowableException(throwable);
+  }
+
+  @Override
+  public boolean equals(Object object) {
+    return FlowObjectMethods.equals(this, object);
+  }
+
+  @Override
+  public int hashCode() {
+    return FlowObjectMethods.hashCode(this);
+  }
+
+  @Override
+  public String toString() {
+    return flowInstanceData.getStringValue();
+  }
+}
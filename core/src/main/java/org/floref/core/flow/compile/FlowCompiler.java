@@ -0,0 +1,347 @@
+/*
+ * Copyright 2020 the original author  or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.floref.core.flow.compile;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.NotFoundException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.floref.core.config.FlowConfiguration;
+import org.floref.core.dsl.command.ArgumentBinding;
+import org.floref.core.dsl.command.FlowCommand;
+import org.floref.core.dsl.command.FromCommand;
+import org.floref.core.dsl.command.MethodReferenceCommand;
+import org.floref.core.dsl.command.OtherwiseCommand;
+import org.floref.core.dsl.command.RetryCommand;
+import org.floref.core.dsl.command.ToCommand;
+import org.floref.core.dsl.command.WhenCommand;
+import org.floref.core.dsl.command.group.ParentCommand;
+import org.floref.core.dsl.flow.data.FlowDefinition;
+import org.floref.core.flow.build.GeneratedClassLoader;
+import org.floref.core.flow.reference.LambdaMeta;
+import org.floref.core.flow.run.CommandContext;
+
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compiles with javassist a flow definition into a generated class, replacing the walk over the command tree with
+ * plain control flow:
+ * <ul>
+ * <li>the children of from/otherwise become a sequence of calls</li>
+ * <li>to becomes a direct call of its method on the target captured by the method reference, or of its static method,
+ * with the arguments bound by the command. The step is still run by its command if the method or its types are not
+ * public, or when {@link MethodReferenceCommand#bindDirectCall} says so at run time (e.g. metrics are consumed)</li>
+ * <li>when/otherwise becomes an if/else</li>
+ * <li>retry becomes a loop with a try/catch</li>
+ * </ul>
+ * Any other command (or a subclass of the above) is run by the interpreter by calling its run method, so every flow
+ * can be compiled. Enabled with <code>flow.run.compile=true</code>.
+ *
+ * @author Cristian Donoiu
+ */
+public class FlowCompiler {
+  private static final Log LOG = LogFactory.getLog(FlowCompiler.class);
+
+  private static final AtomicInteger COUNTER = new AtomicInteger();
+
+  private final List<FlowCommand> commands = new ArrayList<>(); // One field per command.
+  private final List<Class> commandTypes = new ArrayList<>();
+  private final List<Object> targets = new ArrayList<>(); // One field per target of a direct call.
+  private final List<Class> targetTypes = new ArrayList<>();
+  private final ClassLoader classLoader;
+  private final StringBuilder code = new StringBuilder();
+  private int locals; // Suffix of the local variable names.
+
+  private FlowCompiler(ClassLoader classLoader) {
+    this.classLoader = classLoader;
+  }
+
+  /**
+   * @return the compiled flow if compilation is enabled by configuration, null otherwise or if compilation failed.
+   */
+  public static CompiledFlow compileIfEnabled(FlowDefinition flowDefinition) {
+    if (!Boolean.parseBoolean(FlowConfiguration.get(FlowConfiguration.compileFlows, "false"))) {
+      return null;
+    }
+    try {
+      return compile(flowDefinition);
+    } catch (ReflectiveOperationException | CannotCompileException | NotFoundException | LinkageError e) {
+      LOG.warn("Could not compile flow " + flowDefinition.getId() + ", it will be interpreted: " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Compiles the flow definition.
+   */
+  public static CompiledFlow compile(FlowDefinition flowDefinition)
+      throws ReflectiveOperationException, CannotCompileException, NotFoundException {
+    String className = FlowCompiler.class.getPackage().getName() + ".CompiledFlow$"
+        + flowDefinition.getFlowReference().getLambdaMethod().getName() + "$" + COUNTER.incrementAndGet();
+    GeneratedClassLoader classLoader = new GeneratedClassLoader(flowDefinition.getFlowClass().getClassLoader());
+    FlowCompiler compiler = new FlowCompiler(classLoader);
+    CtClass ctClass = compiler.generate(classLoader.newClassPool(), className, flowDefinition.getStartCommand());
+
+    Class<?> compiledClass = classLoader.define(ctClass);
+    LOG.debug("Compiled flow " + flowDefinition.getId() + " into " + className);
+    return (CompiledFlow) compiledClass.getConstructor(FlowCommand[].class, Object[].class)
+        .newInstance(compiler.commands.toArray(new FlowCommand[0]), compiler.targets.toArray());
+  }
+
+  private CtClass generate(ClassPool classPool, String className, FlowCommand startCommand)
+      throws CannotCompileException, NotFoundException {
+    code.append("{");
+    compile(startCommand);
+    code.append(" }");
+
+    CtClass ctClass = classPool.makeClass(className);
+    ctClass.setModifiers(Modifier.PUBLIC | Modifier.FINAL);
+    ctClass.addInterface(classPool.get(CompiledFlow.class.getName()));
+
+    // Constructor, copies the commands and the targets in typed fields.
+    StringBuilder constructor = new StringBuilder("{ super();");
+    for (int i = 0; i < commands.size(); i++) {
+      String type = commandTypes.get(i).getName();
+      ctClass.addField(CtField.make("private final " + type + " command" + i + ";", ctClass));
+      constructor.append(" command").append(i).append(" = (").append(type).append(") $1[").append(i).append("];");
+    }
+    for (int i = 0; i < targets.size(); i++) {
+      String type = targetTypes.get(i).getName();
+      ctClass.addField(CtField.make("private final " + type + " target" + i + ";", ctClass));
+      constructor.append(" target").append(i).append(" = (").append(type).append(") $2[").append(i).append("];");
+    }
+    ctClass.addConstructor(CtNewConstructor.make(new CtClass[]{classPool.get(FlowCommand.class.getName() + "[]"),
+        classPool.get(Object.class.getName() + "[]")}, new CtClass[0], constructor.append(" }").toString(), ctClass));
+
+    ctClass.addMethod(CtNewMethod.make(CtClass.voidType, "run",
+        new CtClass[]{classPool.get(CommandContext.class.getName())},
+        new CtClass[]{classPool.get(Exception.class.getName())}, code.toString(), ctClass));
+    return ctClass;
+  }
+
+  /**
+   * @return the name of the field holding the command.
+   */
+  private String command(FlowCommand command, Class type) {
+    int index = 0;
+    while (index < commands.size() && (commands.get(index) != command || commandTypes.get(index) != type)) {
+      index++;
+    }
+    if (index == commands.size()) {
+      commands.add(command);
+      commandTypes.add(type);
+    }
+    return "command" + index;
+  }
+
+  private void compile(FlowCommand command) {
+    // Exact class checks since a subclass may change the behavior.
+    Class commandClass = command.getClass();
+    if (commandClass == FromCommand.class || commandClass == OtherwiseCommand.class) {
+      compileChildren((ParentCommand) command);
+    } else if (commandClass == ToCommand.class) {
+      if (isDirectCall((ToCommand) command)) {
+        compileDirectCall((ToCommand) command);
+      } else {
+        code.append(' ').append(command(command, ToCommand.class)).append(".run($1);");
+      }
+    } else if (commandClass == WhenCommand.class) {
+      compileWhen((WhenCommand) command);
+    } else if (commandClass == RetryCommand.class) {
+      compileRetry((RetryCommand) command);
+    } else {
+      // Interpreted.
+      code.append(' ').append(command(command, FlowCommand.class)).append(".run($1);");
+    }
+  }
+
+  /**
+   * @return true if the method of the command can be called by the generated code: a public method with public types
+   * that the generated class loader sees, called on the captured target or static.
+   */
+  private boolean isDirectCall(ToCommand to) {
+    LambdaMeta lambdaMeta = to.getLambdaMeta();
+    Method method = lambdaMeta.getLambdaActualMethod();
+    if (method != lambdaMeta.getLambdaMethod() || !Modifier.isPublic(method.getModifiers())
+        || lambdaMeta.getParameters().size() != method.getParameterCount()) {
+      return false;
+    }
+    if (!Modifier.isStatic(method.getModifiers()) && !method.getDeclaringClass().isInstance(lambdaMeta.getTarget())) {
+      return false;
+    }
+    List<Class> types = new ArrayList<>(Arrays.asList(method.getParameterTypes()));
+    types.add(method.getDeclaringClass());
+    for (Class type : types) {
+      while (type.isArray()) {
+        type = type.getComponentType();
+      }
+      if (!type.isPrimitive() && (!Modifier.isPublic(type.getModifiers()) || !isVisible(type))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean isVisible(Class type) {
+    try {
+      return Class.forName(type.getName(), false, classLoader) == type;
+    } catch (ClassNotFoundException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Same as {@link MethodReferenceCommand#run(CommandContext)} for a target known at compile time:
+   * <pre>
+   * ArgumentBinding binding = to.bindDirectCall(context);
+   * if (binding == null) {
+   *   to.run(context);
+   * } else {
+   *   Object result = null;
+   *   try {
+   *     result = target.method((String) binding.parameter(0, context, 0), ...);
+   *   } catch (Throwable t) {
+   *     throw to.directCallFailed(context, t);
+   *   }
+   *   to.directCallReturned(context, result);
+   * }
+   * </pre>
+   */
+  private void compileDirectCall(ToCommand to) {
+    String toField = command(to, ToCommand.class);
+    Method method = to.getLambdaMeta().getLambdaActualMethod();
+    int local = locals++;
+    String binding = "binding" + local;
+    String result = "result" + local;
+
+    StringBuilder call = new StringBuilder();
+    if (Modifier.isStatic(method.getModifiers())) {
+      call.append(method.getDeclaringClass().getName());
+    } else {
+      call.append(target(to.getLambdaMeta().getTarget(), method.getDeclaringClass()));
+    }
+    call.append('.').append(method.getName()).append('(');
+    Class[] parameterTypes = method.getParameterTypes();
+    for (int i = 0; i < parameterTypes.length; i++) {
+      String parameter = binding + ".parameter(" + i + ", $1, 0)";
+      if (parameterTypes[i].isPrimitive()) {
+        Class wrapper = MethodType.methodType(parameterTypes[i]).wrap().returnType();
+        call.append("((").append(wrapper.getName()).append(") ").append(parameter).append(").")
+            .append(parameterTypes[i].getName()).append("Value()");
+      } else {
+        call.append('(').append(sourceName(parameterTypes[i])).append(") ").append(parameter);
+      }
+      call.append(i < parameterTypes.length - 1 ? ", " : "");
+    }
+    call.append(')');
+
+    code.append(' ').append(ArgumentBinding.class.getName()).append(' ').append(binding).append(" = ").append(toField)
+        .append(".bindDirectCall($1);")
+        .append(" if (").append(binding).append(" == null) { ").append(toField).append(".run($1); } else {")
+        .append(" Object ").append(result).append(" = null;")
+        .append(" try { ").append(method.getReturnType() == void.class ? "" : result + " = ($w) ").append(call)
+        .append("; } catch (Throwable t").append(local).append(") { throw ").append(toField)
+        .append(".directCallFailed($1, t").append(local).append("); }")
+        .append(' ').append(toField).append(".directCallReturned($1, ").append(result).append("); }");
+  }
+
+  /**
+   * @return the name of the field holding the target.
+   */
+  private String target(Object target, Class type) {
+    int index = 0;
+    while (index < targets.size() && (targets.get(index) != target || targetTypes.get(index) != type)) {
+      index++;
+    }
+    if (index == targets.size()) {
+      targets.add(target);
+      targetTypes.add(type);
+    }
+    return "target" + index;
+  }
+
+  private static String sourceName(Class type) {
+    return type.isArray() ? sourceName(type.getComponentType()) + "[]" : type.getName();
+  }
+
+  private void compileChildren(ParentCommand command) {
+    for (FlowCommand child : command.getChildren()) {
+      compile(child);
+    }
+  }
+
+  /**
+   * <pre>
+   * if (when.test(context)) { children } else { otherwise }
+   * </pre>
+   */
+  private void compileWhen(WhenCommand when) {
+    code.append(" if (").append(command(when, WhenCommand.class)).append(".test($1)) {");
+    compileChildren(when);
+    code.append(" } else {");
+    if (when.getOtherwise() != null) {
+      compile(when.getOtherwise());
+    }
+    code.append(" }");
+  }
+
+  /**
+   * Same as {@link RetryCommand#run(CommandContext)}:
+   * <pre>
+   * context.mark();
+   * long delay = retry.getDelay();
+   * for (long attempt = 1; attempt &lt;= retry.getTimes(); attempt++) {
+   *   try {
+   *     retry.attempt(context);
+   *     break;
+   *   } catch (Exception e) {
+   *     context.reset();
+   *     if (!retry.shouldRetry(e, attempt)) break;
+   *   }
+   *   delay = retry.pause(delay, context);
+   * }
+   * </pre>
+   */
+  private void compileRetry(RetryCommand retry) {
+    String retryField = command(retry, RetryCommand.class);
+    int local = locals++;
+    String delay = "delay" + local;
+    String attempt = "attempt" + local;
+    String exception = "exception" + local;
+    code.append(" $1.mark();")
+        .append(" long ").append(delay).append(" = ").append(retryField).append(".getDelay();")
+        .append(" for (long ").append(attempt).append(" = 1L; ").append(attempt).append(" <= ").append(retryField)
+        .append(".getTimes(); ").append(attempt).append("++) {")
+        .append(" try { ").append(retryField).append(".attempt($1); break; }")
+        .append(" catch (Exception ").append(exception).append(") { $1.reset(); if (!").append(retryField)
+        .append(".shouldRetry(").append(exception).append(", ").append(attempt).append(")) { break; } }")
+        .append(' ').append(delay).append(" = ").append(retryField).append(".pause(").append(delay).append(", $1);")
+        .append(" }");
+  }
+}
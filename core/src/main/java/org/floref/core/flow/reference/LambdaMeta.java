@@ -19,6 +19,7 @@ package org.floref.core.flow.reference;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.floref.core.flow.annotation.FlowVar;
+import org.floref.core.flow.run.FlowVarSlots;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
@@ -46,11 +47,15 @@ public class LambdaMeta<T> {
   // Method meta.
   protected Class returnType;
   protected FlowVar returnFlowVar;
+  protected int returnFlowVarSlot = -1; // The session slot of the returnFlowVar.
   protected List<MethodParameter> parameters;
+  protected volatile MethodInvoker invoker; // Created on first invoke.
+  protected String actualMethodReference;   // Cached getActualMethodReferenceAsString().
 
   public static class MethodParameter {
     Class clazz;
     FlowVar flowVar; // null is the parameters is not a FlowVar.
+    int flowVarSlot = -1; // The session slot of the flowVar.
     int position;
 
     public boolean isFlowVar() {
@@ -71,6 +76,14 @@ public class LambdaMeta<T> {
 
     public void setFlowVar(FlowVar flowVar) {
       this.flowVar = flowVar;
+      flowVarSlot = flowVar == null ? -1 : FlowVarSlots.slot(flowVar.value());
+    }
+
+    /**
+     * @return the session slot of the FlowVar or -1 if the parameter is not a FlowVar.
+     */
+    public int getFlowVarSlot() {
+      return flowVarSlot;
     }
 
     public int getPosition() {
@@ -106,6 +119,7 @@ public class LambdaMeta<T> {
 
   public void setLambdaActualClass(Class lambdaActualClass) {
     this.lambdaActualClass = lambdaActualClass;
+    actualMethodReference = null;
   }
 
   public Method getLambdaActualMethod() {
@@ -114,6 +128,8 @@ public class LambdaMeta<T> {
 
   public void setLambdaActualMethod(Method lambdaActualMethod) {
     this.lambdaActualMethod = lambdaActualMethod;
+    invoker = null;
+    actualMethodReference = null;
   }
 
   public Class getReturnType() {
@@ -130,6 +146,14 @@ public class LambdaMeta<T> {
 
   public void setReturnFlowVar(FlowVar returnFlowVar) {
     this.returnFlowVar = returnFlowVar;
+    returnFlowVarSlot = returnFlowVar == null ? -1 : FlowVarSlots.slot(returnFlowVar.value());
+  }
+
+  /**
+   * @return the session slot of the return FlowVar or -1 if the return is not a FlowVar.
+   */
+  public int getReturnFlowVarSlot() {
+    return returnFlowVarSlot;
   }
 
   public List<MethodParameter> getParameters() {  // The actual parameters.
@@ -141,6 +165,18 @@ public class LambdaMeta<T> {
     this.parameters = parameters;
   }
 
+  /**
+   * @return the cached invoker of the actual method.
+   */
+  public MethodInvoker getInvoker() {
+    MethodInvoker methodInvoker = invoker;
+    if (methodInvoker == null) {
+      methodInvoker = Methods.getInvoker(lambdaActualMethod);
+      invoker = methodInvoker;
+    }
+    return methodInvoker;
+  }
+
   public T getTarget() {
     return target;
   }
@@ -154,7 +190,12 @@ public class LambdaMeta<T> {
   }
 
   public String getActualMethodReferenceAsString() {
-    return lambdaActualClass.getCanonicalName() + "::" + lambdaActualMethod.getName();
+    String reference = actualMethodReference;
+    if (reference == null) {
+      reference = lambdaActualClass.getCanonicalName() + "::" + lambdaActualMethod.getName();
+      actualMethodReference = reference;
+    }
+    return reference;
   }
 
   /**
@@ -168,7 +209,7 @@ public class LambdaMeta<T> {
     Annotation[] methodAnnotations = method.getAnnotations();
     for (int i = 0; i < methodAnnotations.length; i++) {
       if (methodAnnotations[i] instanceof FlowVar) {
-        returnFlowVar = (FlowVar) methodAnnotations[i];
+        setReturnFlowVar((FlowVar) methodAnnotations[i]);
       }
     }
 
@@ -182,7 +223,7 @@ public class LambdaMeta<T> {
       Annotation[] paramAnnotations = parameter.getAnnotations();
       for (int j = 0; j < paramAnnotations.length; j++) {
         if (paramAnnotations[j] instanceof FlowVar) {
-          methodParameter.flowVar = (FlowVar) paramAnnotations[j];
+          methodParameter.setFlowVar((FlowVar) paramAnnotations[j]);
         }
       }
       parameters.add(methodParameter);
@@ -194,6 +235,8 @@ public class LambdaMeta<T> {
     if (lambdaActualMethod != method) {
       LOG.debug("Loading new method " + method.getDeclaringClass().getSimpleName() + "#" + method.getName());
       lambdaActualMethod = method;
+      invoker = null;
+      actualMethodReference = null;
       buildMethodMeta(method);
     }
   }
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2020 the original author  or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.flow.reference;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Invoker that calls the method through a method handle adapted once to the (Object, Object[])Object shape. Unlike
+ * reflection there are no access checks on each call and the JIT can inline through the handle.
+ *
+ * @author Cristian Donoiu
+ */
+public class MethodHandleInvoker implements MethodInvoker {
+
+  private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+  private static final MethodHandle TARGET_EXCEPTION;
+
+  static {
+    try {
+      TARGET_EXCEPTION = MethodHandles.lookup().findStatic(MethodHandleInvoker.class, "targetException",
+          MethodType.methodType(Object.class, Throwable.class));
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private final MethodHandle methodHandle;
+  private final MethodHandle fixedArityHandle; // (Object, Object...)Object with one Object per parameter.
+  private final int parameterCount;
+
+  /**
+   * @throws IllegalAccessException if the method is not accessible by a public lookup.
+   */
+  public MethodHandleInvoker(Method method) throws IllegalAccessException {
+    parameterCount = method.getParameterCount();
+    MethodHandle handle = MethodHandles.publicLookup().unreflect(method).asFixedArity();
+    // Only what the method throws is wrapped, the argument conversions below are outside of it.
+    MethodType type = handle.type();
+    handle = MethodHandles.catchException(handle, Throwable.class, MethodHandles.dropArguments(
+        TARGET_EXCEPTION.asType(MethodType.methodType(type.returnType(), Throwable.class)), 1, type.parameterList()));
+    if (Modifier.isStatic(method.getModifiers())) {
+      handle = MethodHandles.dropArguments(handle, 0, Object.class); // Ignore the target.
+    }
+    // Box primitives, void returns null.
+    handle = handle.asType(MethodType.genericMethodType(parameterCount + 1));
+    fixedArityHandle = handle;
+    methodHandle = handle.asSpreader(Object[].class, parameterCount).asType(INVOKER_TYPE);
+  }
+
+  @Override
+  public Object invoke(Object target, Object[] params) throws Exception {
+    try {
+      return (Object) methodHandle.invokeExact(target, params);
+    } catch (Throwable throwable) {
+      throw translate(throwable);
+    }
+  }
+
+  @Override
+  public Object invoke0(Object target) throws Exception {
+    if (parameterCount != 0) {
+      return MethodInvoker.super.invoke0(target);
+    }
+    try {
+      return (Object) fixedArityHandle.invokeExact(target);
+    } catch (Throwable throwable) {
+      throw translate(throwable);
+    }
+  }
+
+  @Override
+  public Object invoke1(Object target, Object param1) throws Exception {
+    if (parameterCount != 1) {
+      return MethodInvoker.super.invoke1(target, param1);
+    }
+    try {
+      return (Object) fixedArityHandle.invokeExact(target, param1);
+    } catch (Throwable throwable) {
+      throw translate(throwable);
+    }
+  }
+
+  @Override
+  public Object invoke2(Object target, Object param1, Object param2) throws Exception {
+    if (parameterCount != 2) {
+      return MethodInvoker.super.invoke2(target, param1, param2);
+    }
+    try {
+      return (Object) fixedArityHandle.invokeExact(target, param1, param2);
+    } catch (Throwable throwable) {
+      throw translate(throwable);
+    }
+  }
+
+  @Override
+  public Object invoke3(Object target, Object param1, Object param2, Object param3) throws Exception {
+    if (parameterCount != 3) {
+      return MethodInvoker.super.invoke3(target, param1, param2, param3);
+    }
+    try {
+      return (Object) fixedArityHandle.invokeExact(target, param1, param2, param3);
+    } catch (Throwable throwable) {
+      throw translate(throwable);
+    }
+  }
+
+  private static Object targetException(Throwable throwable) throws InvocationTargetException {
+    throw new InvocationTargetException(throwable);
+  }
+
+  /**
+   * Same contract as reflection: the exceptions of the method are already wrapped, the others come from converting the
+   * parameters (ClassCastException, null for a primitive or a wrong number of parameters).
+   */
+  private static Exception translate(Throwable throwable) {
+    if (throwable instanceof InvocationTargetException || throwable instanceof IllegalArgumentException) {
+      return (Exception) throwable;
+    }
+    if (throwable instanceof Error) {
+      throw (Error) throwable;
+    }
+    return new IllegalArgumentException("argument type mismatch", throwable);
+  }
+}
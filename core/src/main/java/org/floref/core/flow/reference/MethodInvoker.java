@@ -0,0 +1,58 @@
+/*
+ * Copyright 2020 the original author  or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.flow.reference;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Invokes the actual method of a method reference. Implementations are created once per method and cached in
+ * {@link LambdaMeta}.
+ *
+ * @author Cristian Donoiu
+ */
+public interface MethodInvoker {
+
+  /**
+   * Invokes the method.
+   *
+   * @param target the instance on which the method is called, ignored for static methods.
+   * @param params the method parameters, exactly one per method parameter.
+   * @return the method result or null for void methods.
+   * @throws InvocationTargetException if the invoked method throws, the cause being the thrown exception.
+   * @throws IllegalArgumentException   if the parameters do not match the parameter types of the method.
+   */
+  Object invoke(Object target, Object[] params) throws Exception;
+
+  /**
+   * Invokes a method without parameters. The fixed arity variants let implementations avoid the parameters array.
+   */
+  default Object invoke0(Object target) throws Exception {
+    return invoke(target, new Object[0]);
+  }
+
+  default Object invoke1(Object target, Object param1) throws Exception {
+    return invoke(target, new Object[]{param1});
+  }
+
+  default Object invoke2(Object target, Object param1, Object param2) throws Exception {
+    return invoke(target, new Object[]{param1, param2});
+  }
+
+  default Object invoke3(Object target, Object param1, Object param2, Object param3) throws Exception {
+    return invoke(target, new Object[]{param1, param2, param3});
+  }
+}
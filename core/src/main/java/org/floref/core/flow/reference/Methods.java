@@ -16,6 +16,9 @@
 
 package org.floref.core.flow.reference;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.floref.core.config.FlowConfiguration;
 import org.floref.core.exception.FlowDefinitionException;
 
 import java.lang.reflect.Method;
@@ -26,6 +29,10 @@ import java.util.Map;
  * Methods utils.
  */
 public class Methods {
+  private static final Log LOG = LogFactory.getLog(Methods.class);
+
+  public static final String REFLECTION_INVOKER = "reflection";
+  public static final String METHOD_HANDLE_INVOKER = "methodHandle";
 
   private static final Map<Class<?>, Class<?>> primitiveWrapperMap = new HashMap<Class<?>, Class<?>>();
 
@@ -57,6 +64,24 @@ public class Methods {
     return baseClass.getCanonicalName() + "::" + method.getName();
   }
 
+  /**
+   * Creates the invoker for a method according to the {@link FlowConfiguration#methodInvoker} property. The method
+   * handle invoker is the default, reflection is used if configured so or if the method handle can not be obtained.
+   */
+  public static MethodInvoker getInvoker(Method method) {
+    String invoker = FlowConfiguration.get(FlowConfiguration.methodInvoker, METHOD_HANDLE_INVOKER);
+    if (METHOD_HANDLE_INVOKER.equals(invoker)) {
+      try {
+        return new MethodHandleInvoker(method);
+      } catch (IllegalAccessException e) {
+        LOG.debug("Using reflection for " + getMethodReferenceAsString(method) + ": " + e.getMessage());
+      }
+    } else if (!REFLECTION_INVOKER.equals(invoker)) {
+      throw new FlowDefinitionException("Unknown " + FlowConfiguration.methodInvoker + " value: " + invoker);
+    }
+    return new ReflectionMethodInvoker(method);
+  }
+
   public static Method getMethod(Class<?> clazz, String methodName) {
     Method method = null;
     int sameNameMethod = 0;
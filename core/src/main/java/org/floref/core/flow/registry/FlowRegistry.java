@@ -22,6 +22,7 @@ import org.floref.core.dsl.flow.data.FlowDefinition;
 import org.floref.core.exception.FlowDefinitionException;
 import org.floref.core.flow.build.FlowInstanceData;
 import org.floref.core.flow.build.FlowInvocationHandler;
+import org.floref.core.flow.build.GeneratedFlow;
 
 import java.lang.reflect.Proxy;
 import java.util.Iterator;
@@ -35,14 +36,7 @@ public class FlowRegistry {
   private static final Log LOG = LogFactory.getLog(FlowRegistry.class);
   private static ConcurrentHashMap<String, FlowInstanceData> FLOWS = new ConcurrentHashMap<>();
 
-  public static void registerNewFlow(FlowDefinition flowDefinition, Object flowInstance, FlowInvocationHandler flowInvocationHandler) {
-    FlowInstanceData flowInstanceData = new FlowInstanceData();
-    flowInstanceData.setFlow(flowInstance);
-    flowInstanceData.setFlowClass(flowDefinition.getFlowClass());
-    flowInstanceData.add(flowDefinition);
-    flowInvocationHandler.setFlowInstanceData(flowInstanceData);
-    flowInstanceData.setFlowInvocationHandler(flowInvocationHandler); // hmm
-
+  public static void registerNewFlow(FlowDefinition flowDefinition, FlowInstanceData flowInstanceData) {
 
     if (flowDefinition.getId().contains(COLON)) {
       FLOWS.put(extractFlowGroupName(flowDefinition.getId()), flowInstanceData);
@@ -51,6 +45,7 @@ public class FlowRegistry {
 //      FLOWS.put(flowDefinition.getFlowClassCanonicalName(), flowInstanceData);
       FLOWS.put(extractFlowGroupName(flowDefinition.getId()), flowInstanceData);
     }
+    ResolvedTargets.invalidateAll();
   }
 
 //  public static Class getFlowInterface(Class flowClass) {
@@ -123,6 +118,7 @@ public class FlowRegistry {
   public static void deleteAll() {
     LOG.debug("Removing all flows.");
     FLOWS.clear();  // Should the existing flows get invalidated by changing their implementation to invalid?.
+    ResolvedTargets.invalidateAll();
   }
 
   public static boolean isFlow(Object flow) {
@@ -130,6 +126,9 @@ public class FlowRegistry {
     if (flow instanceof Proxy && Proxy.getInvocationHandler(flow) instanceof FlowInvocationHandler) {
       return true;
     }
+    if (flow instanceof GeneratedFlow) {
+      return true;
+    }
     return false;
   }
 
@@ -140,6 +139,9 @@ public class FlowRegistry {
     if (Proxy.isProxyClass(flow.getClass())) {
       return ((FlowInvocationHandler) Proxy.getInvocationHandler(flow)).getFlowInstanceData().getFlowClass();
     }
+    if (flow instanceof GeneratedFlow) {
+      return ((GeneratedFlow) flow).getFlowInstanceData().getFlowClass();
+    }
     return flow.getClass();
   }
 }
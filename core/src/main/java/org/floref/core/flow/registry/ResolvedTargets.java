@@ -0,0 +1,45 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.flow.registry;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Method references without a captured target (e.g. <b>.to(UserService::createUser)</b>) have their target (a flow or
+ * a bean from the BeanInjector) resolved on first run and cached in the command. The cache is tagged with the
+ * generation below, so incrementing it invalidates all the cached targets. This is done when flows are registered,
+ * redefined or deleted and when the bean injector is replaced. Call {@link #invalidateAll()} when the beans change in
+ * another way (e.g. the Spring context was refreshed).
+ *
+ * @author Cristian Donoiu
+ */
+public class ResolvedTargets {
+  private static final Log LOG = LogFactory.getLog(ResolvedTargets.class);
+  private static final AtomicLong generation = new AtomicLong();
+
+  public static long getGeneration() {
+    return generation.get();
+  }
+
+  public static void invalidateAll() {
+    LOG.debug("Invalidating resolved targets.");
+    generation.incrementAndGet();
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.flow.run;
+
+import org.floref.core.dsl.command.FlowCommand;
+import org.floref.core.dsl.flow.data.FlowDefinition;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Runs a flow definition without blocking on the futures returned by its steps. Each command returns a future that is
+ * completed when the command is done, the next command is chained to it. Commands that complete synchronously are run
+ * in a loop so that long flows do not build deep chains. The continuations run on the thread that completed the
+ * awaited future, with the flow session set for their duration.
+ *
+ * @author Cristian Donoiu
+ */
+public class AsyncCommandRunner {
+
+  /**
+   * @return the result future of the flow. Compiled flows are not used since they run synchronously.
+   */
+  public static CompletableFuture<Object> run(FlowDefinition flowDefinition, Object[] args) {
+    CommandContext commandContext = new CommandContext();
+    commandContext.setArguments(args);
+    commandContext.setFlowDefinition(flowDefinition);
+    commandContext.setFlowExecution(FlowSession.getExecution());
+    return flowDefinition.getStartCommand().runAsync(commandContext).thenApply(done -> commandContext.getResult());
+  }
+
+  /**
+   * Runs the commands one after the other, starting from the given index, on the same context.
+   *
+   * @return completed when the last command completes or exceptionally when the first one fails.
+   */
+  public static CompletableFuture<Void> runSequence(List<FlowCommand> commands, int from,
+                                                    CommandContext commandContext) {
+    for (int i = from; i < commands.size(); i++) {
+      CompletableFuture<Void> future = commands.get(i).runAsync(commandContext);
+      if (!future.isDone()) {
+        final int next = i + 1;
+        final Map session = FlowSession.get();
+        return future.thenCompose(done -> withSession(session, () -> runSequence(commands, next, commandContext)));
+      }
+      if (future.isCompletedExceptionally()) {
+        return future;
+      }
+    }
+    return completed();
+  }
+
+  /**
+   * Runs a continuation with the flow session of the flow it continues, on the thread that completed a future.
+   */
+  public static <T> T withSession(Map session, Supplier<T> continuation) {
+    Map previous = FlowSession.get();
+    FlowSession.set(session);
+    try {
+      return continuation.get();
+    } finally {
+      FlowSession.set(previous);
+    }
+  }
+
+  /**
+   * @return a new completed future. A shared one could be completed again or cancelled by a caller.
+   */
+  public static CompletableFuture<Void> completed() {
+    return CompletableFuture.completedFuture(null);
+  }
+
+  /**
+   * Runs a synchronous command as an already completed future.
+   */
+  public static CompletableFuture<Void> runSync(FlowCommand command, CommandContext commandContext) {
+    try {
+      command.run(commandContext);
+      return completed();
+    } catch (Exception e) {
+      return failed(e);
+    }
+  }
+
+  public static <T> CompletableFuture<T> failed(Throwable throwable) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    future.completeExceptionally(throwable);
+    return future;
+  }
+
+  /**
+   * @return the exception that failed a future, without the CompletionException or ExecutionException wrapper.
+   */
+  public static Exception getCause(Throwable throwable) {
+    while ((throwable instanceof CompletionException || throwable instanceof ExecutionException)
+        && throwable.getCause() != null) {
+      throwable = throwable.getCause();
+    }
+    return throwable instanceof Exception ? (Exception) throwable : new ExecutionException(throwable);
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.flow.run;
+
+import org.floref.core.exception.FlowDefinitionException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Named executors that isolate flows from each other: a slow downstream called by the flows of one bulkhead can only
+ * take the threads of that bulkhead. A bulkhead is created on first use from the <b>flow.bulkhead.name.*</b>
+ * properties (see {@link ExecutorProfile}, e.g. <b>flow.bulkhead.payments.max.size=8</b>) or it can be registered.
+ * Flows select a bulkhead with <b>from(...).executor("payments")</b> and groups with
+ * <b>.parallel().executor("payments")</b>.
+ *
+ * @author Cristian Donoiu
+ */
+public class Bulkheads {
+  public static final String PREFIX = "flow.bulkhead.";
+
+  private static final Map<String, ExecutorService> EXECUTORS = new ConcurrentHashMap<>();
+
+  /**
+   * @return the executor of the bulkhead, created from the configuration on first use.
+   * @throws FlowDefinitionException if the bulkhead is neither registered nor configured, e.g. a misspelled name.
+   */
+  public static ExecutorService get(String name) {
+    return EXECUTORS.computeIfAbsent(name, bulkhead -> {
+      if (!ExecutorProfile.isConfigured(PREFIX + bulkhead)) {
+        throw new FlowDefinitionException("Bulkhead " + bulkhead + " is not registered and has no " + PREFIX
+            + bulkhead + ".* properties");
+      }
+      return ExecutorProfile.fromConfig(PREFIX + bulkhead).newExecutorService();
+    });
+  }
+
+  /**
+   * Sets the executor of a bulkhead, the previous one is not shut down since tasks may still run on it.
+   */
+  public static void register(String name, ExecutorService executorService) {
+    EXECUTORS.put(name, executorService);
+  }
+
+  /**
+   * @return the saturation metrics of each bulkhead whose executor is a {@link FlowThreadPoolExecutor}, by name.
+   */
+  public static Map<String, ExecutorStats> getStats() {
+    Map<String, ExecutorStats> stats = new LinkedHashMap<>();
+    for (Map.Entry<String, ExecutorService> entry : new TreeMap<>(EXECUTORS).entrySet()) {
+      if (entry.getValue() instanceof FlowThreadPoolExecutor) {
+        stats.put(entry.getKey(), ((FlowThreadPoolExecutor) entry.getValue()).getStats());
+      }
+    }
+    return stats;
+  }
+}
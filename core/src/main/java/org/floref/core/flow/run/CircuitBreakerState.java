@@ -0,0 +1,238 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.flow.run;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * State of a circuit breaker, shared by all the steps calling the same method reference. The outcomes of the last
+ * calls are kept in a sliding window, when the window is full and the failed or the slow calls reach their rate the
+ * breaker opens and the calls are refused. After the open duration a few probe calls are let through (half open):
+ * if they all succeed the breaker closes, if one fails it opens again.
+ * <p>
+ * Recording a call and checking the status do not lock, the window is a ring of atomic slots with running counters.
+ *
+ * @author Cristian Donoiu
+ */
+public class CircuitBreakerState {
+  private static final Log LOG = LogFactory.getLog(CircuitBreakerState.class);
+
+  public enum Status {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private final String name;
+  private final int windowSize;
+  private final int failureRate;
+  private final long slowCallNanos;
+  private final int slowCallRate;
+  private final long openNanos;
+  private final int halfOpenCalls;
+
+  private final AtomicReference<Status> status = new AtomicReference<>(Status.CLOSED);
+  private final AtomicReference<Window> window;
+  private final AtomicInteger halfOpenPermits = new AtomicInteger();
+  private final AtomicInteger halfOpenSuccesses = new AtomicInteger();
+  private final LongAdder rejected = new LongAdder();
+  private volatile long openedAt;
+
+  /**
+   * The outcomes of the last calls. A new window replaces it when the breaker closes, so calls that finish late only
+   * update the discarded one.
+   */
+  private static final class Window {
+    private static final int RECORDED = 1;
+    private static final int FAILED = 2;
+    private static final int SLOW = 4;
+
+    private final AtomicIntegerArray slots;
+    private final AtomicLong next = new AtomicLong();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicInteger slowCalls = new AtomicInteger();
+
+    Window(int size) {
+      slots = new AtomicIntegerArray(size);
+    }
+
+    void record(boolean failed, boolean slow) {
+      int outcome = RECORDED | (failed ? FAILED : 0) | (slow ? SLOW : 0);
+      int previous = slots.getAndSet((int) (next.getAndIncrement() % slots.length()), outcome);
+      if (previous == 0) {
+        calls.incrementAndGet();
+      }
+      update(failures, previous, outcome, FAILED);
+      update(slowCalls, previous, outcome, SLOW);
+    }
+
+    private static void update(AtomicInteger counter, int previous, int outcome, int flag) {
+      int delta = (outcome & flag) - (previous & flag);
+      if (delta != 0) {
+        counter.addAndGet(delta / flag);
+      }
+    }
+  }
+
+  /**
+   * @param name          used in the log messages.
+   * @param windowSize    the number of last calls on which the rates are computed.
+   * @param failureRate   the percentage of failed calls that opens the breaker.
+   * @param slowCallMillis the duration from which a call is slow.
+   * @param slowCallRate  the percentage of slow calls that opens the breaker.
+   * @param openMillis    how long the breaker stays open before letting probe calls through.
+   * @param halfOpenCalls the number of probe calls that must succeed to close the breaker.
+   */
+  public CircuitBreakerState(String name, int windowSize, int failureRate, long slowCallMillis, int slowCallRate,
+                             long openMillis, int halfOpenCalls) {
+    this.name = name;
+    this.windowSize = windowSize;
+    this.failureRate = failureRate;
+    this.slowCallNanos = slowCallMillis == Long.MAX_VALUE ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+    this.slowCallRate = slowCallRate;
+    this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    this.halfOpenCalls = halfOpenCalls;
+    this.window = new AtomicReference<>(new Window(windowSize));
+  }
+
+  /**
+   * @return true if the breaker was created with these settings, see the constructor.
+   */
+  public boolean hasSettings(int windowSize, int failureRate, long slowCallMillis, int slowCallRate, long openMillis,
+                             int halfOpenCalls) {
+    return this.windowSize == windowSize && this.failureRate == failureRate
+        && this.slowCallNanos == (slowCallMillis == Long.MAX_VALUE ? Long.MAX_VALUE
+        : TimeUnit.MILLISECONDS.toNanos(slowCallMillis))
+        && this.slowCallRate == slowCallRate && this.openNanos == TimeUnit.MILLISECONDS.toNanos(openMillis)
+        && this.halfOpenCalls == halfOpenCalls;
+  }
+
+  /**
+   * Asks for permission to make a call.
+   *
+   * @return the status in which the call is allowed, to be passed to {@link #onResult}, or null if the call is refused.
+   */
+  public Status acquire() {
+    while (true) {
+      Status current = status.get();
+      switch (current) {
+        case CLOSED:
+          return current;
+        case OPEN:
+          if (System.nanoTime() - openedAt < openNanos) {
+            rejected.increment();
+            return null;
+          }
+          if (status.compareAndSet(Status.OPEN, Status.HALF_OPEN)) {
+            halfOpenSuccesses.set(0);
+            halfOpenPermits.set(halfOpenCalls);
+          }
+          break;
+        default:
+          if (halfOpenPermits.getAndDecrement() > 0) {
+            return current;
+          }
+          if (status.get() == Status.HALF_OPEN) {
+            rejected.increment();
+            return null;
+          }
+      }
+    }
+  }
+
+  /**
+   * Records the outcome of an allowed call.
+   *
+   * @param allowedIn the status returned by {@link #acquire()} for the call.
+   */
+  public void onResult(Status allowedIn, boolean failed, long durationNanos) {
+    boolean slow = durationNanos >= slowCallNanos;
+    if (allowedIn == Status.HALF_OPEN) {
+      if (failed || slow) {
+        open(Status.HALF_OPEN);
+      } else if (halfOpenSuccesses.incrementAndGet() == halfOpenCalls) {
+        window.set(new Window(windowSize));
+        if (status.compareAndSet(Status.HALF_OPEN, Status.CLOSED)) {
+          LOG.info("Circuit breaker " + name + " closed");
+        }
+      }
+      return;
+    }
+    Window current = window.get();
+    current.record(failed, slow);
+    int calls = current.calls.get();
+    if (calls >= windowSize && status.get() == Status.CLOSED
+        && (current.failures.get() * 100L >= failureRate * (long) calls
+        || slowCallNanos != Long.MAX_VALUE && current.slowCalls.get() * 100L >= slowCallRate * (long) calls)) {
+      open(Status.CLOSED);
+    }
+  }
+
+  private void open(Status from) {
+    openedAt = System.nanoTime(); // Before the status so that a caller seeing OPEN sees the time too.
+    if (status.compareAndSet(from, Status.OPEN)) {
+      halfOpenPermits.set(0);
+      LOG.warn("Circuit breaker " + name + " opened");
+    }
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Status getStatus() {
+    return status.get();
+  }
+
+  /**
+   * @return the percentage of failed calls in the window.
+   */
+  public int getFailureRate() {
+    Window current = window.get();
+    int calls = current.calls.get();
+    return calls == 0 ? 0 : (int) (current.failures.get() * 100L / calls);
+  }
+
+  /**
+   * @return the percentage of slow calls in the window.
+   */
+  public int getSlowCallRate() {
+    Window current = window.get();
+    int calls = current.calls.get();
+    return calls == 0 ? 0 : (int) (current.slowCalls.get() * 100L / calls);
+  }
+
+  /**
+   * @return the calls refused while open or half open.
+   */
+  public long getRejected() {
+    return rejected.sum();
+  }
+
+  @Override
+  public String toString() {
+    return name + " " + getStatus() + " failureRate=" + getFailureRate() + "% slowCallRate=" + getSlowCallRate()
+        + "% rejected=" + getRejected();
+  }
+}
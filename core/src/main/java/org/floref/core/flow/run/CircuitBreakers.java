@@ -0,0 +1,63 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.flow.run;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * The circuit breaker states by name. By default a breaker is named after the method reference it protects so all the
+ * steps calling the same method, from any flow, share it. The first step using a name creates the state with its
+ * settings, a step with other settings logs a warning and uses the existing state.
+ *
+ * @author Cristian Donoiu
+ */
+public class CircuitBreakers {
+
+  private static final Map<String, CircuitBreakerState> STATES = new ConcurrentHashMap<>();
+
+  /**
+   * @return the state of the breaker, created with the given factory on first use.
+   */
+  public static CircuitBreakerState get(String name, Function<String, CircuitBreakerState> factory) {
+    CircuitBreakerState state = STATES.get(name); // No bin lock on the usual path.
+    return state != null ? state : STATES.computeIfAbsent(name, factory);
+  }
+
+  /**
+   * @return the state of the breaker or null if it was not used yet.
+   */
+  public static CircuitBreakerState get(String name) {
+    return STATES.get(name);
+  }
+
+  /**
+   * Forgets a breaker, the steps using it create a new closed one on their next call.
+   */
+  public static void remove(String name) {
+    STATES.remove(name);
+  }
+
+  /**
+   * @return the state of each breaker, by name.
+   */
+  public static Map<String, CircuitBreakerState> getStates() {
+    return new TreeMap<>(STATES);
+  }
+}
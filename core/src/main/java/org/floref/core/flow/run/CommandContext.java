@@ -24,11 +24,20 @@ import org.floref.core.dsl.flow.data.FlowDefinition;
  * @author Cristian Donoiu
  */
 public class CommandContext {
+  private static final Object[] NO_ARGUMENTS = new Object[0];
 
   protected FlowDefinition flowDefinition;
   protected Object result;         // the current result
-  protected Object[] arguments;    // the arguments to be used
+  protected Object[] arguments = NO_ARGUMENTS;    // the arguments to be used, null if there is a single argument
+  protected Object argument;       // the single argument, used instead of an array when passing a result to the next step
   protected Exception exception;
+  protected FlowExecution flowExecution; // read from the session if not set
+
+  // State saved by mark().
+  private Object markedResult;
+  private Object[] markedArguments;
+  private Object markedArgument;
+  private Exception markedException;
 
   public Object getResult() {
     return result;
@@ -38,12 +47,41 @@ public class CommandContext {
     this.result = result;
   }
 
+  /**
+   * @return the arguments, prefer {@link #getArgument(int)} that does not need an array.
+   */
   public Object[] getArguments() {
+    if (arguments == null) {
+      arguments = new Object[]{argument};
+    }
     return arguments;
   }
 
   public void setArguments(Object[] arguments) {
-    this.arguments = arguments;
+    this.arguments = arguments == null ? NO_ARGUMENTS : arguments;
+    argument = null;
+  }
+
+  /**
+   * Sets a single argument.
+   */
+  public void setArgument(Object argument) {
+    this.argument = argument;
+    arguments = null;
+  }
+
+  public int getArgumentCount() {
+    return arguments == null ? 1 : arguments.length;
+  }
+
+  public Object getArgument(int index) {
+    if (arguments == null) {
+      if (index != 0) {
+        throw new ArrayIndexOutOfBoundsException(index);
+      }
+      return argument;
+    }
+    return arguments[index];
   }
 
   public FlowDefinition getFlowDefinition() {
@@ -54,8 +92,11 @@ public class CommandContext {
     this.flowDefinition = flowDefinition;
   }
 
+  /**
+   * The result becomes the single argument of the next step.
+   */
   public void moveResultToArguments() {
-    arguments = new Object[]{result};
+    setArgument(result);
   }
 
   public Exception getException() {
@@ -66,11 +107,52 @@ public class CommandContext {
     this.exception = exception;
   }
 
+  /**
+   * @return the execution this context runs for.
+   */
+  public FlowExecution getFlowExecution() {
+    if (flowExecution == null) {
+      flowExecution = FlowSession.getExecution();
+    }
+    return flowExecution;
+  }
+
+  public void setFlowExecution(FlowExecution flowExecution) {
+    this.flowExecution = flowExecution;
+  }
+
+  /**
+   * Saves the current state so that it can be restored with {@link #reset()}. Used instead of {@link #copy()} when
+   * the same thread runs a step that may have to be undone (e.g. a when condition or a retry attempt). Marks are not
+   * nested.
+   */
+  public void mark() {
+    markedResult = result;
+    markedArguments = arguments;
+    markedArgument = argument;
+    markedException = exception;
+  }
+
+  /**
+   * Restores the state saved by {@link #mark()}.
+   */
+  public void reset() {
+    result = markedResult;
+    arguments = markedArguments;
+    argument = markedArgument;
+    exception = markedException;
+  }
+
+  /**
+   * @return a new context with the same state, needed when the context is handed to another thread.
+   */
   public CommandContext copy() {
     CommandContext commandContext = new CommandContext();
-    commandContext.setArguments(arguments);
+    commandContext.arguments = arguments;
+    commandContext.argument = argument;
     commandContext.setResult(result);
     commandContext.setFlowDefinition(flowDefinition);
+    commandContext.flowExecution = flowExecution;
     return commandContext;
   }
 }
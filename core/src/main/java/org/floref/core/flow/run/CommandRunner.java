@@ -19,11 +19,10 @@ package org.floref.core.flow.run;
 import org.floref.core.config.FlowConfiguration;
 import org.floref.core.dsl.command.FlowCommand;
 import org.floref.core.dsl.flow.data.FlowDefinition;
+import org.floref.core.flow.compile.CompiledFlow;
 
 import java.util.concurrent.*;
 
-import static org.floref.core.config.FlowConfiguration.commonThreadPoolMaxSize;
-
 /**
  * Used to run a flow definition by running and evaluating all the flow definition commands.
  *
@@ -32,14 +31,34 @@ import static org.floref.core.config.FlowConfiguration.commonThreadPoolMaxSize;
 public class CommandRunner {
 
   // For the moment one pool for all except
-  public static ExecutorService executorService = new ThreadPoolExecutor(0,
-      FlowConfiguration.getIntConfig(commonThreadPoolMaxSize), 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+  public static volatile ExecutorService executorService = ExecutorProviders.newExecutorService();
+  // Group timeouts, flow deadlines and retry delays.
+  public static final WheelTimer timer = new WheelTimer("floref-timer",
+      Long.parseLong(FlowConfiguration.get(FlowConfiguration.timerTick, "10")), TimeUnit.MILLISECONDS, 512);
+  /**
+   * @deprecated floref schedules on the {@link #timer}, see {@link #schedule(Runnable, long)}.
+   */
+  @Deprecated
   public static ScheduledExecutorService scheduledExecutorService = Executors.newScheduledThreadPool(1);
 
   public static ExecutorService getExecutorService() {
     return executorService;
   }
 
+  /**
+   * @param bulkhead the name of a {@link Bulkheads bulkhead} or null for the common executor.
+   */
+  public static ExecutorService getExecutorService(String bulkhead) {
+    return bulkhead == null ? executorService : Bulkheads.get(bulkhead);
+  }
+
+  /**
+   * Replaces the executor, the previous one is not shut down since tasks may still run on it.
+   */
+  public static void setExecutorService(ExecutorService executorService) {
+    CommandRunner.executorService = executorService;
+  }
+
   public static <T> Future<T> submit(Runnable runnable) {
     return (Future<T>) getExecutorService().submit(runnable);
   }
@@ -48,17 +67,87 @@ public class CommandRunner {
     return (Future<T>) getExecutorService().submit(callable);
   }
 
+  public static void execute(Runnable runnable) {
+    getExecutorService().execute(runnable);
+  }
+
+  public static void execute(String bulkhead, Runnable runnable) {
+    getExecutorService(bulkhead).execute(runnable);
+  }
+
+  /**
+   * Submits a task for a caller that should wait rather than fail when the executor is full, see
+   * {@link #executeWithBackpressure(Runnable)}.
+   */
+  public static <T> Future<T> submitWithBackpressure(Callable<T> callable) {
+    return submitWithBackpressure(null, callable);
+  }
+
+  public static <T> Future<T> submitWithBackpressure(String bulkhead, Callable<T> callable) {
+    FutureTask<T> task = new FutureTask<>(callable);
+    executeWithBackpressure(bulkhead, task);
+    return task;
+  }
+
+  /**
+   * If the threads and the queue of the executor are full the caller waits for a free slot, at most the block timeout
+   * of the executor, so that traffic spikes slow down the callers instead of failing them. Executors that are not a
+   * {@link FlowThreadPoolExecutor} are used as they are.
+   *
+   * @throws RejectedExecutionException if the task could not be submitted before the timeout.
+   */
+  public static void executeWithBackpressure(Runnable runnable) {
+    executeWithBackpressure(null, runnable);
+  }
+
+  public static void executeWithBackpressure(String bulkhead, Runnable runnable) {
+    ExecutorService executorService = getExecutorService(bulkhead);
+    if (executorService instanceof FlowThreadPoolExecutor) {
+      ((FlowThreadPoolExecutor) executorService).executeBlocking(runnable);
+    } else {
+      executorService.execute(runnable);
+    }
+  }
+
+  /**
+   * @return the metrics of the executor or null if it is not a {@link FlowThreadPoolExecutor}.
+   */
+  public static ExecutorStats getExecutorStats() {
+    ExecutorService executorService = getExecutorService();
+    return executorService instanceof FlowThreadPoolExecutor ? ((FlowThreadPoolExecutor) executorService).getStats()
+        : null;
+  }
+
+  /**
+   * @deprecated use {@link #schedule(Runnable, long)}, the wheel timer schedules and cancels in constant time instead
+   * of the O(log n) of the delay queue of a ScheduledThreadPoolExecutor.
+   */
+  @Deprecated
   public static ScheduledFuture scheduleFuture(Runnable runnable, long timeout) {
     ScheduledFuture scheduledFuture = scheduledExecutorService.schedule(runnable, timeout, TimeUnit.MILLISECONDS);
     return scheduledFuture;
   }
 
+  /**
+   * Runs the runnable on the timer thread after the delay, it should only complete a future or hand work to an
+   * executor.
+   */
+  public static WheelTimer.Timeout schedule(Runnable runnable, long delayMillis) {
+    return timer.schedule(runnable, delayMillis, TimeUnit.MILLISECONDS);
+  }
+
   public static Object run(FlowDefinition flowDefinition, Object[] args) throws Exception {
     FlowCommand flowCommand = flowDefinition.getStartCommand();
     CommandContext commandContext = new CommandContext();
     commandContext.setArguments(args);
     commandContext.setFlowDefinition(flowDefinition);
-    flowCommand.run(commandContext);
+    commandContext.setFlowExecution(FlowSession.getExecution());
+    CompiledFlow compiledFlow = flowDefinition.getCompiledFlow();
+    if (compiledFlow != null) {
+      compiledFlow.run(commandContext);
+    } else {
+      flowCommand.run(commandContext);
+    }
 
     return commandContext.getResult();
   }
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.flow.run;
+
+import org.floref.core.config.FlowConfiguration;
+import org.floref.core.exception.FlowDefinitionException;
+
+/**
+ * The settings of a bounded executor, read from configuration properties that share a prefix:
+ * <ul>
+ * <li><b>prefix.max.size</b> the maximum number of threads, 32 by default.</li>
+ * <li><b>prefix.queue.size</b> how many tasks wait for a thread, 0 (default) means a task only starts if a thread is
+ * free.</li>
+ * <li><b>prefix.rejection</b> the {@link RejectionPolicy} when the threads and the queue are full: abort (default),
+ * callerRuns, block or shedOldest. shedOldest needs a queue.</li>
+ * <li><b>prefix.block.timeout</b> how many milliseconds a blocked submission waits, 10000 by default.</li>
+ * </ul>
+ * The common executor uses the <b>flow.run.thread.pool</b> prefix.
+ *
+ * @author Cristian Donoiu
+ */
+public class ExecutorProfile {
+  public static final String THREAD_POOL = "flow.run.thread.pool";
+  public static final String MAX_SIZE = ".max.size";
+  public static final String QUEUE_SIZE = ".queue.size";
+  public static final String REJECTION = ".rejection";
+  public static final String BLOCK_TIMEOUT = ".block.timeout";
+  public static final String DEFAULT_MAX_SIZE = "32";
+  public static final String DEFAULT_QUEUE_SIZE = "0";
+  public static final String DEFAULT_BLOCK_TIMEOUT = "10000";
+
+  private final String name;
+  private final int maxSize;
+  private final int queueSize;
+  private final RejectionPolicy rejectionPolicy;
+  private final long blockTimeout;
+
+  /**
+   * @throws FlowDefinitionException for shedOldest without a queue, there would be nothing to shed.
+   */
+  public ExecutorProfile(String name, int maxSize, int queueSize, RejectionPolicy rejectionPolicy,
+                         long blockTimeout) {
+    if (rejectionPolicy == RejectionPolicy.SHED_OLDEST && queueSize <= 0) {
+      throw new FlowDefinitionException("Executor " + name + ": the " + rejectionPolicy.getConfigValue()
+          + " rejection needs a " + QUEUE_SIZE.substring(1) + " greater than 0");
+    }
+    this.name = name;
+    this.maxSize = maxSize;
+    this.queueSize = queueSize;
+    this.rejectionPolicy = rejectionPolicy;
+    this.blockTimeout = blockTimeout;
+  }
+
+  /**
+   * @param prefix the common prefix of the properties, it is also the name of the executor.
+   */
+  public static ExecutorProfile fromConfig(String prefix) {
+    return new ExecutorProfile(prefix,
+        Integer.parseInt(FlowConfiguration.get(prefix + MAX_SIZE, DEFAULT_MAX_SIZE)),
+        Integer.parseInt(FlowConfiguration.get(prefix + QUEUE_SIZE, DEFAULT_QUEUE_SIZE)),
+        RejectionPolicy.fromConfig(FlowConfiguration.get(prefix + REJECTION, RejectionPolicy.ABORT.getConfigValue())),
+        Long.parseLong(FlowConfiguration.get(prefix + BLOCK_TIMEOUT, DEFAULT_BLOCK_TIMEOUT)));
+  }
+
+  /**
+   * @return true if at least one of the properties with this prefix is set.
+   */
+  public static boolean isConfigured(String prefix) {
+    for (String suffix : new String[]{MAX_SIZE, QUEUE_SIZE, REJECTION, BLOCK_TIMEOUT}) {
+      if (FlowConfiguration.get(prefix + suffix) != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public FlowThreadPoolExecutor newExecutorService() {
+    return new FlowThreadPoolExecutor(name, maxSize, queueSize, rejectionPolicy, blockTimeout);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  public int getQueueSize() {
+    return queueSize;
+  }
+
+  public RejectionPolicy getRejectionPolicy() {
+    return rejectionPolicy;
+  }
+
+  public long getBlockTimeout() {
+    return blockTimeout;
+  }
+}
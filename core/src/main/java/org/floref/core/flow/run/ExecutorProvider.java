@@ -0,0 +1,30 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.flow.run;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Creates the executor used to run forks, parallel branches and async flows. A custom provider can be set by class
+ * name in the <b>flow.run.executor</b> configuration property, the class needs a public no args constructor.
+ *
+ * @author Cristian Donoiu
+ */
+public interface ExecutorProvider {
+
+  ExecutorService newExecutorService();
+}
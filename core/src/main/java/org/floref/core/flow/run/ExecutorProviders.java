@@ -0,0 +1,99 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.flow.run;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.floref.core.config.FlowConfiguration;
+import org.floref.core.exception.FlowDefinitionException;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Creates the executor selected by the <b>flow.run.executor</b> configuration property:
+ * <ul>
+ * <li>platform (default) a pool of at most <b>flow.run.thread.pool.max.size</b> threads, with the queue and the
+ * rejection policy of the <b>flow.run.thread.pool</b> {@link ExecutorProfile}.</li>
+ * <li>virtual a new virtual thread per task, for flows whose steps mostly block on I/O. Needs Java 21, on older
+ * runtimes the platform executor is used.</li>
+ * <li>forkjoin a work stealing pool with one thread per core, for CPU bound flows with nested groups.</li>
+ * <li>the class name of an {@link ExecutorProvider}.</li>
+ * </ul>
+ *
+ * @author Cristian Donoiu
+ */
+public class ExecutorProviders {
+  private static final Log LOG = LogFactory.getLog(ExecutorProviders.class);
+
+  public static final String PLATFORM = "platform";
+  public static final String VIRTUAL = "virtual";
+  public static final String FORK_JOIN = "forkjoin";
+
+  public static ExecutorService newExecutorService() {
+    return newExecutorService(FlowConfiguration.get(FlowConfiguration.executor, PLATFORM));
+  }
+
+  public static ExecutorService newExecutorService(String executor) {
+    if (PLATFORM.equals(executor)) {
+      return newPlatformExecutorService();
+    } else if (VIRTUAL.equals(executor)) {
+      return newVirtualExecutorService();
+    } else if (FORK_JOIN.equals(executor)) {
+      return newForkJoinExecutorService();
+    }
+    try {
+      Object provider = Class.forName(executor).getConstructor().newInstance();
+      if (!(provider instanceof ExecutorProvider)) {
+        throw new FlowDefinitionException(executor + " is not an " + ExecutorProvider.class.getName());
+      }
+      return ((ExecutorProvider) provider).newExecutorService();
+    } catch (ReflectiveOperationException e) {
+      throw new FlowDefinitionException("Unknown " + FlowConfiguration.executor + " value: " + executor, e);
+    }
+  }
+
+  /**
+   * A bounded pool configured by the <b>flow.run.thread.pool.*</b> properties, see {@link ExecutorProfile}.
+   */
+  public static ExecutorService newPlatformExecutorService() {
+    return ExecutorProfile.fromConfig(ExecutorProfile.THREAD_POOL).newExecutorService();
+  }
+
+  /**
+   * A group waiting for its children runs the ones not yet started itself and otherwise blocks through a
+   * {@link ForkJoinPool.ManagedBlocker}, so nested groups make progress with one thread per core.
+   */
+  public static ExecutorService newForkJoinExecutorService() {
+    return new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * The Java 21 API is called by reflection so that the library still runs on Java 8.
+   */
+  public static ExecutorService newVirtualExecutorService() {
+    try {
+      Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) method.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      LOG.warn("Virtual threads need Java 21, using the platform executor.");
+      return newPlatformExecutorService();
+    }
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.flow.run;
+
+/**
+ * Snapshot of the metrics of a {@link FlowThreadPoolExecutor}. The wait is the time between the submission of a task
+ * and its start, the time spent in the queue or blocked for a free thread.
+ *
+ * @author Cristian Donoiu
+ */
+public class ExecutorStats {
+  private final String name;
+  private final int poolSize;
+  private final int activeCount;
+  private final int queueDepth;
+  private final long submitted;
+  private final long started;
+  private final long rejected;
+  private final long callerRuns;
+  private final long shed;
+  private final long blocked;
+  private final long averageWaitNanos;
+  private final long maxWaitNanos;
+
+  public ExecutorStats(String name, int poolSize, int activeCount, int queueDepth, long submitted, long started,
+                       long rejected, long callerRuns, long shed, long blocked, long averageWaitNanos,
+                       long maxWaitNanos) {
+    this.name = name;
+    this.poolSize = poolSize;
+    this.activeCount = activeCount;
+    this.queueDepth = queueDepth;
+    this.submitted = submitted;
+    this.started = started;
+    this.rejected = rejected;
+    this.callerRuns = callerRuns;
+    this.shed = shed;
+    this.blocked = blocked;
+    this.averageWaitNanos = averageWaitNanos;
+    this.maxWaitNanos = maxWaitNanos;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int getPoolSize() {
+    return poolSize;
+  }
+
+  public int getActiveCount() {
+    return activeCount;
+  }
+
+  public int getQueueDepth() {
+    return queueDepth;
+  }
+
+  public long getSubmitted() {
+    return submitted;
+  }
+
+  public long getStarted() {
+    return started;
+  }
+
+  public long getRejected() {
+    return rejected;
+  }
+
+  /**
+   * @return how many tasks ran on the submitting thread because of the callerRuns policy.
+   */
+  public long getCallerRuns() {
+    return callerRuns;
+  }
+
+  /**
+   * @return how many queued tasks were dropped by the shedOldest policy.
+   */
+  public long getShed() {
+    return shed;
+  }
+
+  /**
+   * @return how many submissions had to wait for a free thread or queue slot.
+   */
+  public long getBlocked() {
+    return blocked;
+  }
+
+  public long getAverageWaitNanos() {
+    return averageWaitNanos;
+  }
+
+  public long getMaxWaitNanos() {
+    return maxWaitNanos;
+  }
+
+  @Override
+  public String toString() {
+    return name + " {poolSize=" + poolSize + ", active=" + activeCount + ", queueDepth=" + queueDepth
+        + ", submitted=" + submitted + ", started=" + started + ", rejected=" + rejected + ", callerRuns=" + callerRuns
+        + ", shed=" + shed + ", blocked=" + blocked + ", averageWaitNanos=" + averageWaitNanos + ", maxWaitNanos="
+        + maxWaitNanos + "}";
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.flow.run;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handle of a top level (gate) flow execution, shared with everything that runs on its behalf: forks, parallel
+ * branches, nested flows and futures. Checking for cancellation is a volatile read. Cancelling notifies the listeners
+ * so that pending child tasks are skipped (or interrupted) instead of waiting for the next step.
+ *
+ * @author Cristian Donoiu
+ */
+public class FlowExecution {
+  private static final Log LOG = LogFactory.getLog(FlowExecution.class);
+
+  /**
+   * Notified once when the execution is cancelled.
+   */
+  public interface CancelListener {
+    void cancelled(boolean mayInterruptIfRunning);
+  }
+
+  private volatile boolean cancelled;
+  private volatile long deadline; // System.nanoTime() based, 0 if none.
+  private volatile WheelTimer.Timeout deadlineFuture;
+  private final List<CancelListener> listeners = new CopyOnWriteArrayList<>();
+  private FlowExecution parent; // Set for a child execution, until detached.
+  private CancelListener parentListener;
+
+  /**
+   * @return true if the execution was cancelled or its deadline has passed.
+   */
+  public boolean isCancelled() {
+    return cancelled || (deadline != 0 && isDeadlineExceeded());
+  }
+
+  public boolean isDeadlineExceeded() {
+    long deadline = this.deadline;
+    return deadline != 0 && System.nanoTime() - deadline >= 0;
+  }
+
+  /**
+   * Cancels the execution and notifies the listeners. Only the first call has effect.
+   *
+   * @param mayInterruptIfRunning passed to the listeners, true to also interrupt the running child tasks.
+   * @return true if the execution was cancelled by this call.
+   */
+  public boolean cancel(boolean mayInterruptIfRunning) {
+    synchronized (this) {
+      if (cancelled) {
+        return false;
+      }
+      cancelled = true;
+    }
+    for (CancelListener listener : listeners) {
+      try {
+        listener.cancelled(mayInterruptIfRunning);
+      } catch (RuntimeException e) {
+        LOG.error(e.getMessage(), e);
+      }
+    }
+    listeners.clear();
+    return true;
+  }
+
+  /**
+   * Adds a listener, it is notified right away if the execution is already cancelled.
+   */
+  public void addListener(CancelListener listener) {
+    listeners.add(listener);
+    if (cancelled && listeners.remove(listener)) {
+      listener.cancelled(false);
+    }
+  }
+
+  public void removeListener(CancelListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Cancels the execution after the given time, the steps not yet started will not run.
+   */
+  public void setTimeout(long timeout) {
+    deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+    if (deadline == 0) {
+      deadline = 1; // 0 means no deadline.
+    }
+    WheelTimer.Timeout previous = deadlineFuture;
+    if (previous != null) {
+      previous.cancel();
+    }
+    deadlineFuture = CommandRunner.schedule(() -> cancel(false), timeout);
+  }
+
+  /**
+   * @return the remaining time in milliseconds or Long.MAX_VALUE if there is no deadline.
+   */
+  public long getRemainingTime() {
+    long deadline = this.deadline;
+    return deadline == 0 ? Long.MAX_VALUE : Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+  }
+
+  /**
+   * @return an execution cancelled with this one, with the same deadline, that can also be cancelled alone, e.g. a
+   * branch that is no longer needed. Call {@link #detach()} when the branch completes.
+   */
+  public FlowExecution newChild() {
+    FlowExecution child = new FlowExecution();
+    child.deadline = deadline;
+    child.parent = this;
+    child.parentListener = child::cancel;
+    addListener(child.parentListener);
+    return child;
+  }
+
+  /**
+   * Stops a child execution from being notified when its parent is cancelled.
+   */
+  public void detach() {
+    if (parent != null) {
+      parent.removeListener(parentListener);
+    }
+  }
+
+  /**
+   * Called when the gate flow returns to release the deadline timer. Async child tasks still hold the execution and
+   * can still be cancelled.
+   */
+  public void complete() {
+    WheelTimer.Timeout future = deadlineFuture;
+    if (future != null) {
+      future.cancel();
+    }
+  }
+}
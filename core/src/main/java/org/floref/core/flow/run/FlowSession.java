@@ -17,10 +17,10 @@
 package org.floref.core.flow.run;
 
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Keeps flow run session data.
+ * Keeps flow run session data. The @FlowVar values are accessed by the slot resolved at build time, see
+ * {@link FlowVarSlots}.
  *
  * @author Cristian Donoiu
  */
@@ -41,10 +41,34 @@ public class FlowSession {
 
   public static void initIfNeeded() {
     if (get() == null) {
-      threadLocal.set(new ConcurrentHashMap<>());
+      threadLocal.set(new FlowSessionMap());
     }
   }
 
+  /**
+   * Inits the session of a gate flow whose execution handle was created before (e.g. returned in a future).
+   */
+  public static void initIfNeeded(FlowExecution execution) {
+    initIfNeeded(execution, FlowVarLayout.EMPTY);
+  }
+
+  /**
+   * Inits the session of a gate flow with slots for the @FlowVar names of its definition.
+   */
+  public static void initIfNeeded(FlowExecution execution, FlowVarLayout layout) {
+    if (get() == null) {
+      threadLocal.set(new FlowSessionMap(execution, layout));
+    }
+  }
+
+  /**
+   * @return the execution of the current session or null if there is no session.
+   */
+  public static FlowExecution getExecution() {
+    Map session = get();
+    return session instanceof FlowSessionMap ? ((FlowSessionMap) session).getExecution() : null;
+  }
+
   /**
    * Used when copying a session to another thread.
    *
@@ -62,6 +86,17 @@ public class FlowSession {
     return get().get(key);
   }
 
+  /**
+   * @return the value in the given {@link FlowVarSlots} slot or null if there is no session.
+   */
+  public static Object get(int slot) {
+    Map session = get();
+    if (session instanceof FlowSessionMap) {
+      return ((FlowSessionMap) session).get(slot);
+    }
+    return session == null ? null : session.get(FlowVarSlots.name(slot));
+  }
+
   public static <T> T get(String key, Class<T> clazz) {
     return (T) get().get(key);
   }
@@ -71,6 +106,16 @@ public class FlowSession {
     get().put(key, value);
   }
 
+  public static void set(int slot, Object value) {
+    initIfNeeded();
+    Map session = get();
+    if (session instanceof FlowSessionMap) {
+      ((FlowSessionMap) session).set(slot, value);
+    } else {
+      session.put(FlowVarSlots.name(slot), value);
+    }
+  }
+
   public static boolean isEmpty() {
     Map session = get();
     return session == null || session.isEmpty();
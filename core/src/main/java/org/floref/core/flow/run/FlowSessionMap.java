@@ -0,0 +1,172 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.flow.run;
+
+import java.util.AbstractMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Session map where the @FlowVar names used by the gate flow are kept in slots (see {@link FlowVarLayout}) and the
+ * other keys in an overflow map created only if needed, e.g. the names used only by the nested flows. It is safe to be used from several threads. Null values are not kept, putting null removes the key.
+ * The session also holds the {@link FlowExecution} of the gate flow.
+ *
+ * @author Cristian Donoiu
+ */
+public class FlowSessionMap extends AbstractMap<String, Object> {
+  private final FlowVarLayout layout;
+  private final AtomicReferenceArray<Object> slots;
+  private volatile Map<String, Object> overflow;
+  private final FlowExecution execution;
+
+  public FlowSessionMap() {
+    this(new FlowExecution());
+  }
+
+  public FlowSessionMap(FlowExecution execution) {
+    this(execution, FlowVarLayout.EMPTY);
+  }
+
+  public FlowSessionMap(FlowExecution execution, FlowVarLayout layout) {
+    this.execution = execution;
+    this.layout = layout;
+    this.slots = new AtomicReferenceArray<>(layout.size());
+  }
+
+  /**
+   * @return the execution this session belongs to.
+   */
+  public FlowExecution getExecution() {
+    return execution;
+  }
+
+  private Map<String, Object> getOverflow() {
+    Map<String, Object> map = overflow;
+    if (map == null) {
+      synchronized (this) {
+        map = overflow;
+        if (map == null) {
+          overflow = map = new ConcurrentHashMap<>();
+        }
+      }
+    }
+    return map;
+  }
+
+  public Object get(int slot) {
+    int index = layout.index(slot);
+    if (index != -1) {
+      return slots.get(index);
+    }
+    Map<String, Object> map = overflow;
+    return map == null ? null : map.get(FlowVarSlots.name(slot));
+  }
+
+  /**
+   * @return the previous value.
+   */
+  public Object set(int slot, Object value) {
+    int index = layout.index(slot);
+    if (index != -1) {
+      return slots.getAndSet(index, value);
+    }
+    return putOverflow(FlowVarSlots.name(slot), value);
+  }
+
+  private Object putOverflow(String key, Object value) {
+    if (value == null) {
+      Map<String, Object> map = overflow;
+      return map == null ? null : map.remove(key);
+    }
+    return getOverflow().put(key, value);
+  }
+
+  @Override
+  public Object get(Object key) {
+    if (!(key instanceof String)) {
+      return null;
+    }
+    int slot = FlowVarSlots.find((String) key);
+    if (slot != -1) {
+      return get(slot);
+    }
+    Map<String, Object> map = overflow;
+    return map == null ? null : map.get(key);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  @Override
+  public Object put(String key, Object value) {
+    int slot = FlowVarSlots.find(key);
+    return slot != -1 ? set(slot, value) : putOverflow(key, value);
+  }
+
+  @Override
+  public Object remove(Object key) {
+    return key instanceof String ? put((String) key, null) : null;
+  }
+
+  @Override
+  public void clear() {
+    for (int i = 0; i < slots.length(); i++) {
+      slots.set(i, null);
+    }
+    Map<String, Object> map = overflow;
+    if (map != null) {
+      map.clear();
+    }
+  }
+
+  @Override
+  public boolean isEmpty() {
+    for (int i = 0; i < slots.length(); i++) {
+      if (slots.get(i) != null) {
+        return false;
+      }
+    }
+    Map<String, Object> map = overflow;
+    return map == null || map.isEmpty();
+  }
+
+  /**
+   * @return a snapshot of the entries, changes to it are not reflected in the session.
+   */
+  @Override
+  public Set<Entry<String, Object>> entrySet() {
+    Set<Entry<String, Object>> entries = new LinkedHashSet<>();
+    for (int i = 0; i < slots.length(); i++) {
+      Object value = slots.get(i);
+      if (value != null) {
+        entries.add(new SimpleImmutableEntry<>(FlowVarSlots.name(layout.slot(i)), value));
+      }
+    }
+    Map<String, Object> map = overflow;
+    if (map != null) {
+      for (Entry<String, Object> entry : map.entrySet()) {
+        entries.add(new SimpleImmutableEntry<>(entry));
+      }
+    }
+    return entries;
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.flow.run;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread pool with an optional bounded queue, a {@link RejectionPolicy} and submission metrics (see
+ * {@link #getStats()}). The time a task waits between its submission and its start is measured by wrapping it.
+ * <p>
+ * Without a queue the threads are created on demand and a task only starts if a thread is free, like before queues
+ * were configurable. With a queue the pool first grows to its maximum size, then the tasks are queued, the idle threads
+ * still stop after 60 seconds.
+ *
+ * @author Cristian Donoiu
+ */
+public class FlowThreadPoolExecutor extends ThreadPoolExecutor {
+
+  private final String name;
+  private final RejectionPolicy rejectionPolicy;
+  private final long blockTimeout;
+  private final LongAdder submitted = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  private final LongAdder callerRuns = new LongAdder();
+  private final LongAdder shed = new LongAdder();
+  private final LongAdder blocked = new LongAdder();
+  private final LongAdder started = new LongAdder();
+  private final LongAdder totalWaitNanos = new LongAdder();
+  private final AtomicLong maxWaitNanos = new AtomicLong();
+
+  /**
+   * A submitted task with its submission time.
+   */
+  private class TimedTask implements Runnable {
+    final Runnable task;
+    final long submittedAt = System.nanoTime();
+    final boolean block; // Blocks when rejected, whatever the policy.
+
+    TimedTask(Runnable task, boolean block) {
+      this.task = task;
+      this.block = block;
+    }
+
+    @Override
+    public void run() {
+      long waitNanos = System.nanoTime() - submittedAt;
+      started.increment();
+      totalWaitNanos.add(waitNanos);
+      maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+      task.run();
+    }
+  }
+
+  public FlowThreadPoolExecutor(String name, int maxSize, int queueSize, RejectionPolicy rejectionPolicy,
+                                long blockTimeout) {
+    super(queueSize > 0 ? maxSize : 0, maxSize, 60L, TimeUnit.SECONDS,
+        queueSize > 0 ? new LinkedBlockingQueue<>(queueSize) : new SynchronousQueue<>(), newThreadFactory(name));
+    if (queueSize > 0) {
+      allowCoreThreadTimeOut(true);
+    }
+    this.name = name;
+    this.rejectionPolicy = rejectionPolicy;
+    this.blockTimeout = blockTimeout;
+    setRejectedExecutionHandler((task, executor) -> rejected((TimedTask) task));
+  }
+
+  private static ThreadFactory newThreadFactory(String name) {
+    AtomicInteger threadNumber = new AtomicInteger();
+    return runnable -> new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    submitted.increment();
+    super.execute(new TimedTask(command, false));
+  }
+
+  /**
+   * Submits the task applying backpressure: if the threads and the queue are full the caller waits, at most the block
+   * timeout, whatever the rejection policy.
+   *
+   * @throws RejectedExecutionException if the task could not be queued before the timeout.
+   */
+  public void executeBlocking(Runnable command) {
+    submitted.increment();
+    super.execute(new TimedTask(command, true));
+  }
+
+  private void rejected(TimedTask task) {
+    if (!isShutdown()) {
+      if (task.block || rejectionPolicy == RejectionPolicy.BLOCK) {
+        if (offer(task)) {
+          return;
+        }
+      } else if (rejectionPolicy == RejectionPolicy.CALLER_RUNS) {
+        callerRuns.increment();
+        task.run();
+        return;
+      } else if (rejectionPolicy == RejectionPolicy.SHED_OLDEST) {
+        Runnable oldest = getQueue().poll();
+        if (oldest != null) {
+          shed.increment();
+          Runnable dropped = ((TimedTask) oldest).task;
+          if (dropped instanceof Future) {
+            ((Future) dropped).cancel(false);
+          }
+        }
+        if (getQueue().offer(task)) {
+          return;
+        }
+      }
+    }
+    rejected.increment();
+    throw new RejectedExecutionException("Executor " + name + " rejected a task: " + getStats());
+  }
+
+  /**
+   * @return true if the task was queued before the block timeout.
+   */
+  private boolean offer(TimedTask task) {
+    blocked.increment();
+    try {
+      if (getQueue().offer(task, blockTimeout, TimeUnit.MILLISECONDS)) {
+        prestartCoreThread(); // In case the idle threads stopped in the meantime.
+        return true;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return false;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public RejectionPolicy getRejectionPolicy() {
+    return rejectionPolicy;
+  }
+
+  /**
+   * @return a snapshot of the executor metrics.
+   */
+  public ExecutorStats getStats() {
+    long startedCount = started.sum();
+    return new ExecutorStats(name, getPoolSize(), getActiveCount(), getQueue().size(), submitted.sum(), startedCount,
+        rejected.sum(), callerRuns.sum(), shed.sum(), blocked.sum(),
+        startedCount == 0 ? 0 : totalWaitNanos.sum() / startedCount, maxWaitNanos.get());
+  }
+}
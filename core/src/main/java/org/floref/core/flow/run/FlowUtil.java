@@ -22,6 +22,10 @@ import org.floref.core.dsl.flow.Flows;
 import org.floref.core.dsl.flow.impex.Aliases;
 
 public class FlowUtil {
+  /**
+   * @deprecated the session key is no longer read, cancel through {@link #cancelFlow()} or the returned future.
+   */
+  @Deprecated
   public static final String CANCELLED = "__FLOREF_cancelled";
 
   /**
@@ -30,7 +34,16 @@ public class FlowUtil {
    * The threads are not interrupted.
    */
   public static void cancelFlow() {
-    FlowSession.set(CANCELLED, true);
+    FlowSession.initIfNeeded();
+    FlowSession.getExecution().cancel(false);
+  }
+
+  /**
+   * Sets a deadline on the current flow execution, the steps that did not start until then will not run.
+   */
+  public static void setFlowTimeout(long timeout) {
+    FlowSession.initIfNeeded();
+    FlowSession.getExecution().setTimeout(timeout);
   }
 
   /**
@@ -38,7 +51,16 @@ public class FlowUtil {
    * <code>FlowUtil.cancelFlow()</code>
    */
   public static boolean isCancelledFlow() {
-    return Boolean.TRUE.equals(FlowSession.get(CANCELLED)) || Thread.currentThread().isInterrupted();
+    FlowExecution execution = FlowSession.getExecution();
+    return (execution != null && execution.isCancelled()) || Thread.currentThread().isInterrupted();
+  }
+
+  /**
+   * Same as {@link #isCancelledFlow()} but reads the execution from the context instead of the session.
+   */
+  public static boolean isCancelledFlow(CommandContext commandContext) {
+    FlowExecution execution = commandContext.getFlowExecution();
+    return (execution != null && execution.isCancelled()) || Thread.currentThread().isInterrupted();
   }
 
   public static void clearAllFlowData() {
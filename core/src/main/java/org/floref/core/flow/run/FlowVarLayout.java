@@ -0,0 +1,85 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.floref.core.flow.run;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * The @FlowVar slots used by one gate flow definition, numbered from 0 so that its sessions hold only those slots
+ * whatever the number of slots assigned by all the flows (see {@link FlowVarSlots}). The other names go in the overflow
+ * map of the session.
+ *
+ * @author Cristian Donoiu
+ */
+public class FlowVarLayout {
+  public static final FlowVarLayout EMPTY = new FlowVarLayout(new int[0], new int[0]);
+
+  private final int[] indexes; // For each global slot the index in the session or -1.
+  private final int[] slots; // For each index the global slot.
+
+  private FlowVarLayout(int[] indexes, int[] slots) {
+    this.indexes = indexes;
+    this.slots = slots;
+  }
+
+  /**
+   * @param slots the global slots, duplicates and -1 are ignored.
+   */
+  public static FlowVarLayout of(Collection<Integer> slots) {
+    int max = -1;
+    for (int slot : slots) {
+      max = Math.max(max, slot);
+    }
+    if (max == -1) {
+      return EMPTY;
+    }
+    int[] indexes = new int[max + 1];
+    int[] used = new int[max + 1];
+    Arrays.fill(indexes, -1);
+    int size = 0;
+    for (int slot : slots) {
+      if (slot != -1 && indexes[slot] == -1) {
+        used[size] = slot;
+        indexes[slot] = size++;
+      }
+    }
+    return new FlowVarLayout(indexes, Arrays.copyOf(used, size));
+  }
+
+  /**
+   * @return the index of the global slot in the session or -1 if the slot is not part of this layout.
+   */
+  public int index(int slot) {
+    return slot < indexes.length ? indexes[slot] : -1;
+  }
+
+  /**
+   * @return the global slot of the index.
+   */
+  public int slot(int index) {
+    return slots[index];
+  }
+
+  /**
+   * @return the number of slots of a session.
+   */
+  public int size() {
+    return slots.length;
+  }
+}
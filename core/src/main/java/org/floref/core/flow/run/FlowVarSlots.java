@@ -0,0 +1,73 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.flow.run;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gives each @FlowVar name an integer slot when the flow is built so that the session can be accessed by index on the
+ * hot path instead of hashing the name. The slots are global (nested flows share the same session) and are never
+ * reassigned, so sessions that are still in use stay valid. A session holds only the slots used by its gate flow, see
+ * {@link FlowVarLayout}, the other keys are kept by name.
+ *
+ * @author Cristian Donoiu
+ */
+public class FlowVarSlots {
+  private static final Map<String, Integer> slots = new ConcurrentHashMap<>();
+  private static volatile String[] names = new String[0];
+
+  /**
+   * @return the slot of the name, assigning a new one if needed. Only called at build time.
+   */
+  public static int slot(String name) {
+    Integer slot = slots.get(name);
+    return slot != null ? slot : register(name);
+  }
+
+  private static synchronized int register(String name) {
+    Integer slot = slots.get(name);
+    if (slot == null) {
+      slot = names.length;
+      String[] newNames = Arrays.copyOf(names, slot + 1);
+      newNames[slot] = name;
+      names = newNames;
+      slots.put(name, slot);
+    }
+    return slot;
+  }
+
+  /**
+   * @return the slot of the name or -1 if the name has no slot.
+   */
+  public static int find(String name) {
+    Integer slot = slots.get(name);
+    return slot == null ? -1 : slot;
+  }
+
+  public static String name(int slot) {
+    return names[slot];
+  }
+
+  /**
+   * @return the number of slots assigned so far.
+   */
+  public static int size() {
+    return names.length;
+  }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.flow.run;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded in-process cache, least recently used entries are evicted first. The keys are spread over independently
+ * locked segments (each an access ordered map bounded to its share of the size) so that concurrent lookups of
+ * different keys seldom contend. The eviction is thus per segment, an approximation of a global LRU. Optionally the
+ * entries expire some time after they were written.
+ *
+ * @author Cristian Donoiu
+ */
+public class LruCache<K, V> {
+  private static final int MAX_SEGMENTS = 16;
+  private static final int MIN_SEGMENT_SIZE = 32; // Small caches keep an exact LRU order.
+
+  private final Segment<K, V>[] segments;
+  private final int mask;
+  private final long ttlNanos; // 0 if the entries do not expire.
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * A cached value with its write time.
+   */
+  public static final class Entry<V> {
+    private final V value;
+    private final long writeTime = System.nanoTime();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private Entry(V value) {
+      this.value = value;
+    }
+
+    public V getValue() {
+      return value;
+    }
+
+    /**
+     * @return the nanos since the value was written.
+     */
+    public long getAge() {
+      return System.nanoTime() - writeTime;
+    }
+
+    /**
+     * @return true only for the first caller, the one that should reload the value.
+     */
+    public boolean startRefresh() {
+      return !refreshing.get() && refreshing.compareAndSet(false, true);
+    }
+
+    /**
+     * Lets a later caller reload the value again.
+     */
+    public void refreshFailed() {
+      refreshing.set(false);
+    }
+  }
+
+  private static final class Segment<K, V> extends LinkedHashMap<K, Entry<V>> {
+    private final int maxSize;
+    private final LongAdder evictions;
+
+    Segment(int maxSize, LongAdder evictions) {
+      super(16, 0.75f, true);
+      this.maxSize = maxSize;
+      this.evictions = evictions;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+      if (size() > maxSize) {
+        evictions.increment();
+        return true;
+      }
+      return false;
+    }
+  }
+
+  /**
+   * @param maxSize the maximum number of entries.
+   * @param ttl     how long an entry is kept after it was written, 0 to keep it until evicted.
+   * @param unit    the unit of the ttl.
+   */
+  public LruCache(int maxSize, long ttl, TimeUnit unit) {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("The cache size must be at least 1");
+    }
+    int count = Math.min(MAX_SEGMENTS, Integer.highestOneBit(Math.max(1, maxSize / MIN_SEGMENT_SIZE)));
+    segments = new Segment[count];
+    for (int i = 0; i < count; i++) {
+      segments[i] = new Segment<>((maxSize + count - 1) / count, evictions);
+    }
+    mask = count - 1;
+    ttlNanos = unit.toNanos(ttl);
+  }
+
+  private Segment<K, V> segment(Object key) {
+    int hash = key == null ? 0 : key.hashCode();
+    return segments[(hash ^ (hash >>> 16)) & mask];
+  }
+
+  /**
+   * @return the entry of the key, null if missing or expired. Counts a hit or a miss.
+   */
+  public Entry<V> getEntry(K key) {
+    Segment<K, V> segment = segment(key);
+    Entry<V> entry;
+    synchronized (segment) {
+      entry = segment.get(key);
+      if (entry != null && ttlNanos > 0 && entry.getAge() >= ttlNanos) {
+        segment.remove(key);
+        entry = null;
+      }
+    }
+    if (entry == null) {
+      misses.increment();
+    } else {
+      hits.increment();
+    }
+    return entry;
+  }
+
+  public void put(K key, V value) {
+    Segment<K, V> segment = segment(key);
+    synchronized (segment) {
+      segment.put(key, new Entry<>(value));
+    }
+  }
+
+  /**
+   * Removes the key only if it still has the given value, e.g. a failed future that was replaced meanwhile must not
+   * remove the new value.
+   */
+  public boolean remove(K key, V value) {
+    Segment<K, V> segment = segment(key);
+    synchronized (segment) {
+      Entry<V> entry = segment.get(key);
+      if (entry != null && entry.value == value) {
+        segment.remove(key);
+        return true;
+      }
+      return false;
+    }
+  }
+
+  public void invalidateAll() {
+    for (Segment<K, V> segment : segments) {
+      synchronized (segment) {
+        segment.clear();
+      }
+    }
+  }
+
+  public int size() {
+    int size = 0;
+    for (Segment<K, V> segment : segments) {
+      synchronized (segment) {
+        size += segment.size();
+      }
+    }
+    return size;
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  public long getEvictions() {
+    return evictions.sum();
+  }
+}
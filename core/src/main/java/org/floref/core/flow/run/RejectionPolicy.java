@@ -0,0 +1,66 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.flow.run;
+
+import org.floref.core.exception.FlowDefinitionException;
+
+/**
+ * What a {@link FlowThreadPoolExecutor} does with a task when all its threads are busy and its queue is full.
+ *
+ * @author Cristian Donoiu
+ */
+public enum RejectionPolicy {
+  /**
+   * Throws a RejectedExecutionException.
+   */
+  ABORT("abort"),
+  /**
+   * Runs the task on the submitting thread.
+   */
+  CALLER_RUNS("callerRuns"),
+  /**
+   * Waits for a free thread or queue slot, at most the block timeout, then throws a RejectedExecutionException.
+   */
+  BLOCK("block"),
+  /**
+   * Drops the oldest queued task (a queued Future is cancelled) and queues the new one. Only for a queue size greater
+   * than 0.
+   */
+  SHED_OLDEST("shedOldest");
+
+  private final String configValue;
+
+  RejectionPolicy(String configValue) {
+    this.configValue = configValue;
+  }
+
+  public String getConfigValue() {
+    return configValue;
+  }
+
+  /**
+   * @throws FlowDefinitionException if the value is not one of abort, callerRuns, block or shedOldest.
+   */
+  public static RejectionPolicy fromConfig(String configValue) {
+    for (RejectionPolicy policy : values()) {
+      if (policy.configValue.equals(configValue)) {
+        return policy;
+      }
+    }
+    throw new FlowDefinitionException("Unknown rejection policy: " + configValue);
+  }
+}
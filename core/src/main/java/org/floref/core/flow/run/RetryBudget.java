@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.flow.run;
+
+import org.floref.core.config.FlowConfiguration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket limiting the retries of many flows together: each retry takes a token and the tokens are added back at
+ * a fixed rate. When a downstream system is down the flows calling it soon run out of tokens and fail fast instead of
+ * multiplying its load with their retries.
+ * <p>
+ * Retry instructions use the global budget, configured with {@link FlowConfiguration#retryBudget} and
+ * {@link FlowConfiguration#retryBudgetRefill}, unless given one with {@code .budget(...)}.
+ *
+ * @author Cristian Donoiu
+ */
+public class RetryBudget {
+
+  /**
+   * Allows any number of retries.
+   */
+  public static final RetryBudget UNLIMITED = new RetryBudget(Long.MAX_VALUE, 0);
+
+  private static volatile RetryBudget global = fromConfig();
+
+  private final long capacity;
+  private final double tokensPerNano;
+  private double tokens;
+  private long lastRefill = System.nanoTime();
+  private long rejected;
+
+  /**
+   * @param capacity        the retries allowed in a burst, the bucket starts full.
+   * @param tokensPerSecond the retries per second added back.
+   */
+  public RetryBudget(long capacity, double tokensPerSecond) {
+    this.capacity = capacity;
+    this.tokensPerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+    this.tokens = capacity;
+  }
+
+  private static RetryBudget fromConfig() {
+    String capacity = FlowConfiguration.get(FlowConfiguration.retryBudget);
+    if (capacity == null) {
+      return UNLIMITED;
+    }
+    return new RetryBudget(Long.parseLong(capacity),
+        Double.parseDouble(FlowConfiguration.get(FlowConfiguration.retryBudgetRefill, "10")));
+  }
+
+  public static RetryBudget getGlobal() {
+    return global;
+  }
+
+  public static void setGlobal(RetryBudget retryBudget) {
+    global = retryBudget;
+  }
+
+  /**
+   * Takes a token for a retry.
+   *
+   * @return false if the budget is exhausted and the retry should not be done.
+   */
+  public boolean tryAcquire() {
+    if (this == UNLIMITED) {
+      return true;
+    }
+    synchronized (this) {
+      refill();
+      if (tokens >= 1) {
+        tokens--;
+        return true;
+      }
+      rejected++;
+      return false;
+    }
+  }
+
+  private void refill() {
+    long now = System.nanoTime();
+    tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+    lastRefill = now;
+  }
+
+  /**
+   * @return the retries that can be done right now.
+   */
+  public synchronized long getAvailable() {
+    refill();
+    return (long) tokens;
+  }
+
+  /**
+   * @return the retries refused because the budget was exhausted.
+   */
+  public synchronized long getRejected() {
+    return rejected;
+  }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.flow.run;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed wheel timer for the flow timeouts and delays. The time is split in ticks and a timeout goes into the bucket
+ * of the tick when it expires (modulo the wheel size, with the number of wheel rounds left), so scheduling and
+ * cancelling take constant time whatever the number of pending timeouts. Both only enqueue, the timer thread moves the
+ * new timeouts into their buckets and removes the cancelled ones on each tick. A timeout expires at most one tick
+ * late.
+ * <p>
+ * The tasks run on the timer thread so they must be short, e.g. complete a future or hand work to an executor.
+ *
+ * @author Cristian Donoiu
+ */
+public class WheelTimer {
+  private static final Log LOG = LogFactory.getLog(WheelTimer.class);
+  private static final int MAX_TRANSFERS_PER_TICK = 100000;
+
+  private final long tickNanos;
+  private final Bucket[] wheel;
+  private final int mask;
+  private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+  private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean started = new AtomicBoolean();
+  private final String name;
+  private volatile long startTime;
+  private long tick; // Only used by the timer thread.
+
+  /**
+   * A scheduled task, returned by {@link #schedule}.
+   */
+  public final class Timeout {
+    private static final int WAITING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    private final Runnable task;
+    private final long deadline; // Nanos since the timer start.
+    private final AtomicInteger state = new AtomicInteger(WAITING);
+    private long remainingRounds;
+    private Bucket bucket;
+    private Timeout previous;
+    private Timeout next;
+
+    private Timeout(Runnable task, long deadline) {
+      this.task = task;
+      this.deadline = deadline;
+    }
+
+    /**
+     * @return false if the task already ran or was already cancelled.
+     */
+    public boolean cancel() {
+      if (!state.compareAndSet(WAITING, CANCELLED)) {
+        return false;
+      }
+      cancelled.add(this);
+      return true;
+    }
+
+    public boolean isCancelled() {
+      return state.get() == CANCELLED;
+    }
+
+    public boolean isExpired() {
+      return state.get() == EXPIRED;
+    }
+
+    private void expire() {
+      if (state.compareAndSet(WAITING, EXPIRED)) {
+        try {
+          task.run();
+        } catch (Throwable throwable) {
+          LOG.error("Timer task failed", throwable);
+        }
+      }
+    }
+  }
+
+  /**
+   * The timeouts of one wheel slot, as a doubly linked list so that a cancelled one is removed in constant time.
+   */
+  private static final class Bucket {
+    private Timeout head;
+    private Timeout tail;
+
+    void add(Timeout timeout) {
+      timeout.bucket = this;
+      if (head == null) {
+        head = tail = timeout;
+      } else {
+        tail.next = timeout;
+        timeout.previous = tail;
+        tail = timeout;
+      }
+    }
+
+    void remove(Timeout timeout) {
+      if (timeout.previous != null) {
+        timeout.previous.next = timeout.next;
+      } else {
+        head = timeout.next;
+      }
+      if (timeout.next != null) {
+        timeout.next.previous = timeout.previous;
+      } else {
+        tail = timeout.previous;
+      }
+      timeout.previous = timeout.next = null;
+      timeout.bucket = null;
+    }
+
+    /**
+     * Runs the timeouts of this round that are due.
+     */
+    void expire(long deadline) {
+      Timeout timeout = head;
+      while (timeout != null) {
+        Timeout next = timeout.next;
+        if (timeout.remainingRounds <= 0 && timeout.deadline <= deadline) {
+          remove(timeout);
+          timeout.expire();
+        } else if (timeout.isCancelled()) {
+          remove(timeout);
+        } else {
+          timeout.remainingRounds--;
+        }
+        timeout = next;
+      }
+    }
+  }
+
+  /**
+   * @param name       the name of the timer thread.
+   * @param tick       the duration of a tick, the precision of the timer.
+   * @param unit       the unit of the tick.
+   * @param wheelSize  the number of buckets, rounded up to a power of 2. The timeouts further than a wheel turn only
+   *                   count down their rounds on each turn.
+   */
+  public WheelTimer(String name, long tick, TimeUnit unit, int wheelSize) {
+    this.name = name;
+    this.tickNanos = Math.max(1, unit.toNanos(tick));
+    int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+    wheel = new Bucket[size];
+    for (int i = 0; i < size; i++) {
+      wheel[i] = new Bucket();
+    }
+    mask = size - 1;
+  }
+
+  /**
+   * Runs the task on the timer thread after the delay, unless the returned timeout is cancelled before.
+   */
+  public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+    startIfNeeded();
+    Timeout timeout = new Timeout(task, System.nanoTime() - startTime + unit.toNanos(delay));
+    scheduled.add(timeout);
+    return timeout;
+  }
+
+  private void startIfNeeded() {
+    if (!started.get() && started.compareAndSet(false, true)) {
+      startTime = System.nanoTime();
+      Thread thread = new Thread(this::run, name);
+      thread.setDaemon(true);
+      thread.start();
+    }
+    while (startTime == 0) {
+      Thread.yield(); // Another caller is starting the timer.
+    }
+  }
+
+  private void run() {
+    while (true) {
+      long deadline = waitForNextTick();
+      removeCancelled();
+      transferScheduled();
+      wheel[(int) (tick & mask)].expire(deadline);
+      tick++;
+    }
+  }
+
+  /**
+   * @return the time of the tick end, relative to the timer start.
+   */
+  private long waitForNextTick() {
+    long deadline = tickNanos * (tick + 1);
+    for (long sleep = deadline - (System.nanoTime() - startTime); sleep > 0;
+         sleep = deadline - (System.nanoTime() - startTime)) {
+      LockSupport.parkNanos(this, sleep);
+    }
+    return deadline;
+  }
+
+  private void removeCancelled() {
+    for (Timeout timeout = cancelled.poll(); timeout != null; timeout = cancelled.poll()) {
+      if (timeout.bucket != null) {
+        timeout.bucket.remove(timeout);
+      }
+    }
+  }
+
+  private void transferScheduled() {
+    for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+      Timeout timeout = scheduled.poll();
+      if (timeout == null) {
+        return;
+      }
+      if (timeout.isCancelled()) {
+        continue;
+      }
+      long expiryTick = timeout.deadline / tickNanos;
+      timeout.remainingRounds = (expiryTick - tick) / wheel.length;
+      wheel[(int) (Math.max(expiryTick, tick) & mask)].add(timeout); // A late one expires on this tick.
+    }
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2020 the original author  or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.config;
+
+import org.floref.core.config.consumer.FlowMetrics;
+import org.floref.core.config.consumer.MethodRefMetrics;
+import org.floref.core.config.consumer.MetricsConsumer;
+import org.floref.core.config.consumer.MetricsConsumers;
+import org.floref.core.dsl.flow.Flows;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static java.util.Arrays.asList;
+import static org.floref.core.dsl.flow.Flows.from;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MetricsConsumersTest {
+
+  public interface MetricsFlows {
+    String metered(String s);
+  }
+
+  public String suffix(String s) {
+    return s + "!";
+  }
+
+  /**
+   * Records the events of this test class only, other tests may run in parallel.
+   */
+  static class RecordingConsumer implements MetricsConsumer {
+    final int capabilities;
+    final List<String> events = new CopyOnWriteArrayList<>();
+    final List<MethodRefMetrics> metrics = new CopyOnWriteArrayList<>();
+
+    RecordingConsumer(int capabilities) {
+      this.capabilities = capabilities;
+    }
+
+    @Override
+    public int getCapabilities() {
+      return capabilities;
+    }
+
+    private void record(String event, MethodRefMetrics methodRefMetrics) {
+      if (methodRefMetrics.getMethodReference().contains(MetricsConsumersTest.class.getSimpleName())) {
+        events.add(event);
+        metrics.add(methodRefMetrics);
+      }
+    }
+
+    @Override
+    public void beforeFlow(FlowMetrics metrics) {
+      record("beforeFlow", metrics);
+    }
+
+    @Override
+    public void afterFlow(FlowMetrics metrics) {
+      record("afterFlow", metrics);
+    }
+
+    @Override
+    public void beforeMethodReference(MethodRefMetrics metrics) {
+      record("beforeMethodReference", metrics);
+    }
+
+    @Override
+    public void afterMethodReference(MethodRefMetrics metrics) {
+      record("afterMethodReference", metrics);
+    }
+  }
+
+  @Before
+  public void before() {
+    Flows.deleteAll();
+  }
+
+  @Test
+  public void testSnapshot() {
+    RecordingConsumer flowsOnly = new RecordingConsumer(MetricsConsumer.AFTER_FLOW);
+    MetricsConsumers metricsConsumers = new MetricsConsumers(asList(flowsOnly));
+    assertTrue(metricsConsumers.isEnabled(MetricsConsumer.AFTER_FLOW));
+    assertFalse(metricsConsumers.isEnabled(MetricsConsumer.BEFORE_FLOW | MetricsConsumer.PARAMS));
+    assertFalse(MetricsConsumers.EMPTY.isEnabled(MetricsConsumer.ALL));
+  }
+
+  @Test
+  public void testConsumerListIsReadOnly() {
+    try {
+      FlowConfiguration.getMetricsConsumerList().add(new RecordingConsumer(MetricsConsumer.AFTER_FLOW));
+      fail("Adding to the list would not republish the snapshot");
+    } catch (UnsupportedOperationException e) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void testCapabilities() {
+    MetricsFlows flows = from(MetricsFlows::metered)
+        .to(this::suffix)
+        .build();
+
+    RecordingConsumer consumer = new RecordingConsumer(MetricsConsumer.AFTER_METHOD_REFERENCE | MetricsConsumer.RESULT);
+    FlowConfiguration.addMetricsConsumer(consumer);
+    try {
+      assertTrue(FlowConfiguration.getMetricsConsumers().isEnabled(MetricsConsumer.AFTER_METHOD_REFERENCE));
+      assertEquals("a!", flows.metered("a"));
+    } finally {
+      FlowConfiguration.removeMetricsConsumer(consumer);
+    }
+    // Only the declared event, with the result but without the params.
+    assertEquals(asList("afterMethodReference"), consumer.events);
+    assertEquals("a!", consumer.metrics.get(0).getResult());
+    assertNull(consumer.metrics.get(0).getParams());
+
+    consumer = new RecordingConsumer(MetricsConsumer.ALL);
+    FlowConfiguration.addMetricsConsumer(consumer);
+    try {
+      flows.metered("b");
+    } finally {
+      FlowConfiguration.removeMetricsConsumer(consumer);
+    }
+    assertEquals(asList("beforeFlow", "beforeMethodReference", "afterMethodReference", "afterFlow"), consumer.events);
+    assertEquals("b", consumer.metrics.get(0).getParams()[0]);
+  }
+}
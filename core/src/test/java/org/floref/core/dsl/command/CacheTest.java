@@ -0,0 +1,276 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.dsl.command;
+
+import org.floref.core.config.FlowConfiguration;
+import org.floref.core.config.consumer.CacheMetrics;
+import org.floref.core.config.consumer.FlowMetrics;
+import org.floref.core.config.consumer.MethodRefMetrics;
+import org.floref.core.config.consumer.MetricsConsumer;
+import org.floref.core.dsl.command.group.ParentCommand;
+import org.floref.core.dsl.flow.Flows;
+import org.floref.core.dsl.flow.data.FlowDefinition;
+import org.floref.core.flow.registry.FlowRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Arrays.asList;
+import static org.floref.core.dsl.flow.Flows.from;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CacheTest {
+
+  private final AtomicInteger calls = new AtomicInteger();
+
+  public String lookup(String s) {
+    return s + calls.incrementAndGet();
+  }
+
+  public String lookupPair(String s, Integer i) {
+    return s + i + "." + calls.incrementAndGet();
+  }
+
+  public String lookupNull(String s) {
+    calls.incrementAndGet();
+    return null;
+  }
+
+  public CompletableFuture<String> lookupAsync(String s) {
+    CompletableFuture<String> future = new CompletableFuture<>();
+    if (calls.incrementAndGet() == 1) {
+      future.completeExceptionally(new IllegalStateException("Down"));
+    } else {
+      future.complete(s + "!");
+    }
+    return future;
+  }
+
+  private final CompletableFuture<String> pending = new CompletableFuture<>();
+
+  public CompletableFuture<String> lookupPending(String s) {
+    calls.incrementAndGet();
+    return pending;
+  }
+
+  public String firstChar(String s) {
+    return s.substring(0, 1);
+  }
+
+  public interface CacheFlows {
+    String cached(String s);
+
+    String pair(String s, Integer i);
+
+    String byKey(String s);
+
+    String expiring(String s);
+
+    String refreshing(String s);
+
+    String nulls(String s);
+
+    CompletableFuture<String> async(String s);
+
+    CompletableFuture<String> pending(String s);
+  }
+
+  @Before
+  public void before() {
+    Flows.deleteAll();
+  }
+
+  private CacheCommand getCacheCommand(String method) {
+    for (FlowDefinition flowDefinition : FlowRegistry.getFlowInstanceData(CacheFlows.class).getFlowDefinitions()) {
+      if (flowDefinition.getId().endsWith(method)) {
+        return (CacheCommand) ((ParentCommand) flowDefinition.getStartCommand()).getChildren().get(0);
+      }
+    }
+    throw new IllegalStateException(method);
+  }
+
+  @Test
+  public void testHitsAndEviction() {
+    CacheFlows flows = from(CacheFlows::cached)
+        .cache(this::lookup).maxSize(2)
+        .build();
+    from(CacheFlows::pair)
+        .cache(this::lookupPair)
+        .build();
+
+    assertEquals("a1", flows.cached("a"));
+    assertEquals("a1", flows.cached("a"));
+    assertEquals("b2", flows.cached("b"));
+    assertEquals("a1", flows.cached("a"));
+    assertEquals("c3", flows.cached("c")); // Evicts b, the least recently used.
+    assertEquals("a1", flows.cached("a"));
+    assertEquals("b4", flows.cached("b"));
+
+    CacheCommand cache = getCacheCommand("cached");
+    assertEquals(3, cache.getCache().getHits());
+    assertEquals(4, cache.getCache().getMisses());
+    assertEquals(2, cache.getCache().getEvictions());
+    assertEquals(2, cache.getCache().size());
+
+    // All the arguments are the key.
+    assertEquals("x1.5", flows.pair("x", 1));
+    assertEquals("x1.5", flows.pair("x", 1));
+    assertEquals("x2.6", flows.pair("x", 2));
+  }
+
+  @Test
+  public void testKeyTtlAndNulls() throws Exception {
+    CacheFlows flows = from(CacheFlows::byKey)
+        .cache(this::lookup).key(this::firstChar)
+        .build();
+    from(CacheFlows::expiring)
+        .cache(this::lookup).ttl(50)
+        .build();
+    from(CacheFlows::nulls)
+        .cache(this::lookupNull)
+        .build();
+
+    assertEquals("ab1", flows.byKey("ab"));
+    assertEquals("ab1", flows.byKey("ac"));
+
+    assertEquals("a2", flows.expiring("a"));
+    assertEquals("a2", flows.expiring("a"));
+    Thread.sleep(100);
+    assertEquals("a3", flows.expiring("a"));
+
+    flows.nulls("a");
+    flows.nulls("a"); // Not cached.
+    assertEquals(5, calls.get());
+  }
+
+  @Test
+  public void testRefreshAfter() throws Exception {
+    CacheFlows flows = from(CacheFlows::refreshing)
+        .cache(this::lookup).refreshAfter(50)
+        .build();
+
+    assertEquals("a1", flows.refreshing("a"));
+    Thread.sleep(100);
+    assertEquals("a1", flows.refreshing("a")); // Stale, reloaded in background.
+    for (int i = 0; i < 100 && calls.get() < 2; i++) {
+      Thread.sleep(10);
+    }
+    for (int i = 0; i < 100 && !"a2".equals(flows.refreshing("a")); i++) {
+      Thread.sleep(10);
+    }
+    assertEquals("a2", flows.refreshing("a"));
+    assertEquals(2, calls.get());
+  }
+
+  @Test
+  public void testFailedFutureIsNotCached() throws Exception {
+    CacheFlows flows = from(CacheFlows::async)
+        .cache(this::lookupAsync)
+        .build();
+    for (FlowDefinition flowDefinition : FlowRegistry.getFlowInstanceData(CacheFlows.class).getFlowDefinitions()) {
+      flowDefinition.setAsync(true);
+    }
+
+    try {
+      flows.async("a").get();
+      fail();
+    } catch (Exception e) {
+      assertTrue(e.getMessage().contains("Down"));
+    }
+    assertEquals("a!", flows.async("a").get());
+    assertEquals("a!", flows.async("a").get());
+    assertEquals(2, calls.get());
+  }
+
+  @Test
+  public void testCancelledFlowDoesNotCancelCachedFuture() throws Exception {
+    CacheFlows flows = from(CacheFlows::pending)
+        .cache(this::lookupPending)
+        .build();
+    for (FlowDefinition flowDefinition : FlowRegistry.getFlowInstanceData(CacheFlows.class).getFlowDefinitions()) {
+      flowDefinition.setAsync(true);
+    }
+
+    CompletableFuture<String> first = flows.pending("a");
+    CompletableFuture<String> second = flows.pending("a");
+    first.cancel(true);
+    assertFalse(pending.isCancelled());
+    pending.complete("a!");
+    assertEquals("a!", second.get(5, TimeUnit.SECONDS));
+    assertEquals("a!", flows.pending("a").get(5, TimeUnit.SECONDS));
+    assertEquals(1, calls.get());
+  }
+
+  @Test
+  public void testMetrics() {
+    List<CacheMetrics> accesses = new CopyOnWriteArrayList<>();
+    MetricsConsumer consumer = new MetricsConsumer() {
+      @Override
+      public int getCapabilities() {
+        return CACHE;
+      }
+
+      @Override
+      public void beforeFlow(FlowMetrics metrics) {
+      }
+
+      @Override
+      public void afterFlow(FlowMetrics metrics) {
+      }
+
+      @Override
+      public void beforeMethodReference(MethodRefMetrics metrics) {
+      }
+
+      @Override
+      public void afterMethodReference(MethodRefMetrics metrics) {
+      }
+
+      @Override
+      public void cacheAccess(CacheMetrics metrics) {
+        if (metrics.getMethodReference().contains("CacheTest")) {
+          accesses.add(metrics);
+        }
+      }
+    };
+    CacheFlows flows = from(CacheFlows::cached)
+        .cache(this::lookup)
+        .build();
+
+    FlowConfiguration.addMetricsConsumer(consumer);
+    try {
+      flows.cached("a");
+      flows.cached("a");
+    } finally {
+      FlowConfiguration.removeMetricsConsumer(consumer);
+    }
+    assertEquals(2, accesses.size());
+    assertEquals(asList(false, true), asList(accesses.get(0).isHit(), accesses.get(1).isHit()));
+    assertEquals("a", accesses.get(1).getKey());
+    assertEquals(1, accesses.get(1).getHits());
+    assertEquals(1, accesses.get(1).getMisses());
+    assertEquals(1, accesses.get(1).getSize());
+  }
+}
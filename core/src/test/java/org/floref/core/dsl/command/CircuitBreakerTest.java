@@ -0,0 +1,181 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.dsl.command;
+
+import org.floref.core.dsl.flow.Flows;
+import org.floref.core.dsl.flow.data.FlowDefinition;
+import org.floref.core.exception.CircuitBreakerOpenException;
+import org.floref.core.flow.registry.FlowRegistry;
+import org.floref.core.flow.run.CircuitBreakerState;
+import org.floref.core.flow.run.CircuitBreakers;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CircuitBreakerTest {
+
+  private final AtomicInteger calls = new AtomicInteger();
+  private volatile boolean down = true;
+  private volatile long latency;
+
+  public String callService(String s) throws InterruptedException {
+    calls.incrementAndGet();
+    if (latency > 0) {
+      Thread.sleep(latency);
+    }
+    if (down) {
+      throw new IllegalStateException("Service down");
+    }
+    return s + "!";
+  }
+
+  public CompletableFuture<String> callAsyncService(String s) {
+    calls.incrementAndGet();
+    CompletableFuture<String> future = new CompletableFuture<>();
+    if (down) {
+      future.completeExceptionally(new IllegalStateException("Service down"));
+    } else {
+      future.complete(s + "!");
+    }
+    return future;
+  }
+
+  public String cached(String s) {
+    return s + "?";
+  }
+
+  public interface BreakerFlows {
+    String fallback(String s);
+
+    String failFast(String s);
+
+    String slow(String s);
+
+    CompletableFuture<String> async(String s);
+  }
+
+  private void callFailing(BreakerFlows flows, int times) {
+    for (int i = 0; i < times; i++) {
+      try {
+        flows.failFast("a");
+        fail();
+      } catch (IllegalStateException e) {
+        assertEquals("Service down", e.getMessage());
+      }
+    }
+  }
+
+  @Test
+  public void testFallbackAndHalfOpen() throws Exception {
+    BreakerFlows flows = Flows.from(BreakerFlows::fallback)
+        .circuitBreaker(this::callService).name("fallbackBreaker").window(4).failureRate(50).openDuration(100)
+        .halfOpenCalls(2).fallback(this::cached)
+        .build();
+
+    for (int i = 0; i < 4; i++) {
+      try {
+        flows.fallback("a");
+        fail();
+      } catch (IllegalStateException e) {
+        assertEquals("Service down", e.getMessage());
+      }
+    }
+    CircuitBreakerState state = CircuitBreakers.get("fallbackBreaker");
+    assertEquals(CircuitBreakerState.Status.OPEN, state.getStatus());
+    assertEquals("a?", flows.fallback("a"));
+    assertEquals(4, calls.get()); // Not called while open.
+
+    Thread.sleep(150);
+    down = false;
+    assertEquals("a!", flows.fallback("a"));
+    assertEquals(CircuitBreakerState.Status.HALF_OPEN, state.getStatus());
+    assertEquals("a!", flows.fallback("a"));
+    assertEquals(CircuitBreakerState.Status.CLOSED, state.getStatus());
+    assertEquals(0, state.getFailureRate());
+  }
+
+  @Test
+  public void testFailFastAndReopen() throws Exception {
+    BreakerFlows flows = Flows.from(BreakerFlows::failFast)
+        .circuitBreaker(this::callService).name("failFastBreaker").window(2).openDuration(100)
+        .build();
+
+    callFailing(flows, 2);
+    try {
+      flows.failFast("a");
+      fail();
+    } catch (CircuitBreakerOpenException e) {
+      assertEquals(2, calls.get());
+    }
+    Thread.sleep(150);
+    callFailing(flows, 1); // The failed probe opens it again.
+    assertEquals(CircuitBreakerState.Status.OPEN, CircuitBreakers.get("failFastBreaker").getStatus());
+    assertTrue(CircuitBreakers.get("failFastBreaker").getRejected() >= 1);
+  }
+
+  @Test
+  public void testSettings() {
+    CircuitBreakerState state = new CircuitBreakerState("settings", 4, 50, Long.MAX_VALUE, 100, 100, 2);
+    assertTrue(state.hasSettings(4, 50, Long.MAX_VALUE, 100, 100, 2));
+    assertFalse(state.hasSettings(5, 50, Long.MAX_VALUE, 100, 100, 2)); // Warned about, the first settings are kept.
+    assertFalse(state.hasSettings(4, 50, 10, 100, 100, 2));
+  }
+
+  @Test
+  public void testSlowCalls() {
+    down = false;
+    latency = 20;
+    BreakerFlows flows = Flows.from(BreakerFlows::slow)
+        .circuitBreaker(this::callService).name("slowBreaker").window(3).slowCall(10, 60)
+        .build();
+
+    for (int i = 0; i < 3; i++) {
+      assertEquals("a!", flows.slow("a"));
+    }
+    assertEquals(CircuitBreakerState.Status.OPEN, CircuitBreakers.get("slowBreaker").getStatus());
+    assertEquals(100, CircuitBreakers.get("slowBreaker").getSlowCallRate());
+  }
+
+  @Test
+  public void testAsyncFailuresAreRecorded() throws Exception {
+    BreakerFlows flows = Flows.from(BreakerFlows::async)
+        .circuitBreaker(this::callAsyncService).name("asyncBreaker").window(2)
+        .build();
+    for (FlowDefinition flowDefinition : FlowRegistry.getFlowInstanceData(BreakerFlows.class).getFlowDefinitions()) {
+      flowDefinition.setAsync(true);
+    }
+
+    for (int i = 0; i < 3; i++) {
+      try {
+        flows.async("a").get(5, TimeUnit.SECONDS);
+        fail();
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause().toString(), i < 2 ? e.getCause() instanceof IllegalStateException
+            : e.getCause() instanceof CircuitBreakerOpenException);
+      }
+    }
+    assertEquals(2, calls.get());
+  }
+}
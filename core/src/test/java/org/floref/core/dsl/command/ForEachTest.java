@@ -19,14 +19,27 @@ package org.floref.core.dsl.command;
 import org.floref.core.dsl.flow.Flows;
 import org.junit.Before;
 import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static org.floref.core.dsl.flow.Flows.from;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class ForEachTest {
 
@@ -38,6 +51,14 @@ public class ForEachTest {
     }
   }
 
+  public void distinctAggregator(String s, List<String> results) {
+    synchronized (results) {
+      if (!results.contains(s)) {
+        results.add(s);
+      }
+    }
+  }
+
   public String s1(String s) {
     return s + "1";
   }
@@ -87,6 +108,109 @@ public class ForEachTest {
     List<String> start2(Collection<String> s);
   }
 
+  public interface CollectorFlows {
+    Long sum(Stream<Integer> numbers);
+
+    String joined(Collection<String> s);
+  }
+
+  public Integer twice(Integer i) {
+    return 2 * i;
+  }
+
+  public interface StreamingFlows {
+    List<String> iterator(Iterator<String> elements);
+
+    List<String> stream(Stream<String> elements);
+
+    List<String> publisher(Publisher<String> elements);
+  }
+
+  /**
+   * Publishes "e0".."e(count-1)" on the requesting thread, then fails if failAt is reached.
+   */
+  public static class RangePublisher implements Publisher<String> {
+    final int count;
+    final int failAt;
+    final AtomicInteger maxRequested = new AtomicInteger();
+
+    RangePublisher(int count, int failAt) {
+      this.count = count;
+      this.failAt = failAt;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super String> subscriber) {
+      subscriber.onSubscribe(new Subscription() {
+        long demand;
+        int next;
+        boolean emitting;
+
+        @Override
+        public synchronized void request(long n) {
+          demand += n;
+          maxRequested.accumulateAndGet((int) demand, Math::max);
+          if (emitting) {
+            return;
+          }
+          emitting = true;
+          while (demand > 0 && next <= count) {
+            if (next == failAt) {
+              next = count + 1;
+              subscriber.onError(new IllegalStateException("publisher failed"));
+            } else if (next == count) {
+              next++;
+              subscriber.onComplete();
+            } else {
+              demand--;
+              subscriber.onNext("e" + next++);
+            }
+          }
+          emitting = false;
+        }
+
+        @Override
+        public void cancel() {
+          next = count + 1;
+        }
+      });
+    }
+  }
+
+  private final AtomicInteger pulled = new AtomicInteger();
+  private final AtomicInteger processed = new AtomicInteger();
+  private final AtomicInteger maxInFlight = new AtomicInteger();
+
+  public String process(String s) {
+    processed.incrementAndGet();
+    return s + "1";
+  }
+
+  private Iterator<String> countingIterator(int count) {
+    return new Iterator<String>() {
+      int next;
+
+      @Override
+      public boolean hasNext() {
+        return next < count;
+      }
+
+      @Override
+      public String next() {
+        maxInFlight.accumulateAndGet(pulled.incrementAndGet() - processed.get(), Math::max);
+        return "e" + next++;
+      }
+    };
+  }
+
+  private static List<String> expected(int count) {
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      expected.add("e" + i + "1");
+    }
+    return expected;
+  }
+
   @Before
   public void before() {
     Flows.deleteAll();
@@ -166,6 +290,35 @@ public class ForEachTest {
     assertTrue("b12.,a12.".equals(result) || "a12.,b12.".equals(result));
   }
 
+  @Test
+  public void testAggregatorSeesTheWholeList() {
+    ForEachTest test = new ForEachTest();
+
+    TestFlows flows = from(TestFlows::start)
+        .forEach().grain(1).workers(4).aggregator(test::distinctAggregator)
+        .to(test::s1)
+        .end()
+        .to(test::processResults)
+        .build();
+
+    String result = flows.start(Arrays.asList("a", "b", "a", "b", "a", "b", "a", "b"));
+    assertTrue("a1,b1".equals(result) || "b1,a1".equals(result));
+  }
+
+  @Test
+  public void testOrderedAggregatorSeesTheWholeList() {
+    ForEachTest test = new ForEachTest();
+
+    TestFlows flows = from(TestFlows::start)
+        .forEach().grain(1).workers(4).ordered().aggregator(test::distinctAggregator)
+        .to(test::s1)
+        .end()
+        .to(test::processResults)
+        .build();
+
+    assertEquals("b1,a1,c1", flows.start(Arrays.asList("b", "a", "b", "a", "c", "b", "a", "c")));
+  }
+
   @Test
   public void testWithException() {
     ForEachTest test = new ForEachTest();
@@ -183,4 +336,135 @@ public class ForEachTest {
     assertTrue("a12".equals(result));
   }
 
+  @Test
+  public void testOrderedChunks() {
+    ForEachTest test = new ForEachTest();
+
+    TestFlows flows = from(TestFlows::start2)
+        .forEach().grain(7).workers(4).ordered()
+        .to(test::s1)
+        .end()
+        .build();
+
+    List<String> input = new ArrayList<>();
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      input.add("e" + i);
+      expected.add("e" + i + "1");
+    }
+    assertEquals(expected, flows.start2(input));
+  }
+
+  @Test
+  public void testLargeCollection() {
+    ForEachTest test = new ForEachTest();
+
+    TestFlows flows = from(TestFlows::start2)
+        .forEach()
+        .to(test::s1)
+        .end()
+        .build();
+
+    Set<String> input = new HashSet<>();  // Not a RandomAccess list.
+    for (int i = 0; i < 10000; i++) {
+      input.add("e" + i);
+    }
+    List<String> result = flows.start2(input);
+    assertEquals(input.size(), result.size());
+    assertEquals(input.size(), new HashSet<>(result).size());
+  }
+
+  @Test
+  public void testIteratorIsPulledInWindow() {
+    ForEachTest test = new ForEachTest();
+
+    StreamingFlows flows = from(StreamingFlows::iterator)
+        .forEach().window(8).workers(4).ordered()
+        .to(test::process)
+        .end()
+        .build();
+
+    assertEquals(expected(5000), flows.iterator(test.countingIterator(5000)));
+    assertEquals(5000, test.pulled.get());
+    assertTrue("In flight " + test.maxInFlight.get(), test.maxInFlight.get() <= 8);
+  }
+
+  @Test
+  public void testStreamIsClosed() {
+    ForEachTest test = new ForEachTest();
+
+    StreamingFlows flows = from(StreamingFlows::stream)
+        .forEach().ordered()
+        .to(test::process)
+        .end()
+        .build();
+
+    AtomicBoolean closed = new AtomicBoolean();
+    Stream<String> stream = IntStream.range(0, 1000).mapToObj(i -> "e" + i).onClose(() -> closed.set(true));
+    assertEquals(expected(1000), flows.stream(stream));
+    assertTrue(closed.get());
+  }
+
+  @Test
+  public void testPublisher() {
+    ForEachTest test = new ForEachTest();
+
+    StreamingFlows flows = from(StreamingFlows::publisher)
+        .forEach().window(16).ordered()
+        .to(test::process)
+        .end()
+        .build();
+
+    RangePublisher publisher = new RangePublisher(2000, -1);
+    assertEquals(expected(2000), flows.publisher(publisher));
+    assertTrue("Requested " + publisher.maxRequested.get(), publisher.maxRequested.get() <= 16);
+  }
+
+  @Test
+  public void testPublisherFailureFailsTheForEach() {
+    ForEachTest test = new ForEachTest();
+
+    StreamingFlows flows = from(StreamingFlows::publisher)
+        .forEach().window(4)
+        .to(test::process)
+        .end()
+        .build();
+
+    try {
+      flows.publisher(new RangePublisher(100, 50));
+      fail("The publisher failure should fail the forEach");
+    } catch (IllegalStateException e) {
+      assertEquals("publisher failed", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testCollector() {
+    ForEachTest test = new ForEachTest();
+
+    CollectorFlows flows = from(CollectorFlows::sum)
+        .forEach().collector(Collectors.summingLong(Integer::longValue))
+        .to(test::twice)
+        .end()
+        .build();
+
+    assertEquals(Long.valueOf(2L * 99999 * 100000 / 2), flows.sum(IntStream.range(0, 100000).boxed()));
+  }
+
+  @Test
+  public void testOrderedCollector() {
+    ForEachTest test = new ForEachTest();
+
+    CollectorFlows flows = from(CollectorFlows::joined)
+        .forEach().grain(3).workers(4).ordered().collector(Collectors.joining(","))
+        .to(test::s1)
+        .end()
+        .build();
+
+    List<String> input = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      input.add("e" + i);
+    }
+    assertEquals(String.join(",", expected(1000)), flows.joined(input));
+  }
 }
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.dsl.command;
+
+import org.floref.core.dsl.command.group.ParentCommand;
+import org.floref.core.dsl.flow.Flows;
+import org.floref.core.dsl.flow.data.FlowDefinition;
+import org.floref.core.flow.registry.FlowRegistry;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HedgeTest {
+
+  private final AtomicInteger calls = new AtomicInteger();
+  private final CountDownLatch interrupted = new CountDownLatch(1);
+  private final CountDownLatch release = new CountDownLatch(1);
+  private volatile Thread firstCallThread;
+
+  public String slowFirst(String s) {
+    if (calls.incrementAndGet() == 1) {
+      firstCallThread = Thread.currentThread();
+      try {
+        Thread.sleep(10_000);
+      } catch (InterruptedException e) {
+        interrupted.countDown();
+      }
+      return s + " slow";
+    }
+    return s + " fast";
+  }
+
+  public String busyFirst(String s) {
+    if (calls.incrementAndGet() == 1) {
+      while (release.getCount() > 0) {
+        // Ignores the interrupt.
+      }
+      return s + " slow";
+    }
+    return s + " fast";
+  }
+
+  public String failFirst(String s) {
+    if (calls.incrementAndGet() == 1) {
+      throw new IllegalStateException("Replica down");
+    }
+    return s + "!";
+  }
+
+  public String alwaysFail(String s) {
+    calls.incrementAndGet();
+    throw new IllegalStateException("Down " + calls.get());
+  }
+
+  public String fast(String s) {
+    calls.incrementAndGet();
+    return s + "!";
+  }
+
+  public String upper(String s) {
+    return s.toUpperCase();
+  }
+
+  public interface HedgeFlows {
+    String slow(String s);
+
+    String busy(String s);
+
+    String failed(String s);
+
+    String bothFailed(String s);
+
+    String fast(String s);
+  }
+
+  @Test
+  public void testSlowCallIsHedged() throws Exception {
+    HedgeFlows flows = Flows.from(HedgeFlows::slow)
+        .hedge(this::slowFirst).delay(50)
+        .to(this::upper)
+        .build();
+
+    long start = System.nanoTime();
+    assertEquals("A FAST", flows.slow("a"));
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    assertTrue("The slow call is cancelled", interrupted.await(5, TimeUnit.SECONDS));
+    assertEquals(2, calls.get());
+    assertFalse(Thread.currentThread() == firstCallThread);
+    assertFalse(Thread.currentThread().isInterrupted());
+  }
+
+  @Test
+  public void testHedgeWinsWhenTheSlowCallIgnoresTheInterrupt() {
+    HedgeFlows flows = Flows.from(HedgeFlows::busy)
+        .hedge(this::busyFirst).delay(50)
+        .build();
+
+    try {
+      long start = System.nanoTime();
+      assertEquals("a fast", flows.busy("a"));
+      assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+      assertEquals(2, calls.get());
+    } finally {
+      release.countDown();
+    }
+  }
+
+  @Test
+  public void testFailureStartsTheHedgeAtOnce() {
+    HedgeFlows flows = Flows.from(HedgeFlows::failed)
+        .hedge(this::failFirst).delay(10_000)
+        .build();
+
+    long start = System.nanoTime();
+    assertEquals("a!", flows.failed("a"));
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+  }
+
+  @Test
+  public void testBothCallsFail() {
+    HedgeFlows flows = Flows.from(HedgeFlows::bothFailed)
+        .hedge(this::alwaysFail).delay(10_000)
+        .build();
+
+    try {
+      flows.bothFailed("a");
+      fail();
+    } catch (IllegalStateException e) {
+      assertEquals("Down 1", e.getMessage());
+    }
+    assertEquals(2, calls.get());
+  }
+
+  @Test
+  public void testPercentileDelay() {
+    HedgeFlows flows = Flows.from(HedgeFlows::fast)
+        .hedge(this::fast).delay(10_000).percentile(90)
+        .build();
+    HedgeCommand hedge = null;
+    for (FlowDefinition flowDefinition : FlowRegistry.getFlowInstanceData(HedgeFlows.class).getFlowDefinitions()) {
+      if (flowDefinition.getId().endsWith("fast")) {
+        hedge = (HedgeCommand) ((ParentCommand) flowDefinition.getStartCommand()).getChildren().get(0);
+      }
+    }
+
+    assertEquals(10_000, hedge.getHedgeDelay());
+    for (int i = 0; i < 32; i++) {  // Until the percentile delay is computed, the calls after it may be hedged.
+      assertEquals("a!", flows.fast("a"));
+    }
+    assertEquals(32, calls.get()); // Never hedged.
+    assertTrue(hedge.getHedgeDelay() < 1000);
+  }
+}
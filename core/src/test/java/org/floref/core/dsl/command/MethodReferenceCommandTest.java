@@ -24,11 +24,16 @@ import org.floref.core.dsl.TestInterfaceImpl;
 import org.floref.core.dsl.TestService;
 import org.floref.core.dsl.flow.Flows;
 import org.floref.core.exception.MissingBeanFlowException;
+import org.floref.core.flow.registry.ResolvedTargets;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.floref.core.dsl.flow.Flows.from;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class MethodReferenceCommandTest {
 
@@ -96,6 +101,50 @@ public class MethodReferenceCommandTest {
     assertEquals(3, testFlows.length("abc"));
   }
 
+  @Test
+  public void testResolvedTargetCache() {
+    TestInterfaceImpl bean = new TestInterfaceImpl();
+    AtomicInteger lookups = new AtomicInteger();
+    AtomicBoolean cacheable = new AtomicBoolean(true);
+
+    FlowConfiguration.setBeanInjector(new BeanInjector() {
+      @Override
+      public Object getBean(Class beanClass) {
+        lookups.incrementAndGet();
+        return beanClass == TestInterface.class ? bean : null;
+      }
+
+      @Override
+      public boolean isCacheable(Class beanClass) {
+        return cacheable.get();
+      }
+    });
+
+    TestFlows testFlows = from(TestFlows::length)
+        .to(TestInterface::length)
+        .build();
+
+    // At most one lookup per invalidation, other tests running in parallel may also invalidate.
+    long generation = ResolvedTargets.getGeneration();
+    for (int i = 0; i < 10; i++) {
+      assertEquals(3, testFlows.length("abc"));
+    }
+    assertTrue(lookups.get() <= 1 + ResolvedTargets.getGeneration() - generation);
+
+    ResolvedTargets.invalidateAll();
+    int before = lookups.get();
+    assertEquals(3, testFlows.length("abc"));
+    assertTrue(lookups.get() > before);
+
+    // Not cacheable beans are looked up on each run.
+    cacheable.set(false);
+    ResolvedTargets.invalidateAll();
+    before = lookups.get();
+    assertEquals(3, testFlows.length("abc"));
+    assertEquals(3, testFlows.length("abc"));
+    assertEquals(before + 2, lookups.get());
+  }
+
   @Test
   public void testStaticMethod() {
     TestFlows testFlows = from(TestFlows::length)
@@ -105,6 +154,18 @@ public class MethodReferenceCommandTest {
     assertEquals(3, testFlows.length("abc"));
   }
 
+  @Test
+  public void testArgumentBindingOnClassShapeChange() {
+    TestFlows flows = from(TestFlows::mergeTwoStrings)
+        .to(new TestService()::mergeTwoStrings)
+        .build();
+
+    assertEquals("ab", flows.mergeTwoStrings("a", "b"));
+    assertEquals("anull", flows.mergeTwoStrings("a", null));
+    assertEquals("cd", flows.mergeTwoStrings("c", "d")); // Cached binding is reused.
+    assertEquals("bnull", flows.mergeTwoStrings(null, "b")); // Not null arguments are bound first.
+  }
+
   @Test(expected = MissingBeanFlowException.class)
   public void testMissingBean() {
     TestFlows testFlows = from(TestFlows::length)
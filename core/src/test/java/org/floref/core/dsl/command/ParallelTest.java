@@ -16,15 +16,37 @@
 
 package org.floref.core.dsl.command;
 
+import org.floref.core.dsl.command.group.CommandCallable;
+import org.floref.core.dsl.command.group.ParallelCommand;
 import org.floref.core.dsl.flow.Flows;
+import org.floref.core.dsl.flow.data.FlowDefinition;
+import org.floref.core.exception.FlowDefinitionException;
 import org.floref.core.exception.FlowTimeoutException;
+import org.floref.core.flow.registry.FlowRegistry;
+import org.floref.core.flow.run.Bulkheads;
+import org.floref.core.flow.run.ExecutorProviders;
+import org.floref.core.flow.run.CommandContext;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
+import static java.util.Arrays.asList;
 import static org.floref.core.dsl.flow.Flows.from;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -34,6 +56,14 @@ public class ParallelTest {
     results.add(s + ".");
   }
 
+  public void distinctAggregator(String s, List<String> results) {
+    synchronized (results) {
+      if (!results.contains(s)) {
+        results.add(s);
+      }
+    }
+  }
+
   public String s1(String s) {
     return s + "1";
   }
@@ -51,6 +81,31 @@ public class ParallelTest {
     return s + "2";
   }
 
+  private final CompletableFuture<String> pending = new CompletableFuture<>();
+  private final CountDownLatch started = new CountDownLatch(2);
+  private final CountDownLatch interrupted = new CountDownLatch(1);
+
+  public CompletableFuture<String> waitForever(String s) {
+    started.countDown();
+    return pending;
+  }
+
+  public String afterStarted(String s) throws InterruptedException {
+    started.await(5, TimeUnit.SECONDS);
+    return s + "1";
+  }
+
+  public String sleepUntilInterrupted(String s) {
+    started.countDown();
+    try {
+      Thread.sleep(Long.MAX_VALUE);
+    } catch (InterruptedException e) {
+      interrupted.countDown();
+      throw new RuntimeException(e);
+    }
+    return s;
+  }
+
   public String s3(String s) {
     throw new RuntimeException("s3");
   }
@@ -59,10 +114,24 @@ public class ParallelTest {
     return results.stream().collect(Collectors.joining(","));
   }
 
+  public String processSorted(Set<String> results) {
+    return String.join(",", results);
+  }
+
   public interface TestFlows {
     String start(String s);
   }
 
+  public interface AsyncFlows {
+    CompletableFuture<String> start(String s);
+  }
+
+  public interface NestedFlows {
+    Future<List> nested(List<List<String>> lists);
+
+    Future<List> timed(String s);
+  }
+
   @Before
   public void before() {
     Flows.deleteAll();
@@ -100,6 +169,44 @@ public class ParallelTest {
     assertTrue("a2.,a1.".equals(result) || "a1.,a2.".equals(result));
   }
 
+  @Test
+  public void testAggregatorSeesTheWholeList() {
+    ParallelTest test = new ParallelTest();
+
+    TestFlows flows = from(TestFlows::start)
+        .parallel().aggregator(test::distinctAggregator)
+        .to(test::s1)
+        .to(test::s2)
+        .to(test::s1)
+        .end()
+        .to(test::processResults)
+        .build();
+
+    String result = flows.start("a");
+    assertTrue("a1,a2".equals(result) || "a2,a1".equals(result));
+  }
+
+  @Test
+  public void testWithCollector() {
+    ParallelTest test = new ParallelTest();
+
+    TestFlows flows = from(TestFlows::start)
+        .parallel().collector(Collectors.toCollection(TreeSet::new))
+        .to(test::s2)
+        .to(test::s1)
+        .end()
+        .to(test::processSorted)
+        .build();
+
+    assertEquals("a1,a2", flows.start("a"));
+    try {
+      Flows.export(flows);
+      fail("The collector would be lost");
+    } catch (FlowDefinitionException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("collector"));
+    }
+  }
+
   @Test
   public void testWithException() {
     ParallelTest test = new ParallelTest();
@@ -176,4 +283,184 @@ public class ParallelTest {
     fail();
   }
 
+  @Test
+  public void testAny() throws Exception {
+    TestFlows flows = from(TestFlows::start)
+        .parallel().any()
+        .to(this::s3)
+        .to(this::sleepUntilInterrupted)
+        .to(this::afterStarted)
+        .end()
+        .build();
+
+    started.countDown(); // No future branch here.
+    // The slow child is cancelled, the failed one is ignored.
+    assertEquals("a1", flows.start("a"));
+    assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testAnyAsync() throws Exception {
+    AsyncFlows flows = from(AsyncFlows::start)
+        .parallel().any()
+        .to(this::waitForever)
+        .to(this::sleepUntilInterrupted)
+        .to(this::afterStarted)
+        .end()
+        .build();
+    for (FlowDefinition flowDefinition : FlowRegistry.getFlowInstanceData(AsyncFlows.class).getFlowDefinitions()) {
+      flowDefinition.setAsync(true);
+    }
+
+    // The branches still running are cancelled, but not the thread continuing the flow.
+    assertEquals("a1", flows.start("a").get(5, TimeUnit.SECONDS));
+    assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    assertTrue(pending.isCancelled());
+  }
+
+  @Test
+  public void testQuorum() {
+    TestFlows flows = from(TestFlows::start)
+        .parallel().quorum(2)
+        .to(this::s1)
+        .to(this::s2VeryLong)
+        .to(this::s2)
+        .end()
+        .to(this::processResults)
+        .build();
+
+    String result = flows.start("a");
+    assertTrue("a1,a2".equals(result) || "a2,a1".equals(result));
+  }
+
+  @Test
+  public void testQuorumNotReached() {
+    TestFlows flows = from(TestFlows::start)
+        .parallel().quorum(2)
+        .to(this::s3)
+        .to(this::s3)
+        .to(this::s3)
+        .to(this::s2VeryLong)
+        .end()
+        .to(this::processResults)
+        .build();
+
+    try {
+      flows.start("a");
+    } catch (RuntimeException e) {
+      assertTrue(e.getMessage().contains("s3"));
+      return;
+    }
+    fail();
+  }
+
+
+  @Test
+  public void testStartDoesNotWait() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    List<CommandCallable> callables = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      String result = "r" + i;
+      callables.add(new CommandCallable("child" + i, () -> {
+        release.await();
+        CommandContext childContext = new CommandContext();
+        childContext.setResult(result);
+        return childContext;
+      }));
+    }
+
+    CompletableFuture<CommandContext> done = new ParallelCommand().start(new CommandContext(), callables);
+    assertFalse(done.isDone()); // start() returned while the children are blocked.
+    // The continuation runs on the thread completing the last child. It is awaited with a latch, since get() may run
+    // pending dependents on the waiting thread.
+    AtomicReference<Thread> continuationThread = new AtomicReference<>();
+    CountDownLatch continued = new CountDownLatch(1);
+    CompletableFuture<List> continuation = done.thenApply((commandContext) -> {
+      continuationThread.set(Thread.currentThread());
+      continued.countDown();
+      return (List) commandContext.getResult();
+    });
+    assertFalse(continuation.isDone());
+    release.countDown();
+
+    assertTrue(continued.await(5, TimeUnit.SECONDS));
+    assertNotSame(Thread.currentThread(), continuationThread.get());
+    List results = continuation.get();
+    assertEquals(3, results.size());
+    assertTrue(results.containsAll(asList("r0", "r1", "r2")));
+  }
+
+  @Test
+  public void testNestedGroupsDoNotStarve() throws Exception {
+    Bulkheads.register("parallelTestForkJoin", ExecutorProviders.newExecutorService(ExecutorProviders.FORK_JOIN));
+    NestedFlows flows = from(NestedFlows::nested).executor("parallelTestForkJoin")
+        .forEach()
+          .parallel()
+            .forEach()
+              .to(this::s1)
+            .end()
+            .forEach()
+              .to(this::s2)
+            .end()
+          .end()
+        .end()
+        .build();
+
+    // More waiting groups than fork join threads: the waiting parents run their queued children.
+    List<List<String>> lists = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      List<String> list = new ArrayList<>();
+      for (int j = 0; j < 20; j++) {
+        list.add(i + "." + j);
+      }
+      lists.add(list);
+    }
+    for (int run = 0; run < 5; run++) {
+      List results = flows.nested(lists).get(30, TimeUnit.SECONDS);
+      assertEquals(40, results.size());
+      int leaves = 0;
+      for (Object branches : results) {
+        assertEquals(2, ((List) branches).size());
+        for (Object branch : (List) branches) {
+          leaves += ((List) branch).size();
+        }
+      }
+      assertEquals(40 * 2 * 20, leaves);
+    }
+  }
+
+  @Test
+  public void testTimedGroupRunsItsQueuedChildren() throws Exception {
+    Bulkheads.register("parallelTestSingle", Executors.newSingleThreadExecutor());
+    NestedFlows flows = from(NestedFlows::timed).executor("parallelTestSingle")
+        .parallel().timeout(5000)
+        .to(this::s1)
+        .to(this::s2)
+        .end()
+        .build();
+
+    // The only thread waits for the group, so it runs the children itself.
+    List results = flows.timed("a").get(30, TimeUnit.SECONDS);
+    assertEquals(new TreeSet<>(asList("a1", "a2")), new TreeSet<>(results));
+  }
+
+  @Test
+  public void testTimeoutInterruptsTheChildRunByTheWaitingThread() throws Exception {
+    Bulkheads.register("parallelTestSingleSlow", Executors.newSingleThreadExecutor());
+    NestedFlows flows = from(NestedFlows::timed).executor("parallelTestSingleSlow")
+        .parallel().timeout(200)
+        .to(this::sleepUntilInterrupted)
+        .end()
+        .build();
+
+    long start = System.nanoTime();
+    try {
+      flows.timed("a").get(30, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof FlowTimeoutException);
+    }
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+  }
 }
@@ -17,11 +17,24 @@
 package org.floref.core.dsl.command;
 
 import org.floref.core.dsl.flow.Flows;
+import org.floref.core.dsl.flow.data.FlowDefinition;
+import org.floref.core.dsl.flow.retry.Jitter;
+import org.floref.core.flow.reference.ParamConsumer;
+import org.floref.core.exception.FlowTimeoutException;
+import org.floref.core.flow.registry.FlowRegistry;
+import org.floref.core.flow.run.FlowUtil;
+import org.floref.core.flow.run.RetryBudget;
 import org.junit.Test;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class RetryTest {
 
@@ -33,10 +46,46 @@ public class RetryTest {
     context.append("done");
   }
 
+  private final AtomicInteger attempts = new AtomicInteger();
+
+  public CompletableFuture<String> callAsyncClient(String s) {
+    CompletableFuture<String> future = new CompletableFuture<>();
+    if (attempts.incrementAndGet() < 3) {
+      future.completeExceptionally(new TimeoutException("Server busy, try again later"));
+    } else {
+      future.complete(s + "!");
+    }
+    return future;
+  }
+
+  public void callDownClient(StringBuilder context) throws TimeoutException {
+    context.append(".");
+    throw new TimeoutException("Server down");
+  }
+
+  public void callDownClientWithDeadline(StringBuilder context) throws TimeoutException {
+    if (context.length() == 0) {
+      FlowUtil.setFlowTimeout(200);
+    }
+    callDownClient(context);
+  }
+
   public interface RetryFlow {
     void retryCall(StringBuilder context);
   }
 
+  public interface DeadlineRetryFlow {
+    void deadlineCall(StringBuilder context);
+  }
+
+  public interface BudgetFlow {
+    void budgetCall(StringBuilder context);
+  }
+
+  public interface AsyncRetryFlow {
+    CompletableFuture<String> retryAsyncCall(String s);
+  }
+
   @Test
   public void test() {
     RetryTest test = new RetryTest();
@@ -48,4 +97,80 @@ public class RetryTest {
     flow.retryCall(data);
     assertEquals("...done", data.toString());
   }
+
+  @Test
+  public void testAsyncRetryDoesNotBlock() throws Exception {
+    AsyncRetryFlow flow = Flows.from(AsyncRetryFlow::retryAsyncCall)
+        .retry(this::callAsyncClient).delay(100).times(5).on(TimeoutException.class)
+        .build();
+    for (FlowDefinition flowDefinition : FlowRegistry.getFlowInstanceData(AsyncRetryFlow.class).getFlowDefinitions()) {
+      flowDefinition.setAsync(true);
+    }
+
+    CompletableFuture<String> future = flow.retryAsyncCall("a");
+    assertFalse(future.isDone()); // The delays run on the timer, not on the caller thread.
+    assertEquals("a!", future.get(5, TimeUnit.SECONDS));
+    assertEquals(3, attempts.get());
+  }
+
+  @Test
+  public void testDeadlineEndsRetryPause() {
+    DeadlineRetryFlow flow = Flows.from(DeadlineRetryFlow::deadlineCall)
+        .retry(this::callDownClientWithDeadline).delay(10000).times(3)
+        .build();
+
+    StringBuilder data = new StringBuilder();
+    long start = System.currentTimeMillis();
+    try {
+      flow.deadlineCall(data);
+      fail();
+    } catch (FlowTimeoutException e) {
+      assertTrue(System.currentTimeMillis() - start < 5000); // Not the 10 seconds of the delay.
+    }
+    assertEquals(".", data.toString());
+  }
+
+  @Test
+  public void testBudgetStopsRetries() {
+    RetryBudget budget = new RetryBudget(2, 0);
+    BudgetFlow flow = Flows.from(BudgetFlow::budgetCall)
+        .retry(this::callDownClient).delay(1).times(5).budget(budget)
+        .build();
+
+    StringBuilder first = new StringBuilder();
+    flow.budgetCall(first);
+    assertEquals("...", first.toString()); // 1 attempt + the 2 retries of the budget.
+    StringBuilder second = new StringBuilder();
+    flow.budgetCall(second);
+    assertEquals(".", second.toString());
+    assertEquals(0, budget.getAvailable());
+    assertEquals(2, budget.getRejected());
+  }
+
+  @Test
+  public void testJitterAndMaxDelay() {
+    RetryCommand retry = new RetryCommand((ParamConsumer<StringBuilder>) this::callDownClient);
+    retry.setDelay(100);
+    retry.setMultiplier(1);
+    retry.setMaxDelay(300);
+    assertEquals(200, retry.nextDelay(100));
+    assertEquals(300, retry.nextDelay(200));
+    assertEquals(300, retry.jittered(1000));
+    assertTrue(retry.shouldRetry(new TimeoutException()));
+    retry.setRetryOnExceptionClass(IllegalStateException.class);
+    assertFalse(retry.shouldRetry(new TimeoutException()));
+
+    retry.setJitter(Jitter.FULL);
+    for (int i = 0; i < 100; i++) {
+      long wait = retry.jittered(200);
+      assertTrue(wait >= 0 && wait <= 200);
+    }
+
+    retry.setJitter(Jitter.DECORRELATED);
+    for (int i = 0; i < 100; i++) {
+      assertEquals(150, retry.jittered(150));
+      long next = retry.nextDelay(150);
+      assertTrue(next >= 100 && next <= 300);
+    }
+  }
 }
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.flow.build;
+
+import org.floref.core.dsl.flow.Flows;
+import org.floref.core.dsl.flow.data.FlowDefinition;
+import org.floref.core.flow.registry.FlowRegistry;
+import org.floref.core.flow.run.CommandRunner;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.floref.core.dsl.flow.Flows.from;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncFlowTest {
+
+  private final Queue<CompletableFuture<String>> pending = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger upperCalls = new AtomicInteger();
+
+  public interface AsyncFlows {
+    CompletableFuture<String> chain(String s);
+
+    CompletableFuture<List> parallel(String s);
+
+    CompletableFuture<List> forEach(List<String> strings);
+
+    CompletableFuture<String> waiting(String s);
+  }
+
+  public CompletableFuture<String> later(String s) {
+    CompletableFuture<String> future = new CompletableFuture<>();
+    CommandRunner.schedule(() -> future.complete(s + "!"), 10);
+    return future;
+  }
+
+  public CompletableFuture<String> failLater(String s) {
+    CompletableFuture<String> future = new CompletableFuture<>();
+    CommandRunner.schedule(() -> future.completeExceptionally(new IllegalStateException(s)), 10);
+    return future;
+  }
+
+  public CompletableFuture<String> waitFor(String s) {
+    CompletableFuture<String> future = new CompletableFuture<>();
+    pending.add(future);
+    return future;
+  }
+
+  public String upper(String s) {
+    upperCalls.incrementAndGet();
+    return s.toUpperCase();
+  }
+
+  @Before
+  public void before() {
+    Flows.deleteAll();
+  }
+
+  private void asyncAll(Class flowClass) {
+    for (FlowDefinition flowDefinition : FlowRegistry.getFlowInstanceData(flowClass).getFlowDefinitions()) {
+      flowDefinition.setAsync(true);
+    }
+  }
+
+  @Test
+  public void testStepFuturesAreAwaited() throws Exception {
+    AsyncFlows flows = from(AsyncFlows::chain)
+        .to(this::waitFor)
+        .to(this::upper)
+        .to(this::later)
+        .build();
+    asyncAll(AsyncFlows.class);
+
+    CompletableFuture<String> future = flows.chain("a");
+    assertTrue(future instanceof FlowCompletableFuture);
+    assertFalse(future.isDone()); // Not timing based, the first step future is completed below.
+    pending.poll().complete("a!");
+    assertEquals("A!!", future.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testFailedStepFuture() throws Exception {
+    AsyncFlows flows = from(AsyncFlows::chain)
+        .to(this::failLater)
+        .to(this::upper)
+        .build();
+    asyncAll(AsyncFlows.class);
+
+    try {
+      flows.chain("failed").get(5, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+      assertEquals("failed", e.getCause().getMessage());
+    }
+    assertEquals(0, upperCalls.get());
+  }
+
+  @Test
+  public void testParallelAndForEach() throws Exception {
+    AsyncFlows flows = from(AsyncFlows::parallel)
+        .parallel()
+          .to(this::later)
+          .to(this::upper)
+          .to(this::later)
+        .end()
+        .build();
+    from(AsyncFlows::forEach)
+        .forEach().grain(2).ordered()
+          .to(this::later)
+          .to(this::upper)
+        .end()
+        .build();
+    asyncAll(AsyncFlows.class);
+
+    List results = flows.parallel("a").get(5, TimeUnit.SECONDS);
+    assertEquals(3, results.size());
+    assertTrue(results.containsAll(Arrays.asList("a!", "A")));
+
+    results = flows.forEach(Arrays.asList("a", "b", "c")).get(5, TimeUnit.SECONDS);
+    assertEquals(Arrays.asList("A!", "B!", "C!"), results);
+  }
+
+  @Test
+  public void testCancelPropagatesToWaitingStep() throws Exception {
+    AsyncFlows flows = from(AsyncFlows::waiting)
+        .to(this::waitFor)
+        .to(this::upper)
+        .build();
+    asyncAll(AsyncFlows.class);
+
+    CompletableFuture<String> future = flows.waiting("a");
+    CompletableFuture<String> step = pending.poll();
+    assertFalse(step.isDone());
+
+    assertTrue(future.cancel(true));
+    assertTrue(step.isCancelled());
+    try {
+      future.get();
+      fail();
+    } catch (CancellationException e) {
+      // expected
+    }
+    assertEquals(0, upperCalls.get());
+  }
+
+  @Test
+  public void testManyFlowsInFlight() throws Exception {
+    AsyncFlows flows = from(AsyncFlows::waiting)
+        .to(this::waitFor)
+        .to(this::upper)
+        .build();
+    asyncAll(AsyncFlows.class);
+
+    // No thread waits for the steps, so all flows can be in flight at once.
+    int count = 10000;
+    List<CompletableFuture<String>> futures = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      futures.add(flows.waiting("s" + i));
+    }
+    assertEquals(count, pending.size());
+    int i = 0;
+    for (CompletableFuture<String> step = pending.poll(); step != null; step = pending.poll()) {
+      step.complete("r" + i++);
+    }
+    for (CompletableFuture<String> future : futures) {
+      assertTrue(future.get(5, TimeUnit.SECONDS).startsWith("R"));
+    }
+    assertEquals(count, upperCalls.get());
+  }
+}
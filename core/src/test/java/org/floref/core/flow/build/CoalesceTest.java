@@ -0,0 +1,221 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.flow.build;
+
+import org.floref.core.dsl.flow.Flows;
+import org.floref.core.dsl.flow.data.FlowDefinition;
+import org.floref.core.flow.registry.FlowRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.floref.core.dsl.flow.Flows.from;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CoalesceTest {
+
+  private final AtomicInteger calls = new AtomicInteger();
+  private final Queue<CompletableFuture<String>> pending = new ConcurrentLinkedQueue<>();
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  public CompletableFuture<String> waitFor(String s) {
+    calls.incrementAndGet();
+    CompletableFuture<String> future = new CompletableFuture<>();
+    pending.add(future);
+    return future;
+  }
+
+  public String blocking(String s) throws InterruptedException {
+    calls.incrementAndGet();
+    release.await();
+    return s + calls.get();
+  }
+
+  private CoalescedFlows reentrant;
+
+  public String reenter(String s) {
+    if (calls.incrementAndGet() == 1) {
+      return reentrant.sync(s) + "!";
+    }
+    return s;
+  }
+
+  public String reenterFromPool(String s) throws Exception {
+    if (calls.incrementAndGet() == 1) {
+      return reentrant.onPool(s).get(5, TimeUnit.SECONDS);
+    }
+    return s + "!";
+  }
+
+  public String callSyncFlow(String s) {
+    return reentrant.fromPool(s);
+  }
+
+  public interface CoalescedFlows {
+    CompletableFuture<String> async(String s);
+
+    String sync(String s);
+
+    Future<String> future(String s);
+
+    String fromPool(String s);
+
+    Future<String> onPool(String s);
+  }
+
+  @Before
+  public void before() {
+    Flows.deleteAll();
+  }
+
+  @Test
+  public void testCompletableFutureCallsShareOneRun() throws Exception {
+    CoalescedFlows flows = from(CoalescedFlows::async).coalesce()
+        .to(this::waitFor)
+        .build();
+    for (FlowDefinition flowDefinition : FlowRegistry.getFlowInstanceData(CoalescedFlows.class).getFlowDefinitions()) {
+      flowDefinition.setAsync(true);
+    }
+
+    List<CompletableFuture<String>> futures = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      futures.add(flows.async("a"));
+    }
+    CompletableFuture<String> other = flows.async("b"); // Different arguments run separately.
+    assertEquals(2, calls.get());
+
+    futures.get(1).cancel(true); // Does not cancel the shared run.
+    pending.poll().complete("a!");
+    for (int i = 0; i < futures.size(); i++) {
+      if (i != 1) {
+        assertEquals("a!", futures.get(i).get(5, TimeUnit.SECONDS));
+      }
+    }
+    assertTrue(Flows.export(flows).contains("\"coalesce\":true"));
+
+    // The failure is shared too, then the next call runs again.
+    pending.poll().completeExceptionally(new IllegalStateException("b failed"));
+    try {
+      other.get(5, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertEquals("b failed", e.getCause().getMessage());
+    }
+    flows.async("a");
+    assertEquals(3, calls.get());
+  }
+
+  @Test
+  public void testLeaderCancelDoesNotCancelFollowers() throws Exception {
+    CoalescedFlows flows = from(CoalescedFlows::async).coalesce()
+        .to(this::waitFor)
+        .build();
+    for (FlowDefinition flowDefinition : FlowRegistry.getFlowInstanceData(CoalescedFlows.class).getFlowDefinitions()) {
+      flowDefinition.setAsync(true);
+    }
+
+    CompletableFuture<String> leader = flows.async("a");
+    CompletableFuture<String> follower = flows.async("a");
+    assertEquals(1, calls.get());
+
+    leader.cancel(true);
+    assertTrue(leader.isCancelled());
+    pending.poll().complete("a!");
+    assertEquals("a!", follower.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testReentrantCallIsNotCoalesced() {
+    reentrant = from(CoalescedFlows::sync).coalesce()
+        .to(this::reenter)
+        .build();
+
+    // The nested call with equal arguments runs on its own instead of waiting for the calling flow.
+    assertEquals("a!", reentrant.sync("a"));
+    assertEquals(2, calls.get());
+  }
+
+  @Test
+  public void testReentrantCallFromAnotherThreadIsNotCoalesced() {
+    reentrant = from(CoalescedFlows::fromPool).coalesce()
+        .to(this::reenterFromPool)
+        .build();
+    from(CoalescedFlows::onPool)
+        .to(this::callSyncFlow)
+        .build();
+
+    // The nested call runs on a pool thread but within the same flow execution, so it does not wait for its caller.
+    assertEquals("a!", reentrant.fromPool("a"));
+    assertEquals(2, calls.get());
+  }
+
+  @Test
+  public void testSyncAndFutureCallsShareOneRun() throws Exception {
+    CoalescedFlows flows = from(CoalescedFlows::sync).coalesce()
+        .to(this::blocking)
+        .build();
+    from(CoalescedFlows::future).coalesce()
+        .to(this::blocking)
+        .build();
+
+    int threads = 4;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      CountDownLatch started = new CountDownLatch(threads);
+      List<Future<String>> results = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        results.add(executor.submit(() -> {
+          started.countDown();
+          return flows.sync("s");
+        }));
+      }
+      started.await();
+      Future<String> first = flows.future("f");
+      Future<String> second = flows.future("f");
+      FlowMethodSlot slot = FlowRegistry.getFlowInstanceData(CoalescedFlows.class)
+          .getMethodSlot(CoalescedFlows.class.getMethod("sync", String.class));
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+      while (slot.getFollowers("s") < threads - 1 && System.nanoTime() < deadline) {
+        Thread.yield(); // Until the other sync callers wait for the leader.
+      }
+      release.countDown();
+
+      String shared = results.get(0).get(5, TimeUnit.SECONDS);
+      for (Future<String> result : results) {
+        assertEquals(shared, result.get(5, TimeUnit.SECONDS));
+      }
+      assertEquals(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+      assertEquals(2, calls.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -21,7 +21,9 @@ import org.floref.core.dsl.TestFlows;
 import org.floref.core.dsl.TestService;
 import org.floref.core.dsl.flow.Flows;
 import org.floref.core.exception.FlowCancelledException;
+import org.floref.core.exception.FlowTimeoutException;
 import org.floref.core.flow.run.FlowSession;
+import org.floref.core.flow.run.FlowUtil;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -127,4 +129,50 @@ public class FlowFutureTest {
     }
     fail();
   }
+
+  public String timeout(String a, String b) {
+    FlowUtil.setFlowTimeout(100);
+    return a + b;
+  }
+
+  @Test
+  public void testFlowTimeout() {
+    TestService testService = new TestService();
+
+    TestFlows testFlows = from(TestFlows::mergeTwoStrings)
+        .to(this::timeout)
+        .to(testService::longRunningTask)
+        .to(testService::inverseString)
+        .build();
+
+    try {
+      testFlows.mergeTwoStrings("a", "b");
+    } catch (FlowTimeoutException e) {
+      assertEquals("Timeout while running flow org.floref.core.dsl.TestFlows::mergeTwoStrings before running"
+          + " org.floref.core.dsl.TestService::inverseString", e.getMessage());
+      return;
+    }
+    fail();
+  }
+
+  @Test
+  public void testFutureCancellationStopsChildren() throws InterruptedException {
+    TestService testService = new TestService();
+
+    TestFlows testFlows = from(TestFlows::mergeTwoStringsInFuture)
+        .parallel()
+          .to(testService::longRunningTask)
+          .to(testService::longRunningTask)
+        .end()
+        .build();
+
+    Future<String> future = testFlows.mergeTwoStringsInFuture("a", "b");
+    Thread.sleep(200);
+    future.cancel(true);
+    assertTrue(future.isCancelled());
+
+    // The running children were interrupted, so they did not finish.
+    Thread.sleep(TestService.SLEEP + 500);
+    assertNull(testService.forkResult);
+  }
 }
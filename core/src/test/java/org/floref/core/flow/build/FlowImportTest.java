@@ -21,12 +21,14 @@ import org.floref.core.config.injector.BeanInjector;
 import org.floref.core.dsl.TestFlows;
 import org.floref.core.dsl.TestService;
 import org.floref.core.dsl.flow.Flows;
+import org.floref.core.flow.run.Bulkheads;
 import org.floref.core.flow.run.FlowUtil;
 import org.junit.Before;
 import org.junit.Test;
 
 import static org.floref.core.dsl.flow.Flows.from;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class FlowImportTest {
 
@@ -63,4 +65,81 @@ public class FlowImportTest {
     assertEquals("AB", flows.mergeTwoStrings("a", "b"));
     assertEquals(json, Flows.export(flows));  // round trip test.
   }
+
+  @Test
+  public void importExportExecutor() throws Exception {
+    TestService testService = new TestService();
+    FlowConfiguration.setBeanInjector(new BeanInjector() {
+      @Override
+      public Object getBean(Class beanClass) {
+        return testService;
+      }
+    });
+
+    TestFlows flows = from(TestFlows::mergeTwoStringsInFuture).executor("import")
+        .to(testService::mergeTwoStrings)
+        .build();
+
+    String json = Flows.export(flows);
+    assertTrue(json, json.contains("\"executor\":\"import\""));
+    Flows.deleteAll();
+    Flows.importFlows(json);
+    flows = Flows.get(TestFlows.class);
+
+    assertEquals("ab", flows.mergeTwoStringsInFuture("a", "b").get());
+    assertEquals(json, Flows.export(flows));
+    assertEquals(1, Bulkheads.getStats().get("import").getStarted());
+  }
+
+  @Test
+  public void importExportCircuitBreaker() {
+    TestService testService = new TestService();
+    FlowConfiguration.setBeanInjector(new BeanInjector() {
+      @Override
+      public Object getBean(Class beanClass) {
+        return testService;
+      }
+    });
+
+    TestFlows flows = from(TestFlows::mergeTwoStrings)
+        .circuitBreaker(testService::mergeTwoStrings).name("importBreaker").window(5).failureRate(40)
+        .openDuration(100).fallback(testService::mergeTwoStrings)
+        .to(testService::toUpperCase)
+        .build();
+
+    String json = Flows.export(flows);
+    assertTrue(json, json.contains("\"type\":\"circuitBreaker\""));
+    assertTrue(json, json.contains("\"fallback\":\"org.floref.core.dsl.TestService::mergeTwoStrings\""));
+    Flows.deleteAll();
+    Flows.importFlows(json);
+    flows = Flows.get(TestFlows.class);
+
+    assertEquals("AB", flows.mergeTwoStrings("a", "b"));
+    assertEquals(json, Flows.export(flows));
+  }
+
+  @Test
+  public void importExportCache() {
+    TestService testService = new TestService();
+    FlowConfiguration.setBeanInjector(new BeanInjector() {
+      @Override
+      public Object getBean(Class beanClass) {
+        return testService;
+      }
+    });
+
+    TestFlows flows = from(TestFlows::mergeTwoStrings)
+        .cache(testService::mergeTwoStrings).maxSize(10).ttl(1000).refreshAfter(500).key(testService::toUpperCase)
+        .build();
+
+    String json = Flows.export(flows);
+    assertTrue(json, json.contains("\"type\":\"cache\""));
+    assertTrue(json, json.contains("\"key\":\"org.floref.core.dsl.TestService::toUpperCase\""));
+    Flows.deleteAll();
+    Flows.importFlows(json);
+    flows = Flows.get(TestFlows.class);
+
+    assertEquals("ab", flows.mergeTwoStrings("a", "b"));
+    assertEquals(json, Flows.export(flows));
+  }
 }
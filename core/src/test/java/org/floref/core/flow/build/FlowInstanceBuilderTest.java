@@ -19,16 +19,43 @@ package org.floref.core.flow.build;
 import org.floref.core.dsl.TestFlows;
 import org.floref.core.dsl.TestService;
 import org.floref.core.dsl.flow.Flows;
+import org.floref.core.dsl.flow.data.FlowInstruction;
 import org.floref.core.exception.FlowDefinitionException;
+import org.floref.core.flow.registry.FlowRegistry;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.lang.reflect.UndeclaredThrowableException;
+
 import static org.floref.core.dsl.flow.Flows.from;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class FlowInstanceBuilderTest {
 
+  public interface CheckedFlows {
+    String declared(String s) throws IOException;
+
+    String undeclared(String s);
+  }
+
+  static class Hidden {
+  }
+
+  public interface HiddenTypeFlows {
+    Hidden hide(String s);
+  }
+
+  public Hidden hide(String s) {
+    return new Hidden();
+  }
+
+  public String throwChecked(String s) throws IOException {
+    throw new IOException(s);
+  }
+
   @Before
   public void before() {
     Flows.deleteAll();
@@ -77,4 +104,86 @@ public class FlowInstanceBuilderTest {
     flows.mergeTwoStrings("a", "b");
 
   }
+
+  @Test
+  public void testGeneratedFlowInstance() throws Exception {
+    TestService testService = new TestService();
+    TestFlows proxy = from(TestFlows::mergeTwoStrings)
+        .to(testService::mergeTwoStrings)
+        .build();
+    from(TestFlows::length)
+        .to(testService::length)
+        .build();
+    from(TestFlows::mergeTwoStringsInFuture)
+        .to(testService::mergeTwoStrings)
+        .build();
+
+    TestFlows flows = (TestFlows) FlowClassGenerator.newFlowInstance(FlowRegistry.getFlowInstanceData(TestFlows.class));
+    assertTrue(FlowRegistry.isFlow(flows));
+    assertEquals(TestFlows.class, FlowRegistry.getFlowInterface(flows));
+    assertEquals(proxy.toString(), flows.toString());
+    assertEquals("ab", flows.mergeTwoStrings("a", "b"));
+    assertEquals(3, flows.length("abc"));
+    assertEquals("ab", flows.mergeTwoStringsInFuture("a", "b").get());
+
+    // Updating the definition is seen by the existing instance.
+    FlowInstruction update = from(TestFlows::mergeTwoStrings)
+        .to(testService::mergeTwoStrings)
+        .to(testService::upperCase);
+    FlowInstanceBuilder.build(update.getFlowData().getFlowDefinition(), true);
+    assertEquals("AB", flows.mergeTwoStrings("a", "b"));
+    assertEquals("AB", proxy.mergeTwoStrings("a", "b"));
+
+    try {
+      flows.reverse(1);
+    } catch (FlowDefinitionException e) {
+      assertEquals("Flow not yet defined for org.floref.core.dsl.TestFlows::reverse", e.getMessage());
+      return;
+    }
+    fail();
+  }
+
+  @Test
+  public void testGeneratedFlowUndeclaredException() throws Exception {
+    CheckedFlows proxy = from(CheckedFlows::declared)
+        .to(this::throwChecked)
+        .build();
+    from(CheckedFlows::undeclared)
+        .to(this::throwChecked)
+        .build();
+    CheckedFlows generated = (CheckedFlows) FlowClassGenerator.newFlowInstance(
+        FlowRegistry.getFlowInstanceData(CheckedFlows.class));
+
+    for (CheckedFlows flows : new CheckedFlows[]{proxy, generated}) {
+      try {
+        flows.declared("a");
+        fail();
+      } catch (IOException e) {
+        assertEquals("a", e.getMessage());
+      }
+      try {
+        flows.undeclared("b");
+        fail();
+      } catch (UndeclaredThrowableException e) {
+        assertTrue(e.getCause() instanceof IOException);
+        assertEquals("b", e.getCause().getMessage());
+      }
+    }
+  }
+
+  @Test
+  public void testGeneratedFlowNeedsPublicTypes() throws Exception {
+    from(HiddenTypeFlows::hide)
+        .to(this::hide)
+        .build();
+
+    try {
+      FlowClassGenerator.newFlowInstance(FlowRegistry.getFlowInstanceData(HiddenTypeFlows.class));
+      fail();
+    } catch (FlowDefinitionException e) {
+      assertEquals("Can not generate the flow class of " + HiddenTypeFlows.class.getName() + ", "
+          + Hidden.class.getName() + " must be public. Make it public or use flow.build.instance=proxy",
+          e.getMessage());
+    }
+  }
 }
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2020 the original author  or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.flow.compile;
+
+import org.floref.core.dsl.TestFlows;
+import org.floref.core.dsl.TestService;
+import org.floref.core.dsl.flow.Flows;
+import org.floref.core.dsl.flow.data.FlowDefinition;
+import org.floref.core.flow.annotation.FlowVar;
+import org.floref.core.flow.registry.FlowRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+import static org.floref.core.dsl.flow.Flows.from;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class FlowCompilerTest {
+
+  public boolean lengthMultipleOf2(String s) {
+    return s.length() % 2 == 0;
+  }
+
+  public boolean lengthMultipleOf3(String s) {
+    return s.length() % 3 == 0;
+  }
+
+  public String failTwice(StringBuilder context, String s) throws TimeoutException {
+    context.append(".");
+    if (context.length() < 3) {
+      throw new TimeoutException("Server busy, try again later");
+    }
+    return s + context;
+  }
+
+  public String first(List<String> results) {
+    return results.get(0);
+  }
+
+  public String repeat(String s, @FlowVar("compilerTestTimes") int times) {
+    StringBuilder repeated = new StringBuilder();
+    for (int i = 0; i < times; i++) {
+      repeated.append(s);
+    }
+    return repeated.toString();
+  }
+
+  public static String exclaim(String s) {
+    return s + "!";
+  }
+
+  public void log(String s) {
+    logged.add(s);
+  }
+
+  public String logged() {
+    return String.join(",", logged);
+  }
+
+  public String throwTimeout(String s) throws TimeoutException {
+    throw new TimeoutException(s);
+  }
+
+  private final List<String> logged = new ArrayList<>();
+
+  public interface DirectFlows {
+    String direct(String s, @FlowVar("compilerTestTimes") Integer times);
+
+    String failed(String s) throws TimeoutException;
+  }
+
+  public interface CompiledFlows {
+    String retry(StringBuilder context, String s);
+
+    String exhausted(StringBuilder context, String s);
+  }
+
+  @Before
+  public void before() {
+    Flows.deleteAll();
+  }
+
+  private void compileAll(Class flowClass) throws Exception {
+    for (FlowDefinition flowDefinition : FlowRegistry.getFlowInstanceData(flowClass).getFlowDefinitions()) {
+      flowDefinition.validate();
+      flowDefinition.setCompiledFlow(FlowCompiler.compile(flowDefinition));
+      assertNotNull(flowDefinition.getCompiledFlow());
+    }
+  }
+
+  @Test
+  public void testWhenOtherwise() throws Exception {
+    TestService testService = new TestService();
+    TestFlows flows = from(TestFlows::processOneStringReturnString)
+        .to(testService::doubleString)
+        .when(this::lengthMultipleOf3)
+          .to(testService::toUpperCase)
+        .otherwise()
+          .when(this::lengthMultipleOf2)
+            .to(testService::inverseString)
+          .end()
+        .end()
+        .to(testService::toLowerCase)
+        .build();
+    compileAll(TestFlows.class);
+
+    assertEquals("abcabc", flows.processOneStringReturnString("aBc"));
+    assertEquals("baba", flows.processOneStringReturnString("Ab"));
+  }
+
+  @Test
+  public void testRetryAndInterpretedCommands() throws Exception {
+    TestService testService = new TestService();
+    CompiledFlows flows = from(CompiledFlows::retry)
+        .retry(this::failTwice).delay(10).times(5).on(TimeoutException.class)
+        .parallel()  // Not compiled, run by the interpreter.
+          .to(testService::toUpperCase)
+        .end()
+        .to(this::first)
+        .build();
+    from(CompiledFlows::exhausted)
+        .retry(this::failTwice).delay(10).times(2)
+        .build();
+    compileAll(CompiledFlows.class);
+
+    assertEquals("A...", flows.retry(new StringBuilder(), "a"));
+    // All attempts fail, like the interpreter the context of the last attempt is kept.
+    assertNull(flows.exhausted(new StringBuilder(), "a"));
+  }
+
+  @Test
+  public void testDirectCalls() throws Exception {
+    DirectFlows flows = from(DirectFlows::direct)
+        .to(this::repeat)
+        .to(FlowCompilerTest::exclaim)
+        .to(this::log)
+        .to(this::logged)
+        .build();
+    from(DirectFlows::failed)
+        .to(this::throwTimeout)
+        .build();
+
+    assertEquals("abab!", flows.direct("ab", 2)); // Interpreted.
+    compileAll(DirectFlows.class);
+    for (FlowDefinition flowDefinition : FlowRegistry.getFlowInstanceData(DirectFlows.class).getFlowDefinitions()) {
+      flowDefinition.getCompiledFlow().getClass().getDeclaredField("target0"); // The captured target is called.
+    }
+    assertEquals("abab!,c!", flows.direct("c", 1));
+
+    try {
+      flows.failed("Server busy");
+      fail();
+    } catch (TimeoutException e) {
+      assertEquals("Server busy", e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.flow.run;
+
+import org.floref.core.dsl.flow.Flows;
+import org.floref.core.exception.FlowDefinitionException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.floref.core.dsl.flow.Flows.from;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BulkheadsTest {
+
+  public interface BulkheadFlows {
+    Future<String> payment(String s);
+
+    List<String> parallel(String s);
+  }
+
+  public static String threadName(String s) {
+    return s + Thread.currentThread().getName();
+  }
+
+  @Before
+  public void before() {
+    Flows.deleteAll();
+  }
+
+  @Test
+  public void testFlowBulkhead() throws Exception {
+    Bulkheads.register("test-payments",
+        new ExecutorProfile("test-payments", 2, 0, RejectionPolicy.ABORT, 0).newExecutorService());
+    BulkheadFlows flows = from(BulkheadFlows::payment).executor("test-payments")
+        .to(BulkheadsTest::threadName)
+        .build();
+
+    assertTrue(flows.payment("a").get(5, TimeUnit.SECONDS).startsWith("atest-payments-"));
+    assertEquals(1, Bulkheads.getStats().get("test-payments").getStarted());
+  }
+
+  @Test
+  public void testGroupBulkhead() {
+    Bulkheads.register("test-parallel",
+        new ExecutorProfile("test-parallel", 2, 0, RejectionPolicy.ABORT, 0).newExecutorService());
+    BulkheadFlows flows = from(BulkheadFlows::parallel)
+        .parallel().executor("test-parallel")
+        .to(BulkheadsTest::threadName)
+        .to(BulkheadsTest::threadName)
+        .end()
+        .build();
+
+    String caller = Thread.currentThread().getName();
+    for (String result : flows.parallel("c")) {  // The waiting caller may run a child itself.
+      assertTrue(result, result.startsWith("ctest-parallel-") || result.equals("c" + caller));
+    }
+    assertEquals(2, Bulkheads.getStats().get("test-parallel").getSubmitted());
+  }
+
+  @Test
+  public void testUnknownBulkhead() {
+    try {
+      Bulkheads.get("test-misspelled");
+      fail("An unknown bulkhead should not get a default executor");
+    } catch (FlowDefinitionException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("test-misspelled"));
+    }
+    assertTrue(!Bulkheads.getStats().containsKey("test-misspelled"));
+  }
+
+  @Test
+  public void testConfiguredBulkhead() {
+    assertEquals(2, ((FlowThreadPoolExecutor) Bulkheads.get("test-configured")).getMaximumPoolSize());
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2020 the original author  or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.flow.run;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class CommandContextTest {
+
+  @Test
+  public void testSingleArgument() {
+    CommandContext commandContext = new CommandContext();
+    assertEquals(0, commandContext.getArgumentCount());
+
+    commandContext.setArguments(new Object[]{"a", "b"});
+    assertEquals(2, commandContext.getArgumentCount());
+    assertEquals("b", commandContext.getArgument(1));
+
+    commandContext.setResult("c");
+    commandContext.moveResultToArguments();
+    assertEquals(1, commandContext.getArgumentCount());
+    assertEquals("c", commandContext.getArgument(0));
+    assertArrayEquals(new Object[]{"c"}, commandContext.getArguments());
+
+    CommandContext copy = commandContext.copy();
+    assertEquals("c", copy.getArgument(0));
+    assertEquals("c", copy.getResult());
+  }
+
+  @Test
+  public void testMarkAndReset() {
+    CommandContext commandContext = new CommandContext();
+    commandContext.setArgument("a");
+    commandContext.setResult("a");
+    commandContext.mark();
+
+    Exception exception = new Exception();
+    commandContext.setArguments(new Object[]{"b", "c"});
+    commandContext.setResult("b");
+    commandContext.setException(exception);
+    assertSame(exception, commandContext.getException());
+
+    commandContext.reset();
+    assertEquals(1, commandContext.getArgumentCount());
+    assertEquals("a", commandContext.getArgument(0));
+    assertEquals("a", commandContext.getResult());
+    assertNull(commandContext.getException());
+  }
+}
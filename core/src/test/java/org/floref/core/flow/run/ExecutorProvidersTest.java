@@ -0,0 +1,63 @@
+/*
+ * Copyright 2020 the original author  or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.flow.run;
+
+import org.floref.core.exception.FlowDefinitionException;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ExecutorProvidersTest {
+
+  public static class SingleThreadProvider implements ExecutorProvider {
+    @Override
+    public ExecutorService newExecutorService() {
+      return Executors.newSingleThreadExecutor();
+    }
+  }
+
+  @Test
+  public void testExecutors() throws Exception {
+    ExecutorService platform = ExecutorProviders.newExecutorService(ExecutorProviders.PLATFORM);
+    assertTrue(platform instanceof ThreadPoolExecutor);
+    platform.shutdown();
+
+    // Falls back to platform threads before Java 21.
+    ExecutorService virtual = ExecutorProviders.newExecutorService(ExecutorProviders.VIRTUAL);
+    assertEquals("a", virtual.submit(() -> "a").get());
+    virtual.shutdown();
+
+    ExecutorService forkJoin = ExecutorProviders.newExecutorService(ExecutorProviders.FORK_JOIN);
+    assertTrue(forkJoin instanceof ForkJoinPool);
+    forkJoin.shutdown();
+
+    ExecutorService custom = ExecutorProviders.newExecutorService(SingleThreadProvider.class.getName());
+    assertEquals("b", custom.submit(() -> "b").get());
+    custom.shutdown();
+  }
+
+  @Test(expected = FlowDefinitionException.class)
+  public void testUnknownExecutor() {
+    ExecutorProviders.newExecutorService("unknown");
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2020 the original author  or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.flow.run;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FlowSessionMapTest {
+
+  @Test
+  public void testSlotsAndOverflow() {
+    int slot = FlowVarSlots.slot("flowSessionMapTest.known");
+    assertEquals(slot, FlowVarSlots.find("flowSessionMapTest.known"));
+    assertEquals(-1, FlowVarSlots.find("flowSessionMapTest.dynamic"));
+
+    FlowVarLayout layout = FlowVarLayout.of(Arrays.asList(-1, slot, slot));
+    assertEquals(1, layout.size());
+    assertEquals(0, layout.index(slot));
+    FlowSessionMap session = new FlowSessionMap(new FlowExecution(), layout);
+    assertTrue(session.isEmpty());
+
+    // Slot and name access see the same value.
+    session.set(slot, "a");
+    assertEquals("a", session.get("flowSessionMapTest.known"));
+    session.put("flowSessionMapTest.known", "b");
+    assertEquals("b", session.get(slot));
+
+    // Keys without slot go in the overflow map.
+    session.put("flowSessionMapTest.dynamic", "c");
+    assertEquals("c", session.get("flowSessionMapTest.dynamic"));
+
+    // Slots that are not used by the gate flow, e.g. of a nested flow, also go in the overflow map.
+    int lateSlot = FlowVarSlots.slot("flowSessionMapTest.nested");
+    assertEquals(-1, layout.index(lateSlot));
+    session.set(lateSlot, "d");
+    assertEquals("d", session.get("flowSessionMapTest.nested"));
+    assertEquals(3, session.size());
+    assertEquals("b", session.entrySet().iterator().next().getValue()); // Slots first.
+
+    // Null removes.
+    session.put("flowSessionMapTest.known", null);
+    session.remove("flowSessionMapTest.dynamic");
+    session.set(lateSlot, null);
+    assertNull(session.get(slot));
+    assertFalse(session.containsKey("flowSessionMapTest.dynamic"));
+    assertTrue(session.isEmpty());
+  }
+}
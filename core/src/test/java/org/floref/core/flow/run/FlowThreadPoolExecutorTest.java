@@ -0,0 +1,181 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.flow.run;
+
+import org.floref.core.exception.FlowDefinitionException;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FlowThreadPoolExecutorTest {
+
+  private static FlowThreadPoolExecutor newExecutor(int queueSize, RejectionPolicy rejectionPolicy,
+                                                    long blockTimeout) {
+    return new ExecutorProfile("test-pool", 1, queueSize, rejectionPolicy, blockTimeout).newExecutorService();
+  }
+
+  /**
+   * Occupies the only thread of the executor until the returned latch is released.
+   */
+  private static CountDownLatch occupy(FlowThreadPoolExecutor executor) throws InterruptedException {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    executor.execute(() -> {
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    return release;
+  }
+
+  @Test
+  public void testQueueAndStats() throws Exception {
+    FlowThreadPoolExecutor executor = newExecutor(2, RejectionPolicy.ABORT, 0);
+    CountDownLatch release = occupy(executor);
+    Future first = executor.submit(() -> "a");
+    Future second = executor.submit(() -> "b");
+    try {
+      executor.execute(() -> { });
+      fail("The queue is full");
+    } catch (RejectedExecutionException e) {
+      assertTrue(e.getMessage().contains("test-pool"));
+    }
+    ExecutorStats stats = executor.getStats();
+    assertEquals(2, stats.getQueueDepth());
+    assertEquals(1, stats.getActiveCount());
+    assertEquals(4, stats.getSubmitted());
+    assertEquals(1, stats.getRejected());
+
+    release.countDown();
+    assertEquals("a", first.get(5, TimeUnit.SECONDS));
+    assertEquals("b", second.get(5, TimeUnit.SECONDS));
+    stats = executor.getStats();
+    assertEquals(3, stats.getStarted());
+    assertEquals(0, stats.getQueueDepth());
+    assertTrue(stats.getMaxWaitNanos() > 0 && stats.getMaxWaitNanos() >= stats.getAverageWaitNanos());
+    executor.shutdown();
+  }
+
+  @Test
+  public void testCallerRuns() throws Exception {
+    FlowThreadPoolExecutor executor = newExecutor(0, RejectionPolicy.CALLER_RUNS, 0);
+    CountDownLatch release = occupy(executor);
+    AtomicReference<Thread> thread = new AtomicReference<>();
+    executor.execute(() -> thread.set(Thread.currentThread()));
+    assertEquals(Thread.currentThread(), thread.get());
+    assertEquals(1, executor.getStats().getCallerRuns());
+    release.countDown();
+    executor.shutdown();
+  }
+
+  /**
+   * Releases the latch a bit later, from another thread.
+   */
+  private static void releaseLater(CountDownLatch release) {
+    new Thread(() -> {
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      release.countDown();
+    }).start();
+  }
+
+  @Test
+  public void testBlock() throws Exception {
+    FlowThreadPoolExecutor executor = newExecutor(1, RejectionPolicy.BLOCK, 5000);
+    CountDownLatch release = occupy(executor);
+    executor.execute(() -> { });
+    releaseLater(release);
+    FutureTask<String> task = new FutureTask<>(() -> "c");
+    executor.execute(task); // Waits for the queued task to start.
+    assertEquals("c", task.get(5, TimeUnit.SECONDS));
+    assertEquals(1, executor.getStats().getBlocked());
+    assertEquals(0, executor.getStats().getRejected());
+    executor.shutdown();
+  }
+
+  @Test
+  public void testBlockTimeout() throws Exception {
+    FlowThreadPoolExecutor executor = newExecutor(1, RejectionPolicy.BLOCK, 50);
+    CountDownLatch release = occupy(executor);
+    executor.execute(() -> { });
+    long start = System.nanoTime();
+    try {
+      executor.execute(() -> { });
+      fail("The queue stays full");
+    } catch (RejectedExecutionException e) {
+      assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+    release.countDown();
+    executor.shutdown();
+  }
+
+  @Test
+  public void testBackpressureWithAbortPolicy() throws Exception {
+    FlowThreadPoolExecutor executor = newExecutor(0, RejectionPolicy.ABORT, 5000);
+    CountDownLatch release = occupy(executor);
+    try {
+      executor.execute(() -> { });
+      fail("Abort policy");
+    } catch (RejectedExecutionException e) {
+      // Expected.
+    }
+    releaseLater(release);
+    FutureTask<String> task = new FutureTask<>(() -> "d");
+    executor.executeBlocking(task);  // Waits for the thread to be free instead of failing.
+    assertEquals("d", task.get(5, TimeUnit.SECONDS));
+    executor.shutdown();
+  }
+
+  @Test
+  public void testShedOldest() throws Exception {
+    FlowThreadPoolExecutor executor = newExecutor(1, RejectionPolicy.SHED_OLDEST, 0);
+    CountDownLatch release = occupy(executor);
+    Future oldest = executor.submit(() -> "old");
+    Future newest = executor.submit(() -> "new");
+    assertTrue(oldest.isCancelled());
+    assertEquals(1, executor.getStats().getShed());
+    release.countDown();
+    assertEquals("new", newest.get(5, TimeUnit.SECONDS));
+    executor.shutdown();
+  }
+
+  @Test(expected = FlowDefinitionException.class)
+  public void testShedOldestNeedsAQueue() {
+    newExecutor(0, RejectionPolicy.SHED_OLDEST, 0);
+  }
+
+  @Test(expected = FlowDefinitionException.class)
+  public void testUnknownRejectionPolicy() {
+    RejectionPolicy.fromConfig("retry");
+  }
+}
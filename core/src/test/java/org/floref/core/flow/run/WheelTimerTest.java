@@ -0,0 +1,85 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.floref.core.flow.run;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WheelTimerTest {
+
+  @Test
+  public void testTimeoutsExpireInDeadlineOrder() throws Exception {
+    WheelTimer timer = new WheelTimer("test-timer", 5, TimeUnit.MILLISECONDS, 8);
+    List<Integer> expired = new CopyOnWriteArrayList<>();
+    CountDownLatch latch = new CountDownLatch(3);
+    // 150ms spans more than one round of the 8 buckets wheel.
+    timer.schedule(() -> { expired.add(3); latch.countDown(); }, 150, TimeUnit.MILLISECONDS);
+    timer.schedule(() -> { expired.add(1); latch.countDown(); }, 10, TimeUnit.MILLISECONDS);
+    timer.schedule(() -> { expired.add(2); latch.countDown(); }, 60, TimeUnit.MILLISECONDS);
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertEquals("[1, 2, 3]", expired.toString());
+  }
+
+  @Test
+  public void testCancel() throws Exception {
+    WheelTimer timer = new WheelTimer("test-timer", 5, TimeUnit.MILLISECONDS, 8);
+    AtomicInteger runs = new AtomicInteger();
+    CountDownLatch latch = new CountDownLatch(1);
+    WheelTimer.Timeout cancelled = timer.schedule(runs::incrementAndGet, 20, TimeUnit.MILLISECONDS);
+    WheelTimer.Timeout timeout = timer.schedule(latch::countDown, 60, TimeUnit.MILLISECONDS);
+    assertTrue(cancelled.cancel());
+    assertFalse(cancelled.cancel());
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertEquals(0, runs.get());
+    assertTrue(cancelled.isCancelled());
+    assertTrue(timeout.isExpired());
+    assertFalse(timeout.cancel());
+  }
+
+  @Test
+  public void testManyTimeouts() throws Exception {
+    WheelTimer timer = new WheelTimer("test-timer", 1, TimeUnit.MILLISECONDS, 64);
+    int count = 100_000;
+    CountDownLatch latch = new CountDownLatch(count / 2);
+    AtomicInteger runs = new AtomicInteger();
+    int expected = count / 2;
+    for (int i = 0; i < count; i++) {
+      WheelTimer.Timeout timeout = timer.schedule(() -> {
+        runs.incrementAndGet();
+        latch.countDown();
+      }, i % 200, TimeUnit.MILLISECONDS);
+      if (i % 2 == 1 && !timeout.cancel()) {
+        expected++; // Already expired, the shortest delays can expire while the loop runs.
+      }
+    }
+
+    assertTrue(latch.await(10, TimeUnit.SECONDS));
+    Thread.sleep(250);
+    assertEquals(expected, runs.get());
+  }
+}
@@ -17,6 +17,7 @@
 package org.floref.core.reference;
 
 import org.floref.core.dsl.TestFlows;
+import org.floref.core.dsl.TestService;
 import org.floref.core.dsl.flow.Flows;
 import org.floref.core.dsl.flow.impex.Aliases;
 import org.floref.core.exception.FlowDefinitionException;
@@ -24,6 +25,9 @@ import org.floref.core.flow.reference.*;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
 import static org.junit.Assert.*;
 
 public class LambdaMetaBuilderTest {
@@ -117,4 +121,45 @@ public class LambdaMetaBuilderTest {
     fail();
   }
 
+  @Test
+  public void testInvokers() throws Exception {
+    Method length = TestService.class.getMethod("length", String.class);
+    Method staticLength = TestService.class.getMethod("staticLength", String.class);
+    Method one = TestService.class.getMethod("one", String.class);
+    TestService testService = new TestService();
+
+    for (MethodInvoker invoker : new MethodInvoker[]{new ReflectionMethodInvoker(length), new MethodHandleInvoker(length)}) {
+      assertEquals(3, invoker.invoke(testService, new Object[]{"abc"}));
+      try {
+        invoker.invoke(testService, new Object[]{null});
+        fail();
+      } catch (InvocationTargetException e) {
+        assertTrue(e.getCause() instanceof NullPointerException);
+      }
+      try {
+        invoker.invoke(testService, new Object[]{1});
+        fail();
+      } catch (IllegalArgumentException e) {
+        // Not thrown by the method.
+      }
+    }
+    Method f = LambdaMetaBuilderTest.class.getMethod("f", int.class, int.class);
+    for (MethodInvoker invoker : new MethodInvoker[]{new ReflectionMethodInvoker(f), new MethodHandleInvoker(f)}) {
+      try {
+        invoker.invoke2(this, 1, null);
+        fail();
+      } catch (IllegalArgumentException e) {
+        // Null for a primitive.
+      }
+    }
+    try {
+      new MethodHandleInvoker(length).invoke1(testService, 1);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // The fixed arity variant neither.
+    }
+    assertEquals(3, new MethodHandleInvoker(staticLength).invoke(null, new Object[]{"abc"}));
+    assertNull(new MethodHandleInvoker(one).invoke(testService, new Object[]{"abc"}));
+  }
+
 }